@@ -6,6 +6,7 @@ import android.widget.ImageView;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.pilot.networking.tcp.MessageSender;
+import com.example.pilot.networking.udp.LatestFrameSlot;
 import com.example.pilot.ui.controller.MenuController;
 import com.example.pilot.ui.utils.FPSCounter;
 import com.example.pilot.ui.utils.GuiRunner;
@@ -55,8 +56,16 @@ public class MediaModule {
 
     @Provides
     @Singleton
-    public VideoPlayer provideVideoPlayer(FPSCounter fpsCounter, ImageViewController imageViewController) {
-        return new VideoPlayer(guiRunner, imageViewController, fpsCounter, MAX_VIDEO_FPS);
+    public VideoPlayer provideVideoPlayer(FPSCounter fpsCounter, ImageViewController imageViewController,
+                                          LatestFrameSlot latestFrameSlot)
+    {
+        return new VideoPlayer(guiRunner, imageViewController, fpsCounter, latestFrameSlot, MAX_VIDEO_FPS);
+    }
+
+    @Provides
+    @Singleton
+    public LatestFrameSlot provideLatestFrameSlot() {
+        return new LatestFrameSlot();
     }
 
     @Provides
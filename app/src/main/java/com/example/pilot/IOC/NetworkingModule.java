@@ -1,10 +1,19 @@
 package com.example.pilot.IOC;
 
+import android.os.Process;
+
+import com.example.pilot.networking.reactor.IoEngine;
 import com.example.pilot.networking.tcp.AuthSender;
 import com.example.pilot.networking.tcp.MessageSender;
+import com.example.pilot.networking.udp.FrameAckBatcher;
+import com.example.pilot.networking.udp.JitterBufferType;
+import com.example.pilot.networking.udp.LatestFrameSlot;
+import com.example.pilot.networking.udp.MediaFrame;
 import com.example.pilot.networking.udp.MediaStreamHandler;
+import com.example.pilot.networking.udp.ReceiveMode;
 import com.example.pilot.ui.utils.SoundPlayer;
 import com.example.pilot.ui.utils.VideoPlayer;
+import com.example.pilot.utils.PriorityThreadFactory;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -19,7 +28,37 @@ import dagger.Provides;
 public class NetworkingModule {
     private static final int AUDIO_PREFETCH_MS = 128;
     private static final int VIDEO_PREFETCH_MS = 128;
+    // prefetch adapts to measured jitter, starting from values above
+    private static final int MAX_AUDIO_PREFETCH_MS = 512;
+    private static final int MAX_VIDEO_PREFETCH_MS = 512;
+    // share of frames which should arrive before they are needed
+    private static final float LATE_FRAME_PERCENTILE = 0.95f;
     private static final int CLIENT_UDP_PORT = 9549;
+    // audio is received on separate socket by thread with raised priority
+    private static final int CLIENT_AUDIO_UDP_PORT = CLIENT_UDP_PORT + 1;
+    private static final int AUDIO_THREAD_PRIORITY = Process.THREAD_PRIORITY_URGENT_AUDIO;
+    // enough for a few buffered 512 KB video frames and all audio frames in flight
+    private static final long FRAME_POOL_CAPACITY = 16 * 1024 * 1024;
+    // memory all partially received frames can take, fragments of frames above that are dropped
+    private static final long PARTIAL_FRAME_BUDGET = 8 * 1024 * 1024;
+    // partial frame waiting longer than max prefetch would be too late to be played anyway
+    private static final long MAX_PARTIAL_FRAME_AGE_MS = 500;
+    // 0 decrypts on receiver thread, otherwise packets go through staged pipeline with that many decrypt workers,
+    // used in CHANNEL receive mode only
+    private static final int DECRYPT_WORKERS = 0;
+    // LOCKED or SPSC, can be chosen per stream
+    private static final JitterBufferType VIDEO_JITTER_BUFFER = JitterBufferType.SPSC;
+    private static final JitterBufferType AUDIO_JITTER_BUFFER = JitterBufferType.SPSC;
+    // video frames are acked in batches of that many, giving server credits for next ones
+    private static final int VIDEO_ACK_BATCH_SIZE = 4;
+    // credits are refreshed at least that often, even if no frame is played
+    private static final long MAX_VIDEO_ACK_DELAY_MS = 200;
+    // connection is considered lost when that many heartbeats in a row go unanswered
+    private static final long HEARTBEAT_INTERVAL_MS = 1000;
+    private static final int MAX_MISSED_HEARTBEATS = 3;
+    // THREAD_PER_SOCKET or REACTOR, number of threads and context switches of chosen engine are logged
+    // when connection is lost
+    private static final IoEngine IO_ENGINE = IoEngine.THREAD_PER_SOCKET;
 
 
     private final String serverIpAddr;
@@ -50,6 +89,12 @@ public class NetworkingModule {
         return CLIENT_UDP_PORT;
     }
 
+    @Provides
+    @Named("client audio udp port")
+    public int provideClientAudioUdpPort() {
+        return CLIENT_AUDIO_UDP_PORT;
+    }
+
     @Provides
     @Named("connection executor")
     public ExecutorService provideConnectionExecutorService() {
@@ -57,24 +102,113 @@ public class NetworkingModule {
     }
 
 
+    @Provides
+    @Named("io engine")
+    public IoEngine provideIoEngine() {
+        return IO_ENGINE;
+    }
+
+    @Provides
+    @Named("reactor executor")
+    public ExecutorService provideReactorExecutorService() {
+        return Executors.newSingleThreadExecutor();
+    }
+
+    // received messages are handed to observers in order, off the reactor thread
+    @Provides
+    @Named("message worker executor")
+    public ExecutorService provideMessageWorkerExecutorService() {
+        return Executors.newSingleThreadExecutor();
+    }
+
+
+    @Provides
+    @Named("heartbeat interval ms")
+    public long provideHeartbeatIntervalMs() {
+        return HEARTBEAT_INTERVAL_MS;
+    }
+
+    @Provides
+    @Named("max missed heartbeats")
+    public int provideMaxMissedHeartbeats() {
+        return MAX_MISSED_HEARTBEATS;
+    }
+
+
     @Provides
     @Named("receiver executor")
     public ExecutorService provideMediaReceiverExecutorService() {
         return Executors.newSingleThreadExecutor();
     }
 
+    @Provides
+    @Named("audio receiver executor")
+    public ExecutorService provideAudioReceiverExecutorService() {
+        return Executors.newSingleThreadExecutor(new PriorityThreadFactory("audio receiver", AUDIO_THREAD_PRIORITY));
+    }
+
+    @Provides
+    @Named("media receive mode")
+    public ReceiveMode provideMediaReceiveMode() {
+        return ReceiveMode.BATCHED_CHANNEL;
+    }
+
+    @Provides
+    @Named("frame pool capacity")
+    public long provideFramePoolCapacity() {
+        return FRAME_POOL_CAPACITY;
+    }
+
+    @Provides
+    @Named("partial frame budget")
+    public long providePartialFrameBudget() {
+        return PARTIAL_FRAME_BUDGET;
+    }
+
+    @Provides
+    @Named("max partial frame age ms")
+    public long provideMaxPartialFrameAgeMs() {
+        return MAX_PARTIAL_FRAME_AGE_MS;
+    }
+
+    @Provides
+    @Named("decrypt workers")
+    public int provideDecryptWorkers() {
+        return DECRYPT_WORKERS;
+    }
+
+    @Provides
+    @Named("fragment payload size")
+    public int provideFragmentPayloadSize() {
+        return MediaFrame.DEFAULT_FRAGMENT_PAYLOAD_SIZE;
+    }
+
     @Provides
     @Singleton
     @Named("video stream handler")
-    public MediaStreamHandler provideVideoStreamHandler(VideoPlayer videoPlayer) {
-        return new MediaStreamHandler(videoPlayer, VIDEO_PREFETCH_MS);
+    public MediaStreamHandler provideVideoStreamHandler(VideoPlayer videoPlayer, LatestFrameSlot latestFrameSlot) {
+        MediaStreamHandler handler = new MediaStreamHandler(videoPlayer, VIDEO_PREFETCH_MS, MAX_VIDEO_PREFETCH_MS,
+                LATE_FRAME_PERCENTILE, VIDEO_JITTER_BUFFER);
+        handler.setLatestFrameSlot(latestFrameSlot);
+        return handler;
     }
 
     @Provides
     @Singleton
     @Named("audio stream handler")
     public MediaStreamHandler provideAudioStreamHandler(SoundPlayer soundPlayer) {
-        return new MediaStreamHandler(soundPlayer, AUDIO_PREFETCH_MS);
+        return new MediaStreamHandler(soundPlayer, AUDIO_PREFETCH_MS, MAX_AUDIO_PREFETCH_MS,
+                LATE_FRAME_PERCENTILE, AUDIO_JITTER_BUFFER,
+                new PriorityThreadFactory("audio consumer", AUDIO_THREAD_PRIORITY));
+    }
+
+    @Provides
+    @Singleton
+    public FrameAckBatcher provideFrameAckBatcher(MessageSender messageSender,
+                                                  @Named("video stream handler") MediaStreamHandler videoStreamHandler)
+    {
+        return new FrameAckBatcher(messageSender, videoStreamHandler::getCredits,
+                VIDEO_ACK_BATCH_SIZE, MAX_VIDEO_ACK_DELAY_MS);
     }
 
     @Provides
@@ -3,12 +3,15 @@ package com.example.pilot.IOC;
 import com.example.pilot.security.MessageSecurityPreprocessor;
 import com.example.pilot.security.TCPGuard;
 import com.example.pilot.security.UDPGuard;
+import com.example.pilot.security.utils.CipherSuite;
+import com.example.pilot.security.utils.KeyExchange;
 
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -18,22 +21,25 @@ import dagger.Provides;
 
 @Module
 public class SecurityModule {
+    // offered in order of preference, server picks RSA if it has no EC certificate,
+    // swap them and allow RSA fallback to measure RSA handshake
+    private static final List<KeyExchange> KEY_EXCHANGES = Arrays.asList(KeyExchange.ECDHE_P256, KeyExchange.RSA_OAEP);
+    // RSA picked by server after ECDHE was offered may be a downgrade by someone who stripped ECDHE from hello,
+    // enable only for servers without EC certificate
+    private static final boolean RSA_FALLBACK_ALLOWED = false;
+
     private final File securityFilesDirectory;
     private final String CAPublicKeyFileName;
-    private TCPGuard tcpGuard;
-    private UDPGuard udpGuard;
+    private final List<CipherSuite> cipherSuites;
+    private final TCPGuard tcpGuard;
+    private final UDPGuard udpGuard;
 
-    public SecurityModule(File securityFilesDirectory, String CAPublicKeyFileName) {
+    public SecurityModule(File securityFilesDirectory, String CAPublicKeyFileName, List<CipherSuite> cipherSuites) {
         this.securityFilesDirectory = securityFilesDirectory;
         this.CAPublicKeyFileName = CAPublicKeyFileName;
-        try {
-            this.tcpGuard = new TCPGuard();
-            this.udpGuard = new UDPGuard();
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Failed to create guards");
-            // TODO
-        }
+        this.cipherSuites = cipherSuites;
+        this.tcpGuard = new TCPGuard();
+        this.udpGuard = new UDPGuard();
     }
 
     @Provides
@@ -81,4 +87,28 @@ public class SecurityModule {
         return tcpGuard;
     }
 
+    @Provides
+    UDPGuard provideUDPGuard() {
+        return udpGuard;
+    }
+
+    // offered to server in order of preference, fastest on this device first
+    @Provides
+    @Named("cipher suites")
+    List<CipherSuite> provideCipherSuites() {
+        return cipherSuites;
+    }
+
+    @Provides
+    @Named("key exchanges")
+    List<KeyExchange> provideKeyExchanges() {
+        return KEY_EXCHANGES;
+    }
+
+    @Provides
+    @Named("rsa fallback")
+    boolean provideRsaFallbackAllowed() {
+        return RSA_FALLBACK_ALLOWED;
+    }
+
 }
@@ -0,0 +1,11 @@
+package com.example.pilot.networking.observers;
+
+import com.example.pilot.networking.udp.MediaCode;
+
+import java.util.List;
+
+public interface FragmentsMissingObserver {
+    // called by media receiver thread, has to be thread safe
+
+    void onFragmentsMissing(MediaCode code, int seqNum, List<Integer> offsets);
+}
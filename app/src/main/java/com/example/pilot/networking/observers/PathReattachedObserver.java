@@ -0,0 +1,8 @@
+package com.example.pilot.networking.observers;
+
+public interface PathReattachedObserver {
+    // called by tcp receiver thread once resumed session took over media path of the previous one,
+    // phone may have changed network while it was disconnected, has to be thread safe
+
+    void onPathReattached();
+}
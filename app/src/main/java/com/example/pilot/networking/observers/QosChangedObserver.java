@@ -0,0 +1,7 @@
+package com.example.pilot.networking.observers;
+
+public interface QosChangedObserver {
+    // called by media receiver thread, has to be thread safe
+
+    void onQosChanged(long bitrate, int fps, int quality);
+}
@@ -1,9 +1,8 @@
 package com.example.pilot.networking.observers;
 
-import com.example.pilot.utils.ScreenShot;
-
 public interface SsRcvdObserver {
     // all functions have to be thread safe
 
-    void onScreenShotRcvd(ScreenShot ss);
+    // lastSeqNum is seq of last played video frame, credits tell how many frames can be sent past it
+    void onScreenShotsRcvd(int lastSeqNum, int credits);
 }
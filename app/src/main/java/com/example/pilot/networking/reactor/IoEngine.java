@@ -0,0 +1,8 @@
+package com.example.pilot.networking.reactor;
+
+public enum IoEngine {
+    // blocking I/O, connection loop, tcp listener, tcp sender and media receivers run on their own threads
+    THREAD_PER_SOCKET,
+    // control connection, media channels and reconnect timers multiplexed by IoReactor on single thread
+    REACTOR
+}
@@ -0,0 +1,431 @@
+package com.example.pilot.networking.reactor;
+
+import android.util.Log;
+
+import com.example.pilot.networking.tcp.ConnectionHandler;
+import com.example.pilot.networking.tcp.Listener;
+import com.example.pilot.security.MessageSecurityPreprocessor;
+import com.example.pilot.security.TLSHandler;
+import com.example.pilot.security.exceptions.AuthenticationException;
+import com.example.pilot.security.exceptions.SecurityException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Single thread event loop multiplexing control connection, media channels and timers on one Selector, used
+ * instead of thread per socket engine when IoEngine.REACTOR is chosen. Control messages are decrypted on the loop
+ * and handed in order to message worker, which notifies Listener's observers. Media channels are drained by
+ * handlers their owners register, on the loop as well. Connection observers are called on the loop thread with
+ * socket of the control channel, exactly when ConnectionHandler would call them.
+ *
+ * TLS handshake happens once per connection and is short, it runs blocking on the loop before anything else
+ * is registered.
+ *
+ * Methods can be called by any thread unless stated otherwise, everything else runs on the loop thread.
+ */
+@Singleton
+public class IoReactor {
+    private static final String TAG = "IO Reactor";
+    // control channel may be closed by other threads (heartbeat monitor), loop notices it within that time
+    private static final long MAX_SELECT_TIMEOUT_MS = 100;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final long DEFAULT_RECONNECT_TIMEOUT_MS = 1000;
+    private static final long MAX_RECONNECT_TIMEOUT_MS = 16 * DEFAULT_RECONNECT_TIMEOUT_MS;
+
+    public interface DatagramHandler {
+        // called on loop thread when channel is readable, has to read whatever is there without blocking
+        void onReadable(DatagramChannel channel) throws IOException, InterruptedException;
+    }
+
+    public static class ScheduledTask {
+        private final Runnable task;
+        private final long dueNs;
+        private volatile boolean cancelled;
+
+        private ScheduledTask(Runnable task, long dueNs) {
+            this.task = task;
+            this.dueNs = dueNs;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final TLSHandler tlsHandler;
+    private final MessageSecurityPreprocessor preprocessor;
+    private final Listener listener;
+    private final ExecutorService reactorExecutor;
+    private final ExecutorService messageWorker;
+
+    private final Queue<Runnable> tasks;
+    private final Queue<ByteBuffer> outgoingMessages;
+    private volatile boolean connected;
+
+    // set once reactor is started
+    private ConnectionHandler connectionHandler;
+    private volatile Selector selector;
+    private volatile Thread loopThread;
+    private Future<?> loopTask;
+
+    // used by loop thread only
+    private final PriorityQueue<ScheduledTask> timers;
+    private SocketChannel controlChannel;
+    private SelectionKey controlKey;
+    private ByteBuffer readBuffer;
+    private long reconnectTimeoutMs;
+    private ScheduledTask reconnectTask;
+
+    @Inject
+    public IoReactor(TLSHandler tlsHandler, @Named("TCP preprocessor") MessageSecurityPreprocessor preprocessor,
+                     Listener listener, @Named("reactor executor") ExecutorService reactorExecutor,
+                     @Named("message worker executor") ExecutorService messageWorker)
+    {
+        this.tlsHandler = tlsHandler;
+        this.preprocessor = preprocessor;
+        this.listener = listener;
+        this.reactorExecutor = reactorExecutor;
+        this.messageWorker = messageWorker;
+
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.outgoingMessages = new ConcurrentLinkedQueue<>();
+        this.timers = new PriorityQueue<>(Comparator.comparingLong(timer -> timer.dueNs));
+        this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        this.reconnectTimeoutMs = DEFAULT_RECONNECT_TIMEOUT_MS;
+    }
+
+    // connection handler provides connection params and notifies observers
+    public synchronized void start(ConnectionHandler connectionHandler) {
+        if (loopTask != null)
+            return;
+
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            Log.wtf(TAG, "Failed to open selector", e);
+            return;
+        }
+
+        this.connectionHandler = connectionHandler;
+        loopTask = reactorExecutor.submit(this::runLoop);
+    }
+
+    // runs task on the loop, right away if called by loop thread
+    public void execute(Runnable task) {
+        if (Thread.currentThread() == loopThread) {
+            task.run();
+            return;
+        }
+
+        tasks.add(task);
+        Selector selector = this.selector;
+        if (selector != null)
+            selector.wakeup();
+    }
+
+    public ScheduledTask schedule(Runnable task, long delayMs) {
+        ScheduledTask scheduledTask = new ScheduledTask(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs));
+        execute(() -> timers.add(scheduledTask));
+
+        return scheduledTask;
+    }
+
+    // channel has to be non-blocking, it's unregistered when closed
+    public void registerDatagramChannel(DatagramChannel channel, DatagramHandler handler) {
+        execute(() -> {
+            try {
+                channel.register(selector, SelectionKey.OP_READ, handler);
+            } catch (ClosedChannelException e) {
+                Log.w(TAG, "Channel closed before it was registered");
+            }
+        });
+    }
+
+    // message has to be encrypted already, messages sent while disconnected are dropped
+    public void sendControlMessage(byte[] message) {
+        if (!connected) {
+            Log.d(TAG, "Not connected, dropping message");
+            return;
+        }
+
+        outgoingMessages.add(ByteBuffer.wrap(message));
+        execute(this::flushControlChannel);
+    }
+
+    public void retryConnection() {
+        execute(() -> {
+            if (connected || reconnectTask == null)
+                return;
+
+            reconnectTask.cancel();
+            reconnectTimeoutMs = DEFAULT_RECONNECT_TIMEOUT_MS;
+            connect();
+        });
+    }
+
+    public void resetReconnectTimeout() {
+        execute(() -> reconnectTimeoutMs = DEFAULT_RECONNECT_TIMEOUT_MS);
+    }
+
+    private void runLoop() {
+        loopThread = Thread.currentThread();
+        Log.d(TAG, "Loop started");
+
+        connect();
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                selector.select(getSelectTimeoutMs());
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handleKey(key);
+                }
+
+                runTasks();
+                runDueTimers();
+                checkControlChannel();
+            }
+        } catch (InterruptedException consumed) {
+            Log.d(TAG, "Loop interrupted, exiting");
+        } catch (IOException e) {
+            Log.e(TAG, "Selector failed", e);
+        }
+    }
+
+    private long getSelectTimeoutMs() {
+        ScheduledTask nextTimer = timers.peek();
+        if (nextTimer == null)
+            return MAX_SELECT_TIMEOUT_MS;
+
+        long untilDueMs = TimeUnit.NANOSECONDS.toMillis(nextTimer.dueNs - System.nanoTime());
+
+        // 0 would block indefinitely
+        return Math.max(1, Math.min(MAX_SELECT_TIMEOUT_MS, untilDueMs));
+    }
+
+    private void handleKey(SelectionKey key) throws InterruptedException {
+        if (!key.isValid())
+            return;
+
+        if (key.attachment() instanceof DatagramHandler) {
+            try {
+                ((DatagramHandler) key.attachment()).onReadable((DatagramChannel) key.channel());
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to receive from media channel", e);
+                key.cancel();
+            }
+            return;
+        }
+
+        if (key.isConnectable()) {
+            // channel has to leave selector for handshake, which can't be done while selected keys are iterated
+            key.interestOps(0);
+            tasks.add(this::finishConnect);
+            return;
+        }
+
+        if (key.isReadable())
+            readControlChannel();
+
+        if (key.isValid() && key.isWritable())
+            flushControlChannel();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null)
+            runSafely(task);
+    }
+
+    private void runDueTimers() {
+        long nowNs = System.nanoTime();
+
+        while (!timers.isEmpty() && timers.peek().dueNs <= nowNs) {
+            ScheduledTask timer = timers.poll();
+            if (!timer.cancelled)
+                runSafely(timer.task);
+        }
+    }
+
+    // single failing task shouldn't stop the loop
+    private void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Task failed", e);
+        }
+    }
+
+    private void connect() {
+        reconnectTask = null;
+
+        try {
+            controlChannel = SocketChannel.open();
+            controlChannel.configureBlocking(false);
+            controlChannel.connect(new InetSocketAddress(connectionHandler.getIpAddr(), connectionHandler.getPort()));
+            controlKey = controlChannel.register(selector, SelectionKey.OP_CONNECT);
+        } catch (IOException | UnresolvedAddressException e) {
+            onConnectFailed(e.getMessage());
+        }
+    }
+
+    private void finishConnect() {
+        try {
+            controlChannel.finishConnect();
+
+            controlKey.cancel();
+            selector.selectNow();
+            controlChannel.configureBlocking(true);
+            tlsHandler.establishSecureChannel(controlChannel.socket());
+
+            controlChannel.configureBlocking(false);
+            controlKey = controlChannel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            onConnectFailed(e.getMessage());
+            return;
+        } catch (SecurityException e) {
+            Log.wtf(TAG, "security failed", e);
+            onConnectFailed(e.getMessage());
+            return;
+        }
+
+        connected = true;
+        reconnectTimeoutMs = DEFAULT_RECONNECT_TIMEOUT_MS;
+        readBuffer.clear();
+
+        connectionHandler.notifyConnectionEstablished(controlChannel.socket());
+    }
+
+    private void onConnectFailed(String errorMsg) {
+        Log.d(TAG, "failed to connect: " + errorMsg);
+        closeControlChannel();
+
+        connectionHandler.notifyFailedToConnect(errorMsg);
+        scheduleReconnect();
+    }
+
+    private void onConnectionLost(Exception cause) {
+        Log.d(TAG, "connection lost", cause);
+        closeControlChannel();
+
+        connected = false;
+        outgoingMessages.clear();
+
+        connectionHandler.notifyConnectionLost(controlChannel.socket());
+        scheduleReconnect();
+    }
+
+    private void scheduleReconnect() {
+        reconnectTask = schedule(this::connect, reconnectTimeoutMs);
+        reconnectTimeoutMs = Math.min(MAX_RECONNECT_TIMEOUT_MS, reconnectTimeoutMs * 2);
+    }
+
+    private void closeControlChannel() {
+        try {
+            controlChannel.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close control channel", e);
+        }
+    }
+
+    private void checkControlChannel() {
+        if (connected && !controlChannel.isOpen())
+            onConnectionLost(new ClosedChannelException());
+    }
+
+    private void readControlChannel() {
+        try {
+            if (controlChannel.read(readBuffer) < 0)
+                throw new ConnectException("Connection lost, channel returned -1");
+
+            readBuffer.flip();
+            while (decodeMessage());
+            readBuffer.compact();
+        } catch (IOException e) {
+            onConnectionLost(e);
+        } catch (SecurityException | AuthenticationException e) {
+            Log.wtf(TAG, "security failed", e);
+            onConnectionLost(e);
+        }
+    }
+
+    // returns false if there is no complete message in the buffer
+    private boolean decodeMessage() throws SecurityException, AuthenticationException {
+        int headerSize = preprocessor.getBasicHeaderSize();
+        if (readBuffer.remaining() < headerSize)
+            return false;
+
+        byte[] basicHeader = new byte[headerSize];
+        readBuffer.duplicate().get(basicHeader);
+        int messageSize = headerSize + preprocessor.getMessageSize(basicHeader);
+
+        if (messageSize > readBuffer.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocate(messageSize);
+            grown.put(readBuffer);
+            grown.flip();
+            readBuffer = grown;
+            return false;
+        }
+
+        if (readBuffer.remaining() < messageSize)
+            return false;
+
+        byte[] fullMsg = new byte[messageSize];
+        readBuffer.get(fullMsg);
+
+        String msg = new String(preprocessor.preprocessReceived(fullMsg), StandardCharsets.UTF_8);
+        messageWorker.execute(() -> listener.dispatchMessage(msg));
+
+        return true;
+    }
+
+    private void flushControlChannel() {
+        if (!connected || !controlKey.isValid())
+            return;
+
+        ByteBuffer message;
+        while ((message = outgoingMessages.peek()) != null) {
+            try {
+                controlChannel.write(message);
+            } catch (IOException e) {
+                onConnectionLost(e);
+                return;
+            }
+
+            // socket buffer is full, rest is written once channel is writable again
+            if (message.hasRemaining()) {
+                controlKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+
+            outgoingMessages.poll();
+        }
+
+        controlKey.interestOps(SelectionKey.OP_READ);
+    }
+}
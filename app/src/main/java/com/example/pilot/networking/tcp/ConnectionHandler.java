@@ -2,9 +2,12 @@ package com.example.pilot.networking.tcp;
 import android.util.Log;
 
 import com.example.pilot.networking.observers.ConnectionStatusObserver;
+import com.example.pilot.networking.reactor.IoEngine;
+import com.example.pilot.networking.reactor.IoReactor;
 import com.example.pilot.security.exceptions.AuthenticationException;
 import com.example.pilot.security.exceptions.SecurityException;
 import com.example.pilot.security.TLSHandler;
+import com.example.pilot.utils.ThreadStats;
 
 import java.net.*;
 import java.io.*;
@@ -40,10 +43,16 @@ public class ConnectionHandler implements Runnable {
     private final ExecutorService executorService;
     private Future<?> connectionListenerTask;
 
+    // with REACTOR engine connection is made and watched by reactor, which calls notify methods below
+    private final IoEngine ioEngine;
+    private final IoReactor reactor;
+    private ThreadStats connectedStats;
+
     @Inject
     public ConnectionHandler(@Named("server ip address") String ipAddr, @Named("server port") int port,
                              TLSHandler tlsHandler, Listener listener,
-                             @Named("connection executor") ExecutorService executorService) {
+                             @Named("connection executor") ExecutorService executorService,
+                             @Named("io engine") IoEngine ioEngine, IoReactor reactor) {
         this.port = port;
         this.ipAddr = ipAddr;
         this.tlsHandler = tlsHandler;
@@ -52,12 +61,25 @@ public class ConnectionHandler implements Runnable {
         this.isConnected = new AtomicBoolean(false);
         this.listener = listener;
         this.executorService = executorService;
+        this.ioEngine = ioEngine;
+        this.reactor = reactor;
     }
 
     public synchronized void setConnectionParams(String ipAddr, int port) {
         this.ipAddr = ipAddr;
         this.port = port;
         reconnect_timeout_millis.set(DEFAULT_RECONNECT_TIMEOUT_MILLIS);
+
+        if (ioEngine == IoEngine.REACTOR)
+            reactor.resetReconnectTimeout();
+    }
+
+    public synchronized String getIpAddr() {
+        return ipAddr;
+    }
+
+    public synchronized int getPort() {
+        return port;
     }
 
     public synchronized void addConnectionStatusObserver(ConnectionStatusObserver obs) {
@@ -65,7 +87,10 @@ public class ConnectionHandler implements Runnable {
     }
 
     public void establishConnection() {
-        connectionListenerTask = executorService.submit(this);
+        if (ioEngine == IoEngine.REACTOR)
+            reactor.start(this);
+        else
+            connectionListenerTask = executorService.submit(this);
     }
 
     @Override
@@ -78,7 +103,7 @@ public class ConnectionHandler implements Runnable {
 
                 tlsHandler.establishSecureChannel(socket);
 
-                connectionStatusObservers.forEach(connectionStatusObserver -> connectionStatusObserver.connectionEstablished(socket));
+                notifyConnectionEstablished(socket);
 
                 listener.listen(socket);
             } catch (IOException e) {
@@ -87,10 +112,10 @@ public class ConnectionHandler implements Runnable {
                 synchronized (this) {
                     if (isConnected.get()) {
                         // connection lost
-                        connectionStatusObservers.forEach(connectionStatusObserver -> connectionStatusObserver.connectionLost(serverSocket));
+                        notifyConnectionLost(serverSocket);
                     } else {
                         // connection was not established
-                        connectionStatusObservers.forEach(obs -> obs.failedToConnect(e.getMessage()));
+                        notifyFailedToConnect(e.getMessage());
                     }
                     serverSocket = null;
                     isConnected.set(false);
@@ -118,7 +143,28 @@ public class ConnectionHandler implements Runnable {
         reconnect_timeout_millis.set(Math.min(DEFAULT_RECONNECT_TIMEOUT_MILLIS * 16, sleepTime * 2));
     }
 
+    public void notifyConnectionEstablished(Socket socket) {
+        connectedStats = ThreadStats.sample();
+        connectionStatusObservers.forEach(connectionStatusObserver -> connectionStatusObserver.connectionEstablished(socket));
+    }
+
+    public synchronized void notifyConnectionLost(Socket socket) {
+        connectionStatusObservers.forEach(connectionStatusObserver -> connectionStatusObserver.connectionLost(socket));
+
+        if (connectedStats != null)
+            Log.i(TAG, ioEngine + " engine while connected: " + ThreadStats.sample().describeSince(connectedStats));
+    }
+
+    public synchronized void notifyFailedToConnect(String errorMsg) {
+        connectionStatusObservers.forEach(obs -> obs.failedToConnect(errorMsg));
+    }
+
     public synchronized void retryConnection() {
+        if (ioEngine == IoEngine.REACTOR) {
+            reactor.retryConnection();
+            return;
+        }
+
         if (!isConnected.get() && connectionListenerTask != null) {
             // can be connected but listeners were not called yet
             if (connectionListenerTask.cancel(true)) {
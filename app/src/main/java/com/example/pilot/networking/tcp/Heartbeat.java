@@ -0,0 +1,110 @@
+package com.example.pilot.networking.tcp;
+
+import androidx.annotation.GuardedBy;
+
+/**
+ * Application level keepalive of the control connection. Beat is sent every interval and echoed by the server
+ * right away, every echo gives rtt sample, smoothed the way tcp does it (RFC 6298). Peer is considered dead
+ * when maxMissedBeats beats in a row weren't echoed before the next one was due, so half open connection
+ * is noticed in few seconds instead of whenever tcp gives up.
+ *
+ * Class is thread safe.
+ */
+public class Heartbeat {
+    // send times of that many latest beats are kept, older echoes don't give rtt samples
+    private static final int SEND_TIMES_WINDOW = 16;
+    public static final long UNKNOWN_RTT = -1;
+
+    private final int maxMissedBeats;
+    private final long[] sendTimesNs;
+
+    @GuardedBy("this") private int seq;
+    @GuardedBy("this") private int unackedBeats;
+    @GuardedBy("this") private long smoothedRttNs;
+    @GuardedBy("this") private long rttVarNs;
+    @GuardedBy("this") private long minRttNs;
+    @GuardedBy("this") private long ackedBeats;
+
+    public Heartbeat(int maxMissedBeats) {
+        if (maxMissedBeats <= 0)
+            throw new IllegalArgumentException("Invalid max missed beats " + maxMissedBeats);
+
+        this.maxMissedBeats = maxMissedBeats;
+        this.sendTimesNs = new long[SEND_TIMES_WINDOW];
+        reset();
+    }
+
+    public synchronized void reset() {
+        seq = 0;
+        unackedBeats = 0;
+        smoothedRttNs = UNKNOWN_RTT;
+        rttVarNs = 0;
+        minRttNs = Long.MAX_VALUE;
+        ackedBeats = 0;
+    }
+
+    // called when next beat is due, returns its seq
+    public synchronized int nextBeat(long nowNs) {
+        seq++;
+        unackedBeats++;
+        sendTimesNs[seq % SEND_TIMES_WINDOW] = nowNs;
+
+        return seq;
+    }
+
+    // should be checked before sending next beat, every beat sent so far had a full interval to be echoed
+    public synchronized boolean isPeerDead() {
+        return unackedBeats >= maxMissedBeats;
+    }
+
+    public synchronized void onAck(int ackedSeq, long nowNs) {
+        if (ackedSeq <= 0 || ackedSeq > seq)
+            return;
+
+        // any echo means peer is alive, even late one
+        unackedBeats = 0;
+        ackedBeats++;
+
+        if (seq - ackedSeq >= SEND_TIMES_WINDOW)
+            return;
+
+        onRttSample(nowNs - sendTimesNs[ackedSeq % SEND_TIMES_WINDOW]);
+    }
+
+    @GuardedBy("this")
+    private void onRttSample(long rttNs) {
+        minRttNs = Math.min(minRttNs, rttNs);
+
+        if (smoothedRttNs == UNKNOWN_RTT) {
+            smoothedRttNs = rttNs;
+            rttVarNs = rttNs / 2;
+            return;
+        }
+
+        rttVarNs = (3 * rttVarNs + Math.abs(smoothedRttNs - rttNs)) / 4;
+        smoothedRttNs = (7 * smoothedRttNs + rttNs) / 8;
+    }
+
+    // UNKNOWN_RTT until first echo
+    public synchronized long getSmoothedRttMs() {
+        return smoothedRttNs == UNKNOWN_RTT ? UNKNOWN_RTT : smoothedRttNs / 1_000_000;
+    }
+
+    public synchronized long getRttVarMs() {
+        return rttVarNs / 1_000_000;
+    }
+
+    public synchronized long getMinRttMs() {
+        return minRttNs == Long.MAX_VALUE ? UNKNOWN_RTT : minRttNs / 1_000_000;
+    }
+
+    public synchronized int getUnackedBeats() {
+        return unackedBeats;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "sent " + seq + " beats, " + ackedBeats + " echoed, rtt " + getSmoothedRttMs() + " ms (var " +
+                getRttVarMs() + " ms, min " + getMinRttMs() + " ms)";
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.pilot.networking.tcp;
+
+import android.util.Log;
+
+import com.example.pilot.networking.observers.ConnectionStatusObserver;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Sends heartbeats while connected. When too many of them go unanswered socket is closed, listener fails
+ * on it like on any lost connection, so observers are notified and reconnecting starts.
+ */
+@Singleton
+public class HeartbeatMonitor implements ConnectionStatusObserver {
+    private static final String TAG = "Heartbeat Monitor";
+
+    private final MessageSender messageSender;
+    private final Heartbeat heartbeat;
+    private final long intervalMs;
+
+    private final ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> beatTask;
+    private Socket socket;
+
+    @Inject
+    public HeartbeatMonitor(MessageSender messageSender, @Named("heartbeat interval ms") long intervalMs,
+                            @Named("max missed heartbeats") int maxMissedBeats)
+    {
+        this.messageSender = messageSender;
+        this.heartbeat = new Heartbeat(maxMissedBeats);
+        this.intervalMs = intervalMs;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    private synchronized void beat() {
+        if (heartbeat.isPeerDead()) {
+            Log.w(TAG, heartbeat.getUnackedBeats() + " heartbeats unanswered, closing connection");
+            stop();
+
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close socket", e);
+            }
+            return;
+        }
+
+        messageSender.sendHeartbeat(heartbeat.nextBeat(System.nanoTime()));
+    }
+
+    public void onHeartbeatAck(int seq) {
+        heartbeat.onAck(seq, System.nanoTime());
+    }
+
+    // Heartbeat.UNKNOWN_RTT if not measured yet
+    public long getRttMs() {
+        return heartbeat.getSmoothedRttMs();
+    }
+
+    private void stop() {
+        if (beatTask != null) {
+            beatTask.cancel(false);
+            beatTask = null;
+        }
+    }
+
+    @Override
+    public void failedToConnect(String errorMsg) {
+        // pass
+    }
+
+    @Override
+    public synchronized void connectionEstablished(Socket socket) {
+        this.socket = socket;
+        heartbeat.reset();
+
+        stop();
+        beatTask = scheduler.scheduleAtFixedRate(this::beat, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void connectionLost(Socket socket) {
+        stop();
+        Log.i(TAG, "Heartbeat: " + heartbeat);
+    }
+}
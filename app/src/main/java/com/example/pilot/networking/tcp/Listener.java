@@ -66,11 +66,12 @@ public class Listener {
     public void listen(Socket socket) throws IOException, AuthenticationException, SecurityException {
         InputStream stream = socket.getInputStream();
 
-        while (true) {
-            String rcvd = recvMessage(stream);
-            synchronized (this) {
-                this.msgRcvdObservers.forEach(obs -> obs.onMessageReceived(rcvd));
-            }
-        }
+        while (true)
+            dispatchMessage(recvMessage(stream));
+    }
+
+    // called by listening thread, or by message worker of IoReactor which decodes messages by itself
+    public synchronized void dispatchMessage(String rcvd) {
+        this.msgRcvdObservers.forEach(obs -> obs.onMessageReceived(rcvd));
     }
 }
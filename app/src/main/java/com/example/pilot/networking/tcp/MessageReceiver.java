@@ -4,7 +4,9 @@ import android.util.Log;
 
 import com.example.pilot.networking.observers.AuthStatusObserver;
 import com.example.pilot.networking.observers.MessageRcvdObserver;
+import com.example.pilot.networking.udp.MediaCode;
 import com.example.pilot.networking.udp.MediaReceiver;
+import com.example.pilot.security.SessionResumption;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -22,6 +24,8 @@ public class MessageReceiver implements MessageRcvdObserver {
     private final LinkedList<AuthStatusObserver> authStatusObservers;
     private final MediaReceiver mediaReceiver;
     private final MessageSender messageSender;
+    private final HeartbeatMonitor heartbeatMonitor;
+    private final SessionResumption sessionResumption;
 
     private static class JsonMessage {
         public final MsgCode code;
@@ -42,9 +46,13 @@ public class MessageReceiver implements MessageRcvdObserver {
     }
 
     @Inject
-    public MessageReceiver(MediaReceiver mediaReceiver, MessageSender messageSender) {
+    public MessageReceiver(MediaReceiver mediaReceiver, MessageSender messageSender,
+                           HeartbeatMonitor heartbeatMonitor, SessionResumption sessionResumption)
+    {
         this.mediaReceiver = mediaReceiver;
         this.messageSender = messageSender;
+        this.heartbeatMonitor = heartbeatMonitor;
+        this.sessionResumption = sessionResumption;
         this.authStatusObservers = new LinkedList<>();
     }
 
@@ -78,6 +86,22 @@ public class MessageReceiver implements MessageRcvdObserver {
             case UDP_SECRET:
                 handleUdpSecret(message.value);
                 break;
+            case PROBE_PING:
+                messageSender.sendProbePong(message.value.getInt("seq"), mediaReceiver.getLinkProbe());
+                break;
+            case PROBE_RESULT:
+                handleProbeResult(message.value);
+                break;
+            case HEARTBEAT_ACK:
+                heartbeatMonitor.onHeartbeatAck(message.value.getInt("seq"));
+                break;
+            case PATH_MIGRATED:
+                mediaReceiver.onPathMigrated(MediaCode.fromInteger(message.value.getInt("lane")),
+                        message.value.getLong("seq"));
+                break;
+            case NEW_TICKET:
+                handleNewTicket(message.value);
+                break;
             default:
                 throw new IllegalArgumentException("Rcvd unsupported msg code\n" + message);
         }
@@ -91,10 +115,32 @@ public class MessageReceiver implements MessageRcvdObserver {
 
     }
 
+    private void handleProbeResult(JSONObject value) throws JSONException {
+        Log.i(TAG, "Link probed, rtt " + value.getInt("rtt_ms") + " ms");
+
+        mediaReceiver.applyLinkProfile(value.getInt("fragment_size"), value.getLong("bitrate"),
+                value.getInt("fps"), value.getInt("quality"));
+    }
+
+    // resumed session has media key derived from the ticket already, server sends only path migration params
+    // and doesn't wait for ack
     private void handleUdpSecret(JSONObject value) throws JSONException {
-        byte[] decoded = Base64.getDecoder().decode(value.getString("secret"));
-        mediaReceiver.setMediaTransportKey(decoded);
-        messageSender.sendMediaSecretChannelAck();
+        boolean hasSecret = value.has("secret");
+        if (hasSecret) {
+            byte[] decoded = Base64.getDecoder().decode(value.getString("secret"));
+            mediaReceiver.setMediaTransportKey(decoded);
+        }
+
+        byte[] sessionId = Base64.getDecoder().decode(value.getString("session_id"));
+        mediaReceiver.enablePathMigration(sessionId, value.getInt("migration_port"));
+
+        if (hasSecret)
+            messageSender.sendMediaSecretChannelAck();
+    }
+
+    private void handleNewTicket(JSONObject value) throws JSONException {
+        sessionResumption.storeTicket(Base64.getDecoder().decode(value.getString("ticket")),
+                Base64.getDecoder().decode(value.getString("secret")), value.getLong("lifetime_s") * 1000);
     }
 
 }
@@ -2,10 +2,14 @@ package com.example.pilot.networking.tcp;
 
 import android.util.Log;
 
+import com.example.pilot.networking.observers.FragmentsMissingObserver;
+import com.example.pilot.networking.observers.QosChangedObserver;
 import com.example.pilot.networking.observers.SsRcvdObserver;
-import com.example.pilot.utils.ScreenShot;
+import com.example.pilot.networking.udp.LinkProbe;
+import com.example.pilot.networking.udp.MediaCode;
 import com.example.pilot.utils.SpecialKeyCode;
 import com.example.pilot.utils.KeyboardModifier;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -18,7 +22,7 @@ import javax.inject.Singleton;
 
 
 @Singleton
-public class MessageSender implements AuthSender, SsRcvdObserver {
+public class MessageSender implements AuthSender, SsRcvdObserver, FragmentsMissingObserver, QosChangedObserver {
     private static final String TAG = "MessageSender";
     private final Sender sender;
 
@@ -155,11 +159,67 @@ public class MessageSender implements AuthSender, SsRcvdObserver {
         }
     }
 
+    // answered right away, server measures rtt with these and learns what got through from link probe
+    public void sendProbePong(int seq, LinkProbe linkProbe) {
+        try {
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put("seq", seq);
+            jsonObject.put("max_size", linkProbe.getMaxPayloadSize());
+            jsonObject.put("train", linkProbe.getTrain());
+            jsonObject.put("train_packets", linkProbe.getTrainPackets());
+            jsonObject.put("train_span_us", linkProbe.getTrainSpanUs());
+            sender.enqueueJsonMessageRequest(buildStringMsg(MsgCode.PROBE_PONG, jsonObject));
+        } catch (JSONException e) {
+            Log.w(TAG, e);
+        }
+    }
+
+    public void sendHeartbeat(int seq) {
+        try {
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put("seq", seq);
+            sender.enqueueJsonMessageRequest(buildStringMsg(MsgCode.HEARTBEAT, jsonObject));
+        } catch (JSONException e) {
+            Log.w(TAG, e);
+        }
+    }
+
+    // server keeps only recent video frames, so only video fragments can be requested
+    @Override
+    public void onFragmentsMissing(MediaCode code, int seqNum, List<Integer> offsets) {
+        if (code != MediaCode.VIDEO_FRAME)
+            return;
+
+        try {
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put("seq", seqNum);
+            jsonObject.put("offsets", new JSONArray(offsets));
+            sender.enqueueJsonMessageRequest(buildStringMsg(MsgCode.NACK, jsonObject));
+        } catch (JSONException e) {
+            Log.w(TAG, e);
+        }
+    }
+
+    @Override
+    public void onQosChanged(long bitrate, int fps, int quality) {
+        try {
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put("bitrate", bitrate);
+            jsonObject.put("fps", fps);
+            jsonObject.put("quality", quality);
+            sender.enqueueJsonMessageRequest(buildStringMsg(MsgCode.QOS, jsonObject));
+        } catch (JSONException e) {
+            Log.w(TAG, e);
+        }
+    }
+
     @Override
-    public void onScreenShotRcvd(ScreenShot ss) {
+    public void onScreenShotsRcvd(int lastSeqNum, int credits) {
         try {
-            sender.enqueueJsonMessageRequest(buildStringMsg(MsgCode.SS_RCVD, ""));
-            System.out.println("SS MESSAGE ENQUEUED");
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put("seq", lastSeqNum);
+            jsonObject.put("credits", credits);
+            sender.enqueueJsonMessageRequest(buildStringMsg(MsgCode.SS_RCVD, jsonObject));
         } catch (JSONException e) {
             Log.w(TAG, e);
         }
@@ -17,7 +17,16 @@ public enum MsgCode {
     UNMUTE,
     UDP_SECRET,
     UDP_SECRET_ACK,
-    DOUBLE_CLICK;
+    DOUBLE_CLICK,
+    NACK,
+    QOS,
+    PROBE_PING,
+    PROBE_PONG,
+    PROBE_RESULT,
+    PATH_MIGRATED,
+    HEARTBEAT,
+    HEARTBEAT_ACK,
+    NEW_TICKET;
 
 
     public static MsgCode fromInteger(int x) {
@@ -37,6 +46,15 @@ public enum MsgCode {
             case 12: return UDP_SECRET;
             case 13: return UDP_SECRET_ACK;
             case 14: return DOUBLE_CLICK;
+            case 15: return NACK;
+            case 16: return QOS;
+            case 17: return PROBE_PING;
+            case 18: return PROBE_PONG;
+            case 19: return PROBE_RESULT;
+            case 20: return PATH_MIGRATED;
+            case 21: return HEARTBEAT;
+            case 22: return HEARTBEAT_ACK;
+            case 23: return NEW_TICKET;
             default:
                 throw new IllegalArgumentException("code [" + x + "] is not supported");
         }
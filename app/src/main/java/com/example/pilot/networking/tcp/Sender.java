@@ -5,6 +5,8 @@ import android.util.Log;
 import androidx.annotation.GuardedBy;
 
 import com.example.pilot.networking.observers.ConnectionStatusObserver;
+import com.example.pilot.networking.reactor.IoEngine;
+import com.example.pilot.networking.reactor.IoReactor;
 import com.example.pilot.security.MessageSecurityPreprocessor;
 import com.example.pilot.security.exceptions.SecurityException;
 
@@ -25,17 +27,29 @@ public class Sender implements ConnectionStatusObserver {
 
     private final BlockingQueue<String> jsonMessages;
     private final MessageSecurityPreprocessor preprocessor;
+    // with REACTOR engine messages are encrypted by calling thread and written by reactor, there is no sender thread
+    private final IoEngine ioEngine;
+    private final IoReactor reactor;
 
     @GuardedBy("this") private Thread senderThread;
 
     @Inject
-    public Sender(@Named("TCP preprocessor") MessageSecurityPreprocessor preprocessor) {
+    public Sender(@Named("TCP preprocessor") MessageSecurityPreprocessor preprocessor,
+                  @Named("io engine") IoEngine ioEngine, IoReactor reactor)
+    {
         this.jsonMessages = new LinkedBlockingQueue<>(SEND_QUEUE_CAPACITY);
         this.preprocessor = preprocessor;
+        this.ioEngine = ioEngine;
+        this.reactor = reactor;
     }
 
 
     void enqueueJsonMessageRequest(String jsonData) {
+        if (ioEngine == IoEngine.REACTOR) {
+            sendThroughReactor(jsonData);
+            return;
+        }
+
         try {
             jsonMessages.put(jsonData);
         } catch (InterruptedException consumed) {
@@ -43,6 +57,16 @@ public class Sender implements ConnectionStatusObserver {
         }
     }
 
+    // callers are serialized, like by the single sender thread, so messages are written in the order they were sent
+    private synchronized void sendThroughReactor(String msg) {
+        try {
+            Log.d(TAG, "Sending: " + msg);
+            reactor.sendControlMessage(preprocessor.preprocessToSend(msg.getBytes()));
+        } catch (SecurityException e) {
+            Log.wtf(TAG, "Security failed when trying to send message", e);
+        }
+    }
+
     private Runnable createSenderTask(OutputStream outputStream) {
         return () -> {
             while (true) {
@@ -76,6 +100,9 @@ public class Sender implements ConnectionStatusObserver {
 
     @Override
     public void connectionEstablished(Socket socket) {
+        if (ioEngine == IoEngine.REACTOR)
+            return;
+
         try {
             OutputStream outputStream = socket.getOutputStream();
             Runnable senderTask = createSenderTask(outputStream);
@@ -90,6 +117,9 @@ public class Sender implements ConnectionStatusObserver {
 
     @Override
     public synchronized void connectionLost(Socket socket) {
+        if (senderThread == null)
+            return;
+
         senderThread.interrupt();
         try {
             senderThread.join();
@@ -0,0 +1,289 @@
+package com.example.pilot.networking.udp;
+
+/**
+ * Delay based bandwidth estimator, simplified Google Congestion Control. Every video frame is a packet group,
+ * delay variation between consecutive groups (arrival delta minus send delta) grows while queue on the path
+ * builds up. Accumulated variation is smoothed and trend of it over recent groups is compared against adaptive
+ * threshold, overuse makes target bitrate drop below measured incoming bitrate, so queue can drain, otherwise
+ * target grows multiplicatively, bounded by what actually arrives so that it doesn't run away while
+ * server sends less than allowed.
+ *
+ * Send times are 24 bit millisecond timestamps of the server, only their differences are used.
+ * Class is not thread safe.
+ */
+public class BandwidthEstimator {
+    public enum Usage {
+        NORMAL, OVERUSE, UNDERUSE
+    }
+
+    private static final int SEND_TIME_MASK = 0xFFFFFF;
+    private static final long RATE_WINDOW_NS = 500_000_000;
+
+    // trendline filter
+    private static final int TREND_WINDOW = 20;
+    private static final double SMOOTHING = 0.9;
+    private static final double TREND_GAIN = 4;
+    private static final int MAX_TREND_DELTAS = 60;
+
+    // overuse detector, threshold adapts to trend so that concurrent tcp flows aren't starved
+    private static final double INITIAL_THRESHOLD = 12.5;
+    private static final double MIN_THRESHOLD = 6;
+    private static final double MAX_THRESHOLD = 600;
+    private static final double THRESHOLD_UP_GAIN = 0.0087;
+    private static final double THRESHOLD_DOWN_GAIN = 0.039;
+    private static final double MAX_THRESHOLD_OUTLIER = 15;
+    private static final double MIN_OVERUSE_TIME_MS = 10;
+
+    // rate controller
+    private static final double DECREASE_FACTOR = 0.85;
+    private static final double INCREASE_PER_SECOND = 1.08;
+    // target can't exceed that many times incoming bitrate
+    private static final double MAX_INCOMING_HEADROOM = 1.5;
+    private static final long DECREASE_INTERVAL_NS = 200_000_000;
+
+    private final long minBitrate;
+    private final long maxBitrate;
+    private final long initialBitrate;
+
+    private boolean hasPreviousGroup;
+    private int prevSendTimeMs;
+    private long prevArrivalNs;
+    private long firstArrivalNs;
+
+    private double accumulatedDelayMs;
+    private double smoothedDelayMs;
+    private final double[] trendTimesMs;
+    private final double[] trendDelaysMs;
+    private int trendSamples;
+    private int numDeltas;
+
+    private double threshold;
+    private double prevTrend;
+    private double overusingTimeMs;
+    private int overuseCounter;
+    private long lastThresholdUpdateNs;
+    private Usage usage;
+
+    private long windowStartNs;
+    private long windowBytes;
+    private long incomingBitrate;
+
+    private long targetBitrate;
+    private long lastUpdateNs;
+    private long lastDecreaseNs;
+    private long overuseEvents;
+
+    public BandwidthEstimator(long initialBitrate, long minBitrate, long maxBitrate) {
+        if (minBitrate <= 0 || minBitrate > initialBitrate || initialBitrate > maxBitrate)
+            throw new IllegalArgumentException("Invalid bitrate bounds " + minBitrate + " <= " + initialBitrate + " <= " + maxBitrate);
+
+        this.minBitrate = minBitrate;
+        this.maxBitrate = maxBitrate;
+        this.initialBitrate = initialBitrate;
+        this.trendTimesMs = new double[TREND_WINDOW];
+        this.trendDelaysMs = new double[TREND_WINDOW];
+        this.overuseEvents = 0;
+
+        reset();
+    }
+
+    public void reset() {
+        hasPreviousGroup = false;
+        accumulatedDelayMs = smoothedDelayMs = 0;
+        trendSamples = numDeltas = 0;
+        threshold = INITIAL_THRESHOLD;
+        prevTrend = 0;
+        overusingTimeMs = -1;
+        overuseCounter = 0;
+        lastThresholdUpdateNs = -1;
+        usage = Usage.NORMAL;
+
+        windowStartNs = -1;
+        windowBytes = 0;
+        incomingBitrate = 0;
+
+        targetBitrate = initialBitrate;
+        lastUpdateNs = lastDecreaseNs = -1;
+    }
+
+    // starts from bitrate known beforehand, eg. measured by probing the link
+    public void reset(long startBitrate) {
+        reset();
+        targetBitrate = Math.max(minBitrate, Math.min(startBitrate, maxBitrate));
+    }
+
+    // every received packet of the stream, repairs included
+    public void onPacketReceived(int sizeBytes, long arrivalNs) {
+        if (windowStartNs == -1)
+            windowStartNs = arrivalNs;
+
+        windowBytes += sizeBytes;
+        long elapsedNs = arrivalNs - windowStartNs;
+
+        if (elapsedNs >= RATE_WINDOW_NS) {
+            incomingBitrate = windowBytes * 8 * 1_000_000_000L / elapsedNs;
+            windowStartNs = arrivalNs;
+            windowBytes = 0;
+        }
+    }
+
+    // sendTimeMs and arrivalNs should describe the same packet, last one of the group
+    public void onGroupReceived(int sendTimeMs, long arrivalNs) {
+        if (!hasPreviousGroup) {
+            hasPreviousGroup = true;
+            prevSendTimeMs = sendTimeMs;
+            prevArrivalNs = firstArrivalNs = arrivalNs;
+            return;
+        }
+
+        int sendDeltaMs = (sendTimeMs - prevSendTimeMs) & SEND_TIME_MASK;
+
+        // reordered group or one sent within the same millisecond
+        if (sendDeltaMs == 0 || sendDeltaMs > SEND_TIME_MASK / 2)
+            return;
+
+        double arrivalDeltaMs = (arrivalNs - prevArrivalNs) / 1e6;
+        prevSendTimeMs = sendTimeMs;
+        prevArrivalNs = arrivalNs;
+
+        double trend = updateTrend(arrivalDeltaMs - sendDeltaMs, arrivalNs);
+        detectUsage(trend, sendDeltaMs, arrivalNs);
+        updateTarget(arrivalNs);
+    }
+
+    private double updateTrend(double delayDeltaMs, long arrivalNs) {
+        numDeltas = Math.min(numDeltas + 1, MAX_TREND_DELTAS);
+        accumulatedDelayMs += delayDeltaMs;
+        smoothedDelayMs = SMOOTHING * smoothedDelayMs + (1 - SMOOTHING) * accumulatedDelayMs;
+
+        int idx = trendSamples % TREND_WINDOW;
+        trendTimesMs[idx] = (arrivalNs - firstArrivalNs) / 1e6;
+        trendDelaysMs[idx] = smoothedDelayMs;
+        trendSamples++;
+
+        if (trendSamples < TREND_WINDOW)
+            return prevTrend;
+
+        return linearFitSlope();
+    }
+
+    private double linearFitSlope() {
+        double avgTime = 0, avgDelay = 0;
+        for (int i = 0; i < TREND_WINDOW; i++) {
+            avgTime += trendTimesMs[i];
+            avgDelay += trendDelaysMs[i];
+        }
+        avgTime /= TREND_WINDOW;
+        avgDelay /= TREND_WINDOW;
+
+        double numerator = 0, denominator = 0;
+        for (int i = 0; i < TREND_WINDOW; i++) {
+            double timeDiff = trendTimesMs[i] - avgTime;
+            numerator += timeDiff * (trendDelaysMs[i] - avgDelay);
+            denominator += timeDiff * timeDiff;
+        }
+
+        return denominator == 0 ? prevTrend : numerator / denominator;
+    }
+
+    private void detectUsage(double trend, int sendDeltaMs, long nowNs) {
+        double modifiedTrend = numDeltas * trend * TREND_GAIN;
+
+        if (modifiedTrend > threshold) {
+            overusingTimeMs = overusingTimeMs == -1 ? sendDeltaMs / 2.0 : overusingTimeMs + sendDeltaMs;
+            overuseCounter++;
+
+            if (overusingTimeMs > MIN_OVERUSE_TIME_MS && overuseCounter > 1 && trend >= prevTrend) {
+                overusingTimeMs = 0;
+                overuseCounter = 0;
+                usage = Usage.OVERUSE;
+            }
+        }
+        else if (modifiedTrend < -threshold) {
+            overusingTimeMs = -1;
+            overuseCounter = 0;
+            usage = Usage.UNDERUSE;
+        }
+        else {
+            overusingTimeMs = -1;
+            overuseCounter = 0;
+            usage = Usage.NORMAL;
+        }
+
+        prevTrend = trend;
+        updateThreshold(modifiedTrend, nowNs);
+    }
+
+    private void updateThreshold(double modifiedTrend, long nowNs) {
+        if (lastThresholdUpdateNs == -1)
+            lastThresholdUpdateNs = nowNs;
+
+        double absTrend = Math.abs(modifiedTrend);
+
+        // sudden spikes, e.g. from key frames, shouldn't move the threshold
+        if (absTrend > threshold + MAX_THRESHOLD_OUTLIER) {
+            lastThresholdUpdateNs = nowNs;
+            return;
+        }
+
+        double gain = absTrend < threshold ? THRESHOLD_DOWN_GAIN : THRESHOLD_UP_GAIN;
+        double elapsedMs = Math.min((nowNs - lastThresholdUpdateNs) / 1e6, 100);
+
+        threshold += gain * (absTrend - threshold) * elapsedMs;
+        threshold = Math.max(MIN_THRESHOLD, Math.min(threshold, MAX_THRESHOLD));
+        lastThresholdUpdateNs = nowNs;
+    }
+
+    private void updateTarget(long nowNs) {
+        double elapsedSec = lastUpdateNs == -1 ? 0 : (nowNs - lastUpdateNs) / 1e9;
+        lastUpdateNs = nowNs;
+
+        switch (usage) {
+            case OVERUSE:
+                if (incomingBitrate > 0 && (lastDecreaseNs == -1 || nowNs - lastDecreaseNs >= DECREASE_INTERVAL_NS)) {
+                    targetBitrate = (long) (DECREASE_FACTOR * Math.min(incomingBitrate, targetBitrate));
+                    lastDecreaseNs = nowNs;
+                    overuseEvents++;
+                }
+                break;
+            case UNDERUSE:
+                // queues are draining, increasing now would overshoot
+                break;
+            case NORMAL:
+                double increased = targetBitrate * Math.pow(INCREASE_PER_SECOND, Math.min(elapsedSec, 1));
+                if (incomingBitrate > 0)
+                    increased = Math.min(increased, Math.max(targetBitrate, MAX_INCOMING_HEADROOM * incomingBitrate));
+                targetBitrate = (long) increased;
+                break;
+        }
+
+        targetBitrate = Math.max(minBitrate, Math.min(targetBitrate, maxBitrate));
+    }
+
+    public long getTargetBitrate() {
+        return targetBitrate;
+    }
+
+    public long getIncomingBitrate() {
+        return incomingBitrate;
+    }
+
+    public Usage getUsage() {
+        return usage;
+    }
+
+    // smoothed queueing delay built up since the estimation started, relative to its initial level
+    public double getQueueingDelayMs() {
+        return smoothedDelayMs;
+    }
+
+    public long getOveruseEvents() {
+        return overuseEvents;
+    }
+
+    @Override
+    public String toString() {
+        return "target " + targetBitrate / 1000 + " kbps, incoming " + incomingBitrate / 1000 + " kbps, " +
+                usage + ", " + overuseEvents + " overuse events";
+    }
+}
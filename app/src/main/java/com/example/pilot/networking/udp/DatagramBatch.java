@@ -0,0 +1,123 @@
+package com.example.pilot.networking.udp;
+
+import com.example.pilot.security.MessageSecurityPreprocessor;
+import com.example.pilot.security.exceptions.AuthenticationException;
+import com.example.pilot.security.exceptions.SecurityException;
+import com.example.pilot.security.utils.TLSCode;
+import com.example.pilot.security.utils.TLSPacketView;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Preallocated buffers for datagrams drained from non-blocking channel in one go. Decrypted packets are
+ * compacted to the front, so that packets[0, decryptedCount) can be handed to fragment assemblers
+ * in arrival order. Every datagram is stamped when it's received, so that packets drained in one go
+ * keep their own arrival times. Class is not thread safe.
+ */
+public class DatagramBatch {
+    private final ByteBuffer[] datagrams;
+    private final ByteBuffer[] plaintexts;
+    private final TLSPacketView[] tlsPackets;
+    private final MediaPacketView[] mediaPackets;
+    // cleartext headers of received datagrams, bound to their tls packets
+    private final MediaPacketView[] headers;
+    // System.nanoTime at which received datagrams were taken from the channel
+    private final long[] receivedAtNs;
+    // arrival times of decrypted packets, compacted together with them
+    private final long[] arrivalNs;
+
+    private int receivedCount;
+    private int decryptedCount;
+    private int nextToDecrypt;
+
+    public DatagramBatch(int capacity, int maxDatagramSize) {
+        datagrams = new ByteBuffer[capacity];
+        plaintexts = new ByteBuffer[capacity];
+        tlsPackets = new TLSPacketView[capacity];
+        mediaPackets = new MediaPacketView[capacity];
+        headers = new MediaPacketView[capacity];
+        receivedAtNs = new long[capacity];
+        arrivalNs = new long[capacity];
+
+        for (int i = 0; i < capacity; i++) {
+            datagrams[i] = ByteBuffer.allocateDirect(maxDatagramSize);
+            plaintexts[i] = ByteBuffer.allocateDirect(maxDatagramSize);
+            tlsPackets[i] = new TLSPacketView(datagrams[i]);
+            mediaPackets[i] = new MediaPacketView(plaintexts[i]);
+            headers[i] = new MediaPacketView(tlsPackets[i].getCleartext());
+        }
+    }
+
+    // receives datagrams until none is pending or batch is full, returns amount of received datagrams
+    public int drain(DatagramChannel channel) throws IOException {
+        receivedCount = decryptedCount = nextToDecrypt = 0;
+
+        while (receivedCount < datagrams.length) {
+            ByteBuffer datagram = datagrams[receivedCount];
+            datagram.clear();
+
+            if (channel.receive(datagram) == null)
+                break;
+
+            receivedAtNs[receivedCount] = System.nanoTime();
+            datagram.flip();
+            receivedCount++;
+        }
+
+        return receivedCount;
+    }
+
+    public boolean hasNextToDecrypt() {
+        return nextToDecrypt < receivedCount;
+    }
+
+    // parses cleartext header of next received datagram without decrypting it, returns null if datagram has none,
+    // datagram should be either decrypted or skipped next, on failure it's skipped and exception is passed to the caller
+    public MediaPacketView peekNext() {
+        TLSPacketView tlsPacket = tlsPackets[nextToDecrypt];
+
+        try {
+            if (tlsPacket.parse().getCode() != TLSCode.SECURE_MEDIA)
+                return null;
+
+            return headers[nextToDecrypt].parse();
+        } catch (IllegalArgumentException e) {
+            nextToDecrypt++;
+            throw e;
+        }
+    }
+
+    public void skipNext() {
+        nextToDecrypt++;
+    }
+
+    // decrypts next received datagram, on failure datagram is skipped and exception is passed to the caller
+    public void decryptNext(MessageSecurityPreprocessor securityPreprocessor) throws AuthenticationException, SecurityException {
+        long receivedAt = receivedAtNs[nextToDecrypt];
+        TLSPacketView tlsPacket = tlsPackets[nextToDecrypt++];
+        ByteBuffer plaintext = plaintexts[decryptedCount];
+
+        plaintext.clear();
+        securityPreprocessor.preprocessReceived(tlsPacket.parse(), plaintext);
+        plaintext.flip();
+
+        mediaPackets[decryptedCount].parse();
+        arrivalNs[decryptedCount] = receivedAt;
+        decryptedCount++;
+    }
+
+    public MediaPacketView[] getMediaPackets() {
+        return mediaPackets;
+    }
+
+    // arrival times of packets returned by getMediaPackets, index by index
+    public long[] getArrivalNs() {
+        return arrivalNs;
+    }
+
+    public int getDecryptedCount() {
+        return decryptedCount;
+    }
+}
@@ -0,0 +1,324 @@
+package com.example.pilot.networking.udp;
+
+import com.example.pilot.security.MessageSecurityPreprocessor;
+import com.example.pilot.security.utils.TLSCode;
+import com.example.pilot.security.utils.TLSPacketView;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Staged receive pipeline, lets decryption of media packets use more than one core.
+ *
+ * Single I/O thread claims slots of preallocated ring in order and fills them with received datagrams,
+ * worker k decrypts slots k, k + N, k + 2N, ... in place and single merger thread hands decrypted packets
+ * to the sink in the order they were received, so fragment assemblers still see one producer.
+ *
+ * Workers ask the sink whether packet is redundant judging by its cleartext header first, such packets aren't
+ * decrypted at all and merger silently frees their slots.
+ *
+ * Slots are passed between stages by their state only, every stage waits for its next slot by spinning
+ * shortly, then yielding and then parking until the stage which sets the awaited state wakes it up, so idle
+ * pipeline doesn't wake up threads while no media flows. State is tagged with sequence number of the packet,
+ * so worker can't mistake packet from previous lap of the ring, handled by other worker, for its own.
+ *
+ * Each start allocates new ring so that threads of stopped pipeline which didn't notice interruption yet
+ * can't touch slots of the current one.
+ */
+public class DecryptPipeline {
+    public interface PacketSink {
+        // called by merger thread, in receive order, arrivalNs is System.nanoTime at which datagram was received
+        void onPacket(MediaPacketView packet, long arrivalNs) throws InterruptedException;
+
+        // called by merger thread for packets which failed to decrypt or couldn't be handled
+        void onPacketDropped(Exception cause);
+
+        // called by worker threads before packet is decrypted, header isn't authenticated yet
+        boolean isRedundant(MediaPacketView header);
+    }
+
+    private static final int FREE = 0;
+    private static final int FILLED = 1;
+    private static final int DECRYPTED = 2;
+    private static final int FAILED = 3;
+    private static final int STATE_BITS = 2;
+    private static final long STATE_MASK = (1 << STATE_BITS) - 1;
+
+    private static final int SPINS_BEFORE_YIELD = 128;
+    private static final int SPINS_BEFORE_SLEEP = 256;
+
+    // thread of a stage which waits to be woken up, every stage has at most one
+    private static class Sleeper {
+        volatile Thread thread;
+
+        void wakeUp() {
+            Thread sleeping = thread;
+            if (sleeping != null)
+                LockSupport.unpark(sleeping);
+        }
+    }
+
+    private static class Slot {
+        final ByteBuffer packet;
+        final ByteBuffer plaintext;
+        final TLSPacketView tlsPacket;
+        final MediaPacketView mediaPacket;
+        final MediaPacketView header;
+        // null in FAILED state means packet was redundant
+        Exception failure;
+        long arrivalNs;
+
+        Slot(int maxDatagramSize) {
+            packet = ByteBuffer.allocateDirect(maxDatagramSize);
+            plaintext = ByteBuffer.allocateDirect(maxDatagramSize);
+            tlsPacket = new TLSPacketView(packet);
+            mediaPacket = new MediaPacketView(plaintext);
+            header = new MediaPacketView(tlsPacket.getCleartext());
+        }
+    }
+
+    private static class Ring {
+        final Slot[] slots;
+        // (seq << STATE_BITS) | state of packet currently held by each slot
+        final AtomicLongArray states;
+        final int mask;
+
+        final Sleeper[] workerSleepers;
+        final Sleeper mergerSleeper;
+        final Sleeper ioSleeper;
+
+        // owned by I/O thread
+        long writeSeq;
+        // written by merger thread only
+        volatile long mergedPackets;
+        final long startedAtNs;
+
+        Ring(int capacity, int workers, int maxDatagramSize) {
+            slots = new Slot[capacity];
+            for (int i = 0; i < capacity; i++)
+                slots[i] = new Slot(maxDatagramSize);
+
+            states = new AtomicLongArray(capacity);
+            mask = capacity - 1;
+
+            workerSleepers = new Sleeper[workers];
+            for (int i = 0; i < workers; i++)
+                workerSleepers[i] = new Sleeper();
+            mergerSleeper = new Sleeper();
+            ioSleeper = new Sleeper();
+
+            writeSeq = 0;
+            mergedPackets = 0;
+            startedAtNs = System.nanoTime();
+        }
+    }
+
+    private final MessageSecurityPreprocessor securityPreprocessor;
+    private final PacketSink sink;
+    private final int workers;
+    private final int capacity;
+    private final int maxDatagramSize;
+
+    private final ExecutorService executorService;
+    private final List<Future<?>> tasks;
+
+    private volatile Ring ring;
+
+    public DecryptPipeline(MessageSecurityPreprocessor securityPreprocessor, PacketSink sink,
+                           int workers, int capacity, int maxDatagramSize)
+    {
+        if (workers <= 0)
+            throw new IllegalArgumentException("Pipeline needs at least one worker, got " + workers);
+
+        if (capacity < workers || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity has to be a power of two not less than worker count, got " + capacity);
+
+        this.securityPreprocessor = securityPreprocessor;
+        this.sink = sink;
+        this.workers = workers;
+        this.capacity = capacity;
+        this.maxDatagramSize = maxDatagramSize;
+
+        this.executorService = Executors.newFixedThreadPool(workers + 1);
+        this.tasks = new LinkedList<>();
+    }
+
+    public synchronized void start() {
+        Ring current = new Ring(capacity, workers, maxDatagramSize);
+        ring = current;
+
+        for (int worker = 0; worker < workers; worker++) {
+            final int firstSeq = worker;
+            tasks.add(executorService.submit(() -> runWorker(current, firstSeq)));
+        }
+
+        tasks.add(executorService.submit(() -> runMerger(current)));
+    }
+
+    public synchronized void stop() {
+        tasks.forEach(task -> task.cancel(true));
+        tasks.clear();
+    }
+
+    // called by I/O thread only, returns cleared buffer which has to be filled and published before next claim
+    public ByteBuffer claim() throws InterruptedException {
+        Ring current = ring;
+        int idx = (int) (current.writeSeq & current.mask);
+
+        // merger frees slots in order, so whichever packet was there it's done with
+        int spins = 0;
+        for (; (current.states.get(idx) & STATE_MASK) != FREE; spins++)
+            backOff(current.ioSleeper, spins);
+        wokeUp(current.ioSleeper, spins);
+
+        ByteBuffer packet = current.slots[idx].packet;
+        packet.clear();
+
+        return packet;
+    }
+
+    // called by I/O thread only, claimed buffer should be flipped already
+    public void publish(long arrivalNs) {
+        Ring current = ring;
+        int idx = (int) (current.writeSeq & current.mask);
+
+        current.slots[idx].arrivalNs = arrivalNs;
+        current.states.set(idx, tag(current.writeSeq, FILLED));
+        current.workerSleepers[(int) (current.writeSeq % workers)].wakeUp();
+        current.writeSeq++;
+    }
+
+    private void runWorker(Ring current, long firstSeq) {
+        try {
+            for (long seq = firstSeq; ; seq += workers) {
+                int idx = (int) (seq & current.mask);
+                awaitState(current, idx, tag(seq, FILLED), current.workerSleepers[(int) firstSeq]);
+
+                Slot slot = current.slots[idx];
+                try {
+                    slot.tlsPacket.parse();
+
+                    if (slot.tlsPacket.getCode() == TLSCode.SECURE_MEDIA && sink.isRedundant(slot.header.parse())) {
+                        current.states.set(idx, tag(seq, FAILED));
+                        current.mergerSleeper.wakeUp();
+                        continue;
+                    }
+
+                    slot.plaintext.clear();
+                    securityPreprocessor.preprocessReceived(slot.tlsPacket, slot.plaintext);
+                    slot.plaintext.flip();
+
+                    current.states.set(idx, tag(seq, DECRYPTED));
+                } catch (Exception e) {
+                    slot.failure = e;
+                    current.states.set(idx, tag(seq, FAILED));
+                }
+                current.mergerSleeper.wakeUp();
+            }
+        } catch (InterruptedException consumed) {
+            // pipeline stopped
+        }
+    }
+
+    private void runMerger(Ring current) {
+        try {
+            for (long seq = 0; ; seq++) {
+                int idx = (int) (seq & current.mask);
+                int state = awaitProcessed(current, idx, seq);
+
+                Slot slot = current.slots[idx];
+                if (state == DECRYPTED) {
+                    try {
+                        sink.onPacket(slot.mediaPacket.parse(), slot.arrivalNs);
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        sink.onPacketDropped(e);
+                    }
+                }
+                else if (slot.failure != null) {
+                    sink.onPacketDropped(slot.failure);
+                    slot.failure = null;
+                }
+
+                current.mergedPackets = seq + 1;
+                current.states.set(idx, tag(seq, FREE));
+                current.ioSleeper.wakeUp();
+            }
+        } catch (InterruptedException consumed) {
+            // pipeline stopped
+        }
+    }
+
+    private static long tag(long seq, int state) {
+        return (seq << STATE_BITS) | state;
+    }
+
+    private void awaitState(Ring current, int idx, long expected, Sleeper sleeper) throws InterruptedException {
+        int spins = 0;
+        for (; current.states.get(idx) != expected; spins++)
+            backOff(sleeper, spins);
+        wokeUp(sleeper, spins);
+    }
+
+    private int awaitProcessed(Ring current, int idx, long seq) throws InterruptedException {
+        long decrypted = tag(seq, DECRYPTED), failed = tag(seq, FAILED);
+        long state;
+
+        int spins = 0;
+        for (; (state = current.states.get(idx)) != decrypted && state != failed; spins++)
+            backOff(current.mergerSleeper, spins);
+        wokeUp(current.mergerSleeper, spins);
+
+        return (int) (state & STATE_MASK);
+    }
+
+    // stage registers itself as sleeping and checks awaited state once more before it parks,
+    // so that state set in between isn't missed, waker sets the state first and then wakes sleeper up
+    private void backOff(Sleeper sleeper, int spins) throws InterruptedException {
+        if (spins == SPINS_BEFORE_SLEEP)
+            sleeper.thread = Thread.currentThread();
+        else if (spins > SPINS_BEFORE_SLEEP)
+            LockSupport.park(this);
+        else if (spins >= SPINS_BEFORE_YIELD)
+            Thread.yield();
+
+        if (Thread.interrupted())
+            throw new InterruptedException();
+    }
+
+    private static void wokeUp(Sleeper sleeper, int spins) {
+        if (spins >= SPINS_BEFORE_SLEEP)
+            sleeper.thread = null;
+    }
+
+    public long getMergedPackets() {
+        Ring current = ring;
+        return current != null ? current.mergedPackets : 0;
+    }
+
+    // average since last start
+    public double getPacketsPerSecond() {
+        Ring current = ring;
+        if (current == null)
+            return 0;
+
+        long elapsedNs = System.nanoTime() - current.startedAtNs;
+        return elapsedNs > 0 ? current.mergedPackets * 1e9 / elapsedNs : 0;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void shutdown() {
+        stop();
+        executorService.shutdownNow();
+    }
+}
@@ -1,62 +1,317 @@
 package com.example.pilot.networking.udp;
 
+import android.util.Log;
+
 import androidx.annotation.GuardedBy;
 
+import com.example.pilot.networking.observers.FragmentsMissingObserver;
+import com.example.pilot.networking.observers.QosChangedObserver;
+
+import java.util.List;
 import java.util.Optional;
+import java.util.function.DoubleSupplier;
 
 public class FragmentAssembler implements StreamSkippedObserver {
+    private static final String TAG = "Fragment Assembler";
+    // power of two, partial frames lagging more than that behind newest one are evicted
+    private static final int FRAGMENT_TABLE_CAPACITY = 64;
+
     @GuardedBy("this") private FragmentBuffer fragmentBuffer;
     private final boolean requiresFragmentation;
+    @GuardedBy("this") private int fragmentPayloadSize;
+    private final FrameBufferPool framePool;
 
-    public FragmentAssembler(boolean requiresFragmentation) {
-        this.fragmentBuffer = new FragmentBuffer(-1);
+    // shared by assemblers of all streams, holds total size of every partial frame
+    private final PartialFrameBudget budget;
+    private final long maxPartialFrameAgeNs;
+    // bytes of frames in fragment buffer reserved in the budget
+    @GuardedBy("this") private long reservedBytes;
+    @GuardedBy("this") private long nextStaleCheckAtNs;
+    @GuardedBy("this") private long recoveredFragments;
+    // null if missing fragments aren't requested again
+    @GuardedBy("this") private NackTracker nackTracker;
+    // null if stream quality isn't adapted to estimated bandwidth
+    @GuardedBy("this") private QosController qosController;
+
+    public FragmentAssembler(boolean requiresFragmentation, int fragmentPayloadSize, FrameBufferPool framePool,
+                             PartialFrameBudget budget, long maxPartialFrameAgeMs)
+    {
+        this.fragmentBuffer = createFragmentBuffer();
         this.requiresFragmentation = requiresFragmentation;
+        this.fragmentPayloadSize = fragmentPayloadSize;
+        this.framePool = framePool;
+        this.budget = budget;
+        this.maxPartialFrameAgeNs = maxPartialFrameAgeMs * 1_000_000;
+        this.reservedBytes = 0;
+        this.nextStaleCheckAtNs = System.nanoTime();
+        this.recoveredFragments = 0;
     }
 
     // present if mediaFrame is fully assembled
-    public Optional<MediaFrame> handleDatagram(byte[] packet, int length) {
+    public Optional<MediaFrame> handleDatagram(MediaPacketView packet) {
         if (!requiresFragmentation) {
-            MediaFrame mediaFrame = buildMediaFrame(packet, length);
+            MediaFrame mediaFrame = buildMediaFrame(packet);
 
-            if (!mediaFrame.isFullyRecvd())
+            if (!mediaFrame.isFullyRecvd()) {
+                mediaFrame.release();
                 throw new IllegalArgumentException("Expected full media frame, got fragmented with size "
-                        + mediaFrame.getTotalSize() + ", got only " + length);
+                        + mediaFrame.getTotalSize() + ", got only " + packet.getPayloadSize());
+            }
 
             return Optional.of(mediaFrame);
         }
 
-        return handleFragmentedDatagram(packet, length);
+        return handleFragmentedDatagram(packet);
+    }
+
+    // handles packets [from, to) of the same stream under single monitor entry, fully assembled frames are
+    // appended to completed, malformed packets are skipped
+    public void handleDatagrams(MediaPacketView[] packets, int from, int to, List<MediaFrame> completed) {
+        if (!requiresFragmentation) {
+            for (int i = from; i < to; i++) {
+                try {
+                    handleDatagram(packets[i]).ifPresent(completed::add);
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Skipping malformed datagram", e);
+                }
+            }
+            return;
+        }
+
+        synchronized (this) {
+            long nowNs = System.nanoTime();
+            evictStaleIfDue(nowNs);
+
+            for (int i = from; i < to; i++) {
+                try {
+                    MediaFrame mediaFrame = assemble(packets[i], nowNs);
+                    if (mediaFrame != null)
+                        completed.add(mediaFrame);
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Skipping malformed datagram", e);
+                }
+            }
+
+            if (nackTracker != null)
+                nackTracker.requestRepairsIfDue(fragmentBuffer, nowNs);
+        }
     }
 
-    private synchronized Optional<MediaFrame> handleFragmentedDatagram(byte[] packet, int length) {
-        int seqNum = MediaFrame.extractSeqNum(packet);
+    private synchronized Optional<MediaFrame> handleFragmentedDatagram(MediaPacketView packet) {
+        long nowNs = System.nanoTime();
+        evictStaleIfDue(nowNs);
+
+        MediaFrame mediaFrame = assemble(packet, nowNs);
+
+        if (nackTracker != null)
+            nackTracker.requestRepairsIfDue(fragmentBuffer, nowNs);
+
+        return Optional.ofNullable(mediaFrame);
+    }
+
+    // returns null if frame isn't complete yet, caller should hold the lock
+    private MediaFrame assemble(MediaPacketView packet, long nowNs) {
+        int seqNum = packet.getSeqNum();
+
+        if (qosController != null)
+            qosController.onPacketReceived(packet, nowNs);
 
         MediaFrame alreadyPresentFrame = fragmentBuffer.get(seqNum);
         if (alreadyPresentFrame != null) {
-            alreadyPresentFrame.putFragment(packet, length);
+            alreadyPresentFrame.putFragment(packet);
+
+            if (nackTracker != null)
+                nackTracker.onFragmentReceived(seqNum, nowNs);
 
             if (alreadyPresentFrame.isFullyRecvd()) {
                 fragmentBuffer.removeFullyReceived(alreadyPresentFrame);
-                return Optional.of(alreadyPresentFrame);
+                onFrameCompleted(alreadyPresentFrame, packet, nowNs);
+                return alreadyPresentFrame;
             }
         }
         else {
-            MediaFrame newFrame = buildMediaFrame(packet, length);
-            fragmentBuffer.put(newFrame);
+            // mostly parity packets of frames which were completed without them
+            if (fragmentBuffer.isStale(seqNum))
+                return null;
+
+            // total size comes from the header, no buffer is allocated for it until it fits in the budget
+            if (!reserve(seqNum, packet.getTotalSize()))
+                return null;
+
+            MediaFrame newFrame;
+            try {
+                newFrame = buildMediaFrame(packet);
+            } catch (IllegalArgumentException e) {
+                releaseUnbufferedBytes();
+                throw e;
+            }
+
+            int sizeBefore = fragmentBuffer.getSize();
+
+            // stale frame, its sequence was already skipped or received
+            if (!fragmentBuffer.put(newFrame)) {
+                newFrame.release();
+                releaseUnbufferedBytes();
+                return null;
+            }
+
+            // ring buffer makes room for new frame by evicting frame from older generation
+            budget.recordEvictedSuperseded(sizeBefore + 1 - fragmentBuffer.getSize());
+
+            if (nackTracker != null)
+                nackTracker.onFragmentReceived(seqNum, nowNs);
 
             // needed to keep counters valid, probably will never be ready tho
             if (newFrame.isFullyRecvd()) {
                 fragmentBuffer.removeFullyReceived(newFrame);
-                return Optional.of(newFrame);
+                onFrameCompleted(newFrame, packet, nowNs);
+                return newFrame;
             }
         }
 
-        return Optional.empty();
+        return null;
+    }
+
+    // returns false if frame doesn't fit in the budget even after evicting older partial frames of this stream
+    private boolean reserve(int seqNum, int totalSize) {
+        if (totalSize > budget.getCapacityBytes()) {
+            budget.recordRejected();
+            return false;
+        }
+
+        if (!budget.tryReserve(totalSize)) {
+            // newer frame is more useful than older ones which are still missing fragments
+            budget.recordEvictedOverBudget(fragmentBuffer.removeUpTo(seqNum - 1));
+            releaseUnbufferedBytes();
+
+            if (!budget.tryReserve(totalSize)) {
+                budget.recordRejected();
+                return false;
+            }
+        }
+
+        reservedBytes += totalSize;
+        return true;
+    }
+
+    // frames are sent in order, so missing fragments of earlier frames most likely won't come anymore,
+    // unless they were requested again and can still make it in time
+    private void onFrameCompleted(MediaFrame mediaFrame, MediaPacketView lastPacket, long nowNs) {
+        int seqNum = mediaFrame.getSeqNum();
+        recoveredFragments += mediaFrame.getRecoveredFragmentCount();
+
+        if (qosController != null)
+            qosController.onFrameCompleted(mediaFrame, lastPacket, nowNs);
+
+        if (fragmentBuffer.getSize() > 0) {
+            int firstPending = nackTracker != null ? nackTracker.firstPendingRepair(seqNum, nowNs) : seqNum;
+            int sizeBefore = fragmentBuffer.getSize();
+
+            if (firstPending == seqNum)
+                fragmentBuffer.removePreceding(seqNum);
+            else
+                fragmentBuffer.removeUpTo(firstPending - 1);
+
+            budget.recordEvictedSuperseded(sizeBefore - fragmentBuffer.getSize());
+        }
+
+        releaseUnbufferedBytes();
+    }
+
+    // gives back bytes of frames which left fragment buffer, completed or evicted
+    private void releaseUnbufferedBytes() {
+        long bufferedBytes = fragmentBuffer.getBufferedBytes();
+
+        if (reservedBytes > bufferedBytes) {
+            budget.release(reservedBytes - bufferedBytes);
+            reservedBytes = bufferedBytes;
+        }
+    }
+
+    // partial frames are checked every half of max age, so none of them lives longer than 1.5 max age
+    private void evictStaleIfDue(long nowNs) {
+        if (nowNs - nextStaleCheckAtNs < 0)
+            return;
+
+        nextStaleCheckAtNs = nowNs + maxPartialFrameAgeNs / 2;
+
+        if (fragmentBuffer.getSize() > 0) {
+            budget.recordEvictedStale(fragmentBuffer.removeOlderThan(nowNs - maxPartialFrameAgeNs));
+            releaseUnbufferedBytes();
+        }
+    }
+
+    // lets receiver evict stale frames of stream which doesn't receive anything
+    public synchronized void evictStaleFrames() {
+        evictStaleIfDue(System.nanoTime());
     }
 
-    private MediaFrame buildMediaFrame(byte[] packetData, int length) {
-        MediaFrame mediaFrame = MediaFrame.buildFromRaw(packetData);
-        mediaFrame.putFragment(packetData, length);
+    // lets receiver request repairs when nothing else arrives, which is when they are needed most
+    public synchronized void requestRepairs() {
+        if (nackTracker != null)
+            nackTracker.requestRepairsIfDue(fragmentBuffer, System.nanoTime());
+    }
+
+    // true if packet with that header would be ignored, lets receiver drop it without decrypting,
+    // header isn't authenticated yet so it's never used to change the state
+    public synchronized boolean isRedundant(MediaPacketView header) {
+        if (!requiresFragmentation)
+            return false;
+
+        int seqNum = header.getSeqNum();
+        MediaFrame mediaFrame = fragmentBuffer.get(seqNum);
+
+        if (mediaFrame != null)
+            return mediaFrame.isRedundant(header);
+
+        return fragmentBuffer.isStale(seqNum);
+    }
+
+    public synchronized boolean hasPartialFrames() {
+        return fragmentBuffer.getSize() > 0;
+    }
+
+    // shouldn't be used when stream is already running, repairs are requested only while they can arrive
+    // before frame has waited for bufferDepthMs
+    public synchronized void enableRepairRequests(MediaCode code, FragmentsMissingObserver observer,
+                                                  DoubleSupplier bufferDepthMs)
+    {
+        this.nackTracker = new NackTracker(FRAGMENT_TABLE_CAPACITY, code, observer, bufferDepthMs);
+    }
+
+    public synchronized NackTracker getNackTracker() {
+        return nackTracker;
+    }
+
+    // affects frames which start after this call, shouldn't be used when stream is already running
+    public synchronized void setFragmentPayloadSize(int fragmentPayloadSize) {
+        this.fragmentPayloadSize = fragmentPayloadSize;
+    }
+
+    // shouldn't be used when stream is already running, frames are packet groups of bandwidth estimation
+    public synchronized void enableQosControl(QosChangedObserver observer, BandwidthEstimator estimator, int maxFps) {
+        this.qosController = new QosController(observer, estimator, maxFps);
+    }
+
+    // lets qos start from parameters server already uses instead of sending its own right away
+    public synchronized void seedQos(long bitrate, int fps, int quality) {
+        if (qosController != null)
+            qosController.reset(bitrate, fps, quality, System.nanoTime());
+    }
+
+    public synchronized QosController getQosController() {
+        return qosController;
+    }
+
+    private MediaFrame buildMediaFrame(MediaPacketView packet) {
+        MediaFrame mediaFrame = MediaFrame.buildFromView(packet, fragmentPayloadSize, framePool);
+
+        try {
+            mediaFrame.putFragment(packet);
+        } catch (IllegalArgumentException e) {
+            mediaFrame.release();
+            throw e;
+        }
 
         return mediaFrame;
     }
@@ -64,9 +319,27 @@ public class FragmentAssembler implements StreamSkippedObserver {
     @Override
     public synchronized void onSkippedTo(int seqNum) {
         fragmentBuffer.removePreceding(seqNum);
+        releaseUnbufferedBytes();
+    }
+
+    // fragments of completed frames rebuilt from parity packets
+    public synchronized long getRecoveredFragments() {
+        return recoveredFragments;
     }
 
     public synchronized void clearBuffer() {
-        this.fragmentBuffer = new FragmentBuffer(fragmentBuffer.getLastSeq());
+        fragmentBuffer.releaseAll();
+        releaseUnbufferedBytes();
+        this.fragmentBuffer = createFragmentBuffer();
+
+        if (nackTracker != null)
+            nackTracker.reset();
+
+        if (qosController != null)
+            qosController.reset();
+    }
+
+    private FragmentBuffer createFragmentBuffer() {
+        return new RingFragmentBuffer(FRAGMENT_TABLE_CAPACITY);
     }
 }
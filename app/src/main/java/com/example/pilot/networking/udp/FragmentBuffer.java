@@ -1,139 +1,43 @@
 package com.example.pilot.networking.udp;
 
-public class FragmentBuffer {
-
-    private static class Node {
-        public final MediaFrame value;
-        public Node next;
-
-        public Node(MediaFrame value, Node next) {
-            this.value = value;
-            this.next = next;
-        }
-
-        public int getSeqNum() {
-            return value.getSeqNum();
-        }
-    }
-
-    private Node head;
-    private Node tail;
-    private int lastFullyRcvdInOrderSeq;
-    private int size;
-
-    public FragmentBuffer(int lastFullyRcvdInOrderSeq) {
-        this.head = this.tail = null;
-        this.lastFullyRcvdInOrderSeq = -1;
-        this.size = 0;
-    }
-
+/**
+ * Holds partially received media frames indexed by their sequence number.
+ *
+ * Once frame is removed as fully received and no earlier frame is pending, it becomes last fully received
+ * in order frame, fragments of frames with sequence not greater than that are ignored from then on.
+ * Buffer owns stored frames, frames it drops are released. Implementations are not thread safe.
+ */
+public interface FragmentBuffer {
     // not wrapped in optional for performance reasons, will return null if this seqNum is not present
-    public MediaFrame get(int seqNum) {
-        if (head == null || seqNum < head.getSeqNum() || seqNum > tail.getSeqNum())
-            return null;
-
-        // with high probability it will be head so explicit check should be worth
-        if (head.getSeqNum() == seqNum)
-            return head.value;
-
-        Node tmp = head;
-        while (tmp != tail && seqNum >= tmp.next.getSeqNum()) {
-            tmp = tmp.next;
-        }
+    MediaFrame get(int seqNum);
 
-        return tmp.getSeqNum() == seqNum ? tmp.value : null;
-    }
+    // mediaFrame with that seq can't be present, returns false if frame is stale and wasn't inserted
+    boolean put(MediaFrame mediaFrame);
 
-    // mediaFrame with that seq can't be present
-    public void put(MediaFrame mediaFrame) {
-        int seqNum = mediaFrame.getSeqNum();
+    // true if frame with that seq wouldn't be inserted, lets caller drop late fragments without building a frame
+    boolean isStale(int seqNum);
 
-        if (seqNum <= lastFullyRcvdInOrderSeq)
-            return;
+    // mediaFrame has to be present, ownership goes back to the caller
+    void removeFullyReceived(MediaFrame mediaFrame);
 
-        Node node = new Node(mediaFrame, null);
-        this.size++;
-
-        if (head == null) {
-            head = tail = node;
-        }
-        else if (seqNum > tail.getSeqNum()) {
-            tail.next = node;
-            tail = node;
-        }
-        else if (seqNum < head.getSeqNum()) {
-            node.next = head;
-            head = node;
-        }
-        else {
-            Node tmp = head;
-            while (tmp != tail && tmp.next.getSeqNum() < seqNum) {
-                tmp = tmp.next;
-            }
-
-            node.next = tmp.next;
-            tmp.next = node;
-        }
-    }
-
-    public void removeFullyReceived(MediaFrame mediaFrame) {
-        int seqNum = mediaFrame.getSeqNum();
-        this.size--;
-
-        if (seqNum == head.value.getSeqNum()) {
-            lastFullyRcvdInOrderSeq = mediaFrame.getSeqNum();
-            head = head.next;
-            if (head == null)
-                tail = null;
-        }
-        else {
-            Node tmp = head.next;
-            Node prev = head;
-            while(tmp != tail) {
-                if (tmp.value.getSeqNum() == seqNum)
-                    break;
-                prev = tmp;
-                tmp = tmp.next;
-            }
-
-            if (tmp == tail) {
-                prev.next = null;
-                tail = prev;
-            }
-            else {
-                prev.next = tmp.next;
-            }
-        }
-    }
-
-    // remove all media frames with sequence < seqNum,
+    // remove (and release) all media frames with sequence < seqNum,
     // if fragment with sequence < seqNum is received after this call
-    // it will be ignored
-    public void removePreceding(int seqNum) {
-        lastFullyRcvdInOrderSeq = seqNum;
+    // it will be ignored, sequence below which fragments are ignored never moves back
+    void removePreceding(int seqNum);
+
+    // removes (and releases) all media frames with sequence <= seqNum, their fragments will be ignored,
+    // returns amount of removed frames
+    int removeUpTo(int seqNum);
 
-        if (head == null)
-            return;
+    // removes (and releases) frames put before deadlineNs (System.nanoTime) together with all frames preceding
+    // them, so that their late fragments are ignored as well, returns amount of removed frames
+    int removeOlderThan(long deadlineNs);
 
-        if (seqNum > tail.getSeqNum()) {
-            head = tail = null;
-            this.size = 0;
-        }
-        else {
-            while (head != null && head.getSeqNum() < seqNum) {
-                head = head.next;
-                this.size--;
-            }
-        }
-    }
+    // releases all partially received frames, buffer shouldn't be used after this call
+    void releaseAll();
 
-    public int getSize() {
-        return size;
-    }
+    int getSize();
 
-    public int getLastSeq() {
-        if (tail != null)
-            return tail.getSeqNum();
-        return lastFullyRcvdInOrderSeq;
-    }
+    // sum of total sizes of held frames
+    long getBufferedBytes();
 }
@@ -0,0 +1,112 @@
+package com.example.pilot.networking.udp;
+
+import android.util.Log;
+
+import com.example.pilot.networking.observers.SsRcvdObserver;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Grants server credits for video frames. Ack is cumulative, it carries seq of last played frame and how many
+ * frames client can take in on top of it, server doesn't send frames past that until next ack. Acks are batched,
+ * one per batchSize played frames, unless credits of previous ack were so few that server might be waiting
+ * for them, then every played frame is acked. Ack is also sent when there was none for maxAckDelayMs, so
+ * credits reach the server before anything is played and when player is stalled.
+ *
+ * Class is thread safe.
+ */
+public class FrameAckBatcher {
+    private static final String TAG = "Frame Ack Batcher";
+
+    private final SsRcvdObserver observer;
+    private final IntSupplier credits;
+    private final int batchSize;
+    private final long maxAckDelayNs;
+
+    private final ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> ackTimer;
+
+    private int lastPlayedSeq;
+    private int playedSinceAck;
+    private int lastAckedCredits;
+    private long lastAckAtNs;
+
+    private long sentAcks;
+
+    public FrameAckBatcher(SsRcvdObserver observer, IntSupplier credits, int batchSize, long maxAckDelayMs) {
+        if (batchSize <= 0 || maxAckDelayMs <= 0)
+            throw new IllegalArgumentException("Invalid batch size " + batchSize + " or ack delay " + maxAckDelayMs);
+
+        this.observer = observer;
+        this.credits = credits;
+        this.batchSize = batchSize;
+        this.maxAckDelayNs = TimeUnit.MILLISECONDS.toNanos(maxAckDelayMs);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.sentAcks = 0;
+
+        reset(System.nanoTime());
+    }
+
+    public synchronized void start() {
+        reset(System.nanoTime());
+
+        if (ackTimer == null) {
+            long periodNs = maxAckDelayNs / 2;
+            ackTimer = scheduler.scheduleAtFixedRate(() -> ackIfDue(System.nanoTime()),
+                    periodNs, periodNs, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (ackTimer != null) {
+            ackTimer.cancel(false);
+            ackTimer = null;
+        }
+
+        Log.i(TAG, "Sent " + sentAcks + " acks, last played frame " + lastPlayedSeq);
+    }
+
+    // frames played out of order are counted, but they don't move the ack back
+    public synchronized void onFramePlayed(int seqNum, long nowNs) {
+        if (seqNum > lastPlayedSeq)
+            lastPlayedSeq = seqNum;
+
+        if (++playedSinceAck >= batchSize || lastAckedCredits < batchSize)
+            sendAck(nowNs);
+    }
+
+    public synchronized void ackIfDue(long nowNs) {
+        if (nowNs - lastAckAtNs >= maxAckDelayNs)
+            sendAck(nowNs);
+    }
+
+    private void sendAck(long nowNs) {
+        lastAckedCredits = Math.max(0, credits.getAsInt());
+        lastAckAtNs = nowNs;
+        playedSinceAck = 0;
+        sentAcks++;
+
+        observer.onScreenShotsRcvd(lastPlayedSeq, lastAckedCredits);
+    }
+
+    private void reset(long nowNs) {
+        lastPlayedSeq = -1;
+        playedSinceAck = 0;
+        // first ack is sent right away
+        lastAckedCredits = 0;
+        lastAckAtNs = nowNs - maxAckDelayNs;
+    }
+
+    public synchronized long getSentAcks() {
+        return sentAcks;
+    }
+
+    public synchronized int getLastPlayedSeq() {
+        return lastPlayedSeq;
+    }
+}
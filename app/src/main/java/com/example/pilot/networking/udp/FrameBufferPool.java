@@ -0,0 +1,150 @@
+package com.example.pilot.networking.udp;
+
+import androidx.annotation.GuardedBy;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pool of media frame buffers grouped in power-of-two size classes, buffer of class k has length 2^k
+ * so it can be reused by any frame of size in (2^(k-1), 2^k]. Frames above largest class are allocated
+ * and dropped as usual.
+ *
+ * Idle buffers are kept up to capacityBytes, when pool is full buffers of least recently used
+ * size class are evicted first.
+ *
+ * Buffers are acquired by receiver thread and released by players, class is thread safe.
+ */
+public class FrameBufferPool {
+    private static final int MIN_CLASS_SHIFT = 10;  // 1 KB
+    private static final int MAX_CLASS_SHIFT = 22;  // 4 MB
+
+    private final long capacityBytes;
+
+    @GuardedBy("this") private final ArrayDeque<byte[]>[] freeBuffers;
+    @GuardedBy("this") private final long[] lastUsedAt;
+    @GuardedBy("this") private long clock;
+    @GuardedBy("this") private long pooledBytes;
+
+    @GuardedBy("this") private long hits;
+    @GuardedBy("this") private long misses;
+    @GuardedBy("this") private long evictions;
+
+    @SuppressWarnings("unchecked")
+    public FrameBufferPool(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+
+        int classes = MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+        this.freeBuffers = (ArrayDeque<byte[]>[]) new ArrayDeque<?>[classes];
+        this.lastUsedAt = new long[classes];
+
+        for (int i = 0; i < classes; i++)
+            freeBuffers[i] = new ArrayDeque<>();
+
+        this.clock = this.pooledBytes = 0;
+        this.hits = this.misses = this.evictions = 0;
+    }
+
+    // returned buffer has at least size bytes, probably more
+    public synchronized byte[] acquire(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("Invalid buffer size " + size);
+
+        int sizeClass = getSizeClass(size);
+
+        if (sizeClass == -1) {
+            misses++;
+            return new byte[size];
+        }
+
+        lastUsedAt[sizeClass] = ++clock;
+        byte[] buffer = freeBuffers[sizeClass].pollLast();
+
+        if (buffer == null) {
+            misses++;
+            return new byte[1 << (sizeClass + MIN_CLASS_SHIFT)];
+        }
+
+        hits++;
+        pooledBytes -= buffer.length;
+
+        return buffer;
+    }
+
+    // buffer mustn't be used by caller after this call
+    public synchronized void release(byte[] buffer) {
+        int sizeClass = getSizeClass(buffer.length);
+
+        // not acquired from this pool or from above the largest class
+        if (sizeClass == -1 || buffer.length != 1 << (sizeClass + MIN_CLASS_SHIFT))
+            return;
+
+        while (pooledBytes + buffer.length > capacityBytes) {
+            if (!evictLeastRecentlyUsed()) {
+                evictions++;
+                return;
+            }
+        }
+
+        freeBuffers[sizeClass].addLast(buffer);
+        pooledBytes += buffer.length;
+    }
+
+    public synchronized void clear() {
+        for (ArrayDeque<byte[]> buffers : freeBuffers)
+            buffers.clear();
+
+        pooledBytes = 0;
+    }
+
+    private boolean evictLeastRecentlyUsed() {
+        int victim = -1;
+
+        for (int i = 0; i < freeBuffers.length; i++) {
+            if (!freeBuffers[i].isEmpty() && (victim == -1 || lastUsedAt[i] < lastUsedAt[victim]))
+                victim = i;
+        }
+
+        if (victim == -1)
+            return false;
+
+        pooledBytes -= freeBuffers[victim].pollFirst().length;
+        evictions++;
+
+        return true;
+    }
+
+    private int getSizeClass(int size) {
+        int shift = size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+
+        if (shift > MAX_CLASS_SHIFT)
+            return -1;
+
+        return Math.max(shift, MIN_CLASS_SHIFT) - MIN_CLASS_SHIFT;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "hits: " + hits + ", misses: " + misses + ", evictions: " + evictions +
+                ", pooled: " + pooledBytes + "/" + capacityBytes + " B";
+    }
+}
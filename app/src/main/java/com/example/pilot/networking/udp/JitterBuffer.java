@@ -0,0 +1,44 @@
+package com.example.pilot.networking.udp;
+
+import java.util.List;
+
+/**
+ * Reorders media frames of single stream between receiver thread (producer) and consumer thread of
+ * stream handler. Buffer prefetches until enough consecutive frames are present (or prefetch times out),
+ * then hands frames to consumer in order, skipping gaps of missing frames. If frame doesn't fit in buffer,
+ * oldest frames are dropped or, if buffer holds only a few of them, it starts prefetching from that frame.
+ *
+ * Buffer owns inserted frames, frames which are dropped are released, frames returned by take are owned by caller.
+ * Implementations allow exactly one producer and one consumer thread.
+ */
+public interface JitterBuffer {
+    interface Listener {
+        // called by producer
+        void onPlaybackStarted();
+
+        // called by producer, before buffer makes room for the frame
+        void onOverrun();
+
+        // called by consumer, seqNum is sequence of first frame after skipped gap
+        void onSkippedTo(int seqNum);
+    }
+
+    void put(MediaFrame mediaFrame) throws InterruptedException;
+
+    // frames should be in arrival order
+    void putAll(List<MediaFrame> mediaFrames) throws InterruptedException;
+
+    // blocks while buffer is prefetching, returns null on underrun, after which buffer prefetches again
+    MediaFrame take() throws InterruptedException;
+
+    // drops buffered frames and starts prefetching, next inserted frame starts new sequence
+    void reset();
+
+    // called by producer, prefetch size applies from next prefetch, capacity might as well,
+    // if new prefetch size is smaller frames buffered above it are dropped right away to cut latency
+    void resize(int prefetchFrameAmount, int capacity, long prefetchTimeoutMs);
+
+    // can be called by any thread, how many frames past the last taken one fit in the buffer,
+    // frames which are buffered already are counted in
+    int getCapacity();
+}
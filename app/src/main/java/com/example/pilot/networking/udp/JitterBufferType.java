@@ -0,0 +1,8 @@
+package com.example.pilot.networking.udp;
+
+public enum JitterBufferType {
+    // MediaFramesBuffer guarded by lock, consumer waits on condition
+    LOCKED,
+    // lock-free single producer single consumer ring, consumer is parked while buffer prefetches
+    SPSC
+}
@@ -0,0 +1,139 @@
+package com.example.pilot.networking.udp;
+
+import java.util.Arrays;
+
+/**
+ * Online estimator of inter-arrival jitter of single media stream, RFC 3550 style. Frames don't carry sender
+ * timestamps, so frame k is expected at (k * expected spacing) on receiver clock, where expected spacing is mean
+ * inter-arrival time per sequence step over sliding window of last frames. Transit difference D between
+ * consecutive arrivals feeds smoothed jitter J += (|D| - J) / 16.
+ *
+ * Lateness of a frame in the window is its transit (arrival - expected time) minus the smallest transit in the
+ * window, which is how long buffer has to hold frames so that this one arrives before it's needed. Delay target
+ * is given percentile of lateness, so burst of late frames raises it only as long as it stays in the window and
+ * target shrinks again once network calms down.
+ *
+ * Frames should be reported by single thread, jitter can be read by any thread.
+ */
+public class JitterEstimator {
+    // gain used by RFC 3550
+    private static final double SMOOTHING = 1.0 / 16;
+    // longer pause means stream was stopped, there is nothing to compare next frame with
+    private static final long MAX_ARRIVAL_GAP_NS = 1_000_000_000L;
+
+    private final float lateFramePercentile;
+    private final double initialSpacingMs;
+    private final int[] seqNums;
+    private final long[] arrivals;
+    private final double[] sortBuffer;
+    private int sampleCount;
+    private int samplePos;
+
+    private double expectedSpacingMs;
+    private volatile double jitterMs;
+    private long lastArrivalNs;
+    private int lastSeqNum;
+
+    public JitterEstimator(int windowSize, float lateFramePercentile, double initialSpacingMs) {
+        if (lateFramePercentile <= 0 || lateFramePercentile > 1)
+            throw new IllegalArgumentException("Percentile has to be in (0, 1], got " + lateFramePercentile);
+
+        this.lateFramePercentile = lateFramePercentile;
+        this.initialSpacingMs = initialSpacingMs;
+        this.seqNums = new int[windowSize];
+        this.arrivals = new long[windowSize];
+        this.sortBuffer = new double[windowSize];
+
+        reset();
+    }
+
+    public void reset() {
+        expectedSpacingMs = initialSpacingMs;
+        jitterMs = 0;
+        restartWindow();
+    }
+
+    private void restartWindow() {
+        sampleCount = samplePos = 0;
+        lastArrivalNs = -1;
+    }
+
+    public void onFrameArrived(int seqNum, long arrivalNs) {
+        if (lastArrivalNs != -1 && arrivalNs - lastArrivalNs > MAX_ARRIVAL_GAP_NS)
+            restartWindow();
+
+        if (lastArrivalNs == -1) {
+            lastArrivalNs = arrivalNs;
+            lastSeqNum = seqNum;
+            return;
+        }
+
+        int seqDelta = seqNum - lastSeqNum;
+        // duplicates say nothing about timing
+        if (seqDelta == 0)
+            return;
+
+        // sequence jumped back further than any reordering, server restarted numbering
+        if (seqDelta <= -seqNums.length) {
+            restartWindow();
+            lastArrivalNs = arrivalNs;
+            lastSeqNum = seqNum;
+            return;
+        }
+
+        double transitDiffMs = (arrivalNs - lastArrivalNs) / 1e6 - seqDelta * expectedSpacingMs;
+
+        jitterMs += (Math.abs(transitDiffMs) - jitterMs) * SMOOTHING;
+
+        seqNums[samplePos] = seqNum;
+        arrivals[samplePos] = arrivalNs;
+        samplePos = (samplePos + 1) % seqNums.length;
+        sampleCount = Math.min(sampleCount + 1, seqNums.length);
+
+        updateExpectedSpacing(seqNum, arrivalNs);
+
+        lastArrivalNs = arrivalNs;
+        lastSeqNum = seqNum;
+    }
+
+    private void updateExpectedSpacing(int seqNum, long arrivalNs) {
+        // oldest sample still in the window
+        int oldest = sampleCount < seqNums.length ? 0 : samplePos;
+        int seqSpan = seqNum - seqNums[oldest];
+        long timeSpanNs = arrivalNs - arrivals[oldest];
+
+        if (seqSpan > 0 && timeSpanNs > 0)
+            expectedSpacingMs = timeSpanNs / 1e6 / seqSpan;
+    }
+
+    // smoothed jitter as defined by RFC 3550
+    public double getJitterMs() {
+        return jitterMs;
+    }
+
+    public double getExpectedSpacingMs() {
+        return expectedSpacingMs;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    // how long frames have to be buffered so that no more than (1 - percentile) of them would arrive too late
+    public double getDelayTargetMs() {
+        if (sampleCount == 0)
+            return 0;
+
+        // transits relative to first sample, so that they stay small
+        int base = sampleCount < seqNums.length ? 0 : samplePos;
+
+        for (int i = 0; i < sampleCount; i++)
+            sortBuffer[i] = (arrivals[i] - arrivals[base]) / 1e6 - (seqNums[i] - seqNums[base]) * expectedSpacingMs;
+
+        Arrays.sort(sortBuffer, 0, sampleCount);
+
+        int idx = (int) Math.ceil(lateFramePercentile * sampleCount) - 1;
+
+        return sortBuffer[Math.max(idx, 0)] - sortBuffer[0];
+    }
+}
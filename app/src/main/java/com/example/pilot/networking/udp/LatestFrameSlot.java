@@ -0,0 +1,99 @@
+package com.example.pilot.networking.udp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single slot holding newest fully assembled frame. Publisher replaces frame which consumer didn't take yet,
+ * so consumer always gets the newest one and older frames are dropped instead of being buffered. Frames older
+ * than the last published one are dropped as well, unless they are so far behind that server must have restarted
+ * numbering, then they start new sequence. Sequence numbers are compared with wraparound.
+ *
+ * Slot owns published frame until it's taken, taken frame is owned by consumer.
+ * There should be single publisher and single consumer thread.
+ */
+public class LatestFrameSlot {
+    // late frames are never reordered further than that, frame that far behind starts new sequence
+    private static final int RESTART_DISTANCE = 256;
+
+    private final AtomicReference<MediaFrame> slot;
+    private final AtomicLong droppedFrames;
+
+    private volatile Thread consumer;
+    private volatile int lastPublishedSeq;
+    // false until first frame of a sequence is published
+    private volatile boolean sequenceStarted;
+
+    public LatestFrameSlot() {
+        this.slot = new AtomicReference<>();
+        this.droppedFrames = new AtomicLong(0);
+        this.sequenceStarted = false;
+    }
+
+    public void publish(MediaFrame mediaFrame) {
+        int seqNum = mediaFrame.getSeqNum();
+
+        if (sequenceStarted && isStale(seqNum)) {
+            drop(mediaFrame);
+            return;
+        }
+
+        lastPublishedSeq = seqNum;
+        sequenceStarted = true;
+
+        MediaFrame replaced = slot.getAndSet(mediaFrame);
+        if (replaced != null)
+            drop(replaced);
+
+        Thread waiting = consumer;
+        if (waiting != null)
+            LockSupport.unpark(waiting);
+    }
+
+    // blocks until there is a frame
+    public MediaFrame take() throws InterruptedException {
+        consumer = Thread.currentThread();
+        MediaFrame mediaFrame;
+
+        while ((mediaFrame = slot.getAndSet(null)) == null) {
+            LockSupport.park(this);
+
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+
+        return mediaFrame;
+    }
+
+    // not wrapped in optional for performance reasons, returns null if there is no frame
+    public MediaFrame poll() {
+        return slot.getAndSet(null);
+    }
+
+    // releases frame which wasn't taken, next published frame can start new sequence
+    public void clear() {
+        MediaFrame mediaFrame = slot.getAndSet(null);
+        if (mediaFrame != null)
+            mediaFrame.release();
+
+        sequenceStarted = false;
+    }
+
+    // difference wraps around together with sequence numbers
+    private boolean isStale(int seqNum) {
+        int behind = lastPublishedSeq - seqNum;
+
+        return behind >= 0 && behind < RESTART_DISTANCE;
+    }
+
+    // frames which were published but never taken
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    private void drop(MediaFrame mediaFrame) {
+        mediaFrame.release();
+        droppedFrames.incrementAndGet();
+    }
+}
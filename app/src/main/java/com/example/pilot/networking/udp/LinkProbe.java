@@ -0,0 +1,68 @@
+package com.example.pilot.networking.udp;
+
+import androidx.annotation.GuardedBy;
+
+/**
+ * Collects probe packets which server sends before streaming to characterize the link, server asks for
+ * the results with pings over tcp. Payload size of the largest probe tells which fragment size gets through,
+ * arrival span of probe train tells how fast back to back packets are delivered.
+ *
+ * Probes are recorded by receiver thread and read by tcp listener thread, class is thread safe.
+ */
+public class LinkProbe {
+    @GuardedBy("this") private int maxPayloadSize;
+    @GuardedBy("this") private int train;
+    @GuardedBy("this") private int trainPackets;
+    @GuardedBy("this") private long trainFirstArrivalNs;
+    @GuardedBy("this") private long trainLastArrivalNs;
+
+    public LinkProbe() {
+        reset();
+    }
+
+    public synchronized void reset() {
+        maxPayloadSize = 0;
+        train = 0;
+        trainPackets = 0;
+    }
+
+    // probe packet carries id of its train in place of sequence number, only the latest train is tracked
+    public synchronized void onProbeReceived(MediaPacketView packet, long arrivalNs) {
+        maxPayloadSize = Math.max(maxPayloadSize, packet.getPayloadSize());
+
+        int packetTrain = packet.getSeqNum();
+        if (packetTrain < train)
+            return;
+
+        if (packetTrain > train) {
+            train = packetTrain;
+            trainPackets = 0;
+            trainFirstArrivalNs = arrivalNs;
+        }
+
+        trainPackets++;
+        trainLastArrivalNs = arrivalNs;
+    }
+
+    public synchronized int getMaxPayloadSize() {
+        return maxPayloadSize;
+    }
+
+    public synchronized int getTrain() {
+        return train;
+    }
+
+    public synchronized int getTrainPackets() {
+        return trainPackets;
+    }
+
+    public synchronized long getTrainSpanUs() {
+        return trainPackets > 0 ? (trainLastArrivalNs - trainFirstArrivalNs) / 1000 : 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "max payload " + maxPayloadSize + " B, train " + train + ": " + trainPackets + " packets in " +
+                getTrainSpanUs() + " us";
+    }
+}
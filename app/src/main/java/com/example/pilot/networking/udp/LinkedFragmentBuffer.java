@@ -0,0 +1,185 @@
+package com.example.pilot.networking.udp;
+
+/**
+ * Fragment buffer backed by list sorted by sequence number, lookups are linear in amount of partial frames.
+ */
+public class LinkedFragmentBuffer implements FragmentBuffer {
+
+    private static class Node {
+        public final MediaFrame value;
+        public final long putAtNs;
+        public Node next;
+
+        public Node(MediaFrame value, Node next) {
+            this.value = value;
+            this.putAtNs = System.nanoTime();
+            this.next = next;
+        }
+
+        public int getSeqNum() {
+            return value.getSeqNum();
+        }
+    }
+
+    private Node head;
+    private Node tail;
+    private int lastFullyRcvdInOrderSeq;
+    private int size;
+    private long bufferedBytes;
+
+    public LinkedFragmentBuffer() {
+        this.head = this.tail = null;
+        this.lastFullyRcvdInOrderSeq = -1;
+        this.size = 0;
+        this.bufferedBytes = 0;
+    }
+
+    @Override
+    public MediaFrame get(int seqNum) {
+        if (head == null || seqNum < head.getSeqNum() || seqNum > tail.getSeqNum())
+            return null;
+
+        // with high probability it will be head so explicit check should be worth
+        if (head.getSeqNum() == seqNum)
+            return head.value;
+
+        Node tmp = head;
+        while (tmp != tail && seqNum >= tmp.next.getSeqNum()) {
+            tmp = tmp.next;
+        }
+
+        return tmp.getSeqNum() == seqNum ? tmp.value : null;
+    }
+
+    @Override
+    public boolean put(MediaFrame mediaFrame) {
+        int seqNum = mediaFrame.getSeqNum();
+
+        if (seqNum <= lastFullyRcvdInOrderSeq)
+            return false;
+
+        Node node = new Node(mediaFrame, null);
+        this.size++;
+        this.bufferedBytes += mediaFrame.getTotalSize();
+
+        if (head == null) {
+            head = tail = node;
+        }
+        else if (seqNum > tail.getSeqNum()) {
+            tail.next = node;
+            tail = node;
+        }
+        else if (seqNum < head.getSeqNum()) {
+            node.next = head;
+            head = node;
+        }
+        else {
+            Node tmp = head;
+            while (tmp != tail && tmp.next.getSeqNum() < seqNum) {
+                tmp = tmp.next;
+            }
+
+            node.next = tmp.next;
+            tmp.next = node;
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean isStale(int seqNum) {
+        return seqNum <= lastFullyRcvdInOrderSeq;
+    }
+
+    @Override
+    public void removeFullyReceived(MediaFrame mediaFrame) {
+        int seqNum = mediaFrame.getSeqNum();
+        this.size--;
+        this.bufferedBytes -= mediaFrame.getTotalSize();
+
+        if (seqNum == head.value.getSeqNum()) {
+            lastFullyRcvdInOrderSeq = mediaFrame.getSeqNum();
+            head = head.next;
+            if (head == null)
+                tail = null;
+        }
+        else {
+            Node tmp = head.next;
+            Node prev = head;
+            while(tmp != tail) {
+                if (tmp.value.getSeqNum() == seqNum)
+                    break;
+                prev = tmp;
+                tmp = tmp.next;
+            }
+
+            if (tmp == tail) {
+                prev.next = null;
+                tail = prev;
+            }
+            else {
+                prev.next = tmp.next;
+            }
+        }
+    }
+
+    @Override
+    public void removePreceding(int seqNum) {
+        lastFullyRcvdInOrderSeq = Math.max(lastFullyRcvdInOrderSeq, seqNum);
+        removeBelow(seqNum);
+    }
+
+    @Override
+    public int removeUpTo(int seqNum) {
+        int sizeBefore = size;
+
+        lastFullyRcvdInOrderSeq = Math.max(lastFullyRcvdInOrderSeq, seqNum);
+        removeBelow(seqNum + 1);
+
+        return sizeBefore - size;
+    }
+
+    private void removeBelow(int seqNum) {
+        while (head != null && head.getSeqNum() < seqNum) {
+            this.bufferedBytes -= head.value.getTotalSize();
+            head.value.release();
+            head = head.next;
+            this.size--;
+        }
+
+        if (head == null)
+            tail = null;
+    }
+
+    @Override
+    public int removeOlderThan(long deadlineNs) {
+        Node newestStale = null;
+
+        for (Node tmp = head; tmp != null; tmp = tmp.next) {
+            if (tmp.putAtNs - deadlineNs < 0)
+                newestStale = tmp;
+        }
+
+        return newestStale != null ? removeUpTo(newestStale.getSeqNum()) : 0;
+    }
+
+    @Override
+    public void releaseAll() {
+        for (Node tmp = head; tmp != null; tmp = tmp.next)
+            tmp.value.release();
+
+        head = tail = null;
+        this.size = 0;
+        this.bufferedBytes = 0;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public long getBufferedBytes() {
+        return bufferedBytes;
+    }
+}
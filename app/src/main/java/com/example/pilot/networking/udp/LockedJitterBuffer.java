@@ -0,0 +1,186 @@
+package com.example.pilot.networking.udp;
+
+import androidx.annotation.GuardedBy;
+
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Jitter buffer backed by MediaFramesBuffer, every operation of producer and consumer is done under single lock.
+ */
+public class LockedJitterBuffer implements JitterBuffer {
+    private final Listener listener;
+
+    @GuardedBy("consumerLock") private int prefetchFrameAmount;
+    @GuardedBy("consumerLock") private long prefetchTimeoutMs;
+    // capacity of buffer created at next restart point
+    @GuardedBy("consumerLock") private int capacity;
+    @GuardedBy("consumerLock") private int bufferCapacity;
+
+    @GuardedBy("consumerLock") private boolean prefetchMode;
+    @GuardedBy("consumerLock") private MediaFramesBuffer buffer;
+    @GuardedBy("consumerLock") private long recvStartedAt;
+
+    private final ReentrantLock consumerLock;
+    private final Condition consumerCond;
+
+    public LockedJitterBuffer(int prefetchFrameAmount, int capacity, long prefetchTimeoutMs, Listener listener) {
+        this.prefetchFrameAmount = prefetchFrameAmount;
+        this.capacity = capacity;
+        this.prefetchTimeoutMs = prefetchTimeoutMs;
+        this.listener = listener;
+
+        this.consumerLock = new ReentrantLock();
+        this.consumerCond = this.consumerLock.newCondition();
+
+        reset();
+    }
+
+    @Override
+    public void reset() {
+        try {
+            consumerLock.lock();
+            prefetchMode = true;
+            restartBuffer();
+            recvStartedAt = System.currentTimeMillis();
+            consumerCond.signalAll();
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    // capacity applies when buffer is restarted or runs empty
+    @Override
+    public void resize(int prefetchFrameAmount, int capacity, long prefetchTimeoutMs) {
+        try {
+            consumerLock.lock();
+            boolean shrinking = prefetchFrameAmount < this.prefetchFrameAmount;
+
+            this.prefetchFrameAmount = prefetchFrameAmount;
+            this.capacity = capacity;
+            this.prefetchTimeoutMs = prefetchTimeoutMs;
+
+            int excess = buffer.getConsecutiveFilledSize() - prefetchFrameAmount;
+            if (shrinking && !prefetchMode && excess > 0)
+                buffer.shiftBuff(excess);
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    @Override
+    public void put(MediaFrame mediaFrame) throws InterruptedException {
+        try {
+            consumerLock.lockInterruptibly();
+
+            putFrame(mediaFrame);
+            finishPrefetchIfReady();
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(List<MediaFrame> mediaFrames) throws InterruptedException {
+        try {
+            consumerLock.lockInterruptibly();
+
+            for (MediaFrame mediaFrame : mediaFrames)
+                putFrame(mediaFrame);
+
+            finishPrefetchIfReady();
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    @Override
+    public MediaFrame take() throws InterruptedException {
+        try {
+            consumerLock.lockInterruptibly();
+            while (prefetchMode)
+                consumerCond.await();
+
+            return fetchNextMediaFrame();
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+        try {
+            consumerLock.lock();
+            return bufferCapacity;
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    // caller should hold buffer lock
+    private void restartBuffer() {
+        if (buffer != null)
+            buffer.releaseAll();
+        buffer = new MediaFramesBuffer(capacity);
+        bufferCapacity = capacity;
+    }
+
+    // caller should hold buffer lock
+    private void putFrame(MediaFrame mediaFrame) {
+        while (true) {
+            try {
+                buffer.put(mediaFrame);
+                break;
+            } catch (OverrunException overrunException) {
+                listener.onOverrun();
+                handleOverrun();
+            }
+        }
+    }
+
+    // caller should hold buffer lock
+    private void finishPrefetchIfReady() {
+        if (prefetchMode && shouldFinishPrefetch()) {
+            listener.onPlaybackStarted();
+
+            prefetchMode = false;
+            consumerCond.signalAll();
+        }
+    }
+
+    // caller should hold buffer lock
+    private boolean shouldFinishPrefetch() {
+        return buffer.getConsecutiveFilledSize() >= prefetchFrameAmount ||
+                System.currentTimeMillis() - recvStartedAt > prefetchTimeoutMs;
+    }
+
+    // caller should hold buffer lock
+    private void handleOverrun() {
+        if (buffer.getFilledSize() < prefetchFrameAmount) {
+            reset();
+        }
+        else {
+            buffer.shiftBuff(prefetchFrameAmount - 1);
+        }
+    }
+
+    // caller should hold buffer lock, returns null on underrun
+    private MediaFrame fetchNextMediaFrame() {
+        if (buffer.getFilledSize() == 0) {
+            prefetchMode = true;
+            recvStartedAt = System.currentTimeMillis();
+            if (bufferCapacity != capacity)
+                restartBuffer();
+            else
+                buffer.resetSequence();
+            return null;
+        }
+        else if (buffer.getConsecutiveFilledSize() == 0) {
+            buffer.skipMissingGap();
+            listener.onSkippedTo(buffer.peek().getSeqNum());
+        }
+
+        return buffer.get();
+    }
+}
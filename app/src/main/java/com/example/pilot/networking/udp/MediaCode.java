@@ -2,14 +2,35 @@ package com.example.pilot.networking.udp;
 
 public enum MediaCode {
     AUDIO_FRAME,
-    VIDEO_FRAME;
+    VIDEO_FRAME,
+    VIDEO_PARITY,
+    // sent only while link is probed, before streaming
+    PROBE,
+    // sent to the new address of the lane to confirm path migration
+    PATH_MIGRATED;
 
     public static MediaCode fromInteger(int x) {
         switch (x) {
             case 1: return AUDIO_FRAME;
             case 2: return VIDEO_FRAME;
+            case 3: return VIDEO_PARITY;
+            case 4: return PROBE;
+            case 5: return PATH_MIGRATED;
             default:
                 throw new IllegalArgumentException("code [" + x + "] is not supported");
         }
     }
+
+    public int toInteger() {
+        return ordinal() + 1;
+    }
+
+    // parity packets are assembled together with frames they protect
+    public MediaCode getFrameCode() {
+        return this == VIDEO_PARITY ? VIDEO_FRAME : this;
+    }
+
+    public boolean isParity() {
+        return this == VIDEO_PARITY;
+    }
 }
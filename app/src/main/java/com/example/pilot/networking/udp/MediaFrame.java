@@ -1,13 +1,11 @@
 package com.example.pilot.networking.udp;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class MediaFrame {
-    private static final int HEADER_SIZE = 16;
+    // max payload of single fragment sent by the server
+    public static final int DEFAULT_FRAGMENT_PAYLOAD_SIZE = 1440;
 
     private final MediaCode code;
     private final byte[] buff;
@@ -15,51 +13,298 @@ public class MediaFrame {
     private final int totalSize;
     private int recvdSize;
 
-    // list instead of set, should be short
-    // used to prevent errors caused by udp duplicate delivery
-    private final List<Integer> rcvdOffsets;
+    // null if buffer isn't pooled, otherwise buffer goes back to pool once last reference is released
+    private final FrameBufferPool pool;
+    private final AtomicInteger refCount;
+
+    // every fragment except the last one carries exactly fragmentPayloadSize bytes,
+    // bit i is set once fragment at offset i * fragmentPayloadSize is received,
+    // used to prevent errors caused by udp duplicate delivery and to find missing fragments
+    private final int fragmentPayloadSize;
+    private final int fragmentCount;
+    private final long[] rcvdFragments;
+    private int rcvdFragmentCount;
+
+    // parity packet of group g is xor of fragments [g * parityGroupSize, (g + 1) * parityGroupSize),
+    // allocated with first parity packet and dropped once frame is complete, so it's null for most frames
+    private int parityGroupSize;
+    private byte[] parityBuff;
+    private boolean[] rcvdParity;
+    private int recoveredFragmentCount;
 
     public MediaFrame(MediaCode code, int seqNum, int totalSize) {
+        this(code, seqNum, totalSize, DEFAULT_FRAGMENT_PAYLOAD_SIZE, null);
+    }
+
+    public MediaFrame(MediaCode code, int seqNum, int totalSize, int fragmentPayloadSize, FrameBufferPool pool) {
+        if (fragmentPayloadSize <= 0)
+            throw new IllegalArgumentException("Invalid fragment payload size " + fragmentPayloadSize);
+
         this.code = code;
         this.totalSize = totalSize;
         this.seqNum = seqNum;
-        this.buff = new byte[totalSize];
+        this.pool = pool;
+        this.buff = pool != null ? pool.acquire(totalSize) : new byte[totalSize];
+        this.refCount = new AtomicInteger(1);
         this.recvdSize = 0;
-        this.rcvdOffsets = new LinkedList<>();
+
+        this.fragmentPayloadSize = fragmentPayloadSize;
+        this.fragmentCount = (int) (((long) totalSize + fragmentPayloadSize - 1) / fragmentPayloadSize);
+        this.rcvdFragments = new long[(fragmentCount + 63) >>> 6];
+        this.rcvdFragmentCount = 0;
+
+        this.parityGroupSize = 0;
+        this.parityBuff = null;
+        this.rcvdParity = null;
+        this.recoveredFragmentCount = 0;
+    }
+
+    // frame built from parity packet gets code of the frame it protects
+    public static MediaFrame buildFromView(MediaPacketView packet, int fragmentPayloadSize, FrameBufferPool pool) {
+        return new MediaFrame(packet.getCode().getFrameCode(), packet.getSeqNum(), packet.getTotalSize(),
+                fragmentPayloadSize, pool);
+    }
+
+    // frame is created with single reference owned by its creator, each retain should be paired with release
+    public MediaFrame retain() {
+        refCount.incrementAndGet();
+        return this;
     }
 
-    public static MediaFrame buildFromRaw(byte[] packet) {
-        ByteBuffer byteBuffer = ByteBuffer.wrap(packet).order(ByteOrder.BIG_ENDIAN);
+    // frame mustn't be used after its last reference is released
+    public void release() {
+        int refsLeft = refCount.decrementAndGet();
 
-        MediaCode code = MediaCode.fromInteger(byteBuffer.get(0));
-        int seqNum = byteBuffer.getInt(4);
-        int totalSize = byteBuffer.getInt(8);
+        if (refsLeft == 0)
+            releaseParity();
 
-        return new MediaFrame(code, seqNum, totalSize);
+        if (refsLeft == 0 && pool != null)
+            pool.release(buff);
+        else if (refsLeft < 0)
+            throw new IllegalStateException("Frame " + seqNum + " released more times than retained");
     }
 
+    // parity packets are accepted as well, missing fragment is rebuilt as soon as it's the only one missing in its group
+    public void putFragment(MediaPacketView packet) {
+        if (packet.getCode().isParity()) {
+            putParity(packet);
+            return;
+        }
+
+        int offset = packet.getOffset();
+        int size = packet.getPayloadSize();
+
+        if (offset < 0 || offset >= totalSize || offset % fragmentPayloadSize != 0)
+            throw new IllegalArgumentException("Fragment offset " + offset + " isn't aligned to fragments of size " +
+                    fragmentPayloadSize + " in frame of size " + totalSize);
 
-    public void putFragment(byte[] packet, int fragmentSize) {
-        ByteBuffer byteBuffer = ByteBuffer.wrap(packet).order(ByteOrder.BIG_ENDIAN);
+        if (size != Math.min(fragmentPayloadSize, totalSize - offset))
+            throw new IllegalArgumentException("Fragment [" + offset + ", " + (offset + size) +
+                    ") doesn't match fragments of size " + fragmentPayloadSize + " in frame of size " + totalSize);
 
-        int offset = byteBuffer.getInt(12);
-        int size = fragmentSize - HEADER_SIZE;
+        int fragmentIdx = offset / fragmentPayloadSize;
+        long mask = 1L << fragmentIdx;
 
-        if (rcvdOffsets.contains(offset))
+        if ((rcvdFragments[fragmentIdx >>> 6] & mask) != 0)
             return;
 
-        rcvdOffsets.add(offset);
+        rcvdFragments[fragmentIdx >>> 6] |= mask;
+        rcvdFragmentCount++;
 
         recvdSize += size;
 
-        byteBuffer.position(HEADER_SIZE);
-        byteBuffer.get(this.buff, offset, size);
+        packet.copyPayloadTo(this.buff, offset);
+
+        if (parityBuff != null) {
+            recoverGroup(fragmentIdx / parityGroupSize);
+
+            if (isFullyRecvd())
+                releaseParity();
+        }
+    }
+
+    private void putParity(MediaPacketView packet) {
+        int groupSize = packet.getParityGroupSize();
+        int offset = packet.getOffset();
+        int size = packet.getPayloadSize();
+
+        if (groupSize == 0 || (parityGroupSize != 0 && groupSize != parityGroupSize))
+            throw new IllegalArgumentException("Invalid parity group size " + groupSize + " in frame " + seqNum);
+
+        long groupSpan = (long) groupSize * fragmentPayloadSize;
+
+        if (offset < 0 || offset >= totalSize || offset % groupSpan != 0 ||
+                size != Math.min(fragmentPayloadSize, totalSize - offset))
+            throw new IllegalArgumentException("Parity [" + offset + ", " + (offset + size) +
+                    ") doesn't match groups of " + groupSize + " fragments in frame of size " + totalSize);
+
+        if (isFullyRecvd())
+            return;
+
+        if (parityBuff == null) {
+            int groupCount = (fragmentCount + groupSize - 1) / groupSize;
+
+            parityGroupSize = groupSize;
+            parityBuff = pool != null ? pool.acquire(groupCount * fragmentPayloadSize) : new byte[groupCount * fragmentPayloadSize];
+            rcvdParity = new boolean[groupCount];
+        }
+
+        int group = (int) (offset / groupSpan);
+        if (rcvdParity[group])
+            return;
+
+        rcvdParity[group] = true;
+        packet.copyPayloadTo(parityBuff, group * fragmentPayloadSize);
+
+        recoverGroup(group);
+
+        if (isFullyRecvd())
+            releaseParity();
+    }
+
+    // missing fragment is parity xor all other fragments of its group, shorter fragments are padded with zeros
+    private void recoverGroup(int group) {
+        if (!rcvdParity[group])
+            return;
+
+        int firstIdx = group * parityGroupSize;
+        int endIdx = Math.min(firstIdx + parityGroupSize, fragmentCount);
+        int missingIdx = -1;
+
+        for (int idx = firstIdx; idx < endIdx; idx++) {
+            if (!isFragmentRecvd(idx)) {
+                // can't recover more than one
+                if (missingIdx != -1)
+                    return;
+                missingIdx = idx;
+            }
+        }
+
+        if (missingIdx == -1)
+            return;
+
+        int missingOffset = missingIdx * fragmentPayloadSize;
+        int missingSize = Math.min(fragmentPayloadSize, totalSize - missingOffset);
+
+        System.arraycopy(parityBuff, group * fragmentPayloadSize, buff, missingOffset, missingSize);
+
+        for (int idx = firstIdx; idx < endIdx; idx++) {
+            if (idx == missingIdx)
+                continue;
+
+            int offset = idx * fragmentPayloadSize;
+            int size = Math.min(missingSize, totalSize - offset);
+
+            for (int i = 0; i < size; i++)
+                buff[missingOffset + i] ^= buff[offset + i];
+        }
+
+        rcvdFragments[missingIdx >>> 6] |= 1L << missingIdx;
+        rcvdFragmentCount++;
+        recvdSize += missingSize;
+        recoveredFragmentCount++;
+    }
+
+    // true if packet with that header wouldn't add anything to this frame, payload of the packet isn't needed,
+    // packets which would be rejected as malformed aren't redundant
+    public boolean isRedundant(MediaPacketView header) {
+        if (isFullyRecvd())
+            return true;
+
+        int offset = header.getOffset();
+        if (offset < 0 || offset >= totalSize)
+            return false;
+
+        if (!header.getCode().isParity())
+            return offset % fragmentPayloadSize == 0 && isFragmentRecvd(offset / fragmentPayloadSize);
+
+        if (parityBuff == null)
+            return false;
+
+        long groupSpan = (long) parityGroupSize * fragmentPayloadSize;
+        return header.getParityGroupSize() == parityGroupSize && offset % groupSpan == 0 &&
+                rcvdParity[(int) (offset / groupSpan)];
+    }
+
+    private boolean isFragmentRecvd(int fragmentIdx) {
+        return (rcvdFragments[fragmentIdx >>> 6] & (1L << fragmentIdx)) != 0;
+    }
+
+    private void releaseParity() {
+        if (parityBuff != null && pool != null)
+            pool.release(parityBuff);
+
+        parityBuff = null;
+        rcvdParity = null;
     }
 
     public boolean isFullyRecvd() {
         return recvdSize == totalSize;
     }
 
+    // offset of first fragment which wasn't received yet, -1 if there is none
+    public int getFirstMissingOffset() {
+        return getNextMissingOffset(0);
+    }
+
+    // offset of first missing fragment starting at or after fromOffset, -1 if there is none
+    public int getNextMissingOffset(int fromOffset) {
+        return toOffset(nextFragment(toFragmentIdx(fromOffset), false));
+    }
+
+    // offset of first received fragment starting at or after fromOffset, -1 if there is none,
+    // together with getNextMissingOffset lets caller walk missing ranges without allocating
+    public int getNextReceivedOffset(int fromOffset) {
+        return toOffset(nextFragment(toFragmentIdx(fromOffset), true));
+    }
+
+    public int getMissingFragmentCount() {
+        return fragmentCount - rcvdFragmentCount;
+    }
+
+    public int getFragmentCount() {
+        return fragmentCount;
+    }
+
+    public int getFragmentPayloadSize() {
+        return fragmentPayloadSize;
+    }
+
+    // fragments rebuilt from parity instead of being received
+    public int getRecoveredFragmentCount() {
+        return recoveredFragmentCount;
+    }
+
+    private int toFragmentIdx(int offset) {
+        if (offset <= 0)
+            return 0;
+        return (int) (((long) offset + fragmentPayloadSize - 1) / fragmentPayloadSize);
+    }
+
+    private int toOffset(int fragmentIdx) {
+        return fragmentIdx == -1 ? -1 : fragmentIdx * fragmentPayloadSize;
+    }
+
+    // index of first fragment >= fromIdx with given state, -1 if there is none
+    private int nextFragment(int fromIdx, boolean received) {
+        if (fromIdx >= fragmentCount)
+            return -1;
+
+        int wordIdx = fromIdx >>> 6;
+        long word = (received ? rcvdFragments[wordIdx] : ~rcvdFragments[wordIdx]) & (-1L << fromIdx);
+
+        while (word == 0) {
+            if (++wordIdx == rcvdFragments.length)
+                return -1;
+            word = received ? rcvdFragments[wordIdx] : ~rcvdFragments[wordIdx];
+        }
+
+        int fragmentIdx = (wordIdx << 6) + Long.numberOfTrailingZeros(word);
+
+        return fragmentIdx < fragmentCount ? fragmentIdx : -1;
+    }
+
+    // pooled buffer is usually longer than frame, only first totalSize bytes are valid
     public byte[] getBytes() {
         return buff;
     }
@@ -75,15 +320,4 @@ public class MediaFrame {
     public MediaCode getCode() {
         return code;
     }
-
-    public static MediaCode extractCode(byte[] packet) {
-        return MediaCode.fromInteger(packet[0]);
-    }
-
-    public static int extractSeqNum(byte[] packet) {
-        return ByteBuffer
-                .wrap(packet)
-                .order(ByteOrder.BIG_ENDIAN)
-                .getInt(4);
-    }
 }
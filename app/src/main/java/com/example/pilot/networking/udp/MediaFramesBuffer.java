@@ -9,6 +9,9 @@ package com.example.pilot.networking.udp;
  * Overrun exception will be thrown if one frame would try to overwrite another, user should catch it and
  * appropriately shift or reset the buffer.
  *
+ * Buffer owns inserted frames, frames which are dropped (duplicates, skipped or shifted out) are released,
+ * frames returned by get are owned by caller.
+ *
  * User should check buffer size before either inserting or removing frame, class is not thread safe.
  */
 public class MediaFramesBuffer {
@@ -45,7 +48,7 @@ public class MediaFramesBuffer {
         // skip present frames
 
         while (filledSize > 0 && buff[rPtr] != null) {
-            clearReadPos();
+            dropReadPos();
             filledSize--;
         }
 
@@ -83,8 +86,10 @@ public class MediaFramesBuffer {
 
     public void put(MediaFrame frame) throws OverrunException {
         // ignore UDP duplicate
-        if (frame.getSeqNum() <= lastInOrderSeq)
+        if (frame.getSeqNum() <= lastInOrderSeq) {
+            frame.release();
             return;
+        }
 
         long seq = frame.getSeqNum();
 
@@ -106,7 +111,7 @@ public class MediaFramesBuffer {
 
         while (shiftBy > 0) {
             if (buff[rPtr] != null) {
-                clearReadPos();
+                dropReadPos();
                 filledSize--;
                 consecutiveFilledSize--;
                 shiftBy--;
@@ -130,16 +135,37 @@ public class MediaFramesBuffer {
     }
 
 
+    // releases all buffered frames, buffer shouldn't be used after this call
+    public void releaseAll() {
+        for (int i = 0; i < size; i++) {
+            if (buff[i] != null) {
+                buff[i].release();
+                buff[i] = null;
+            }
+        }
+
+        filledSize = consecutiveFilledSize = 0;
+    }
+
     private void clearReadPos() {
         buff[rPtr] = null;
         rPtr = modInc(rPtr);
     }
 
+    private void dropReadPos() {
+        buff[rPtr].release();
+        clearReadPos();
+    }
+
     private void tryPutFrame(MediaFrame frame, int idx) throws OverrunException {
         if (buff[idx] != null && frame.getSeqNum() != buff[idx].getSeqNum())
             throw new OverrunException("buffer Overrun\tgot seq: " + frame.getSeqNum() +
                     " when seq: " + buff[idx].getSeqNum() + " was still buffered");
 
+        // duplicate of frame that was received out of order
+        if (buff[idx] != null && buff[idx] != frame)
+            buff[idx].release();
+
         buff[idx] = frame;
         filledSize++;
     }
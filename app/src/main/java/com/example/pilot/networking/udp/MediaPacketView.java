@@ -0,0 +1,87 @@
+package com.example.pilot.networking.udp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight view of decrypted media packet (see README for the layout), bound once to a reusable buffer.
+ * Header fields are read in place and payload is copied straight to its destination.
+ *
+ * Packet is expected to start at index 0 and end at buffer's limit. Class is not thread safe.
+ */
+public class MediaPacketView {
+    public static final int HEADER_SIZE = 16;
+
+    private final ByteBuffer packet;
+    private final ByteBuffer payload;
+
+    private MediaCode code;
+    private int seqNum;
+    private int totalSize;
+    private int offset;
+    private int payloadSize;
+    private int parityGroupSize;
+    private int sendTimeMs;
+
+    public MediaPacketView(ByteBuffer packet) {
+        this.packet = packet;
+        this.payload = packet.duplicate();
+    }
+
+    public static MediaPacketView wrap(byte[] packet, int length) {
+        return new MediaPacketView(ByteBuffer.wrap(packet, 0, length)).parse();
+    }
+
+    public MediaPacketView parse() {
+        int length = packet.limit();
+
+        if (length < HEADER_SIZE)
+            throw new IllegalArgumentException("Packet too short for media header, got " + length + " bytes");
+
+        code = MediaCode.fromInteger(packet.get(0));
+        seqNum = packet.getInt(4);
+        totalSize = packet.getInt(8);
+        offset = packet.getInt(12);
+        payloadSize = length - HEADER_SIZE;
+        parityGroupSize = packet.get(1) & 0xFF;
+        sendTimeMs = packet.getInt(0) & 0xFFFFFF;
+
+        return this;
+    }
+
+    public void copyPayloadTo(byte[] dst, int dstOffset) {
+        payload.clear();
+        payload.position(HEADER_SIZE);
+        payload.limit(HEADER_SIZE + payloadSize);
+        payload.get(dst, dstOffset, payloadSize);
+    }
+
+    public MediaCode getCode() {
+        return code;
+    }
+
+    public int getSeqNum() {
+        return seqNum;
+    }
+
+    public int getTotalSize() {
+        return totalSize;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getPayloadSize() {
+        return payloadSize;
+    }
+
+    // amount of fragments covered by parity packet, meaningless for other packets
+    public int getParityGroupSize() {
+        return parityGroupSize;
+    }
+
+    // 24 bit millisecond timestamp of the server, meaningless for parity packets
+    public int getSendTimeMs() {
+        return sendTimeMs;
+    }
+}
@@ -3,21 +3,38 @@ package com.example.pilot.networking.udp;
 import android.util.Log;
 
 import com.example.pilot.networking.observers.ConnectionStatusObserver;
+import com.example.pilot.networking.observers.FragmentsMissingObserver;
+import com.example.pilot.networking.observers.PathReattachedObserver;
+import com.example.pilot.networking.observers.QosChangedObserver;
+import com.example.pilot.networking.reactor.IoEngine;
+import com.example.pilot.networking.reactor.IoReactor;
 import com.example.pilot.networking.tcp.MsgCode;
 import com.example.pilot.security.MessageSecurityPreprocessor;
 import com.example.pilot.security.exceptions.AuthenticationException;
 import com.example.pilot.security.exceptions.SecurityException;
+import com.example.pilot.security.utils.TLSCode;
+import com.example.pilot.security.utils.TLSPacketView;
 import com.example.pilot.ui.utils.FPSCounter;
+import com.example.pilot.utils.Log2Histogram;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.SocketException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -29,29 +46,93 @@ public class MediaReceiver implements ConnectionStatusObserver {
     private final static String IP_ADDR = "0.0.0.0";
 
     private int port;
+    // audio has its own socket and thread, so it doesn't wait behind bursts of video fragments
+    private final int audioPort;
     private final static int MAX_DATAGRAM_SIZE = 1500;
+    private final static int DECRYPT_PIPELINE_CAPACITY = 128;
+    // datagrams handled per drain, enough for fragments of a large key frame
+    private final static int MAX_BATCH_SIZE = 256;
+    private final static int BATCH_HISTOGRAM_BUCKETS = 10;
+    // idle streams get their stale partial frames evicted at least that often in batched mode
+    private final static long STALE_CHECK_INTERVAL_MS = 100;
+    // while there are partial frames receiver wakes up that often to request their repairs
+    private final static long REPAIR_CHECK_INTERVAL_MS = 5;
+    // video bitrate estimation starts from initial value and stays within bounds
+    private final static long INITIAL_VIDEO_BITRATE = 8_000_000;
+    private final static long MIN_VIDEO_BITRATE = 256_000;
+    private final static long MAX_VIDEO_BITRATE = 200_000_000;
+    private final ReceiveMode receiveMode;
     private DatagramSocket socket;
+    private DatagramChannel channel;
+    private DatagramChannel audioChannel;
+    // path migration requests go to server's media socket
+    private InetAddress serverAddress;
+    private int migrationPort;
+    private final PathMigration pathMigration;
 
     private final MessageSecurityPreprocessor securityPreprocessor;
 
     private final MediaStreamHandler[] mediaStreamHandlers;
     private final FragmentAssembler[] fragmentAssemblers;
+    private final FrameBufferPool framePool;
+    private final int fragmentPayloadSize;
+    private final PartialFrameBudget partialFrameBudget;
+    private final long maxPartialFrameAgeMs;
+
+    // null if packets are decrypted by receiver thread
+    private final DecryptPipeline decryptPipeline;
+    private final Log2Histogram batchSizes;
+    // indexed by media code, only frame codes have one
+    private final QueueingDelayMeter[] queueingDelayMeters;
+    // packets dropped judging by their cleartext header, without being decrypted
+    private final AtomicLong skippedDecrypts;
+    private final LinkProbe linkProbe;
+    // null if missing fragments aren't requested again
+    private FragmentsMissingObserver fragmentsMissingObserver;
+    // null if video quality isn't adapted to estimated bandwidth
+    private QosChangedObserver qosChangedObserver;
+    // null if re-attached path isn't migrated
+    private volatile PathReattachedObserver pathReattachedObserver;
 
     private final ExecutorService executorService;
     private Future<?> receiverTask;
+    private final ExecutorService audioExecutorService;
+    private Future<?> audioReceiverTask;
+
+    // with REACTOR engine both channels are drained by reactor thread, receiver executors stay idle
+    private final IoEngine ioEngine;
+    private final IoReactor reactor;
+    private IoReactor.ScheduledTask partialFramesCheck;
 
     private final FPSCounter fpsCounter;
 
 
     @Inject
     public MediaReceiver(@Named("client udp port") int port,
+                         @Named("client audio udp port") int audioPort,
                          @Named("UDP preprocessor") MessageSecurityPreprocessor securityPreprocessor,
                          @Named("receiver executor") ExecutorService executorService,
+                         @Named("audio receiver executor") ExecutorService audioExecutorService,
+                         @Named("media receive mode") ReceiveMode receiveMode,
+                         @Named("frame pool capacity") long framePoolCapacity,
+                         @Named("fragment payload size") int fragmentPayloadSize,
+                         @Named("partial frame budget") long partialFrameBudget,
+                         @Named("max partial frame age ms") long maxPartialFrameAgeMs,
+                         @Named("decrypt workers") int decryptWorkers,
+                         @Named("io engine") IoEngine ioEngine, IoReactor reactor,
                          FPSCounter fpsCounter)
     {
         this.port = port;
+        this.audioPort = audioPort;
+        this.receiveMode = receiveMode;
+        this.framePool = new FrameBufferPool(framePoolCapacity);
+        this.fragmentPayloadSize = fragmentPayloadSize;
+        this.partialFrameBudget = new PartialFrameBudget(partialFrameBudget);
+        this.maxPartialFrameAgeMs = maxPartialFrameAgeMs;
         this.securityPreprocessor = securityPreprocessor;
         this.fpsCounter = fpsCounter;
+        this.ioEngine = ioEngine;
+        this.reactor = reactor;
 
         int arraySize = getArraySize();
 
@@ -59,6 +140,51 @@ public class MediaReceiver implements ConnectionStatusObserver {
         fragmentAssemblers  = new FragmentAssembler[arraySize];
 
         this.executorService = executorService;
+        this.audioExecutorService = audioExecutorService;
+
+        // pipeline replaces plain channel mode, batched mode drains channel by itself, so does reactor
+        if (receiveMode == ReceiveMode.CHANNEL && decryptWorkers > 0 && ioEngine != IoEngine.REACTOR) {
+            this.decryptPipeline = new DecryptPipeline(securityPreprocessor, createPipelineSink(),
+                    decryptWorkers, DECRYPT_PIPELINE_CAPACITY, MAX_DATAGRAM_SIZE);
+        }
+        else {
+            this.decryptPipeline = null;
+        }
+
+        this.batchSizes = new Log2Histogram(BATCH_HISTOGRAM_BUCKETS);
+
+        this.skippedDecrypts = new AtomicLong(0);
+        this.linkProbe = new LinkProbe();
+        this.pathMigration = new PathMigration();
+
+        this.queueingDelayMeters = new QueueingDelayMeter[arraySize];
+        for (MediaCode code : MediaCode.values()) {
+            if (code.getFrameCode() == code)
+                queueingDelayMeters[code.ordinal()] = new QueueingDelayMeter();
+        }
+    }
+
+    private DecryptPipeline.PacketSink createPipelineSink() {
+        return new DecryptPipeline.PacketSink() {
+            @Override
+            public void onPacket(MediaPacketView packet, long arrivalNs) throws InterruptedException {
+                dispatchMediaPacket(packet, arrivalNs);
+            }
+
+            @Override
+            public void onPacketDropped(Exception cause) {
+                // with pipeline even security errors are treated as garbage datagrams, receiver keeps going
+                if (cause instanceof AuthenticationException)
+                    Log.w(TAG, "Auth failed for Udp message ", cause);
+                else
+                    Log.w(TAG, "Failed to handle datagram", cause);
+            }
+
+            @Override
+            public boolean isRedundant(MediaPacketView header) {
+                return MediaReceiver.this.isRedundant(header);
+            }
+        };
     }
 
 
@@ -72,15 +198,42 @@ public class MediaReceiver implements ConnectionStatusObserver {
         int arrayIdx = mediaStreamHandler.getMediaType().ordinal();
         mediaStreamHandlers[arrayIdx] = mediaStreamHandler;
 
-        FragmentAssembler fragmentAssembler = new FragmentAssembler(requiresFragmentation);
+        FragmentAssembler fragmentAssembler = new FragmentAssembler(requiresFragmentation, fragmentPayloadSize, framePool,
+                partialFrameBudget, maxPartialFrameAgeMs);
 
         if (requiresFragmentation)
             mediaStreamHandler.addStreamSkippedObserver(fragmentAssembler);
 
+        if (requiresFragmentation && fragmentsMissingObserver != null)
+            fragmentAssembler.enableRepairRequests(mediaStreamHandler.getMediaType(), fragmentsMissingObserver,
+                    mediaStreamHandler::getBufferDepthMs);
+
+        if (requiresFragmentation && qosChangedObserver != null &&
+                mediaStreamHandler.getMediaType() == MediaCode.VIDEO_FRAME)
+        {
+            int maxFps = Math.round(1000 / mediaStreamHandler.getFrameTimeSpanMs());
+            fragmentAssembler.enableQosControl(qosChangedObserver,
+                    new BandwidthEstimator(INITIAL_VIDEO_BITRATE, MIN_VIDEO_BITRATE, MAX_VIDEO_BITRATE), maxFps);
+        }
+
         fragmentAssemblers[arrayIdx] = fragmentAssembler;
     }
 
 
+    // affects only handlers added after this call
+    public void setFragmentsMissingObserver(FragmentsMissingObserver fragmentsMissingObserver) {
+        this.fragmentsMissingObserver = fragmentsMissingObserver;
+    }
+
+    // affects only handlers added after this call
+    public void setQosChangedObserver(QosChangedObserver qosChangedObserver) {
+        this.qosChangedObserver = qosChangedObserver;
+    }
+
+    public void setPathReattachedObserver(PathReattachedObserver pathReattachedObserver) {
+        this.pathReattachedObserver = pathReattachedObserver;
+    }
+
     private FragmentAssembler getFragmentAssembler(MediaCode code) {
         return fragmentAssemblers[code.ordinal()];
     }
@@ -89,48 +242,376 @@ public class MediaReceiver implements ConnectionStatusObserver {
         return mediaStreamHandlers[code.ordinal()];
     }
 
+    // task keeps the transport it was started with, path migration replaces it with a new one
     public void initReceiverTask() {
+        DatagramChannel channel = this.channel;
+        DatagramSocket socket = this.socket;
+
         receiverTask = executorService.submit(() -> {
             Log.d(TAG, "Listenning");
-            byte[] buf = new byte[MAX_DATAGRAM_SIZE];
-            try {
-                while (true) {
-                    DatagramPacket datagramPacket = new DatagramPacket(buf, MAX_DATAGRAM_SIZE);
-                    socket.receive(datagramPacket);
-
-                    try {
-                        byte[] packet = preprocessPacket(datagramPacket);
-                        MediaCode code = MediaFrame.extractCode(packet);
-                        FragmentAssembler assembler = getFragmentAssembler(code);
-
-                        Optional<MediaFrame> mediaFrame = assembler.handleDatagram(packet, packet.length);
-
-                        if (mediaFrame.isPresent()) {
-                            if (code == MediaCode.VIDEO_FRAME)
-                                fpsCounter.onFrameReceived();
-                            getStreamHandler(code).addMediaFrame(mediaFrame.get());
-                        }
-                    } catch (InterruptedException consumed) {
-                        Log.d(TAG, "media receiver Interrupted, exiting");
-                        return;
-                    } catch (AuthenticationException e) {
-                        // probably udp error, ignore this frame
-                        Log.w(TAG, "Auth failed for Udp message ", e);
-                    } catch (SecurityException e) {
-                        Log.e(TAG,"Security error while receiving, terminating. ", e);
-                        return;
-                    } catch (Exception e) {
-                        Log.w(TAG, "Failed to handle datagram from " + datagramPacket.getAddress(), e);
-                    }
+            if (decryptPipeline != null)
+                receiveIntoPipeline(channel);
+            else if (receiveMode == ReceiveMode.BATCHED_CHANNEL)
+                receiveBatches(channel);
+            else if (receiveMode == ReceiveMode.CHANNEL)
+                receiveFromChannel(channel);
+            else
+                receiveFromSocket(socket);
+        });
+    }
+
+    private void initAudioReceiverTask() {
+        DatagramChannel audioChannel = this.audioChannel;
+
+        audioReceiverTask = audioExecutorService.submit(() -> {
+            Log.d(TAG, "Listenning for audio");
+            receiveFromChannel(audioChannel);
+        });
+    }
+
+    private void receiveFromSocket(DatagramSocket socket) {
+        byte[] buf = new byte[MAX_DATAGRAM_SIZE];
+        ByteBuffer packetBuffer = ByteBuffer.wrap(buf);
+        TLSPacketView tlsPacket = new TLSPacketView(packetBuffer);
+        MediaPacketView header = new MediaPacketView(tlsPacket.getCleartext());
+
+        try {
+            while (true) {
+                DatagramPacket datagramPacket = new DatagramPacket(buf, MAX_DATAGRAM_SIZE);
+                socket.receive(datagramPacket);
+                long arrivalNs = System.nanoTime();
+
+                try {
+                    packetBuffer.clear();
+                    packetBuffer.limit(datagramPacket.getLength());
+                    if (isRedundant(peekHeader(tlsPacket.parse(), header)))
+                        continue;
+
+                    byte[] packet = preprocessPacket(datagramPacket);
+                    dispatchMediaPacket(MediaPacketView.wrap(packet, packet.length), arrivalNs);
+                } catch (InterruptedException consumed) {
+                    Log.d(TAG, "media receiver Interrupted, exiting");
+                    return;
+                } catch (AuthenticationException e) {
+                    // probably udp error, ignore this frame
+                    Log.w(TAG, "Auth failed for Udp message ", e);
+                } catch (SecurityException e) {
+                    Log.e(TAG,"Security error while receiving, terminating. ", e);
+                    return;
+                } catch (Exception e) {
+                    Log.w(TAG, "Failed to handle datagram from " + datagramPacket.getAddress(), e);
+                }
+            }
+        } catch (IOException exception) {
+            if (Thread.currentThread().isInterrupted()) {
+                Log.d(TAG, "media receiver interrupted, exiting");
+            }
+        }
+    }
+
+    private void receiveFromChannel(DatagramChannel channel) {
+        // allocated once per connection, direct so that neither socket nor cipher has to stage data in
+        // temporary arrays, only copy left is the one from plaintext buffer to media frame
+        ByteBuffer packetBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+        ByteBuffer plaintextBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+        TLSPacketView tlsPacket = new TLSPacketView(packetBuffer);
+        MediaPacketView mediaPacket = new MediaPacketView(plaintextBuffer);
+        MediaPacketView header = new MediaPacketView(tlsPacket.getCleartext());
+
+        try {
+            while (true) {
+                packetBuffer.clear();
+                SocketAddress sender = channel.receive(packetBuffer);
+                long arrivalNs = System.nanoTime();
+                packetBuffer.flip();
+
+                try {
+                    if (isRedundant(peekHeader(tlsPacket.parse(), header)))
+                        continue;
+
+                    plaintextBuffer.clear();
+                    securityPreprocessor.preprocessReceived(tlsPacket, plaintextBuffer);
+                    plaintextBuffer.flip();
+
+                    dispatchMediaPacket(mediaPacket.parse(), arrivalNs);
+                } catch (InterruptedException consumed) {
+                    Log.d(TAG, "media receiver Interrupted, exiting");
+                    return;
+                } catch (AuthenticationException e) {
+                    // probably udp error, ignore this frame
+                    Log.w(TAG, "Auth failed for Udp message ", e);
+                } catch (SecurityException e) {
+                    Log.e(TAG,"Security error while receiving, terminating. ", e);
+                    return;
+                } catch (Exception e) {
+                    Log.w(TAG, "Failed to handle datagram from " + sender, e);
                 }
-            } catch (IOException exception) {
+            }
+        } catch (IOException exception) {
+            if (Thread.currentThread().isInterrupted()) {
+                Log.d(TAG, "media receiver interrupted, exiting");
+            }
+        }
+    }
+
+    private void receiveBatches(DatagramChannel channel) {
+        DatagramBatch batch = new DatagramBatch(MAX_BATCH_SIZE, MAX_DATAGRAM_SIZE);
+        List<MediaFrame> completedFrames = new ArrayList<>();
+
+        try (Selector selector = Selector.open()) {
+            channel.register(selector, SelectionKey.OP_READ);
+
+            while (true) {
+                selector.select(hasPartialFrames() ? REPAIR_CHECK_INTERVAL_MS : STALE_CHECK_INTERVAL_MS);
+                selector.selectedKeys().clear();
+
                 if (Thread.currentThread().isInterrupted()) {
                     Log.d(TAG, "media receiver interrupted, exiting");
+                    return;
                 }
+
+                checkPartialFrames();
+
+                if (!drainBatches(channel, batch, completedFrames))
+                    return;
+            }
+        } catch (InterruptedException consumed) {
+            Log.d(TAG, "media receiver Interrupted, exiting");
+        } catch (IOException exception) {
+            if (Thread.currentThread().isInterrupted()) {
+                Log.d(TAG, "media receiver interrupted, exiting");
             }
+            else {
+                Log.e(TAG, "Failed to receive batch", exception);
+            }
+        }
+    }
+
+    // single receive in most cases won't leave anything pending, keep draining until channel is empty,
+    // returns false if receiving should be terminated
+    private boolean drainBatches(DatagramChannel channel, DatagramBatch batch, List<MediaFrame> completedFrames)
+            throws IOException, InterruptedException
+    {
+        int received;
+        while ((received = batch.drain(channel)) > 0) {
+            batchSizes.record(received);
+
+            if (!decryptBatch(batch))
+                return false;
+
+            dispatchBatch(batch, completedFrames);
+        }
+
+        return true;
+    }
+
+    // channels are registered for the connection, path migration registers new ones, closed channels leave
+    // reactor by themselves
+    private void registerWithReactor() {
+        registerWithReactor(channel);
+        registerWithReactor(audioChannel);
+
+        if (partialFramesCheck == null)
+            schedulePartialFramesCheck();
+    }
+
+    private void registerWithReactor(DatagramChannel channel) {
+        // each channel gets its own batch, reactor drains them one after another
+        DatagramBatch batch = new DatagramBatch(MAX_BATCH_SIZE, MAX_DATAGRAM_SIZE);
+        List<MediaFrame> completedFrames = new ArrayList<>();
+
+        reactor.registerDatagramChannel(channel, readyChannel -> {
+            if (!drainBatches(readyChannel, batch, completedFrames))
+                readyChannel.close();
         });
     }
 
+    // reactor timer replacing select timeout of batched receiver
+    private synchronized void schedulePartialFramesCheck() {
+        partialFramesCheck = reactor.schedule(() -> {
+            checkPartialFrames();
+            schedulePartialFramesCheck();
+        }, hasPartialFrames() ? REPAIR_CHECK_INTERVAL_MS : STALE_CHECK_INTERVAL_MS);
+    }
+
+    private void cancelPartialFramesCheck() {
+        if (partialFramesCheck != null) {
+            partialFramesCheck.cancel();
+            partialFramesCheck = null;
+        }
+    }
+
+    // assemblers check their frames only when they are given datagrams, paused stream would hold them forever
+    // and fragments lost at the end of the burst would never be requested
+    private void checkPartialFrames() {
+        for (FragmentAssembler assembler : fragmentAssemblers) {
+            if (assembler != null) {
+                assembler.evictStaleFrames();
+                assembler.requestRepairs();
+            }
+        }
+    }
+
+    private boolean hasPartialFrames() {
+        for (FragmentAssembler assembler : fragmentAssemblers) {
+            if (assembler != null && assembler.hasPartialFrames())
+                return true;
+        }
+
+        return false;
+    }
+
+    // returns false if receiving should be terminated
+    private boolean decryptBatch(DatagramBatch batch) {
+        while (batch.hasNextToDecrypt()) {
+            try {
+                if (isRedundant(batch.peekNext())) {
+                    batch.skipNext();
+                    continue;
+                }
+
+                batch.decryptNext(securityPreprocessor);
+            } catch (AuthenticationException e) {
+                // probably udp error, ignore this frame
+                Log.w(TAG, "Auth failed for Udp message ", e);
+            } catch (SecurityException e) {
+                Log.e(TAG,"Security error while receiving, terminating. ", e);
+                return false;
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to handle datagram", e);
+            }
+        }
+
+        return true;
+    }
+
+    // consecutive packets of the same stream go through their assembler at once,
+    // frames completed in the batch are handed to stream handlers at once
+    private void dispatchBatch(DatagramBatch batch, List<MediaFrame> completedFrames) throws InterruptedException {
+        MediaPacketView[] packets = batch.getMediaPackets();
+        long[] arrivalNs = batch.getArrivalNs();
+        int count = batch.getDecryptedCount();
+
+        for (int i = 0; i < count; i++) {
+            measureQueueingDelay(packets[i], arrivalNs[i]);
+
+            if (packets[i].getCode() == MediaCode.PROBE)
+                linkProbe.onProbeReceived(packets[i], arrivalNs[i]);
+            else if (packets[i].getCode() == MediaCode.PATH_MIGRATED)
+                onPathMigrated(packets[i]);
+        }
+
+        for (MediaCode code : MediaCode.values()) {
+            FragmentAssembler assembler = getFragmentAssembler(code);
+            if (assembler == null)
+                continue;
+
+            completedFrames.clear();
+
+            int runStart = 0;
+            while (runStart < count) {
+                if (packets[runStart].getCode().getFrameCode() != code) {
+                    runStart++;
+                    continue;
+                }
+
+                int runEnd = runStart + 1;
+                while (runEnd < count && packets[runEnd].getCode().getFrameCode() == code)
+                    runEnd++;
+
+                assembler.handleDatagrams(packets, runStart, runEnd, completedFrames);
+                runStart = runEnd;
+            }
+
+            if (completedFrames.isEmpty())
+                continue;
+
+            if (countsReceivedFrames(code)) {
+                for (int i = 0; i < completedFrames.size(); i++)
+                    fpsCounter.onFrameReceived();
+            }
+
+            getStreamHandler(code).addMediaFrames(completedFrames);
+        }
+    }
+
+    // I/O stage of decrypt pipeline, datagrams are received straight into pipeline's slots
+    private void receiveIntoPipeline(DatagramChannel channel) {
+        try {
+            while (true) {
+                ByteBuffer packetBuffer = decryptPipeline.claim();
+                channel.receive(packetBuffer);
+                packetBuffer.flip();
+                decryptPipeline.publish(System.nanoTime());
+            }
+        } catch (InterruptedException consumed) {
+            Log.d(TAG, "media receiver Interrupted, exiting");
+        } catch (IOException exception) {
+            if (Thread.currentThread().isInterrupted()) {
+                Log.d(TAG, "media receiver interrupted, exiting");
+            }
+        }
+    }
+
+    // null if packet has no cleartext header
+    private static MediaPacketView peekHeader(TLSPacketView tlsPacket, MediaPacketView header) {
+        return tlsPacket.getCode() == TLSCode.SECURE_MEDIA ? header.parse() : null;
+    }
+
+    // duplicates and fragments of frames which were completed or skipped already don't have to be decrypted,
+    // called by receiver threads and decrypt workers
+    private boolean isRedundant(MediaPacketView header) {
+        if (header == null)
+            return false;
+
+        FragmentAssembler assembler = getFragmentAssembler(header.getCode().getFrameCode());
+        if (assembler == null || !assembler.isRedundant(header))
+            return false;
+
+        skippedDecrypts.incrementAndGet();
+        return true;
+    }
+
+    // parity packets carry no send time
+    private void measureQueueingDelay(MediaPacketView mediaPacket, long arrivalNs) {
+        MediaCode code = mediaPacket.getCode();
+
+        if (!code.isParity())
+            queueingDelayMeters[code.ordinal()].onPacketReceived(mediaPacket.getSendTimeMs(), arrivalNs);
+    }
+
+    // can be called by audio and video receiver threads at once, they never handle the same code
+    // arrivalNs is System.nanoTime at which datagram was received, before it was decrypted
+    private void dispatchMediaPacket(MediaPacketView mediaPacket, long arrivalNs) throws InterruptedException {
+        measureQueueingDelay(mediaPacket, arrivalNs);
+
+        if (mediaPacket.getCode() == MediaCode.PROBE) {
+            linkProbe.onProbeReceived(mediaPacket, arrivalNs);
+            return;
+        }
+
+        if (mediaPacket.getCode() == MediaCode.PATH_MIGRATED) {
+            onPathMigrated(mediaPacket);
+            return;
+        }
+
+        MediaCode code = mediaPacket.getCode().getFrameCode();
+        FragmentAssembler assembler = getFragmentAssembler(code);
+
+        Optional<MediaFrame> mediaFrame = assembler.handleDatagram(mediaPacket);
+
+        if (mediaFrame.isPresent()) {
+            if (countsReceivedFrames(code))
+                fpsCounter.onFrameReceived();
+            getStreamHandler(code).addMediaFrame(mediaFrame.get());
+        }
+    }
+
+    // in latest frame mode most received frames are replaced before they are shown, player counts displayed ones
+    private boolean countsReceivedFrames(MediaCode code) {
+        return code == MediaCode.VIDEO_FRAME && !getStreamHandler(code).isLatestFrameMode();
+    }
+
     private byte[] preprocessPacket(DatagramPacket datagramPacket) throws AuthenticationException, SecurityException {
         int length = datagramPacket.getLength();
         byte[] TLSPacket = new byte[length];
@@ -147,40 +628,280 @@ public class MediaReceiver implements ConnectionStatusObserver {
     @Override
     public synchronized void connectionEstablished(Socket serverSocket) {
         try {
-            socket = new DatagramSocket(null);
-            socket.setReuseAddress(true);
-            socket.bind(new InetSocketAddress(IP_ADDR, port));
-            Log.d(TAG, "listening at " + IP_ADDR + ":" + port);
+            serverAddress = serverSocket.getInetAddress();
+
+            openTransport();
+
+            if (decryptPipeline != null)
+                decryptPipeline.start();
 
-            initReceiverTask();
-        } catch (SocketException e) {
+            batchSizes.reset();
+            partialFrameBudget.resetStats();
+            skippedDecrypts.set(0);
+            linkProbe.reset();
+            for (QueueingDelayMeter meter : queueingDelayMeters) {
+                if (meter != null)
+                    meter.reset();
+            }
+
+            startReceiving();
+        } catch (IOException e) {
             Log.wtf(TAG, "Failed to open socket", e);
         }
     }
 
+    private void startReceiving() {
+        if (ioEngine == IoEngine.REACTOR) {
+            registerWithReactor();
+            return;
+        }
+
+        initReceiverTask();
+        initAudioReceiverTask();
+    }
+
+    private void openTransport() throws IOException {
+        InetSocketAddress address = new InetSocketAddress(IP_ADDR, port);
+        boolean reactorDriven = ioEngine == IoEngine.REACTOR;
+
+        // reactor needs selectable channels, socket mode isn't available with it
+        if (receiveMode.usesChannel() || reactorDriven) {
+            channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(address);
+            channel.configureBlocking(receiveMode != ReceiveMode.BATCHED_CHANNEL && !reactorDriven);
+        }
+        else {
+            socket = new DatagramSocket(null);
+            socket.setReuseAddress(true);
+            socket.bind(address);
+        }
+        Log.d(TAG, "listening at " + IP_ADDR + ":" + port + " in " + receiveMode + " mode");
+
+        audioChannel = DatagramChannel.open();
+        audioChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        audioChannel.bind(new InetSocketAddress(IP_ADDR, audioPort));
+        audioChannel.configureBlocking(!reactorDriven);
+        Log.d(TAG, "listening for audio at " + IP_ADDR + ":" + audioPort);
+    }
+
     @Override
     public synchronized void connectionLost(Socket serverSocket) {
-        if (socket != null) {
-            socket.close();
+        if (socket != null || channel != null) {
+            closeTransport();
             resetFragmentAssemblers();
+            stopReceiverTasks();
+            cancelPartialFramesCheck();
+            pathMigration.detach();
+
+            if (receiveMode == ReceiveMode.BATCHED_CHANNEL || ioEngine == IoEngine.REACTOR)
+                Log.i(TAG, "Datagram batch sizes: " + batchSizes);
+
+            if (decryptPipeline != null) {
+                Log.i(TAG, "Decrypt pipeline with " + decryptPipeline.getWorkers() + " workers handled " +
+                        decryptPipeline.getMergedPackets() + " packets, " +
+                        (int) decryptPipeline.getPacketsPerSecond() + " per second");
+                decryptPipeline.stop();
+            }
 
-            if (receiverTask != null) {
-                if (receiverTask.cancel(true)) {
-                    Log.i(TAG, "Media Receiver stopped");
-                }
-                else {
-                    Log.w(TAG, "Failed to cancel receiver");
-                }
-                receiverTask = null;
+            Log.i(TAG, "Frame pool stats: " + framePool);
+            Log.i(TAG, "Partial frames: " + partialFrameBudget);
+            Log.i(TAG, "Decrypts skipped for redundant packets: " + skippedDecrypts.get());
+            Log.i(TAG, "Path migrations: " + pathMigration.getCompletedMigrations());
+            Log.i(TAG, "Audio queueing delay: " + getQueueingDelayMeter(MediaCode.AUDIO_FRAME));
+            Log.i(TAG, "Video queueing delay: " + getQueueingDelayMeter(MediaCode.VIDEO_FRAME));
+
+            FragmentAssembler videoAssembler = getFragmentAssembler(MediaCode.VIDEO_FRAME);
+            if (videoAssembler != null) {
+                Log.i(TAG, "Video fragments recovered from parity: " + videoAssembler.getRecoveredFragments());
+
+                if (videoAssembler.getNackTracker() != null)
+                    Log.i(TAG, "Video " + videoAssembler.getNackTracker());
+
+                if (videoAssembler.getQosController() != null)
+                    Log.i(TAG, "Video QoS: " + videoAssembler.getQosController());
+            }
+        }
+    }
+
+    private void stopReceiverTasks() {
+        if (receiverTask != null) {
+            if (receiverTask.cancel(true)) {
+                Log.i(TAG, "Media Receiver stopped");
+            }
+            else {
+                Log.w(TAG, "Failed to cancel receiver");
+            }
+            receiverTask = null;
+        }
+
+        if (audioReceiverTask != null) {
+            if (!audioReceiverTask.cancel(true))
+                Log.w(TAG, "Failed to cancel audio receiver");
+            audioReceiverTask = null;
+        }
+    }
+
+    private void closeTransport() {
+        if (socket != null)
+            socket.close();
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close channel", e);
+            }
+        }
+
+        if (audioChannel != null) {
+            try {
+                audioChannel.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close audio channel", e);
             }
+            audioChannel = null;
+        }
+    }
+
+    public Log2Histogram getBatchSizes() {
+        return batchSizes;
+    }
+
+    public LinkProbe getLinkProbe() {
+        return linkProbe;
+    }
 
+    // called once server has probed the link, before video is streamed, audio frames are never fragmented
+    // so only video is affected
+    public void applyLinkProfile(int videoFragmentPayloadSize, long bitrate, int fps, int quality) {
+        FragmentAssembler videoAssembler = getFragmentAssembler(MediaCode.VIDEO_FRAME);
+        Log.i(TAG, "Link probe: " + linkProbe);
+
+        if (videoAssembler == null)
+            return;
+
+        if (videoFragmentPayloadSize <= 0 || videoFragmentPayloadSize > fragmentPayloadSize) {
+            Log.w(TAG, "Ignoring invalid video fragment size " + videoFragmentPayloadSize);
+            return;
         }
+
+        videoAssembler.setFragmentPayloadSize(videoFragmentPayloadSize);
+
+        // unknown bitrate leaves estimator at its initial guess
+        if (bitrate > 0)
+            videoAssembler.seedQos(bitrate, fps, quality);
+    }
+
+    public long getSkippedDecrypts() {
+        return skippedDecrypts.get();
+    }
+
+    public QueueingDelayMeter getQueueingDelayMeter(MediaCode code) {
+        return queueingDelayMeters[code.getFrameCode().ordinal()];
+    }
+
+    public PartialFrameBudget getPartialFrameBudget() {
+        return partialFrameBudget;
     }
 
     public void setMediaTransportKey(byte[] decoded) {
         this.securityPreprocessor.setKey(decoded);
     }
 
+    // called once media key is set, server tells where to send path migration requests
+    public void enablePathMigration(byte[] sessionId, int migrationPort) {
+        boolean reattached;
+        synchronized (this) {
+            this.migrationPort = migrationPort;
+            reattached = pathMigration.enable(sessionId);
+        }
+
+        PathReattachedObserver observer = pathReattachedObserver;
+        if (reattached && observer != null) {
+            Log.i(TAG, "Resumed session re-attached to media path, seq " + pathMigration.getSeq());
+            observer.onPathReattached();
+        }
+    }
+
+    // Rebinds sockets after network change and asks server to send media to their new addresses,
+    // assemblers, stream handlers and keys stay as they are. Returns false if path can't be migrated.
+    public synchronized boolean migratePath() {
+        if (channel == null && socket == null || !pathMigration.isEnabled())
+            return false;
+
+        stopReceiverTasks();
+        closeTransport();
+
+        try {
+            openTransport();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to rebind sockets", e);
+            return false;
+        }
+
+        startReceiving();
+
+        long seq = pathMigration.start();
+        Log.i(TAG, "Migrating media path, seq " + seq);
+        sendMigrationRequests();
+
+        return true;
+    }
+
+    // returns false once all lanes are migrated
+    public synchronized boolean resendMigrationRequests() {
+        if (!pathMigration.isPending())
+            return false;
+
+        sendMigrationRequests();
+        return true;
+    }
+
+    public void onPathMigrated(MediaCode lane, long seq) {
+        if (pathMigration.onMigrated(lane, seq))
+            Log.i(TAG, "Media path migrated, seq " + seq);
+    }
+
+    // confirmation which came over the migrated path itself, holds lane instead of seq num, payload is seq
+    private void onPathMigrated(MediaPacketView confirmation) {
+        byte[] seq = new byte[Long.BYTES];
+        if (confirmation.getPayloadSize() != seq.length) {
+            Log.w(TAG, "Invalid path migration confirmation of " + confirmation.getPayloadSize() + " bytes");
+            return;
+        }
+
+        confirmation.copyPayloadTo(seq, 0);
+        onPathMigrated(MediaCode.fromInteger(confirmation.getSeqNum()), ByteBuffer.wrap(seq).getLong());
+    }
+
+    public synchronized void cancelPathMigration() {
+        pathMigration.cancel();
+    }
+
+    // every request is sent from socket of its lane, so that server learns the address media should go to
+    private void sendMigrationRequests() {
+        InetSocketAddress destination = new InetSocketAddress(serverAddress, migrationPort);
+
+        for (MediaCode lane : PathMigration.LANES) {
+            if (!pathMigration.isPending(lane))
+                continue;
+
+            try {
+                byte[] request = securityPreprocessor.preprocessToSend(pathMigration.buildRequest(lane));
+
+                if (lane == MediaCode.AUDIO_FRAME)
+                    audioChannel.send(ByteBuffer.wrap(request), destination);
+                else if (channel != null)
+                    channel.send(ByteBuffer.wrap(request), destination);
+                else
+                    socket.send(new DatagramPacket(request, request.length, destination));
+            } catch (SecurityException | IOException e) {
+                Log.w(TAG, "Failed to send path migration request of " + lane, e);
+            }
+        }
+    }
+
     private void resetFragmentAssemblers() {
         for (FragmentAssembler assembler: fragmentAssemblers) {
             if (assembler != null)
@@ -3,59 +3,89 @@ package com.example.pilot.networking.udp;
 
 import android.util.Log;
 
-import androidx.annotation.GuardedBy;
-
 import com.example.pilot.ui.utils.MediaPlayer;
 
 import java.util.LinkedList;
-import java.util.Optional;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ThreadFactory;
 
 public class MediaStreamHandler {
     private static final String TAG = "Media Stream Handler";
     // buffer will hold up to (prefetchMs * BUFFER_SIZE_MULTIPLIER) data
-    // TODO make this adaptive
     private static final int BUFFER_SIZE_MULTIPLIER = 4;
     private static final float PREFETCH_TIME_MULTIPLIER = 1.5f;
+    // frames whose lateness is considered when sizing buffer
+    private static final int JITTER_WINDOW = 256;
+    // buffer is resized at most once per that many frames
+    private static final int RESIZE_INTERVAL = 32;
+    // latest frame slot holds single frame, one more can be on its way
+    private static final int LATEST_FRAME_MODE_CREDITS = 2;
 
     private final MediaPlayer mediaPlayer;
-    private final int bufferPrefetchMs;
+    private final int maxBufferPrefetchMs;
 
-    private final int prefetchFrameAmount;
+    // written by receiver thread, read by stats
+    private volatile int prefetchFrameAmount;
 
-    @GuardedBy("consumerLock") private boolean prefetchMode;
-    @GuardedBy("consumerLock") private MediaFramesBuffer buffer;
+    private final JitterBuffer buffer;
+    // null if buffer size is fixed, used by receiver thread only
+    private final JitterEstimator jitterEstimator;
+    private int framesSinceResize;
+    // set when stream is (re)started or stopped, estimator is reset by receiver thread with next frame
+    private volatile boolean jitterEstimatorResetPending;
 
     private final LinkedList<StreamSkippedObserver> streamSkippedObservers;
 
-    private long recvStartedAt;
-
-    private final ReentrantLock consumerLock;
-    private final Condition consumerCond;
+    // if set and enabled every frame goes straight to the slot instead of jitter buffer
+    private LatestFrameSlot latestFrameSlot;
+    private volatile boolean latestFrameMode;
 
     private final ExecutorService executorService;
     private Future<?> mediaConsumer;
 
     public MediaStreamHandler(MediaPlayer mediaPlayer, int initialBufferPreFetchMs) {
-        this.mediaPlayer = mediaPlayer;
-        this.bufferPrefetchMs = initialBufferPreFetchMs;
-        this.prefetchMode = true;
+        this(mediaPlayer, initialBufferPreFetchMs, initialBufferPreFetchMs, 1.0f, JitterBufferType.LOCKED);
+    }
+
+    /**
+     * Buffer is sized so that lateFramePercentile of frames arrive before they are needed,
+     * prefetch starts at initialBufferPreFetchMs and is kept under maxBufferPrefetchMs. If both are
+     * equal buffer size is fixed.
+     */
+    public MediaStreamHandler(MediaPlayer mediaPlayer, int initialBufferPreFetchMs, int maxBufferPrefetchMs,
+                              float lateFramePercentile, JitterBufferType jitterBufferType)
+    {
+        this(mediaPlayer, initialBufferPreFetchMs, maxBufferPrefetchMs, lateFramePercentile, jitterBufferType,
+                Executors.defaultThreadFactory());
+    }
 
-        this.consumerLock = new ReentrantLock();
-        this.consumerCond = this.consumerLock.newCondition();
+    // consumerThreadFactory creates thread which feeds media player, eg. with raised priority
+    public MediaStreamHandler(MediaPlayer mediaPlayer, int initialBufferPreFetchMs, int maxBufferPrefetchMs,
+                              float lateFramePercentile, JitterBufferType jitterBufferType,
+                              ThreadFactory consumerThreadFactory)
+    {
+        this.mediaPlayer = mediaPlayer;
+        this.maxBufferPrefetchMs = Math.max(initialBufferPreFetchMs, maxBufferPrefetchMs);
 
         this.streamSkippedObservers = new LinkedList<>();
 
-        this.executorService = Executors.newSingleThreadExecutor();
+        this.executorService = Executors.newSingleThreadExecutor(consumerThreadFactory);
+
+        prefetchFrameAmount = computePrefetchSize(initialBufferPreFetchMs);
+        buffer = createJitterBuffer(jitterBufferType, initialBufferPreFetchMs);
 
-        prefetchFrameAmount = computePrefetchSize();
+        if (this.maxBufferPrefetchMs > initialBufferPreFetchMs) {
+            jitterEstimator = new JitterEstimator(JITTER_WINDOW, lateFramePercentile, mediaPlayer.getFrameTimeSpanMs());
+        }
+        else {
+            jitterEstimator = null;
+        }
     }
 
-    public void start() {
+    public synchronized void start() {
         restart();
         mediaPlayer.start();
         initMediaConsumer();
@@ -66,102 +96,171 @@ public class MediaStreamHandler {
         streamSkippedObservers.add(observer);
     }
 
+    // shouldn't be used when stream is already running
+    public void setLatestFrameSlot(LatestFrameSlot latestFrameSlot) {
+        this.latestFrameSlot = latestFrameSlot;
+    }
+
+    // frames buffered so far are dropped, consumer of the slot should be switched as well
+    public void setLatestFrameMode(boolean enabled) {
+        if (latestFrameSlot == null)
+            throw new IllegalStateException("No latest frame slot for " + getMediaType());
+
+        Log.i(TAG, "[" + getMediaType() + "] " + "Latest frame mode " + (enabled ? "enabled" : "disabled"));
+
+        latestFrameMode = enabled;
+        buffer.reset();
+
+        if (!enabled)
+            latestFrameSlot.clear();
+    }
+
+    public boolean isLatestFrameMode() {
+        return latestFrameMode;
+    }
+
     public MediaCode getMediaType() {
         return mediaPlayer.getMediaType();
     }
 
+    public float getFrameTimeSpanMs() {
+        return mediaPlayer.getFrameTimeSpanMs();
+    }
+
     private void restart() {
-        try {
-            consumerLock.lock();
-            prefetchMode = true;
-            mediaConsumer = null;
-            restartBuffer();
-            recvStartedAt = System.currentTimeMillis();
-            consumerCond.signalAll();
-        } finally {
-            consumerLock.unlock();
+        mediaConsumer = null;
+        buffer.reset();
+        jitterEstimatorResetPending = true;
+
+        if (latestFrameSlot != null)
+            latestFrameSlot.clear();
+    }
+
+    public void addMediaFrame(MediaFrame mediaFrame) throws InterruptedException {
+        if (latestFrameMode) {
+            latestFrameSlot.publish(mediaFrame);
+            return;
         }
+
+        if (jitterEstimator != null)
+            onFrameArrived(mediaFrame, System.nanoTime());
+
+        buffer.put(mediaFrame);
     }
 
-    private void restartBuffer() {
-        try {
-            consumerLock.lock();
-            buffer = new MediaFramesBuffer(BUFFER_SIZE_MULTIPLIER * prefetchFrameAmount);
-        } finally {
-            consumerLock.unlock();
+    // adds whole batch at once, frames should be in arrival order
+    public void addMediaFrames(List<MediaFrame> mediaFrames) throws InterruptedException {
+        if (latestFrameMode) {
+            mediaFrames.forEach(latestFrameSlot::publish);
+            return;
         }
+
+        if (jitterEstimator != null) {
+            long arrivalNs = System.nanoTime();
+            for (MediaFrame mediaFrame : mediaFrames)
+                onFrameArrived(mediaFrame, arrivalNs);
+        }
+
+        buffer.putAll(mediaFrames);
     }
 
-    public void addMediaFrame(MediaFrame mediaFrame) throws InterruptedException {
-        try {
-            consumerLock.lockInterruptibly();
+    // called by receiver thread, before frame goes to buffer
+    private void onFrameArrived(MediaFrame mediaFrame, long arrivalNs) {
+        // statistics of previous stream would skew delay target of the new one
+        if (jitterEstimatorResetPending) {
+            jitterEstimatorResetPending = false;
+            jitterEstimator.reset();
+            framesSinceResize = 0;
+        }
 
-            while (true) {
-                try {
-                    buffer.put(mediaFrame);
-                    break;
-                } catch (OverrunException overrunException) {
-                    Log.i(TAG, "[" + getMediaType() + "] " + overrunException.getMessage());
-                    handleOverrun();
-                }
-            }
+        jitterEstimator.onFrameArrived(mediaFrame.getSeqNum(), arrivalNs);
 
-            if (prefetchMode && shouldFinishPrefetch()) {
-                Log.i(TAG, "[" + getMediaType() + "] " + "Starting to play");
+        if (++framesSinceResize < RESIZE_INTERVAL)
+            return;
 
-                prefetchMode = false;
-                consumerCond.signalAll();
-            }
-        } finally {
-            consumerLock.unlock();
+        framesSinceResize = 0;
+
+        double prefetchMs = Math.min(jitterEstimator.getDelayTargetMs(), maxBufferPrefetchMs);
+        int targetFrameAmount = computePrefetchSize(prefetchMs);
+
+        if (targetFrameAmount != prefetchFrameAmount) {
+            Log.i(TAG, "[" + getMediaType() + "] " + String.format("jitter %.1f ms, resizing prefetch from %d to %d frames",
+                    jitterEstimator.getJitterMs(), prefetchFrameAmount, targetFrameAmount));
+
+            prefetchFrameAmount = targetFrameAmount;
+            buffer.resize(prefetchFrameAmount, BUFFER_SIZE_MULTIPLIER * prefetchFrameAmount,
+                    computePrefetchTimeoutMs(prefetchMs));
         }
     }
 
+    // how long frames wait in the buffer before they are played, frames arriving later are skipped
+    public double getBufferDepthMs() {
+        return latestFrameMode ? 0 : prefetchFrameAmount * mediaPlayer.getFrameTimeSpanMs();
+    }
 
-    // caller should hold buffer lock
-    private boolean shouldFinishPrefetch() {
-        return buffer.getConsecutiveFilledSize() >= prefetchFrameAmount ||
-                System.currentTimeMillis() - recvStartedAt > bufferPrefetchMs * PREFETCH_TIME_MULTIPLIER;
+    // frames which can be sent to this stream past the last played one, can be called by any thread,
+    // server counts them from the acked seq, so frames buffered meanwhile are within the window already
+    public int getCredits() {
+        return latestFrameMode ? LATEST_FRAME_MODE_CREDITS : buffer.getCapacity();
     }
 
-    // caller should hold buffer lock
-    private void handleOverrun() {
-        mediaPlayer.onOverrunDetected();
+    public double getJitterMs() {
+        return jitterEstimator != null ? jitterEstimator.getJitterMs() : 0;
+    }
 
-        if (buffer.getFilledSize() < prefetchFrameAmount) {
-            restart();
-        }
-        else {
-            buffer.shiftBuff(prefetchFrameAmount - 1);
+    private JitterBuffer createJitterBuffer(JitterBufferType type, int bufferPrefetchMs) {
+        int capacity = BUFFER_SIZE_MULTIPLIER * prefetchFrameAmount;
+        long prefetchTimeoutMs = computePrefetchTimeoutMs(bufferPrefetchMs);
+
+        Log.i(TAG, "[" + getMediaType() + "] " + "Using " + type + " jitter buffer");
+
+        if (type == JitterBufferType.SPSC) {
+            int maxCapacity = BUFFER_SIZE_MULTIPLIER * computePrefetchSize(maxBufferPrefetchMs);
+            return new SpscJitterBuffer(prefetchFrameAmount, capacity, maxCapacity, prefetchTimeoutMs, createBufferListener());
         }
+
+        return new LockedJitterBuffer(prefetchFrameAmount, capacity, prefetchTimeoutMs, createBufferListener());
     }
 
+    private JitterBuffer.Listener createBufferListener() {
+        return new JitterBuffer.Listener() {
+            @Override
+            public void onPlaybackStarted() {
+                Log.i(TAG, "[" + getMediaType() + "] " + "Starting to play");
+            }
+
+            @Override
+            public void onOverrun() {
+                Log.i(TAG, "[" + getMediaType() + "] " + "buffer Overrun");
+                mediaPlayer.onOverrunDetected();
+            }
+
+            @Override
+            public void onSkippedTo(int seqNum) {
+                streamSkippedObservers.forEach(observer -> observer.onSkippedTo(seqNum));
+            }
+        };
+    }
 
-    private int computePrefetchSize() {
+    private int computePrefetchSize(double bufferPrefetchMs) {
         float frameTimeSpanMs = mediaPlayer.getFrameTimeSpanMs();
 
         return (int)(bufferPrefetchMs / frameTimeSpanMs + 1);
     }
 
+    private long computePrefetchTimeoutMs(double bufferPrefetchMs) {
+        return (long) (bufferPrefetchMs * PREFETCH_TIME_MULTIPLIER);
+    }
+
     private void initMediaConsumer() {
          mediaConsumer = executorService.submit(() -> {
              Log.i(TAG, "[" + getMediaType() + "] " +" Consumer started");
              while (true) {
                 try {
-                    Optional<MediaFrame> mediaFrame;
-
-                    try {
-                        consumerLock.lockInterruptibly();
-                        while (prefetchMode)
-                            consumerCond.await();
+                    MediaFrame mediaFrame = buffer.take();
 
-                        mediaFrame = fetchNextMediaFrame();
-                    } finally {
-                        consumerLock.unlock();
-                    }
-
-                    if (mediaFrame.isPresent()) {
-                        mediaPlayer.enqueueMediaFrame(mediaFrame.get());
+                    if (mediaFrame != null) {
+                        mediaPlayer.enqueueMediaFrame(mediaFrame);
                     }
                     else {
                         Log.i(TAG,"[" + getMediaType() + "] " +"BUFFER UNDERRUN");
@@ -175,43 +274,19 @@ public class MediaStreamHandler {
         });
     }
 
-    // caller should hold buffer lock
-    private Optional<MediaFrame> fetchNextMediaFrame() {
-        if (buffer.getFilledSize() == 0) {
-            prefetchMode = true;
-            recvStartedAt = System.currentTimeMillis();
-            buffer.resetSequence();
-            return Optional.empty();
-        }
-        else if (buffer.getConsecutiveFilledSize() == 0) {
-            buffer.skipMissingGap();
-            int newSeqNum = buffer.peek().getSeqNum();
-            streamSkippedObservers.forEach(observer -> observer.onSkippedTo(newSeqNum));
-        }
-
-        MediaFrame mediaFrame = buffer.get();
-
-        return Optional.of(mediaFrame);
-    }
-
-    public void stop() {
-        try {
-            consumerLock.lock();
-            if (mediaConsumer != null) {
-                if (!mediaConsumer.cancel(true)){
-                    Log.d(TAG, "[" + getMediaType() + "] " + "Failed to cancel media consumer");
-                }
-                else {
-                    Log.d(TAG, "[" + getMediaType() + "] " + "consumer CANCELED");
-                }
-                mediaConsumer = null;
+    public synchronized void stop() {
+        if (mediaConsumer != null) {
+            if (!mediaConsumer.cancel(true)){
+                Log.d(TAG, "[" + getMediaType() + "] " + "Failed to cancel media consumer");
             }
-
-            mediaPlayer.stop();
-            restartBuffer();
-        } finally {
-            consumerLock.unlock();
+            else {
+                Log.d(TAG, "[" + getMediaType() + "] " + "consumer CANCELED");
+            }
+            mediaConsumer = null;
         }
 
+        mediaPlayer.stop();
+        buffer.reset();
+        jitterEstimatorResetPending = true;
     }
 }
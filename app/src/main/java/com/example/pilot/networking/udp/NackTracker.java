@@ -0,0 +1,178 @@
+package com.example.pilot.networking.udp;
+
+import com.example.pilot.networking.observers.FragmentsMissingObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Decides when missing fragments of partial frames are worth requesting again. Frame is considered once no
+ * fragment of it arrived for reorder window, so fragments which are merely reordered aren't requested. Request
+ * is sent only if repair, estimated by round trip of previous repairs, can still arrive before frame would
+ * have to be played, that is before it waits longer than jitter buffer depth.
+ *
+ * Frames are tracked in ring table indexed by seqNum & mask, like in fragment buffer. Class is not thread safe,
+ * it's used under the lock of its fragment assembler.
+ */
+public class NackTracker {
+    private static final long REORDER_WINDOW_NS = 10_000_000;
+    // partial frames aren't scanned more often than that
+    private static final long CHECK_INTERVAL_NS = 2_000_000;
+    private static final double INITIAL_RTT_MS = 20;
+    // gain of smoothed round trip, as in TCP
+    private static final double RTT_SMOOTHING = 1.0 / 8;
+    private static final int MAX_REQUESTS_PER_FRAME = 2;
+    // frame missing more than that is most likely lost as a whole, next one will come sooner than repairs
+    private static final int MAX_MISSING_FRAGMENTS = 16;
+
+    private final MediaCode code;
+    private final FragmentsMissingObserver observer;
+    private final DoubleSupplier bufferDepthMs;
+
+    private final int mask;
+    private final boolean[] tracked;
+    private final int[] seqNums;
+    private final long[] firstFragmentAtNs;
+    private final long[] lastFragmentAtNs;
+    private final long[] requestedAtNs;
+    private final int[] requests;
+
+    private double rttMs;
+    private long nextCheckAtNs;
+
+    private long sentRequests;
+    private long requestedFragments;
+
+    public NackTracker(int capacity, MediaCode code, FragmentsMissingObserver observer, DoubleSupplier bufferDepthMs) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity has to be a power of two, got " + capacity);
+
+        this.code = code;
+        this.observer = observer;
+        this.bufferDepthMs = bufferDepthMs;
+
+        this.mask = capacity - 1;
+        this.tracked = new boolean[capacity];
+        this.seqNums = new int[capacity];
+        this.firstFragmentAtNs = new long[capacity];
+        this.lastFragmentAtNs = new long[capacity];
+        this.requestedAtNs = new long[capacity];
+        this.requests = new int[capacity];
+
+        this.rttMs = INITIAL_RTT_MS;
+        this.nextCheckAtNs = System.nanoTime();
+        this.sentRequests = this.requestedFragments = 0;
+    }
+
+    public void reset() {
+        for (int idx = 0; idx < tracked.length; idx++)
+            tracked[idx] = false;
+    }
+
+    public void onFragmentReceived(int seqNum, long nowNs) {
+        int idx = seqNum & mask;
+
+        if (!tracked[idx] || seqNums[idx] != seqNum) {
+            tracked[idx] = true;
+            seqNums[idx] = seqNum;
+            firstFragmentAtNs[idx] = lastFragmentAtNs[idx] = nowNs;
+            requests[idx] = 0;
+            requestedAtNs[idx] = 0;
+            return;
+        }
+
+        // first fragment after request is most likely the repair
+        if (requests[idx] > 0 && lastFragmentAtNs[idx] < requestedAtNs[idx])
+            rttMs += ((nowNs - requestedAtNs[idx]) / 1e6 - rttMs) * RTT_SMOOTHING;
+
+        lastFragmentAtNs[idx] = nowNs;
+    }
+
+    // returns lowest seqNum below given one whose repair is still expected, or seqNum if there is none
+    public int firstPendingRepair(int seqNum, long nowNs) {
+        int first = seqNum;
+
+        for (int idx = 0; idx < tracked.length; idx++) {
+            if (tracked[idx] && requests[idx] > 0 && seqNums[idx] < first && nowNs - getDeadlineNs(idx) < 0)
+                first = seqNums[idx];
+        }
+
+        return first;
+    }
+
+    public void requestRepairsIfDue(FragmentBuffer fragmentBuffer, long nowNs) {
+        if (nowNs - nextCheckAtNs < 0)
+            return;
+
+        nextCheckAtNs = nowNs + CHECK_INTERVAL_NS;
+
+        long rttNs = (long) (rttMs * 1e6);
+
+        for (int idx = 0; idx < tracked.length; idx++) {
+            if (!tracked[idx])
+                continue;
+
+            MediaFrame frame = fragmentBuffer.get(seqNums[idx]);
+
+            // completed or evicted
+            if (frame == null) {
+                tracked[idx] = false;
+                continue;
+            }
+
+            if (nowNs - lastFragmentAtNs[idx] < REORDER_WINDOW_NS || requests[idx] >= MAX_REQUESTS_PER_FRAME ||
+                    frame.getMissingFragmentCount() > MAX_MISSING_FRAGMENTS)
+                continue;
+
+            // previous request might still be answered
+            if (requests[idx] > 0 && nowNs - requestedAtNs[idx] < 2 * rttNs)
+                continue;
+
+            // late repairs are useless
+            if (nowNs + rttNs - getDeadlineNs(idx) >= 0)
+                continue;
+
+            requestRepair(idx, frame, nowNs);
+        }
+    }
+
+    private void requestRepair(int idx, MediaFrame frame, long nowNs) {
+        List<Integer> missingOffsets = new ArrayList<>(frame.getMissingFragmentCount());
+
+        for (int offset = frame.getFirstMissingOffset(); offset != -1;
+             offset = frame.getNextMissingOffset(offset + frame.getFragmentPayloadSize()))
+        {
+            missingOffsets.add(offset);
+        }
+
+        requests[idx]++;
+        requestedAtNs[idx] = nowNs;
+        sentRequests++;
+        requestedFragments += missingOffsets.size();
+
+        observer.onFragmentsMissing(code, seqNums[idx], missingOffsets);
+    }
+
+    private long getDeadlineNs(int idx) {
+        return firstFragmentAtNs[idx] + (long) (bufferDepthMs.getAsDouble() * 1e6);
+    }
+
+    public double getRttMs() {
+        return rttMs;
+    }
+
+    public long getSentRequests() {
+        return sentRequests;
+    }
+
+    public long getRequestedFragments() {
+        return requestedFragments;
+    }
+
+    @Override
+    public String toString() {
+        return sentRequests + " repair requests for " + requestedFragments + " fragments, rtt " +
+                String.format("%.1f", rttMs) + " ms";
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.pilot.networking.udp;
+
+import android.net.ConnectivityManager;
+import android.net.LinkAddress;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.util.Log;
+
+import androidx.annotation.GuardedBy;
+
+import com.example.pilot.networking.observers.ConnectionStatusObserver;
+import com.example.pilot.networking.observers.PathReattachedObserver;
+
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Watches default network of the device, when it or its addresses change while connected media path
+ * is migrated instead of reconnecting. Migration requests are sent again until server confirms them
+ * or MAX_MIGRATION_ATTEMPTS run out. If tcp connection didn't survive the change, resumed session re-attaches
+ * to the old media path and it's migrated the same way.
+ */
+@Singleton
+public class NetworkChangeMonitor extends ConnectivityManager.NetworkCallback implements ConnectionStatusObserver, PathReattachedObserver {
+    private static final String TAG = "Network Change Monitor";
+    private static final long MIGRATION_RETRY_MS = 200;
+    private static final int MAX_MIGRATION_ATTEMPTS = 15;
+
+    private final MediaReceiver mediaReceiver;
+    private final ScheduledExecutorService scheduler;
+
+    @GuardedBy("this") private Network network;
+    @GuardedBy("this") private List<LinkAddress> linkAddresses;
+    @GuardedBy("this") private boolean connected;
+    @GuardedBy("this") private ScheduledFuture<?> migrationTask;
+    @GuardedBy("this") private int migrationAttempts;
+
+    @Inject
+    public NetworkChangeMonitor(MediaReceiver mediaReceiver) {
+        this.mediaReceiver = mediaReceiver;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        mediaReceiver.setPathReattachedObserver(this);
+    }
+
+    public void register(ConnectivityManager connectivityManager) {
+        connectivityManager.registerDefaultNetworkCallback(this);
+    }
+
+    // called on connectivity thread, first call after registration only records current network
+    @Override
+    public synchronized void onLinkPropertiesChanged(Network network, LinkProperties linkProperties) {
+        List<LinkAddress> addresses = linkProperties.getLinkAddresses();
+        boolean changed = this.network != null &&
+                (!this.network.equals(network) || !this.linkAddresses.equals(addresses));
+
+        this.network = network;
+        this.linkAddresses = addresses;
+
+        if (changed && connected) {
+            Log.i(TAG, "Default network changed to " + network + " " + addresses);
+            startMigration();
+        }
+    }
+
+    // server sends media to wherever the previous session was migrated, that may be the network phone just left
+    @Override
+    public synchronized void onPathReattached() {
+        if (connected)
+            startMigration();
+    }
+
+    @GuardedBy("this")
+    private void startMigration() {
+        cancelMigration();
+
+        migrationAttempts = 0;
+        migrationTask = scheduler.scheduleWithFixedDelay(this::migrate, 0, MIGRATION_RETRY_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void migrate() {
+        boolean pending = migrationAttempts++ == 0 ?
+                mediaReceiver.migratePath() :
+                mediaReceiver.resendMigrationRequests();
+
+        if (pending && migrationAttempts < MAX_MIGRATION_ATTEMPTS)
+            return;
+
+        if (pending) {
+            Log.w(TAG, "Server didn't confirm path migration in " + migrationAttempts + " attempts");
+            mediaReceiver.cancelPathMigration();
+        }
+
+        cancelMigration();
+    }
+
+    @GuardedBy("this")
+    private void cancelMigration() {
+        if (migrationTask != null) {
+            migrationTask.cancel(false);
+            migrationTask = null;
+        }
+    }
+
+    @Override
+    public void failedToConnect(String errorMsg) {
+        // pass
+    }
+
+    @Override
+    public synchronized void connectionEstablished(Socket socket) {
+        connected = true;
+    }
+
+    @Override
+    public synchronized void connectionLost(Socket socket) {
+        connected = false;
+        cancelMigration();
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.pilot.networking.udp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte budget shared by all fragment assemblers, bounds memory held by partially received frames no matter
+ * how many streams there are and what frame sizes their (untrusted) headers declare. Frame size is reserved
+ * before its buffer is allocated and given back once frame leaves fragment buffer, completed or evicted.
+ *
+ * Also counts frames which were given up on before all their fragments arrived. Class is thread safe.
+ */
+public class PartialFrameBudget {
+    private final long capacityBytes;
+    private final AtomicLong reservedBytes;
+
+    private final AtomicLong evictedStale;
+    private final AtomicLong evictedSuperseded;
+    private final AtomicLong evictedOverBudget;
+    private final AtomicLong rejected;
+
+    public PartialFrameBudget(long capacityBytes) {
+        if (capacityBytes <= 0)
+            throw new IllegalArgumentException("Invalid budget " + capacityBytes);
+
+        this.capacityBytes = capacityBytes;
+        this.reservedBytes = new AtomicLong(0);
+
+        this.evictedStale = new AtomicLong(0);
+        this.evictedSuperseded = new AtomicLong(0);
+        this.evictedOverBudget = new AtomicLong(0);
+        this.rejected = new AtomicLong(0);
+    }
+
+    // returns false if reservation would exceed the budget, nothing is reserved then
+    public boolean tryReserve(long bytes) {
+        if (bytes < 0)
+            throw new IllegalArgumentException("Invalid frame size " + bytes);
+
+        long current;
+        do {
+            current = reservedBytes.get();
+            if (current + bytes > capacityBytes)
+                return false;
+        } while (!reservedBytes.compareAndSet(current, current + bytes));
+
+        return true;
+    }
+
+    public void release(long bytes) {
+        if (reservedBytes.addAndGet(-bytes) < 0)
+            throw new IllegalStateException("Released more bytes than reserved");
+    }
+
+    // partial frames which waited for missing fragments for too long
+    public void recordEvictedStale(int frames) {
+        evictedStale.addAndGet(frames);
+    }
+
+    // partial frames dropped because newer frame of their stream was completed
+    public void recordEvictedSuperseded(int frames) {
+        evictedSuperseded.addAndGet(frames);
+    }
+
+    // partial frames dropped to make room for newer one
+    public void recordEvictedOverBudget(int frames) {
+        evictedOverBudget.addAndGet(frames);
+    }
+
+    // fragments of frames which didn't fit in the budget
+    public void recordRejected() {
+        rejected.incrementAndGet();
+    }
+
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    public long getEvictedStale() {
+        return evictedStale.get();
+    }
+
+    public long getEvictedSuperseded() {
+        return evictedSuperseded.get();
+    }
+
+    public long getEvictedOverBudget() {
+        return evictedOverBudget.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getEvictedIncomplete() {
+        return getEvictedStale() + getEvictedSuperseded() + getEvictedOverBudget();
+    }
+
+    // counters only, reserved bytes belong to frames which are still buffered
+    public void resetStats() {
+        evictedStale.set(0);
+        evictedSuperseded.set(0);
+        evictedOverBudget.set(0);
+        rejected.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "reserved " + getReservedBytes() + "/" + capacityBytes + " B, evicted incomplete: " +
+                getEvictedStale() + " stale, " + getEvictedSuperseded() + " superseded, " +
+                getEvictedOverBudget() + " over budget, rejected " + getRejected();
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.pilot.networking.udp;
+
+import androidx.annotation.GuardedBy;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * State of media path migration. Server sends id of the session together with media key, after network change
+ * every lane (socket media of given code is received on) sends a request carrying that id and number of the
+ * migration, encrypted with media key, server sends media of the lane to address the request came from
+ * and confirms it with PATH_MIGRATED media packet sent there (and over tcp while it's up).
+ * Requests are sent again until all lanes are confirmed.
+ *
+ * When tcp connection is lost, session id and seq are kept, resumed session re-attaches to the media path
+ * of the previous one, so server tells the same id again and migration continues from the last seq.
+ *
+ * Request plaintext: session id(128) | seq(64) | lane(8), see pcdaemon/networking/path_migration_handler.py.
+ *
+ * Class is thread safe.
+ */
+public class PathMigration {
+    public static final int SESSION_ID_SIZE = 16;
+    public static final int REQUEST_SIZE = SESSION_ID_SIZE + Long.BYTES + Byte.BYTES;
+    public static final MediaCode[] LANES = {MediaCode.AUDIO_FRAME, MediaCode.VIDEO_FRAME};
+
+    // null until server enables migration, kept after connection is lost
+    @GuardedBy("this") private byte[] sessionId;
+    @GuardedBy("this") private boolean enabled;
+    @GuardedBy("this") private long seq;
+    // indexed by media code
+    @GuardedBy("this") private final boolean[] pendingLanes;
+    @GuardedBy("this") private long completedMigrations;
+
+    public PathMigration() {
+        this.pendingLanes = new boolean[MediaCode.values().length];
+        reset();
+    }
+
+    public synchronized void reset() {
+        sessionId = null;
+        enabled = false;
+        seq = 0;
+        completedMigrations = 0;
+        cancel();
+    }
+
+    // connection is lost, session may be resumed with the same id
+    public synchronized void detach() {
+        enabled = false;
+        cancel();
+    }
+
+    // returns true if session re-attached to the path of the previous one, otherwise migration starts from scratch
+    public synchronized boolean enable(byte[] sessionId) {
+        if (sessionId.length != SESSION_ID_SIZE)
+            throw new IllegalArgumentException("Invalid session id size " + sessionId.length);
+
+        boolean reattached = this.sessionId != null && Arrays.equals(this.sessionId, sessionId);
+        if (!reattached) {
+            reset();
+            this.sessionId = sessionId.clone();
+        }
+
+        enabled = true;
+        return reattached;
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    // returns seq of the new migration, all lanes wait for confirmation
+    public synchronized long start() {
+        if (!enabled)
+            throw new IllegalStateException("Path migration is not enabled");
+
+        seq++;
+        for (MediaCode lane : LANES)
+            pendingLanes[lane.ordinal()] = true;
+
+        return seq;
+    }
+
+    public synchronized void cancel() {
+        for (MediaCode lane : LANES)
+            pendingLanes[lane.ordinal()] = false;
+    }
+
+    public synchronized byte[] buildRequest(MediaCode lane) {
+        if (!enabled)
+            throw new IllegalStateException("Path migration is not enabled");
+
+        return ByteBuffer.allocate(REQUEST_SIZE)
+                .put(sessionId)
+                .putLong(seq)
+                .put((byte) lane.toInteger())
+                .array();
+    }
+
+    // confirmations of earlier migrations are ignored, returns true once every lane is confirmed
+    public synchronized boolean onMigrated(MediaCode lane, long migratedSeq) {
+        if (migratedSeq != seq || !isPending())
+            return false;
+
+        pendingLanes[lane.ordinal()] = false;
+
+        if (isPending())
+            return false;
+
+        completedMigrations++;
+        return true;
+    }
+
+    public synchronized boolean isPending(MediaCode lane) {
+        return pendingLanes[lane.ordinal()];
+    }
+
+    public synchronized boolean isPending() {
+        for (MediaCode lane : LANES) {
+            if (pendingLanes[lane.ordinal()])
+                return true;
+        }
+
+        return false;
+    }
+
+    public synchronized long getSeq() {
+        return seq;
+    }
+
+    public synchronized long getCompletedMigrations() {
+        return completedMigrations;
+    }
+}
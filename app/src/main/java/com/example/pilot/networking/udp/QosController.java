@@ -0,0 +1,143 @@
+package com.example.pilot.networking.udp;
+
+import com.example.pilot.networking.observers.QosChangedObserver;
+
+/**
+ * Turns target bitrate of bandwidth estimator into frame rate and JPEG quality of video stream and sends them
+ * to the server. Frame rate is lowered first, once it would fall below comfortable level quality is lowered
+ * instead, quality goes back up only when max frame rate fits in the target with headroom. Decreases are sent
+ * right away (at most every DECREASE_INTERVAL), other changes at most once per UPDATE_INTERVAL.
+ *
+ * Class is not thread safe, it's used under the lock of video fragment assembler.
+ */
+public class QosController {
+    public static final int INITIAL_QUALITY = 75;
+    private static final int MIN_QUALITY = 25;
+    private static final int MAX_QUALITY = 95;
+    private static final int QUALITY_STEP = 10;
+
+    private static final int MIN_FPS = 5;
+    private static final int COMFORTABLE_FPS = 15;
+    // quality is raised only if max fps would still fit in the target after frames grow
+    private static final double QUALITY_HEADROOM = 1.5;
+    private static final double FRAME_SIZE_SMOOTHING = 1.0 / 8;
+    // smaller bitrate changes aren't worth a message if fps and quality stay the same
+    private static final double MIN_BITRATE_CHANGE = 0.1;
+
+    private static final long DECREASE_INTERVAL_NS = 250_000_000;
+    private static final long UPDATE_INTERVAL_NS = 1_000_000_000;
+
+    private final QosChangedObserver observer;
+    private final BandwidthEstimator estimator;
+    private final int maxFps;
+
+    private double avgFrameBytes;
+    private int quality;
+    private int fps;
+    private long sentBitrate;
+    private long lastSentNs;
+    private long sentUpdates;
+
+    public QosController(QosChangedObserver observer, BandwidthEstimator estimator, int maxFps) {
+        if (maxFps < MIN_FPS)
+            throw new IllegalArgumentException("Max fps can't be lower than " + MIN_FPS + ", got " + maxFps);
+
+        this.observer = observer;
+        this.estimator = estimator;
+        this.maxFps = maxFps;
+        this.sentUpdates = 0;
+
+        reset();
+    }
+
+    public void reset() {
+        estimator.reset();
+        avgFrameBytes = 0;
+        quality = INITIAL_QUALITY;
+        fps = maxFps;
+        sentBitrate = 0;
+        lastSentNs = -1;
+    }
+
+    // continues from parameters server already streams with, eg. chosen when link was probed,
+    // so they aren't sent again until the estimate changes
+    public void reset(long bitrate, int fps, int quality, long nowNs) {
+        reset();
+        estimator.reset(bitrate);
+
+        this.fps = Math.max(MIN_FPS, Math.min(fps, maxFps));
+        this.quality = Math.max(MIN_QUALITY, Math.min(quality, MAX_QUALITY));
+        sentBitrate = estimator.getTargetBitrate();
+        lastSentNs = nowNs;
+    }
+
+    public void onPacketReceived(MediaPacketView packet, long nowNs) {
+        estimator.onPacketReceived(MediaPacketView.HEADER_SIZE + packet.getPayloadSize(), nowNs);
+    }
+
+    // lastPacket is the one which completed the frame, parity packets carry no send time
+    public void onFrameCompleted(MediaFrame mediaFrame, MediaPacketView lastPacket, long nowNs) {
+        int frameBytes = mediaFrame.getTotalSize();
+        avgFrameBytes = avgFrameBytes == 0 ? frameBytes : avgFrameBytes + (frameBytes - avgFrameBytes) * FRAME_SIZE_SMOOTHING;
+
+        if (!lastPacket.getCode().isParity())
+            estimator.onGroupReceived(lastPacket.getSendTimeMs(), nowNs);
+
+        updateIfDue(nowNs);
+    }
+
+    private void updateIfDue(long nowNs) {
+        long bitrate = estimator.getTargetBitrate();
+        boolean decrease = bitrate < sentBitrate;
+        long interval = decrease ? DECREASE_INTERVAL_NS : UPDATE_INTERVAL_NS;
+
+        if (lastSentNs != -1 && nowNs - lastSentNs < interval)
+            return;
+
+        int prevFps = fps, prevQuality = quality;
+        adjust(bitrate);
+
+        boolean bitrateChanged = Math.abs(bitrate - sentBitrate) > sentBitrate * MIN_BITRATE_CHANGE;
+        if (lastSentNs != -1 && fps == prevFps && quality == prevQuality && !bitrateChanged)
+            return;
+
+        sentBitrate = bitrate;
+        lastSentNs = nowNs;
+        sentUpdates++;
+
+        observer.onQosChanged(bitrate, fps, quality);
+    }
+
+    private void adjust(long bitrate) {
+        double frameBits = Math.max(avgFrameBytes, 1) * 8;
+        double affordableFps = bitrate / frameBits;
+
+        if (affordableFps < COMFORTABLE_FPS && quality > MIN_QUALITY)
+            quality = Math.max(MIN_QUALITY, quality - QUALITY_STEP);
+        else if (affordableFps > QUALITY_HEADROOM * maxFps && quality < MAX_QUALITY)
+            quality = Math.min(MAX_QUALITY, quality + QUALITY_STEP);
+
+        fps = (int) Math.max(MIN_FPS, Math.min(affordableFps, maxFps));
+    }
+
+    public BandwidthEstimator getEstimator() {
+        return estimator;
+    }
+
+    public int getFps() {
+        return fps;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    public long getSentUpdates() {
+        return sentUpdates;
+    }
+
+    @Override
+    public String toString() {
+        return estimator + ", " + fps + " fps, quality " + quality + ", " + sentUpdates + " updates sent";
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.pilot.networking.udp;
+
+import com.example.pilot.utils.Log2Histogram;
+
+/**
+ * Queueing delay of packets of single stream, that is their one way delay (arrival minus send time) above
+ * the smallest one seen. Clocks of server and client aren't synchronised, so only delay relative to that base
+ * means anything. Base is refreshed from the minimum of every BASE_WINDOW so that clock drift doesn't build up.
+ * Delays, including time packet waited in the socket for receiver thread, are recorded in milliseconds.
+ *
+ * Class is not thread safe, it should be used by receiver thread of its stream, histogram can be read by any thread.
+ */
+public class QueueingDelayMeter {
+    private static final int SEND_TIME_MASK = 0xFFFFFF;
+    private static final long BASE_WINDOW_NS = 10_000_000_000L;
+    private static final int HISTOGRAM_BUCKETS = 12;
+
+    private final Log2Histogram delays;
+
+    private boolean hasBase;
+    // one way delay with unknown clock offset, modulo 2^24
+    private int baseDelayMs;
+    private int windowMinDelayMs;
+    private long windowStartNs;
+    private int maxDelayMs;
+
+    public QueueingDelayMeter() {
+        this.delays = new Log2Histogram(HISTOGRAM_BUCKETS);
+        reset();
+    }
+
+    public void reset() {
+        delays.reset();
+        hasBase = false;
+        maxDelayMs = 0;
+    }
+
+    // sendTimeMs is 24 bit server timestamp of the packet
+    public void onPacketReceived(int sendTimeMs, long arrivalNs) {
+        int oneWayDelayMs = (int) ((arrivalNs / 1_000_000 - sendTimeMs) & SEND_TIME_MASK);
+
+        if (!hasBase) {
+            hasBase = true;
+            baseDelayMs = oneWayDelayMs;
+            windowMinDelayMs = Integer.MAX_VALUE;
+            windowStartNs = arrivalNs;
+        }
+
+        int delayMs = (oneWayDelayMs - baseDelayMs) & SEND_TIME_MASK;
+
+        // faster than any packet so far
+        if (delayMs > SEND_TIME_MASK / 2) {
+            baseDelayMs = oneWayDelayMs;
+            delayMs = 0;
+        }
+
+        windowMinDelayMs = Math.min(windowMinDelayMs, delayMs);
+
+        if (arrivalNs - windowStartNs >= BASE_WINDOW_NS) {
+            baseDelayMs = (baseDelayMs + windowMinDelayMs) & SEND_TIME_MASK;
+            windowMinDelayMs = Integer.MAX_VALUE;
+            windowStartNs = arrivalNs;
+        }
+
+        maxDelayMs = Math.max(maxDelayMs, delayMs);
+        delays.record(delayMs);
+    }
+
+    public Log2Histogram getDelays() {
+        return delays;
+    }
+
+    public int getMaxDelayMs() {
+        return maxDelayMs;
+    }
+
+    @Override
+    public String toString() {
+        return "max " + maxDelayMs + " ms, [" + delays + "]";
+    }
+}
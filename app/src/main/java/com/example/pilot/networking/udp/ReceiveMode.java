@@ -0,0 +1,14 @@
+package com.example.pilot.networking.udp;
+
+public enum ReceiveMode {
+    // DatagramSocket, every datagram is copied to fresh arrays on its way to fragment assembler
+    SOCKET,
+    // DatagramChannel with reusable buffers, datagram is parsed in place and copied once, into its media frame
+    CHANNEL,
+    // non-blocking DatagramChannel, all pending datagrams are drained and handed over as one batch
+    BATCHED_CHANNEL;
+
+    public boolean usesChannel() {
+        return this != SOCKET;
+    }
+}
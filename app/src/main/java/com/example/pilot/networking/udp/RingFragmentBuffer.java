@@ -0,0 +1,195 @@
+package com.example.pilot.networking.udp;
+
+/**
+ * Fragment buffer backed by power-of-two ring table indexed by seqNum & mask, so lookup, insertion and removal
+ * don't depend on amount of partial frames as long as they span less than capacity sequence numbers.
+ *
+ * Every slot remembers sequence number (generation) of its frame, so frame from other generation sharing
+ * the slot is never returned. If partial frame is still present when newer generation needs its slot it is
+ * evicted, it's at least capacity frames behind and most likely will never be completed.
+ */
+public class RingFragmentBuffer implements FragmentBuffer {
+    private final int mask;
+    private final MediaFrame[] frames;
+    private final int[] seqNums;
+    private final long[] putAtNs;
+
+    // lower bound of sequence numbers of present frames, lets us skip empty slots without scanning the table
+    private int lowestSeqHint;
+    private int lastFullyRcvdInOrderSeq;
+    private int size;
+    private long bufferedBytes;
+
+    public RingFragmentBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity has to be a power of two, got " + capacity);
+
+        this.mask = capacity - 1;
+        this.frames = new MediaFrame[capacity];
+        this.seqNums = new int[capacity];
+        this.putAtNs = new long[capacity];
+        this.lowestSeqHint = 0;
+        this.lastFullyRcvdInOrderSeq = -1;
+        this.size = 0;
+        this.bufferedBytes = 0;
+    }
+
+    @Override
+    public MediaFrame get(int seqNum) {
+        int idx = seqNum & mask;
+        MediaFrame frame = frames[idx];
+
+        return frame != null && seqNums[idx] == seqNum ? frame : null;
+    }
+
+    @Override
+    public boolean put(MediaFrame mediaFrame) {
+        int seqNum = mediaFrame.getSeqNum();
+
+        if (seqNum <= lastFullyRcvdInOrderSeq)
+            return false;
+
+        int idx = seqNum & mask;
+
+        if (frames[idx] != null) {
+            // slot is taken by newer generation, this one is too old to fit in the window
+            if (seqNums[idx] > seqNum)
+                return false;
+
+            removeAt(idx);
+        }
+
+        frames[idx] = mediaFrame;
+        seqNums[idx] = seqNum;
+        putAtNs[idx] = System.nanoTime();
+        bufferedBytes += mediaFrame.getTotalSize();
+
+        if (size == 0 || seqNum < lowestSeqHint)
+            lowestSeqHint = seqNum;
+
+        size++;
+
+        return true;
+    }
+
+    @Override
+    public boolean isStale(int seqNum) {
+        int idx = seqNum & mask;
+
+        return seqNum <= lastFullyRcvdInOrderSeq || (frames[idx] != null && seqNums[idx] > seqNum);
+    }
+
+    @Override
+    public void removeFullyReceived(MediaFrame mediaFrame) {
+        int seqNum = mediaFrame.getSeqNum();
+        int idx = seqNum & mask;
+
+        frames[idx] = null;
+        size--;
+        bufferedBytes -= mediaFrame.getTotalSize();
+
+        advanceLowestSeqHint(seqNum);
+
+        // no earlier frame is pending, so this one is received in order
+        if (size == 0 || lowestSeqHint >= seqNum) {
+            lastFullyRcvdInOrderSeq = seqNum;
+            lowestSeqHint = seqNum + 1;
+        }
+    }
+
+    @Override
+    public void removePreceding(int seqNum) {
+        lastFullyRcvdInOrderSeq = Math.max(lastFullyRcvdInOrderSeq, seqNum);
+        removeBelow(seqNum);
+    }
+
+    @Override
+    public int removeUpTo(int seqNum) {
+        int sizeBefore = size;
+
+        lastFullyRcvdInOrderSeq = Math.max(lastFullyRcvdInOrderSeq, seqNum);
+        removeBelow(seqNum + 1);
+
+        return sizeBefore - size;
+    }
+
+    private void removeBelow(int seqNum) {
+        if (size > 0) {
+            if ((long) seqNum - lowestSeqHint > frames.length) {
+                for (int idx = 0; idx < frames.length; idx++) {
+                    if (frames[idx] != null && seqNums[idx] < seqNum)
+                        removeAt(idx);
+                }
+            }
+            else {
+                for (int seq = lowestSeqHint; seq < seqNum; seq++) {
+                    int idx = seq & mask;
+                    if (frames[idx] != null && seqNums[idx] == seq)
+                        removeAt(idx);
+                }
+            }
+        }
+
+        if (size == 0 || lowestSeqHint < seqNum)
+            lowestSeqHint = seqNum;
+    }
+
+    @Override
+    public int removeOlderThan(long deadlineNs) {
+        boolean found = false;
+        int newestStaleSeq = 0;
+
+        for (int idx = 0; idx < frames.length; idx++) {
+            if (frames[idx] != null && putAtNs[idx] - deadlineNs < 0 && (!found || seqNums[idx] > newestStaleSeq)) {
+                newestStaleSeq = seqNums[idx];
+                found = true;
+            }
+        }
+
+        return found ? removeUpTo(newestStaleSeq) : 0;
+    }
+
+    @Override
+    public void releaseAll() {
+        for (int idx = 0; idx < frames.length; idx++) {
+            if (frames[idx] != null)
+                removeAt(idx);
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    private void removeAt(int idx) {
+        bufferedBytes -= frames[idx].getTotalSize();
+        frames[idx].release();
+        frames[idx] = null;
+        size--;
+    }
+
+    // moves hint up to the lowest present sequence number, but no further than limit
+    private void advanceLowestSeqHint(int limit) {
+        if (size == 0)
+            return;
+
+        if ((long) limit - lowestSeqHint > frames.length) {
+            int lowest = limit;
+            for (int idx = 0; idx < frames.length; idx++) {
+                if (frames[idx] != null && seqNums[idx] < lowest)
+                    lowest = seqNums[idx];
+            }
+            lowestSeqHint = lowest;
+        }
+        else {
+            while (lowestSeqHint < limit && get(lowestSeqHint) == null)
+                lowestSeqHint++;
+        }
+    }
+}
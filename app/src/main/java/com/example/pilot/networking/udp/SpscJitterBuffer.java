@@ -0,0 +1,354 @@
+package com.example.pilot.networking.udp;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free jitter buffer for exactly one producer and one consumer thread. Frames are kept in power-of-two
+ * ring indexed by seqNum & mask, window of the ring starts at readSeq, next frame to be consumed.
+ *
+ * Frame in a slot is owned by whichever thread removes it from there, consumer takes frames with CAS and
+ * producer drops them with CAS or getAndSet, so frame can't be both played and released. Consumer moves
+ * readSeq by one after every frame or over a gap, producer moves it forward only to make room on overrun.
+ * Ring is sized for the largest capacity buffer can be resized to, actual capacity only limits the window.
+ *
+ * Consumer switches buffer from PLAYING to UNDERRUN when there is nothing left to take and parks until
+ * producer switches it back to PLAYING. Producer handles UNDERRUN and RESET (set by reset) on its next frame,
+ * it starts new sequence from first buffered frame or, if there is none (or buffer was reset), from that frame,
+ * and prefetches. While buffer isn't PLAYING only producer moves readSeq. Frame which is put in a slot
+ * just after consumer skipped over it stays there unseen until slot is reused or buffer is reset.
+ */
+public class SpscJitterBuffer implements JitterBuffer {
+    private static final int PLAYING = 0;
+    private static final int PREFETCHING = 1;
+    private static final int UNDERRUN = 2;
+    private static final int RESET = 3;
+
+    private final Listener listener;
+
+    // owned by producer
+    private int prefetchFrameAmount;
+    private long prefetchTimeoutMs;
+    // written by producer, read by any thread for free capacity
+    private volatile int windowCapacity;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<MediaFrame> slots;
+    private final AtomicLong readSeq;
+    private final AtomicInteger filledSize;
+    private final AtomicInteger state;
+
+    private volatile long prefetchStartedAt;
+    private volatile Thread consumer;
+
+    // owned by producer, sequence after last frame of consecutive run starting at readSeq, valid while prefetching
+    private long consecutiveEnd;
+
+    public SpscJitterBuffer(int prefetchFrameAmount, int capacity, long prefetchTimeoutMs, Listener listener) {
+        this(prefetchFrameAmount, capacity, capacity, prefetchTimeoutMs, listener);
+    }
+
+    public SpscJitterBuffer(int prefetchFrameAmount, int capacity, int maxCapacity,
+                            long prefetchTimeoutMs, Listener listener)
+    {
+        if (capacity <= prefetchFrameAmount || maxCapacity < capacity)
+            throw new IllegalArgumentException("Capacity has to exceed prefetch size and can't exceed max capacity, got " + capacity);
+
+        this.prefetchFrameAmount = prefetchFrameAmount;
+        this.windowCapacity = capacity;
+        this.prefetchTimeoutMs = prefetchTimeoutMs;
+        this.listener = listener;
+
+        this.capacity = Integer.highestOneBit(maxCapacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+        this.readSeq = new AtomicLong(0);
+        this.filledSize = new AtomicInteger(0);
+        this.state = new AtomicInteger(RESET);
+        this.prefetchStartedAt = System.currentTimeMillis();
+        this.consecutiveEnd = 0;
+    }
+
+    // can be called by any thread, buffered frames are dropped by producer with its next frame
+    @Override
+    public void reset() {
+        prefetchStartedAt = System.currentTimeMillis();
+        state.set(RESET);
+    }
+
+    @Override
+    public void put(MediaFrame mediaFrame) {
+        putFrame(mediaFrame);
+        finishPrefetchIfReady();
+    }
+
+    @Override
+    public void putAll(List<MediaFrame> mediaFrames) {
+        for (MediaFrame mediaFrame : mediaFrames)
+            putFrame(mediaFrame);
+
+        finishPrefetchIfReady();
+    }
+
+    // called by producer, capacity takes effect immediately
+    @Override
+    public void resize(int prefetchFrameAmount, int capacity, long prefetchTimeoutMs) {
+        if (capacity <= prefetchFrameAmount || capacity > this.capacity)
+            throw new IllegalArgumentException("Invalid capacity " + capacity + " for prefetch size " + prefetchFrameAmount);
+
+        boolean shrinking = prefetchFrameAmount < this.prefetchFrameAmount;
+
+        this.prefetchFrameAmount = prefetchFrameAmount;
+        this.windowCapacity = capacity;
+        this.prefetchTimeoutMs = prefetchTimeoutMs;
+
+        if (shrinking && state.get() == PLAYING) {
+            long start = readSeq.get();
+            int excess = countPresentFrom(start) - prefetchFrameAmount;
+
+            if (excess > 0)
+                shift(excess);
+        }
+    }
+
+    @Override
+    public MediaFrame take() throws InterruptedException {
+        while (true) {
+            if (state.get() != PLAYING)
+                awaitPlayback();
+
+            long seq = readSeq.get();
+            int idx = index(seq);
+            MediaFrame frame = slots.get(idx);
+
+            if (frame != null && frame.getSeqNum() == seq) {
+                // otherwise producer dropped it to make room
+                if (slots.compareAndSet(idx, frame, null)) {
+                    filledSize.decrementAndGet();
+                    readSeq.compareAndSet(seq, seq + 1);
+                    return frame;
+                }
+                continue;
+            }
+
+            long nextSeq = findPresent(seq + 1, seq);
+
+            if (nextSeq == -1) {
+                if (reportUnderrun(seq))
+                    return null;
+            }
+            else if (readSeq.compareAndSet(seq, nextSeq)) {
+                listener.onSkippedTo((int) nextSeq);
+            }
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+        return windowCapacity;
+    }
+
+    public int getFilledSize() {
+        return filledSize.get();
+    }
+
+    // returns false if buffer doesn't have to prefetch after all
+    private boolean reportUnderrun(long seq) {
+        prefetchStartedAt = System.currentTimeMillis();
+
+        // buffer could have been reset meanwhile
+        if (!state.compareAndSet(PLAYING, UNDERRUN))
+            return false;
+
+        // producer might have put frames since we looked, unless it already noticed underrun we can keep playing
+        if (findPresent(seq, seq) != -1 && state.compareAndSet(UNDERRUN, PLAYING))
+            return false;
+
+        return true;
+    }
+
+    private void awaitPlayback() throws InterruptedException {
+        consumer = Thread.currentThread();
+
+        while (state.get() != PLAYING) {
+            LockSupport.park(this);
+
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+    }
+
+    private void putFrame(MediaFrame mediaFrame) {
+        long seq = mediaFrame.getSeqNum();
+
+        int currentState = state.get();
+        if (currentState == RESET)
+            restartFrom(seq);
+        else if (currentState == UNDERRUN)
+            resumeAfterUnderrun(seq);
+
+        // UDP duplicate or frame which was already skipped over
+        if (seq < readSeq.get()) {
+            mediaFrame.release();
+            return;
+        }
+
+        while (seq - readSeq.get() >= windowCapacity)
+            handleOverrun(seq);
+
+        int idx = index(seq);
+        MediaFrame present = slots.get(idx);
+
+        // duplicate of frame that was received out of order
+        if (present != null && present.getSeqNum() == seq) {
+            mediaFrame.release();
+            return;
+        }
+
+        // anything else left in the slot is from previous lap of the ring, consumer won't touch it
+        MediaFrame previous = slots.getAndSet(idx, mediaFrame);
+        if (previous != null)
+            previous.release();
+        else
+            filledSize.incrementAndGet();
+    }
+
+    private void finishPrefetchIfReady() {
+        if (state.get() != PREFETCHING)
+            return;
+
+        if (countConsecutive() >= prefetchFrameAmount ||
+                System.currentTimeMillis() - prefetchStartedAt > prefetchTimeoutMs)
+        {
+            // fails if buffer was reset meanwhile
+            if (state.compareAndSet(PREFETCHING, PLAYING)) {
+                listener.onPlaybackStarted();
+
+                Thread waiting = consumer;
+                if (waiting != null)
+                    LockSupport.unpark(waiting);
+            }
+        }
+    }
+
+    private int countConsecutive() {
+        long start = readSeq.get();
+        long end = Math.max(consecutiveEnd, start);
+
+        while (end - start < capacity && isPresent(end))
+            end++;
+
+        consecutiveEnd = end;
+
+        return (int) (end - start);
+    }
+
+    private int countPresentFrom(long start) {
+        long end = start;
+
+        while (end - start < capacity && isPresent(end))
+            end++;
+
+        return (int) (end - start);
+    }
+
+    // state is switched first, so that consumer can't resume playing while readSeq is moved
+    private void restartFrom(long seq) {
+        if (!state.compareAndSet(RESET, PREFETCHING))
+            return;
+
+        dropAll();
+        readSeq.set(seq);
+        consecutiveEnd = seq;
+    }
+
+    private void resumeAfterUnderrun(long seq) {
+        if (!state.compareAndSet(UNDERRUN, PREFETCHING))
+            return;
+
+        long start = readSeq.get();
+        long firstBuffered = findPresent(start, start);
+
+        readSeq.set(firstBuffered != -1 ? firstBuffered : seq);
+        consecutiveEnd = readSeq.get();
+    }
+
+    private void handleOverrun(long seq) {
+        listener.onOverrun();
+
+        if (filledSize.get() < prefetchFrameAmount) {
+            // start over from this frame, consumer might still be taking a frame but can't move readSeq anymore
+            state.set(PREFETCHING);
+            prefetchStartedAt = System.currentTimeMillis();
+            dropAll();
+            readSeq.set(seq);
+            consecutiveEnd = seq;
+        }
+        else {
+            shift(Math.max(1, prefetchFrameAmount - 1));
+        }
+    }
+
+    // drops shiftBy present frames from the front of the window, readSeq is moved to first present frame after them
+    private void shift(int shiftBy) {
+        long start = readSeq.get();
+        long seq = start;
+
+        while (shiftBy > 0 && seq - start < capacity) {
+            if (tryDrop(seq))
+                shiftBy--;
+            seq++;
+        }
+
+        while (seq - start < capacity && !isPresent(seq))
+            seq++;
+
+        long current;
+        while ((current = readSeq.get()) < seq && !readSeq.compareAndSet(current, seq));
+    }
+
+    private boolean tryDrop(long seq) {
+        int idx = index(seq);
+        MediaFrame frame = slots.get(idx);
+
+        if (frame == null || frame.getSeqNum() != seq || !slots.compareAndSet(idx, frame, null))
+            return false;
+
+        frame.release();
+        filledSize.decrementAndGet();
+        return true;
+    }
+
+    private void dropAll() {
+        for (int idx = 0; idx < capacity; idx++) {
+            MediaFrame frame = slots.getAndSet(idx, null);
+            if (frame != null) {
+                frame.release();
+                filledSize.decrementAndGet();
+            }
+        }
+    }
+
+    // returns first present sequence not less than from in the window starting at windowStart, or -1
+    private long findPresent(long from, long windowStart) {
+        for (long seq = from; seq - windowStart < capacity; seq++) {
+            if (isPresent(seq))
+                return seq;
+        }
+
+        return -1;
+    }
+
+    private boolean isPresent(long seq) {
+        MediaFrame frame = slots.get(index(seq));
+        return frame != null && frame.getSeqNum() == seq;
+    }
+
+    private int index(long seq) {
+        return (int) (seq & mask);
+    }
+}
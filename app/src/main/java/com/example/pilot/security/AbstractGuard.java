@@ -1,26 +1,92 @@
 package com.example.pilot.security;
 
+import com.example.pilot.security.exceptions.AuthenticationException;
+import com.example.pilot.security.exceptions.SecurityException;
+import com.example.pilot.security.utils.CipherSuite;
+import com.example.pilot.security.utils.Endpoint;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 
-import javax.crypto.KeyGenerator;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 
 public abstract class AbstractGuard implements Guard {
-    protected SecretKey sessionKey;
-    protected final SecureRandom nonceGenerator;
-    private final int nonceLength;
+    // key spec is built once per session key and handed to cipher as it is
+    protected volatile SecretKey sessionKey;
+    // negotiated in TLS handshake, default one is used until then
+    private volatile CipherSuite cipherSuite;
+    // replaced together with session key, which is changed only while channel is idle
+    private volatile SessionNonces nonces;
+    private final Endpoint localEndpoint;
     private final int macLength;
+    // looking up a cipher costs more than encrypting a datagram with it, so every thread keeps its own one
+    // and only reinitialises it with nonce of next packet
+    private final ThreadLocal<Cipher> ciphers;
 
-    public AbstractGuard(int nonceLength, int keyLengthBytes, int macLength, String keyAlgorithm) throws NoSuchAlgorithmException {
-        this(nonceLength, macLength);
-        sessionKey = generateKey(keyAlgorithm, keyLengthBytes);
+    public AbstractGuard(Endpoint localEndpoint, int keyLengthBytes, int macLength, CipherSuite cipherSuite) {
+        this(localEndpoint, macLength, cipherSuite);
+        setKey(generateKey(keyLengthBytes));
     }
 
-    public AbstractGuard(int nonceLength, int macLength) {
-        this.nonceLength = nonceLength;
+    public AbstractGuard(Endpoint localEndpoint, int macLength, CipherSuite cipherSuite) {
+        this.localEndpoint = localEndpoint;
         this.macLength = macLength;
-        nonceGenerator = new SecureRandom();
+        this.cipherSuite = cipherSuite;
+        nonces = new SessionNonces();
+        ciphers = new ThreadLocal<>();
+    }
+
+    // nonces are counted from 0 again, so key must never be set to one used before
+    protected void setKey(SecretKey key) {
+        sessionKey = key;
+        nonces = new SessionNonces();
+    }
+
+    @Override
+    public void setSessionKey(byte[] keyBytes) {
+        setKey(new SecretKeySpec(keyBytes, cipherSuite.getKeyAlgorithm()));
+    }
+
+    // key is kept, only its spec is rebuilt as providers check that it was made for their algorithm,
+    // so nonces keep counting
+    public void setCipherSuite(CipherSuite cipherSuite) {
+        this.cipherSuite = cipherSuite;
+        if (sessionKey != null)
+            sessionKey = new SecretKeySpec(sessionKey.getEncoded(), cipherSuite.getKeyAlgorithm());
+    }
+
+    public CipherSuite getCipherSuite() {
+        return cipherSuite;
+    }
+
+    // cached cipher is replaced once suite of the channel changes
+    private Cipher getCipher(CipherSuite suite) throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Cipher cipher = ciphers.get();
+
+        if (cipher == null || !cipher.getAlgorithm().equals(suite.getTransformation())) {
+            cipher = Cipher.getInstance(suite.getTransformation());
+            ciphers.set(cipher);
+        }
+
+        return cipher;
+    }
+
+    protected Cipher initCipher(byte[] nonce, int mode) throws SecurityException {
+        CipherSuite suite = cipherSuite;
+
+        try {
+            Cipher cipher = getCipher(suite);
+            cipher.init(mode, sessionKey, suite.createParameterSpec(expandNonce(nonce, mode), macLength));
+
+            return cipher;
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidAlgorithmParameterException | InvalidKeyException e) {
+            throw new SecurityException("Failed to initialise " + suite + " cipher " + e.getMessage());
+        }
     }
 
     @Override
@@ -30,7 +96,7 @@ public abstract class AbstractGuard implements Guard {
 
     @Override
     public int getNonceLength() {
-        return nonceLength;
+        return SessionNonces.WIRE_NONCE_LENGTH;
     }
 
 
@@ -39,16 +105,34 @@ public abstract class AbstractGuard implements Guard {
         return macLength;
     }
 
-    protected SecretKey generateKey(String keyAlgorithm, int keyLengthBytes) throws NoSuchAlgorithmException {
-        KeyGenerator keyGenerator = KeyGenerator.getInstance(keyAlgorithm);
-        keyGenerator.init(keyLengthBytes * 8);
-        return keyGenerator.generateKey();
+    // both suites take 256 bit keys of random bytes
+    protected SecretKey generateKey(int keyLengthBytes) {
+        byte[] keyBytes = new byte[keyLengthBytes];
+        new SecureRandom().nextBytes(keyBytes);
+        return new SecretKeySpec(keyBytes, cipherSuite.getKeyAlgorithm());
     }
 
     @Override
-    public byte[] getNonce() {
-        byte[] nonce = new byte[getNonceLength()];
-        nonceGenerator.nextBytes(nonce);
-        return nonce;
+    public byte[] getNonce() throws SecurityException {
+        return nonces.next(SessionNonces.CONTROL_STREAM);
+    }
+
+    // nonce handed to cipher, wire nonce prefixed with endpoint which sent it
+    protected byte[] expandNonce(byte[] wireNonce, int mode) {
+        return SessionNonces.expand(wireNonce, mode == Cipher.ENCRYPT_MODE ? localEndpoint : localEndpoint.getPeer());
+    }
+
+    // called before packet is decrypted, so that replays don't cost a decryption
+    protected void assertNotReplayed(byte[] wireNonce) throws AuthenticationException {
+        if (nonces.isReplayed(wireNonce))
+            throw new AuthenticationException("Replayed or too old nonce " + SessionNonces.getCounter(wireNonce) +
+                    " of stream " + SessionNonces.getStream(wireNonce));
+    }
+
+    // called once packet is authenticated, forged packets can't move replay window
+    protected void markReceived(byte[] wireNonce) throws AuthenticationException {
+        if (!nonces.markReceived(wireNonce))
+            throw new AuthenticationException("Nonce " + SessionNonces.getCounter(wireNonce) + " of stream " +
+                    SessionNonces.getStream(wireNonce) + " received twice");
     }
 }
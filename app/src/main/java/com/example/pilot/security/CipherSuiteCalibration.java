@@ -0,0 +1,128 @@
+package com.example.pilot.security;
+
+import com.example.pilot.security.utils.CipherSuite;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Orders cipher suites by how fast this device encrypts media sized packets with them.
+ * Phones with ARMv8 crypto extensions run AES-GCM several times faster than ChaCha20-Poly1305,
+ * older ones the other way round. Suites which aren't available on the device are left out.
+ * Takes around 100 ms, so result should be cached and it shouldn't run on the main thread.
+ */
+public class CipherSuiteCalibration {
+    private static final int PACKET_SIZE = 1400;
+    private static final int KEY_LENGTH = 32;
+    private static final int NONCE_LENGTH = 12;
+    private static final int MAC_LENGTH = 16;
+    private static final int WARM_UP_PACKETS = 200;
+    private static final long MEASUREMENT_NS = 50_000_000;
+
+    public interface CipherFactory {
+        // throws if suite isn't provided on this device
+        Cipher create(CipherSuite suite) throws GeneralSecurityException;
+    }
+
+    private final long measurementNs;
+    private final List<CipherSuite> suites;
+    private final CipherFactory cipherFactory;
+
+    public CipherSuiteCalibration() {
+        this(MEASUREMENT_NS);
+    }
+
+    public CipherSuiteCalibration(long measurementNs) {
+        this(measurementNs, defaultRanking(), suite -> Cipher.getInstance(suite.getTransformation()));
+    }
+
+    public CipherSuiteCalibration(long measurementNs, List<CipherSuite> suites, CipherFactory cipherFactory) {
+        this.measurementNs = measurementNs;
+        this.suites = suites;
+        this.cipherFactory = cipherFactory;
+    }
+
+    // offered until calibration finishes, AES-GCM comes first and it's provided on every device
+    public static List<CipherSuite> defaultRanking() {
+        return Arrays.asList(CipherSuite.values());
+    }
+
+    public List<CipherSuite> rankAvailableSuites() {
+        Map<CipherSuite, Double> throughputs = new EnumMap<>(CipherSuite.class);
+
+        for (CipherSuite suite : suites) {
+            try {
+                throughputs.put(suite, measurePacketsPerSecond(suite));
+            } catch (GeneralSecurityException ignored) {
+                // not provided on this device
+            }
+        }
+
+        return rank(throughputs);
+    }
+
+    // fastest first, suites with equal throughput keep order of declaration
+    public static List<CipherSuite> rank(Map<CipherSuite, Double> packetsPerSecond) {
+        List<CipherSuite> suites = new ArrayList<>(packetsPerSecond.keySet());
+        Collections.sort(suites, Comparator.comparing(packetsPerSecond::get, Comparator.reverseOrder()));
+
+        return suites;
+    }
+
+    // offered list may be read by a handshake meanwhile, so it has to be a CopyOnWriteArrayList, whose removeIf
+    // and sort replace the contents at once, handshake never sees it half sorted
+    public static void applyRanking(List<CipherSuite> offered, List<CipherSuite> ranked) {
+        if (ranked.isEmpty())
+            return;
+
+        offered.removeIf(suite -> !ranked.contains(suite));
+        offered.sort(Comparator.comparingInt(ranked::indexOf));
+    }
+
+    public double measurePacketsPerSecond(CipherSuite suite) throws GeneralSecurityException {
+        byte[] keyBytes = new byte[KEY_LENGTH];
+        new SecureRandom().nextBytes(keyBytes);
+        SecretKeySpec key = new SecretKeySpec(keyBytes, suite.getKeyAlgorithm());
+        Cipher cipher = cipherFactory.create(suite);
+
+        byte[] packet = new byte[PACKET_SIZE];
+        byte[] output = new byte[PACKET_SIZE + MAC_LENGTH];
+        ByteBuffer nonce = ByteBuffer.allocate(NONCE_LENGTH);
+        long counter = 0;
+
+        for (int i = 0; i < WARM_UP_PACKETS; i++)
+            encrypt(cipher, suite, key, nonce, ++counter, packet, output);
+
+        long start = System.nanoTime();
+        long elapsed;
+        int packets = 0;
+
+        do {
+            encrypt(cipher, suite, key, nonce, ++counter, packet, output);
+            packets++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < measurementNs);
+
+        return packets * 1e9 / elapsed;
+    }
+
+    // every packet gets its own nonce, as providers refuse to encrypt twice with the same one
+    private static void encrypt(Cipher cipher, CipherSuite suite, SecretKeySpec key, ByteBuffer nonce, long counter,
+                                byte[] packet, byte[] output) throws GeneralSecurityException
+    {
+        nonce.putLong(NONCE_LENGTH - Long.BYTES, counter);
+        cipher.init(Cipher.ENCRYPT_MODE, key, suite.createParameterSpec(nonce.array().clone(), MAC_LENGTH));
+        cipher.doFinal(packet, 0, packet.length, output, 0);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.pilot.security;
+
+import com.example.pilot.security.exceptions.KeyException;
+import com.example.pilot.security.exceptions.SecurityException;
+import com.example.pilot.security.utils.P256;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+
+import javax.crypto.KeyAgreement;
+
+/**
+ * Ephemeral P-256 ECDH of a single handshake. Key pair is generated for every connection and dropped with it,
+ * so recorded traffic can't be decrypted with keys stolen later (forward secrecy). TCP and UDP keys are derived
+ * with HKDF from shared secret, salted with hash of the handshake transcript, so that they are bound to shares
+ * and suites which were exchanged.
+ *
+ * Derivation has to match pcdaemon/security/ephemeral_key_exchange.py
+ */
+public class EphemeralKeyExchange {
+    public static final int SHARE_LENGTH = P256.POINT_LENGTH;
+    private static final int KEY_LENGTH = 32;
+    private static final byte[] TCP_KEY_LABEL = "kntpilot ecdhe tcp key".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] UDP_KEY_LABEL = "kntpilot ecdhe udp key".getBytes(StandardCharsets.US_ASCII);
+
+    private final KeyPair keyPair;
+
+    public EphemeralKeyExchange() throws SecurityException {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec(P256.CURVE_NAME));
+            keyPair = generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new SecurityException("Failed to generate ephemeral key " + e.getMessage());
+        }
+    }
+
+    public byte[] getPublicShare() {
+        return P256.encodePoint((ECPublicKey) keyPair.getPublic());
+    }
+
+    // x coordinate of the shared point
+    public byte[] computeSharedSecret(byte[] peerShare) throws SecurityException {
+        try {
+            KeyAgreement agreement = KeyAgreement.getInstance("ECDH");
+            agreement.init(keyPair.getPrivate());
+            agreement.doPhase(P256.decodePoint(peerShare), true);
+
+            return agreement.generateSecret();
+        } catch (GeneralSecurityException | KeyException e) {
+            throw new SecurityException("Failed to agree on shared secret " + e.getMessage());
+        }
+    }
+
+    public static byte[] deriveTcpKey(byte[] sharedSecret, byte[] transcript) throws SecurityException {
+        return Hkdf.expand(extract(sharedSecret, transcript), TCP_KEY_LABEL, KEY_LENGTH);
+    }
+
+    public static byte[] deriveUdpKey(byte[] sharedSecret, byte[] transcript) throws SecurityException {
+        return Hkdf.expand(extract(sharedSecret, transcript), UDP_KEY_LABEL, KEY_LENGTH);
+    }
+
+    private static byte[] extract(byte[] sharedSecret, byte[] transcript) throws SecurityException {
+        try {
+            return Hkdf.extract(MessageDigest.getInstance("SHA-256").digest(transcript), sharedSecret);
+        } catch (GeneralSecurityException e) {
+            throw new SecurityException("Failed to hash transcript " + e.getMessage());
+        }
+    }
+}
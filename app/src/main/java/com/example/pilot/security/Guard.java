@@ -3,6 +3,8 @@ package com.example.pilot.security;
 import com.example.pilot.security.exceptions.AuthenticationException;
 import com.example.pilot.security.exceptions.SecurityException;
 
+import java.nio.ByteBuffer;
+
 import javax.crypto.SecretKey;
 
 public interface Guard {
@@ -13,12 +15,22 @@ public interface Guard {
     // if guard support MAC then tag will be appended to the end of returned data
     byte[] encrypt(byte[] message, byte[] aad, byte[] nonce) throws SecurityException;
 
+    // buffer variant of encrypt, remaining bytes of message are consumed, ciphertext (tag included) is written
+    // to output at its position, both can share content so that message is encrypted in place,
+    // returns number of written bytes
+    int encrypt(ByteBuffer message, byte[] aad, byte[] nonce, ByteBuffer output) throws SecurityException;
+
     // if guard support MAC then decryption expects tag appended to the end of message
     byte[] decrypt(byte[] message, byte[] aad, byte[] nonce) throws SecurityException, AuthenticationException;
 
+    // buffer variant of decrypt, remaining bytes of message (tag included) are consumed,
+    // plaintext is written to output at its position, returns number of written bytes
+    int decrypt(ByteBuffer message, byte[] aad, byte[] nonce, ByteBuffer output) throws SecurityException, AuthenticationException;
+
     int getNonceLength();
 
     int getTagLength();
 
-    byte[] getNonce();
+    // nonce of next sent message, unique under current session key, decryption rejects nonces it has seen already
+    byte[] getNonce() throws SecurityException;
 }
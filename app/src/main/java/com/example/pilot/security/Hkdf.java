@@ -0,0 +1,48 @@
+package com.example.pilot.security;
+
+import com.example.pilot.security.exceptions.SecurityException;
+
+import java.io.ByteArrayOutputStream;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// HKDF with HMAC-SHA256 (RFC 5869), has to match hkdf functions in pcdaemon/security/ephemeral_key_exchange.py
+public class Hkdf {
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int HASH_LENGTH = 32;
+
+    public static byte[] extract(byte[] salt, byte[] inputKeyMaterial) throws SecurityException {
+        return hmac(salt.length == 0 ? new byte[HASH_LENGTH] : salt, inputKeyMaterial);
+    }
+
+    public static byte[] expand(byte[] pseudoRandomKey, byte[] info, int length) throws SecurityException {
+        if (length > 255 * HASH_LENGTH)
+            throw new SecurityException("HKDF can't expand to " + length + " bytes");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(length);
+        byte[] block = new byte[0];
+
+        for (int counter = 1; output.size() < length; counter++) {
+            block = hmac(pseudoRandomKey, block, info, new byte[]{(byte) counter});
+            output.write(block, 0, Math.min(block.length, length - output.size()));
+        }
+
+        return output.toByteArray();
+    }
+
+    private static byte[] hmac(byte[] key, byte[]... parts) throws SecurityException {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+            for (byte[] part : parts)
+                mac.update(part);
+
+            return mac.doFinal();
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new SecurityException("Failed to compute " + MAC_ALGORITHM + " " + e.getMessage());
+        }
+    }
+}
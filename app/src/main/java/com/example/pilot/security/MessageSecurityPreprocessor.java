@@ -6,9 +6,12 @@ import com.example.pilot.security.exceptions.AuthenticationException;
 import com.example.pilot.security.exceptions.SecurityException;
 import com.example.pilot.security.utils.TLSCode;
 import com.example.pilot.security.utils.TLSPacket;
+import com.example.pilot.security.utils.TLSPacketView;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
+import java.util.Arrays;
 
 public class MessageSecurityPreprocessor {
     private final static String TAG = "Message Security Preprocessor";
@@ -29,11 +32,33 @@ public class MessageSecurityPreprocessor {
         return new TLSPacket(tlsPacket.header, encryptedData).full;
     }
 
+    // buffer variant of preprocessToSend, tls header is written to output at its position and remaining bytes
+    // of message are encrypted right after it, message can be a view of output starting getSendHeaderSize() past
+    // its position so that it's encrypted in place, returns number of written bytes
+    public int preprocessToSend(ByteBuffer message, ByteBuffer output) throws SecurityException {
+        byte[] nonce = guard.getNonce();
+        byte[] header = ByteBuffer.allocate(getSendHeaderSize())
+                .put((byte) TLSCode.SECURE.ordinal())
+                .putShort((short) message.remaining())
+                .put((byte) nonce.length)
+                .put(nonce)
+                .array();
+
+        output.put(header);
+
+        return header.length + guard.encrypt(message, header, nonce, output);
+    }
+
+    // space taken by tls header in front of data of sent packet
+    public int getSendHeaderSize() {
+        return TLSPacket.HEADER_SIZE + guard.getNonceLength();
+    }
+
     // returns decrypted data from underlying protocol, with all security-layer data stripped
     public byte[] preprocessReceived(byte[] receivedMessage) throws SecurityException, AuthenticationException {
         TLSPacket tlsPacket = new TLSPacket(receivedMessage);
 
-        if (tlsPacket.code != TLSCode.SECURE)
+        if (tlsPacket.code != TLSCode.SECURE && tlsPacket.code != TLSCode.SECURE_MEDIA)
             throw new SecurityException("Expected encrypted packet but got code " + tlsPacket.code);
 
         byte[] nonce = tlsPacket.nonce;
@@ -42,9 +67,48 @@ public class MessageSecurityPreprocessor {
             throw new SecurityException("Invalid nonce length, expected " + guard.getNonceLength() +
                     " got " + nonce.length + "\nFrom: " + new String(tlsPacket.full, StandardCharsets.UTF_8));
 
+        if (tlsPacket.code == TLSCode.SECURE_MEDIA)
+            return decryptMedia(tlsPacket);
+
         return guard.decrypt(tlsPacket.data, tlsPacket.header, nonce);
     }
 
+    // cleartext media header is authenticated with tls header and prepended to decrypted data
+    private byte[] decryptMedia(TLSPacket tlsPacket) throws SecurityException, AuthenticationException {
+        int cleartextSize = TLSPacket.CLEARTEXT_MEDIA_HEADER_SIZE;
+
+        if (tlsPacket.data.length < cleartextSize)
+            throw new SecurityException("Media packet too short for cleartext header, got " + tlsPacket.data.length);
+
+        byte[] associatedData = Arrays.copyOf(tlsPacket.header, tlsPacket.header.length + cleartextSize);
+        System.arraycopy(tlsPacket.data, 0, associatedData, tlsPacket.header.length, cleartextSize);
+
+        byte[] payload = guard.decrypt(Arrays.copyOfRange(tlsPacket.data, cleartextSize, tlsPacket.data.length),
+                associatedData, tlsPacket.nonce);
+
+        byte[] mediaPacket = Arrays.copyOf(tlsPacket.data, cleartextSize + payload.length);
+        System.arraycopy(payload, 0, mediaPacket, cleartextSize, payload.length);
+
+        return mediaPacket;
+    }
+
+    // zero-copy variant of preprocessReceived, decrypted data is written to output at its position,
+    // preceded by cleartext media header if packet has one, returns number of written bytes
+    public int preprocessReceived(TLSPacketView tlsPacket, ByteBuffer output) throws SecurityException, AuthenticationException {
+        if (tlsPacket.getCode() != TLSCode.SECURE && tlsPacket.getCode() != TLSCode.SECURE_MEDIA)
+            throw new SecurityException("Expected encrypted packet but got code " + tlsPacket.getCode());
+
+        if (tlsPacket.getNonceSize() != guard.getNonceLength())
+            throw new SecurityException("Invalid nonce length, expected " + guard.getNonceLength() +
+                    " got " + tlsPacket.getNonceSize());
+
+        // header of SECURE_MEDIA packet is part of associated data, so it's verified by decrypt below
+        tlsPacket.copyCleartextTo(output);
+
+        return tlsPacket.getCleartextSize() +
+                guard.decrypt(tlsPacket.getData(), tlsPacket.getHeader(), tlsPacket.getNonce(), output);
+    }
+
 
     public int getBasicHeaderSize() {
         return TLSPacket.HEADER_SIZE;
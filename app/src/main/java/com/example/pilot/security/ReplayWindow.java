@@ -0,0 +1,50 @@
+package com.example.pilot.security;
+
+/**
+ * Sliding window of received sequence numbers, as in DTLS (RFC 6347 4.1.2.6). Packets older than the window or
+ * already marked are replays. Packets should be checked before they are decrypted and marked once they are
+ * authenticated, so that forged packets can't move the window.
+ *
+ * Class is thread safe.
+ */
+public class ReplayWindow {
+    public static final int SIZE = Long.SIZE;
+
+    private long highestSeq;
+    // bit i is set if highestSeq - i was received
+    private long receivedBits;
+
+    public ReplayWindow() {
+        this.highestSeq = -1;
+        this.receivedBits = 0;
+    }
+
+    public synchronized boolean isReplayed(long seq) {
+        if (seq > highestSeq)
+            return false;
+
+        long age = highestSeq - seq;
+        return age >= SIZE || (receivedBits & (1L << age)) != 0;
+    }
+
+    // returns false if seq was replayed meanwhile, eg. duplicate decrypted by another thread
+    public synchronized boolean markReceived(long seq) {
+        if (isReplayed(seq))
+            return false;
+
+        if (seq > highestSeq) {
+            long shift = seq - highestSeq;
+            receivedBits = shift >= SIZE ? 1 : receivedBits << shift | 1;
+            highestSeq = seq;
+        }
+        else {
+            receivedBits |= 1L << (highestSeq - seq);
+        }
+
+        return true;
+    }
+
+    public synchronized long getHighestSeq() {
+        return highestSeq;
+    }
+}
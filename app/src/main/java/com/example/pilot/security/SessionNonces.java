@@ -0,0 +1,74 @@
+package com.example.pilot.security;
+
+import com.example.pilot.security.exceptions.SecurityException;
+import com.example.pilot.security.utils.Endpoint;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Nonces used under a single session key. Every stream (media code of the packet, 0 for others) counts nonces it
+ * sends, wire nonce holds stream id in top byte and 56 bit counter below it. Full nonce is the wire nonce prefixed
+ * with the sending endpoint, so it's unique per key without being random. Received nonces go through replay window
+ * of their stream, streams are sent by separate threads and sockets, so they are reordered against each other.
+ *
+ * Has to match pcdaemon/security/session_nonces.py. Class is thread safe.
+ */
+public class SessionNonces {
+    public static final int WIRE_NONCE_LENGTH = 8;
+    public static final int NONCE_LENGTH = 12;
+    public static final int CONTROL_STREAM = 0;
+    private static final int STREAMS = 256;
+    private static final int COUNTER_BITS = 56;
+    private static final long MAX_COUNTER = (1L << COUNTER_BITS) - 1;
+
+    private final AtomicLongArray sentCounters;
+    // created once stream is received
+    private final ReplayWindow[] replayWindows;
+
+    public SessionNonces() {
+        this.sentCounters = new AtomicLongArray(STREAMS);
+        this.replayWindows = new ReplayWindow[STREAMS];
+    }
+
+    public byte[] next(int stream) throws SecurityException {
+        long counter = sentCounters.getAndIncrement(stream);
+        if (counter > MAX_COUNTER)
+            throw new SecurityException("Nonces of stream " + stream + " exhausted, key has to be renewed");
+
+        return ByteBuffer.allocate(WIRE_NONCE_LENGTH)
+                .putLong((long) stream << COUNTER_BITS | counter)
+                .array();
+    }
+
+    public boolean isReplayed(byte[] wireNonce) {
+        return getReplayWindow(getStream(wireNonce)).isReplayed(getCounter(wireNonce));
+    }
+
+    // returns false if nonce was received already
+    public boolean markReceived(byte[] wireNonce) {
+        return getReplayWindow(getStream(wireNonce)).markReceived(getCounter(wireNonce));
+    }
+
+    private synchronized ReplayWindow getReplayWindow(int stream) {
+        if (replayWindows[stream] == null)
+            replayWindows[stream] = new ReplayWindow();
+
+        return replayWindows[stream];
+    }
+
+    public static int getStream(byte[] wireNonce) {
+        return wireNonce[0] & 0xFF;
+    }
+
+    public static long getCounter(byte[] wireNonce) {
+        return ByteBuffer.wrap(wireNonce).getLong() & MAX_COUNTER;
+    }
+
+    public static byte[] expand(byte[] wireNonce, Endpoint sender) {
+        return ByteBuffer.allocate(NONCE_LENGTH)
+                .putInt(sender.getNoncePrefix())
+                .put(wireNonce)
+                .array();
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.pilot.security;
+
+import androidx.annotation.GuardedBy;
+
+import com.example.pilot.security.exceptions.SecurityException;
+
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Keeps resumption ticket issued by server after successful session, so that reconnect can skip certificate,
+ * RSA key transport and password. Reconnect presents the ticket together with client random and binder
+ * (MAC proving it knows secret of the ticket), server answers with its random, picked suites and finished MAC,
+ * both sides derive TCP and UDP keys from the secret and both randoms. Ticket is redeemed only once, server
+ * issues a new one in every session. Tickets are kept in memory only, secret is never written to disk.
+ *
+ * Derivation has to match pcdaemon/security/resumption_tickets.py
+ *
+ * Class is thread safe.
+ */
+@Singleton
+public class SessionResumption {
+    public static final int TICKET_LENGTH = 16;
+    public static final int RANDOM_LENGTH = 32;
+    public static final int MAC_LENGTH = 32;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final byte[] BINDER_LABEL = label("binder");
+    private static final byte[] FINISHED_LABEL = label("finished");
+    private static final byte[] TCP_KEY_LABEL = label("tcp key");
+    private static final byte[] UDP_KEY_LABEL = label("udp key");
+
+    public static class Ticket {
+        private final byte[] id;
+        private final byte[] secret;
+        private final SocketAddress server;
+        private final long expiresAtNs;
+
+        public Ticket(byte[] id, byte[] secret, SocketAddress server, long expiresAtNs) {
+            this.id = id;
+            this.secret = secret;
+            this.server = server;
+            this.expiresAtNs = expiresAtNs;
+        }
+
+        public byte[] getId() {
+            return id;
+        }
+
+        public boolean isUsableFor(SocketAddress server, long nowNs) {
+            return this.server != null && this.server.equals(server) && nowNs - expiresAtNs < 0;
+        }
+
+        // covers whole offer of RESUME, which is reused for full handshake if ticket is refused
+        public byte[] computeBinder(byte[] clientRandom, byte[] offer) throws SecurityException {
+            return hmac(secret, BINDER_LABEL, id, clientRandom, offer);
+        }
+
+        public boolean isFinishedValid(byte[] finished, byte[] clientRandom, byte[] serverRandom, byte[] pickedSuites) throws SecurityException {
+            return MessageDigest.isEqual(finished, hmac(secret, FINISHED_LABEL, clientRandom, serverRandom, pickedSuites));
+        }
+
+        public byte[] deriveTcpKey(byte[] clientRandom, byte[] serverRandom) throws SecurityException {
+            return hmac(secret, TCP_KEY_LABEL, clientRandom, serverRandom);
+        }
+
+        public byte[] deriveUdpKey(byte[] clientRandom, byte[] serverRandom) throws SecurityException {
+            return hmac(secret, UDP_KEY_LABEL, clientRandom, serverRandom);
+        }
+    }
+
+    @GuardedBy("this") private Ticket ticket;
+    // server of current connection, new ticket is bound to it
+    @GuardedBy("this") private SocketAddress server;
+
+    @Inject
+    public SessionResumption() {
+    }
+
+    public Ticket takeTicket(SocketAddress server) {
+        return takeTicket(server, System.nanoTime());
+    }
+
+    // ticket of given server if it's still valid, it's forgotten either way as it can't be redeemed twice
+    public synchronized Ticket takeTicket(SocketAddress server, long nowNs) {
+        Ticket taken = ticket;
+        ticket = null;
+        this.server = server;
+
+        return taken != null && taken.isUsableFor(server, nowNs) ? taken : null;
+    }
+
+    public void storeTicket(byte[] id, byte[] secret, long lifetimeMs) {
+        storeTicket(id, secret, lifetimeMs, System.nanoTime());
+    }
+
+    public synchronized void storeTicket(byte[] id, byte[] secret, long lifetimeMs, long nowNs) {
+        ticket = new Ticket(id, secret, server, nowNs + lifetimeMs * 1_000_000);
+    }
+
+    private static byte[] label(String name) {
+        return ("kntpilot " + name).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] hmac(byte[] secret, byte[]... parts) throws SecurityException {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, MAC_ALGORITHM));
+            for (byte[] part : parts)
+                mac.update(part);
+
+            return mac.doFinal();
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new SecurityException("Failed to compute " + MAC_ALGORITHM + " " + e.getMessage());
+        }
+    }
+}
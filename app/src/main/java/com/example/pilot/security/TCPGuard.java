@@ -2,46 +2,42 @@ package com.example.pilot.security;
 
 import com.example.pilot.security.exceptions.AuthenticationException;
 import com.example.pilot.security.exceptions.SecurityException;
+import com.example.pilot.security.utils.CipherSuite;
+import com.example.pilot.security.utils.Endpoint;
 
-import java.nio.charset.StandardCharsets;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.util.Base64;
+import java.nio.ByteBuffer;
 
 import javax.crypto.AEADBadTagException;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.KeyGenerator;
-import javax.crypto.NoSuchPaddingException;
-import javax.crypto.SecretKey;
-import javax.crypto.spec.GCMParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
+import javax.crypto.ShortBufferException;
 
 public class TCPGuard extends AbstractGuard{
-    private static final String KEY_ALGORITHM = "AES";
-    private static final String SYMMETRIC_ALGORITHM = "AES_256/GCM/NoPadding";
+    // used until server picks suite from the ones offered in HELLO
+    public static final CipherSuite DEFAULT_CIPHER_SUITE = CipherSuite.AES_256_GCM;
     private static final int MAC_LENGTH = 16; // bytes
-    private static final int NONCE_LENGTH = 12;
     private static final int KEY_LENGTH = 32;
 
-    public TCPGuard() throws NoSuchAlgorithmException {
-        super(NONCE_LENGTH, KEY_LENGTH, MAC_LENGTH, KEY_ALGORITHM);
+    public TCPGuard() {
+        this(Endpoint.CLIENT);
     }
 
+    public TCPGuard(Endpoint localEndpoint) {
+        super(localEndpoint, KEY_LENGTH, MAC_LENGTH, DEFAULT_CIPHER_SUITE);
+    }
 
-    @Override
-    public void setSessionKey(byte[] keyBytes) {
-        sessionKey = new SecretKeySpec(keyBytes, KEY_ALGORITHM);
+    // nonces are counted from 0 for every key, so every connection has to get a new one
+    public void renewSessionKey() {
+        setKey(generateKey(KEY_LENGTH));
     }
 
     @Override
     public byte[] encrypt(byte[] message, byte[] aad, byte[] nonce) throws SecurityException {
-        Cipher cipher = initCipher(nonce, Cipher.ENCRYPT_MODE, aad);
+        Cipher cipher = initCipher(nonce, Cipher.ENCRYPT_MODE);
 
         try {
+            cipher.updateAAD(aad);
             return cipher.doFinal(message);
         } catch (BadPaddingException | IllegalBlockSizeException e) {
             e.printStackTrace();
@@ -49,12 +45,30 @@ public class TCPGuard extends AbstractGuard{
         }
     }
 
+    @Override
+    public int encrypt(ByteBuffer message, byte[] aad, byte[] nonce, ByteBuffer output) throws SecurityException {
+        Cipher cipher = initCipher(nonce, Cipher.ENCRYPT_MODE);
+
+        try {
+            cipher.updateAAD(aad);
+            return cipher.doFinal(message, output);
+        } catch (BadPaddingException | IllegalBlockSizeException | ShortBufferException e) {
+            e.printStackTrace();
+            throw new SecurityException("Failed to encrypt message " + e.getMessage());
+        }
+    }
+
     @Override
     public byte[] decrypt(byte[] message, byte[] aad, byte[] nonce) throws SecurityException, AuthenticationException {
-        Cipher cipher = initCipher(nonce, Cipher.DECRYPT_MODE, aad);
+        assertNotReplayed(nonce);
+        Cipher cipher = initCipher(nonce, Cipher.DECRYPT_MODE);
 
         try {
-            return cipher.doFinal(message);
+            cipher.updateAAD(aad);
+            byte[] plaintext = cipher.doFinal(message);
+            markReceived(nonce);
+
+            return plaintext;
         } catch (AEADBadTagException tagException) {
             throw new AuthenticationException("MAC authentication failed " + tagException.getMessage());
         } catch (BadPaddingException | IllegalBlockSizeException e) {
@@ -62,18 +76,23 @@ public class TCPGuard extends AbstractGuard{
             throw new SecurityException("Failed to decrypt message " + e.getMessage());
         }
     }
-    private Cipher initCipher(byte[] nonce, int mode, byte[] aad) throws SecurityException {
+
+    @Override
+    public int decrypt(ByteBuffer message, byte[] aad, byte[] nonce, ByteBuffer output) throws SecurityException, AuthenticationException {
+        assertNotReplayed(nonce);
+        Cipher cipher = initCipher(nonce, Cipher.DECRYPT_MODE);
+
         try {
-            Cipher cipher = Cipher.getInstance(SYMMETRIC_ALGORITHM);
-            SecretKeySpec keySpec = new SecretKeySpec(sessionKey.getEncoded(), KEY_ALGORITHM);
-            GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(MAC_LENGTH * 8, nonce);
-            cipher.init(mode, keySpec, gcmParameterSpec);
             cipher.updateAAD(aad);
+            int written = cipher.doFinal(message, output);
+            markReceived(nonce);
 
-            return cipher;
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidAlgorithmParameterException | InvalidKeyException e) {
+            return written;
+        } catch (AEADBadTagException tagException) {
+            throw new AuthenticationException("MAC authentication failed " + tagException.getMessage());
+        } catch (BadPaddingException | IllegalBlockSizeException | ShortBufferException e) {
             e.printStackTrace();
-            throw new SecurityException("Failed to initialise cipher " + e.getMessage());
+            throw new SecurityException("Failed to decrypt message " + e.getMessage());
         }
     }
 }
@@ -6,64 +6,229 @@ import com.example.pilot.security.certificate.Certificate;
 import com.example.pilot.security.certificate.CertificateVerifier;
 import com.example.pilot.security.exceptions.KeyException;
 import com.example.pilot.security.exceptions.SecurityException;
+import com.example.pilot.security.utils.CipherSuite;
+import com.example.pilot.security.utils.KeyExchange;
 import com.example.pilot.security.utils.TLSCode;
 import com.example.pilot.security.utils.TLSPacket;
 
 import org.json.JSONException;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
 @Singleton
 public class TLSHandler {
     private static final String TAG = "TLS Handler";
-    // RSA PKCS#1 OAEP, this should be negotiated, TODO
+    // RSA PKCS#1 OAEP, used when RSA_OAEP key exchange is picked
     private static final String SUBJECT_ASYMMETRIC_ENCRYPTION_ALGORITHM = "RSA/NONE/OAEPWithSHA1AndMGF1Padding";
+    private static final String TRANSCRIPT_HASH_ALGORITHM = "SHA-256";
 
     private Socket serverSocket;
 
     private final TCPGuard tcpGuard;
+    private final UDPGuard udpGuard;
     private final CertificateVerifier certificateVerifier;
+    private final List<CipherSuite> offeredCipherSuites;
+    private final List<KeyExchange> offeredKeyExchanges;
+    private final SessionResumption sessionResumption;
+    // whether RSA key transport is accepted after ECDHE was offered, see SecurityModule
+    private final boolean rsaFallbackAllowed;
+    private final SecureRandom secureRandom;
 
     @Inject
-    public TLSHandler(CertificateVerifier certificateVerifier, TCPGuard tcpGuard) {
+    public TLSHandler(CertificateVerifier certificateVerifier, TCPGuard tcpGuard, UDPGuard udpGuard,
+                      @Named("cipher suites") List<CipherSuite> offeredCipherSuites,
+                      @Named("key exchanges") List<KeyExchange> offeredKeyExchanges,
+                      SessionResumption sessionResumption,
+                      @Named("rsa fallback") boolean rsaFallbackAllowed)
+    {
         this.certificateVerifier = certificateVerifier;
         this.tcpGuard = tcpGuard;
+        this.udpGuard = udpGuard;
+        this.offeredCipherSuites = offeredCipherSuites;
+        this.offeredKeyExchanges = offeredKeyExchanges;
+        this.sessionResumption = sessionResumption;
+        this.rsaFallbackAllowed = rsaFallbackAllowed;
+        this.secureRandom = new SecureRandom();
     }
 
     public void establishSecureChannel(Socket serverSocket) throws IOException, SecurityException {
+        long startNs = System.nanoTime();
         this.serverSocket = serverSocket;
+        SessionResumption.Ticket ticket = sessionResumption.takeTicket(serverSocket.getRemoteSocketAddress());
+        // share is sent right away, so that ECDHE takes single round trip like resumption
+        EphemeralKeyExchange keyExchange = offeredKeyExchanges.contains(KeyExchange.ECDHE_P256) ?
+                new EphemeralKeyExchange() : null;
+        byte[] offer = buildOffer(keyExchange);
+        byte[] pickedSuites;
+
+        if (ticket != null) {
+            Log.i(TAG, "sending resumption ticket");
+
+            byte[] clientRandom = generateRandom();
+            sendResume(ticket, clientRandom, offer);
+            TLSPacket reply = awaitTLSPacket(TLSCode.RESUMED, TLSCode.SUITES);
+
+            if (reply.code == TLSCode.RESUMED) {
+                finishResumption(ticket, clientRandom, reply.data);
+                logHandshakeTime("resumption", startNs);
+                return;
+            }
+
+            Log.i(TAG, "server refused resumption ticket, falling back to full handshake");
+            pickedSuites = reply.data;
+        } else {
+            Log.i(TAG, "sending hello");
+
+            sendHello(offer);
+
+            Log.i(TAG, "sent hello");
+
+            pickedSuites = awaitTLSPacket(TLSCode.SUITES).data;
+        }
 
-        Log.i(TAG, "sending hello");
+        applyCipherSuites(pickedSuites);
 
-        sendHello();
+        // server answers with certificate for RSA key transport or with signed share for ECDHE
+        TLSPacket reply = awaitTLSPacket(TLSCode.CERTIFICATE, TLSCode.KEY_SHARE);
 
-        Log.i(TAG, "sent hello");
+        if (reply.code == TLSCode.KEY_SHARE) {
+            finishKeyAgreement(keyExchange, offer, pickedSuites, reply.data);
+            logHandshakeTime(KeyExchange.ECDHE_P256.name(), startNs);
+            return;
+        }
 
-        byte[] certBytes = awaitCertificate();
+        if (keyExchange != null && !rsaFallbackAllowed)
+            throw new SecurityException("Server picked RSA key transport although ECDHE was offered");
 
         Log.i(TAG, "got certificiate");
 
-        Certificate certificate = assertValidCertificate(certBytes);
+        Certificate certificate = assertValidCertificate(reply.data);
 
         Log.i(TAG, "certificate valid, sending secret key");
 
-        sendEncryptedSessionKey(certificate);
+        tcpGuard.renewSessionKey();
+        sendEncryptedSessionKey(certificate, hashTranscript(offer, pickedSuites));
+
+        logHandshakeTime(KeyExchange.RSA_OAEP.name(), startNs);
+    }
+
+    private void logHandshakeTime(String variant, long startNs) {
+        Log.i(TAG, "secure channel established with " + variant + " handshake in " +
+                (System.nanoTime() - startNs) / 1_000_000 + " ms");
+    }
+
+    // offered suites and key exchanges (each preceded by their count), followed by ECDHE share if it's offered
+    private byte[] buildOffer(EphemeralKeyExchange keyExchange) {
+        byte[] suites = CipherSuite.encode(offeredCipherSuites);
+        byte[] keyExchanges = KeyExchange.encode(offeredKeyExchanges);
+        byte[] share = keyExchange != null ? keyExchange.getPublicShare() : new byte[0];
+
+        return ByteBuffer.allocate(2 + suites.length + keyExchanges.length + share.length)
+                .put((byte) suites.length)
+                .put(suites)
+                .put((byte) keyExchanges.length)
+                .put(keyExchanges)
+                .put(share)
+                .array();
+    }
+
+    // server's share is signed with key of its certificate over whole transcript, so that it can't be replaced
+    // or replayed from another handshake, both channel keys are derived from shared secret
+    private void finishKeyAgreement(EphemeralKeyExchange keyExchange, byte[] offer, byte[] pickedSuites, byte[] keyShare) throws SecurityException {
+        if (keyExchange == null)
+            throw new SecurityException("Server picked ECDHE which wasn't offered");
+
+        ByteBuffer buffer = ByteBuffer.wrap(keyShare);
+        byte[] certBytes;
+        byte[] serverShare = new byte[EphemeralKeyExchange.SHARE_LENGTH];
+        byte[] signature;
+
+        try {
+            certBytes = new byte[buffer.getShort() & 0xffff];
+            buffer.get(certBytes).get(serverShare);
+            signature = new byte[buffer.remaining()];
+            buffer.get(signature);
+        } catch (BufferUnderflowException e) {
+            throw new SecurityException("Malformed KEY_SHARE of size " + keyShare.length);
+        }
+
+        Certificate certificate = assertValidCertificate(certBytes);
+        byte[] transcript = ByteBuffer.allocate(offer.length + pickedSuites.length + serverShare.length)
+                .put(offer)
+                .put(pickedSuites)
+                .put(serverShare)
+                .array();
+
+        try {
+            if (!certificate.verifySubjectSignature(transcript, signature))
+                throw new SecurityException("Invalid signature of server key share");
+        } catch (KeyException e) {
+            throw new SecurityException(e.getMessage());
+        }
+
+        byte[] sharedSecret = keyExchange.computeSharedSecret(serverShare);
+        tcpGuard.setSessionKey(EphemeralKeyExchange.deriveTcpKey(sharedSecret, transcript));
+        udpGuard.setSessionKey(EphemeralKeyExchange.deriveUdpKey(sharedSecret, transcript));
+    }
+
+    private void sendResume(SessionResumption.Ticket ticket, byte[] clientRandom, byte[] offer) throws IOException, SecurityException {
+        byte[] data = ByteBuffer.allocate(SessionResumption.TICKET_LENGTH + SessionResumption.RANDOM_LENGTH +
+                        SessionResumption.MAC_LENGTH + offer.length)
+                .put(ticket.getId())
+                .put(clientRandom)
+                .put(ticket.computeBinder(clientRandom, offer))
+                .put(offer)
+                .array();
+
+        sendTLSInitData(TLSCode.RESUME, data);
+    }
+
+    // keys of both channels are derived from the ticket, server which doesn't know its secret can't forge finished
+    private void finishResumption(SessionResumption.Ticket ticket, byte[] clientRandom, byte[] resumed) throws SecurityException {
+        if (resumed.length != SessionResumption.RANDOM_LENGTH + 2 + SessionResumption.MAC_LENGTH)
+            throw new SecurityException("Malformed RESUMED of size " + resumed.length);
+
+        ByteBuffer buffer = ByteBuffer.wrap(resumed);
+        byte[] serverRandom = new byte[SessionResumption.RANDOM_LENGTH];
+        byte[] pickedSuites = new byte[2];
+        byte[] finished = new byte[SessionResumption.MAC_LENGTH];
+        buffer.get(serverRandom).get(pickedSuites).get(finished);
 
-        Log.i(TAG, "secret key sent, secure channel established successfully");
+        if (!ticket.isFinishedValid(finished, clientRandom, serverRandom, pickedSuites))
+            throw new SecurityException("Server failed to prove knowledge of resumption secret");
+
+        applyCipherSuites(pickedSuites);
+        tcpGuard.setSessionKey(ticket.deriveTcpKey(clientRandom, serverRandom));
+        udpGuard.setSessionKey(ticket.deriveUdpKey(clientRandom, serverRandom));
     }
 
+    private byte[] generateRandom() {
+        byte[] random = new byte[SessionResumption.RANDOM_LENGTH];
+        secureRandom.nextBytes(random);
+        return random;
+    }
 
-    private void sendEncryptedSessionKey(Certificate certificate) throws SecurityException {
+    // hash of hello and picked suites goes along with the key, server aborts if it saw different ones,
+    // so that RSA handshake is bound to its transcript like the signed ECDHE one
+    private void sendEncryptedSessionKey(Certificate certificate, byte[] transcriptHash) throws SecurityException {
         try {
-            byte[] key = certificate.getEncryptedSessionKey(tcpGuard.getSessionKey(), SUBJECT_ASYMMETRIC_ENCRYPTION_ALGORITHM);
+            byte[] key = certificate.getEncryptedSessionKey(tcpGuard.getSessionKey(), transcriptHash,
+                    SUBJECT_ASYMMETRIC_ENCRYPTION_ALGORITHM);
             sendTLSInitData(TLSCode.SECRET, key);
         } catch (KeyException | IOException e) {
             Log.w(TAG, e);
@@ -72,6 +237,17 @@ public class TLSHandler {
     }
 
 
+    // has to match _full_handshake of pcdaemon/security/tls_handler.py
+    public static byte[] hashTranscript(byte[] offer, byte[] pickedSuites) throws SecurityException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(TRANSCRIPT_HASH_ALGORITHM);
+            digest.update(offer);
+            return digest.digest(pickedSuites);
+        } catch (NoSuchAlgorithmException e) {
+            throw new SecurityException("Failed to hash handshake transcript " + e.getMessage());
+        }
+    }
+
     private Certificate assertValidCertificate(byte[] certBytes) throws SecurityException {
         try {
             Certificate certificate = new Certificate(certBytes);
@@ -86,37 +262,63 @@ public class TLSHandler {
         }
     }
 
-    private byte[] awaitCertificate() throws IOException {
-        int headerSize = TLSPacket.HEADER_SIZE;
-        byte[] headerBuff = new byte[headerSize];
-        int totalRead = 0;
+    // server picks suite of every channel from the offered ones, guards switch to it before any key is used
+    private void applyCipherSuites(byte[] suites) throws SecurityException {
+        if (suites.length != 2)
+            throw new SecurityException("Expected suites of 2 channels, got " + suites.length);
 
-        while (totalRead < headerSize) {
-            totalRead += serverSocket.getInputStream().read(headerBuff, totalRead, headerSize - totalRead);
+        try {
+            CipherSuite tcpSuite = CipherSuite.fromId(suites[0]);
+            CipherSuite udpSuite = CipherSuite.fromId(suites[1]);
+            tcpGuard.setCipherSuite(tcpSuite);
+            udpGuard.setCipherSuite(udpSuite);
+
+            Log.i(TAG, "server picked " + tcpSuite + " for TCP and " + udpSuite + " for UDP");
+        } catch (IllegalArgumentException e) {
+            throw new SecurityException("Server picked unknown cipher suite " + e.getMessage());
         }
+    }
 
-        ByteBuffer headerByteBuffer = ByteBuffer.wrap(headerBuff);
-        int code = headerByteBuffer.get();
-        short certSize = headerByteBuffer.getShort();
+    // next handshake packet with one of given codes, packets with other codes are skipped
+    private TLSPacket awaitTLSPacket(TLSCode... expectedCodes) throws IOException {
+        List<TLSCode> expected = Arrays.asList(expectedCodes);
 
-        TLSCode tlsCode = TLSCode.fromInteger(code);
-        if (!tlsCode.equals(TLSCode.CERTIFICATE)) {
-            Log.w(TAG, "TLS got unexpected code while waiting for certificate" + tlsCode);
-            return awaitCertificate();
+        while (true) {
+            byte[] basicHeader = readFully(TLSPacket.HEADER_SIZE);
+            ByteBuffer headerBuffer = ByteBuffer.wrap(basicHeader);
+            TLSCode tlsCode = TLSCode.fromInteger(headerBuffer.get());
+            int size = headerBuffer.getShort() & 0xffff;
+            int nonceLength = headerBuffer.get() & 0xff;
+
+            byte[] header = Arrays.copyOf(basicHeader, TLSPacket.HEADER_SIZE + nonceLength);
+            System.arraycopy(readFully(nonceLength), 0, header, TLSPacket.HEADER_SIZE, nonceLength);
+            byte[] data = readFully(size);
+
+            if (expected.contains(tlsCode))
+                return new TLSPacket(header, data);
+
+            Log.w(TAG, "TLS got unexpected code while waiting for " + expected + ": " + tlsCode);
         }
+    }
 
-        byte[] certBuff = new byte[certSize];
+    private byte[] readFully(int size) throws IOException {
+        InputStream inputStream = serverSocket.getInputStream();
+        byte[] buff = new byte[size];
+        int totalRead = 0;
 
-        totalRead = 0;
-        while (totalRead < certSize) {
-            totalRead += serverSocket.getInputStream().read(certBuff, totalRead, certSize - totalRead);
+        while (totalRead < size) {
+            int read = inputStream.read(buff, totalRead, size - totalRead);
+            if (read < 0)
+                throw new IOException("Connection closed during TLS handshake");
+            totalRead += read;
         }
 
-        return certBuff;
+        return buff;
     }
 
-    private void sendHello() throws IOException {
-        sendTLSInitData(TLSCode.HELLO, new byte[0]);
+    // suites and key exchanges in order of preference, server picks the first ones it supports
+    private void sendHello(byte[] offer) throws IOException {
+        sendTLSInitData(TLSCode.HELLO, offer);
     }
 
     private void sendTLSInitData(TLSCode code, byte[] data) throws IOException {
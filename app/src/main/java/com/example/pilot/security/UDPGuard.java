@@ -1,58 +1,66 @@
 package com.example.pilot.security;
 
-import android.util.Log;
-
 import com.example.pilot.security.exceptions.AuthenticationException;
 import com.example.pilot.security.exceptions.SecurityException;
+import com.example.pilot.security.utils.CipherSuite;
+import com.example.pilot.security.utils.Endpoint;
 
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
+import java.nio.ByteBuffer;
 
 import javax.crypto.AEADBadTagException;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
-import javax.crypto.SecretKey;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
+import javax.crypto.ShortBufferException;
 
 public class UDPGuard extends AbstractGuard{
-    private static final String TAG = "UDP Guard";
-    private static final String KEY_ALGORITHM = "ChaCha20-Poly1305";
-    private static final String SYMMETRIC_ALGORITHM = "ChaCha20/Poly1305/NoPadding";
+    // used until server picks suite from the ones offered in HELLO
+    public static final CipherSuite DEFAULT_CIPHER_SUITE = CipherSuite.CHACHA20_POLY1305;
     private static final int MAC_LENGTH = 16; // bytes
-    private static final int NONCE_LENGTH = 12;
-    private static final int KEY_LENGTH = 32;
 
     public UDPGuard() {
-        super(NONCE_LENGTH, MAC_LENGTH);
+        this(Endpoint.CLIENT);
     }
 
-    @Override
-    public void setSessionKey(byte[] keyBytes) {
-        sessionKey = new SecretKeySpec(keyBytes, SYMMETRIC_ALGORITHM);
+    public UDPGuard(Endpoint localEndpoint) {
+        super(localEndpoint, MAC_LENGTH, DEFAULT_CIPHER_SUITE);
     }
 
     @Override
     public byte[] encrypt(byte[] message, byte[] aad, byte[] nonce) throws SecurityException {
-        Cipher cipher = initCipher(nonce, Cipher.ENCRYPT_MODE, aad);
+        Cipher cipher = initCipher(nonce, Cipher.ENCRYPT_MODE);
 
         try {
+            cipher.updateAAD(aad);
             return cipher.doFinal(message);
         } catch (BadPaddingException | IllegalBlockSizeException e) {
             throw new SecurityException("Failed to encrypt message " + e.getMessage());
         }
     }
 
+    @Override
+    public int encrypt(ByteBuffer message, byte[] aad, byte[] nonce, ByteBuffer output) throws SecurityException {
+        Cipher cipher = initCipher(nonce, Cipher.ENCRYPT_MODE);
+
+        try {
+            cipher.updateAAD(aad);
+            return cipher.doFinal(message, output);
+        } catch (BadPaddingException | IllegalBlockSizeException | ShortBufferException e) {
+            throw new SecurityException("Failed to encrypt message " + e.getMessage());
+        }
+    }
+
     @Override
     public byte[] decrypt(byte[] message, byte[] aad, byte[] nonce) throws SecurityException, AuthenticationException {
-        Cipher cipher = initCipher(nonce, Cipher.DECRYPT_MODE, aad);
+        assertNotReplayed(nonce);
+        Cipher cipher = initCipher(nonce, Cipher.DECRYPT_MODE);
 
         try {
-            return cipher.doFinal(message);
+            cipher.updateAAD(aad);
+            byte[] plaintext = cipher.doFinal(message);
+            markReceived(nonce);
+
+            return plaintext;
         } catch (AEADBadTagException tagException) {
             throw new AuthenticationException("MAC authentication failed " + tagException.getMessage());
         } catch (BadPaddingException | IllegalBlockSizeException e) {
@@ -60,21 +68,21 @@ public class UDPGuard extends AbstractGuard{
         }
     }
 
-    private Cipher initCipher(byte[] nonce, int mode, byte[] aad) throws SecurityException {
-        try {
-            Cipher cipher = Cipher.getInstance(SYMMETRIC_ALGORITHM);
-
-            SecretKeySpec keySpec = new SecretKeySpec(sessionKey.getEncoded(), KEY_ALGORITHM);
-
-            IvParameterSpec ivParameterSpec = new IvParameterSpec(nonce);
+    @Override
+    public int decrypt(ByteBuffer message, byte[] aad, byte[] nonce, ByteBuffer output) throws SecurityException, AuthenticationException {
+        assertNotReplayed(nonce);
+        Cipher cipher = initCipher(nonce, Cipher.DECRYPT_MODE);
 
-            cipher.init(mode, keySpec, ivParameterSpec);
+        try {
             cipher.updateAAD(aad);
+            int written = cipher.doFinal(message, output);
+            markReceived(nonce);
 
-            return cipher;
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidAlgorithmParameterException | InvalidKeyException e) {
-            Log.wtf(TAG, "Failed to initialise cipher", e);
-            throw new SecurityException("Failed to initialise cipher " + e.getMessage());
+            return written;
+        } catch (AEADBadTagException tagException) {
+            throw new AuthenticationException("MAC authentication failed " + tagException.getMessage());
+        } catch (BadPaddingException | IllegalBlockSizeException | ShortBufferException e) {
+            throw new SecurityException("Failed to decrypt message " + e.getMessage());
         }
     }
 }
@@ -2,6 +2,7 @@ package com.example.pilot.security.certificate;
 
 import com.example.pilot.security.exceptions.KeyException;
 import com.example.pilot.security.exceptions.SecurityException;
+import com.example.pilot.security.utils.P256;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -25,6 +26,12 @@ import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 
 public class Certificate {
+    private static final String RSA_SUBJECT = "RSA";
+    private static final String EC_SUBJECT = "EC";
+    private static final String EC_CURVE = "P-256";
+    // used by subject with EC key to sign its ephemeral key shares
+    private static final String SUBJECT_SIGNATURE_ALGORITHM = "SHA256withECDSA";
+
     private final String signature_algorithm;
     private final JSONObject jsonCertificate;
     private boolean isVerified;
@@ -78,7 +85,11 @@ public class Certificate {
 
             // TODO assert supported subject params
 
-            // for now its assumed to be RSA
+            // certificates without subject algorithm were issued before EC subjects were supported
+            String subjectAlgorithm = jsonCertificate.optString("subject_algorithm", RSA_SUBJECT);
+            if (subjectAlgorithm.equals(EC_SUBJECT))
+                return buildECPublicKey(subjectParams, subjectPublicKey);
+
             return buildRSAPublicKey(subjectParams, subjectPublicKey);
 
         } catch (InvalidKeySpecException | JSONException | NoSuchAlgorithmException e) {
@@ -88,20 +99,43 @@ public class Certificate {
     }
 
 
-    public byte[] getEncryptedSessionKey(SecretKey secretKey, String expectedAlgorithm) throws KeyException, SecurityException {
+    // key is followed by hash of the handshake transcript in the same ciphertext
+    public byte[] getEncryptedSessionKey(SecretKey secretKey, byte[] transcriptHash, String expectedAlgorithm) throws KeyException, SecurityException {
         try {
             PublicKey subjectPublicKey = getSubjectPublicKey();
 
             Cipher cipher = Cipher.getInstance(expectedAlgorithm);
             cipher.init(Cipher.ENCRYPT_MODE, subjectPublicKey);
+            cipher.update(secretKey.getEncoded());
 
-            return cipher.doFinal(secretKey.getEncoded());
+            return cipher.doFinal(transcriptHash);
         } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | IllegalBlockSizeException | BadPaddingException e) {
             e.printStackTrace();
             throw new KeyException("Failed to encrypt secret key " + e.getMessage());
         }
     }
 
+    // key share of ECDHE handshake has to be signed by the subject
+    public boolean verifySubjectSignature(byte[] data, byte[] signature) throws KeyException, SecurityException {
+        try {
+            Signature verifier = Signature.getInstance(SUBJECT_SIGNATURE_ALGORITHM);
+            verifier.initVerify(getSubjectPublicKey());
+            verifier.update(data);
+            return verifier.verify(signature);
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            throw new KeyException("Failed to verify subject signature " + e.getMessage());
+        }
+    }
+
+    private PublicKey buildECPublicKey(JSONObject subjectParams, JSONObject subjectPublicKey) throws JSONException, KeyException {
+        String curve = subjectParams.getString("curve");
+        if (!curve.equals(EC_CURVE))
+            throw new KeyException("Unsupported curve " + curve);
+
+        return P256.toPublicKey(new BigInteger(subjectPublicKey.getString("x")),
+                new BigInteger(subjectPublicKey.getString("y")));
+    }
+
     private PublicKey buildRSAPublicKey(JSONObject subjectParams, JSONObject subjectPublicKey) throws JSONException, NoSuchAlgorithmException, InvalidKeySpecException {
         String n = subjectPublicKey.getString("n");
         String e = subjectPublicKey.getString("e");
@@ -0,0 +1,92 @@
+package com.example.pilot.security.utils;
+
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+
+// AEAD protecting a channel, ids have to match pcdaemon/security/cipher_suite.py
+public enum CipherSuite {
+    AES_256_GCM(0, "AES", "AES_256/GCM/NoPadding"),
+    CHACHA20_POLY1305(1, "ChaCha20-Poly1305", "ChaCha20/Poly1305/NoPadding");
+
+    private static final String PREFERENCE_SEPARATOR = ",";
+
+    private final int id;
+    private final String keyAlgorithm;
+    private final String transformation;
+
+    CipherSuite(int id, String keyAlgorithm, String transformation) {
+        this.id = id;
+        this.keyAlgorithm = keyAlgorithm;
+        this.transformation = transformation;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    public String getTransformation() {
+        return transformation;
+    }
+
+    public AlgorithmParameterSpec createParameterSpec(byte[] nonce, int macLength) {
+        if (this == AES_256_GCM)
+            return new GCMParameterSpec(macLength * 8, nonce);
+
+        return new IvParameterSpec(nonce);
+    }
+
+    public static CipherSuite fromId(int id) {
+        for (CipherSuite suite : values()) {
+            if (suite.id == id)
+                return suite;
+        }
+
+        throw new IllegalArgumentException("cipher suite [" + id + "] is not supported");
+    }
+
+    // ids in order of preference, sent in HELLO
+    public static byte[] encode(List<CipherSuite> suites) {
+        byte[] encoded = new byte[suites.size()];
+        for (int i = 0; i < encoded.length; i++)
+            encoded[i] = (byte) suites.get(i).id;
+
+        return encoded;
+    }
+
+    public static String toPreference(List<CipherSuite> suites) {
+        StringBuilder builder = new StringBuilder();
+        for (CipherSuite suite : suites) {
+            if (builder.length() > 0)
+                builder.append(PREFERENCE_SEPARATOR);
+            builder.append(suite.name());
+        }
+
+        return builder.toString();
+    }
+
+    // names no longer known are skipped, so that preference saved by older version is still usable
+    public static List<CipherSuite> fromPreference(String preference) {
+        List<CipherSuite> suites = new ArrayList<>();
+        if (preference == null || preference.isEmpty())
+            return suites;
+
+        for (String name : preference.split(PREFERENCE_SEPARATOR)) {
+            try {
+                CipherSuite suite = valueOf(name);
+                if (!suites.contains(suite))
+                    suites.add(suite);
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+
+        return suites;
+    }
+}
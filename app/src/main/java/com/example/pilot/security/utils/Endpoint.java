@@ -0,0 +1,16 @@
+package com.example.pilot.security.utils;
+
+// side sending a packet, it's part of the nonce so that client and server never use the same one under shared key
+public enum Endpoint {
+    CLIENT,
+    SERVER;
+
+    public Endpoint getPeer() {
+        return this == CLIENT ? SERVER : CLIENT;
+    }
+
+    // has to match pcdaemon/security/session_nonces.py
+    public int getNoncePrefix() {
+        return ordinal() + 1;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.pilot.security.utils;
+
+import java.util.List;
+
+// how TCP key is established in full handshake, ids have to match pcdaemon/security/handshake_offer.py
+public enum KeyExchange {
+    // client generated key wrapped with server's RSA key from certificate, UDP key sent in UDP_SECRET
+    RSA_OAEP(0),
+    // ephemeral P-256 ECDH, server's share signed with ECDSA key from certificate, both keys derived with HKDF
+    ECDHE_P256(1);
+
+    private final int id;
+
+    KeyExchange(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public static KeyExchange fromId(int id) {
+        for (KeyExchange keyExchange : values()) {
+            if (keyExchange.id == id)
+                return keyExchange;
+        }
+
+        throw new IllegalArgumentException("key exchange [" + id + "] is not supported");
+    }
+
+    // ids in order of preference, sent in HELLO
+    public static byte[] encode(List<KeyExchange> keyExchanges) {
+        byte[] encoded = new byte[keyExchanges.size()];
+        for (int i = 0; i < encoded.length; i++)
+            encoded[i] = (byte) keyExchanges.get(i).id;
+
+        return encoded;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.pilot.security.utils;
+
+import com.example.pilot.security.exceptions.KeyException;
+
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.util.Arrays;
+
+// NIST P-256 public keys and their uncompressed SEC 1 encoding (0x04 | x | y), as sent in key shares
+public class P256 {
+    public static final String CURVE_NAME = "secp256r1";
+    public static final int COORDINATE_LENGTH = 32;
+    public static final int POINT_LENGTH = 1 + 2 * COORDINATE_LENGTH;
+    private static final byte UNCOMPRESSED = 0x04;
+
+    public static ECParameterSpec getParameters() throws GeneralSecurityException {
+        AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+        parameters.init(new ECGenParameterSpec(CURVE_NAME));
+        return parameters.getParameterSpec(ECParameterSpec.class);
+    }
+
+    public static ECPublicKey toPublicKey(BigInteger x, BigInteger y) throws KeyException {
+        try {
+            ECPublicKeySpec keySpec = new ECPublicKeySpec(new ECPoint(x, y), getParameters());
+            return (ECPublicKey) KeyFactory.getInstance("EC").generatePublic(keySpec);
+        } catch (GeneralSecurityException e) {
+            throw new KeyException("Failed to build P-256 public key " + e.getMessage());
+        }
+    }
+
+    public static byte[] encodePoint(ECPublicKey publicKey) {
+        byte[] encoded = new byte[POINT_LENGTH];
+        encoded[0] = UNCOMPRESSED;
+        writeCoordinate(publicKey.getW().getAffineX(), encoded, 1);
+        writeCoordinate(publicKey.getW().getAffineY(), encoded, 1 + COORDINATE_LENGTH);
+
+        return encoded;
+    }
+
+    public static ECPublicKey decodePoint(byte[] encoded) throws KeyException {
+        if (encoded.length != POINT_LENGTH || encoded[0] != UNCOMPRESSED)
+            throw new KeyException("Expected uncompressed P-256 point, got " + encoded.length + " bytes");
+
+        BigInteger x = new BigInteger(1, Arrays.copyOfRange(encoded, 1, 1 + COORDINATE_LENGTH));
+        BigInteger y = new BigInteger(1, Arrays.copyOfRange(encoded, 1 + COORDINATE_LENGTH, POINT_LENGTH));
+
+        return toPublicKey(x, y);
+    }
+
+    // big endian, left padded with zeros
+    private static void writeCoordinate(BigInteger coordinate, byte[] output, int offset) {
+        byte[] bytes = coordinate.toByteArray();
+        int length = Math.min(bytes.length, COORDINATE_LENGTH);
+        System.arraycopy(bytes, bytes.length - length, output, offset + COORDINATE_LENGTH - length, length);
+    }
+}
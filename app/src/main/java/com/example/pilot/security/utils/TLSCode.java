@@ -4,7 +4,18 @@ public enum TLSCode {
     HELLO,
     CERTIFICATE,
     SECRET,
-    SECURE;
+    SECURE,
+    // SECURE with cleartext media header in front of encrypted data, authenticated as associated data
+    SECURE_MEDIA,
+    // cipher suites picked by server for TCP and UDP channel, sent in reply to HELLO before CERTIFICATE
+    SUITES,
+    // sent instead of HELLO by client holding resumption ticket: ticket, client random, binder, offer as in HELLO
+    RESUME,
+    // server accepted the ticket: server random, picked suites, finished MAC, refused ticket is answered with SUITES
+    RESUMED,
+    // ECDHE reply to HELLO instead of CERTIFICATE: certificate with server's EC key, its ephemeral share
+    // and signature of the transcript
+    KEY_SHARE;
 
     public static TLSCode fromInteger(int x) {
         switch(x) {
@@ -12,6 +23,11 @@ public enum TLSCode {
             case 1: return CERTIFICATE;
             case 2: return SECRET;
             case 3: return SECURE;
+            case 4: return SECURE_MEDIA;
+            case 5: return SUITES;
+            case 6: return RESUME;
+            case 7: return RESUMED;
+            case 8: return KEY_SHARE;
             default:
                 throw new IllegalArgumentException("code [" + x + "] is not supported");
         }
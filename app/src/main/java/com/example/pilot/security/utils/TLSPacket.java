@@ -5,6 +5,8 @@ import java.nio.ByteOrder;
 
 public class TLSPacket {
     public static final int HEADER_SIZE = 4;
+    // SECURE_MEDIA packets carry media header of that size in clear right after the nonce
+    public static final int CLEARTEXT_MEDIA_HEADER_SIZE = 16;
 
     public final TLSCode code;
     public final short size;
@@ -0,0 +1,116 @@
+package com.example.pilot.security.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight counterpart of TLSPacket, bound once to a reusable receive buffer.
+ * Parsing doesn't allocate, data is exposed as a view sharing content with the underlying buffer,
+ * header (few bytes) is copied to reused array. Cleartext media header of SECURE_MEDIA packets is exposed
+ * separately, so that it can be inspected before data is decrypted, and is included in the authenticated header.
+ *
+ * Packet is expected to start at index 0 and end at buffer's limit. Class is not thread safe.
+ */
+public class TLSPacketView {
+    private final ByteBuffer packet;
+    private final ByteBuffer data;
+    private byte[] header;
+    private byte[] nonce;
+    private final byte[] cleartext;
+    private final ByteBuffer cleartextView;
+
+    private TLSCode code;
+    private short size;
+    private int nonceSize;
+    private int cleartextSize;
+
+    public TLSPacketView(ByteBuffer packet) {
+        this.packet = packet;
+        this.data = packet.duplicate();
+        this.header = new byte[0];
+        this.nonce = new byte[0];
+        this.cleartext = new byte[TLSPacket.CLEARTEXT_MEDIA_HEADER_SIZE];
+        this.cleartextView = ByteBuffer.wrap(cleartext);
+    }
+
+    public TLSPacketView parse() {
+        int length = packet.limit();
+
+        if (length < TLSPacket.HEADER_SIZE)
+            throw new IllegalArgumentException("Packet too short for TLS header, got " + length + " bytes");
+
+        code = TLSCode.fromInteger(packet.get(0));
+        size = packet.getShort(1);
+        nonceSize = packet.get(3) & 0xFF;
+
+        cleartextSize = code == TLSCode.SECURE_MEDIA ? TLSPacket.CLEARTEXT_MEDIA_HEADER_SIZE : 0;
+
+        int headerSize = TLSPacket.HEADER_SIZE + nonceSize + cleartextSize;
+        if (headerSize > length)
+            throw new IllegalArgumentException("Header of length " + headerSize + " exceeds packet of length " + length);
+
+        data.clear();
+        data.position(headerSize);
+        data.limit(length);
+
+        // nonce size is constant for given guard so these will be allocated once per packet code
+        if (header.length != headerSize)
+            header = new byte[headerSize];
+
+        if (nonce.length != nonceSize)
+            nonce = new byte[nonceSize];
+
+        for (int i = 0; i < headerSize; i++)
+            header[i] = packet.get(i);
+
+        System.arraycopy(header, TLSPacket.HEADER_SIZE, nonce, 0, nonceSize);
+        System.arraycopy(header, TLSPacket.HEADER_SIZE + nonceSize, cleartext, 0, cleartextSize);
+
+        cleartextView.clear();
+        cleartextView.limit(cleartextSize);
+
+        return this;
+    }
+
+    public TLSCode getCode() {
+        return code;
+    }
+
+    public short getSize() {
+        return size;
+    }
+
+    public int getNonceSize() {
+        return nonceSize;
+    }
+
+    // reused between packets, valid until next parse
+    public byte[] getNonce() {
+        return nonce;
+    }
+
+    // basic header with nonce and cleartext media header if present, authenticated as associated data,
+    // reused between packets, valid until next parse
+    public byte[] getHeader() {
+        return header;
+    }
+
+    // 0 unless packet is SECURE_MEDIA
+    public int getCleartextSize() {
+        return cleartextSize;
+    }
+
+    // view of cleartext media header, starts at index 0, bound once so it can be wrapped in media packet view,
+    // it isn't authenticated until data is decrypted
+    public ByteBuffer getCleartext() {
+        return cleartextView;
+    }
+
+    public void copyCleartextTo(ByteBuffer dst) {
+        dst.put(cleartext, 0, cleartextSize);
+    }
+
+    // view of (encrypted) data, consumed by whoever reads it
+    public ByteBuffer getData() {
+        return data;
+    }
+}
@@ -2,6 +2,7 @@ package com.example.pilot.ui;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import android.net.ConnectivityManager;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
 import android.util.Log;
@@ -22,8 +23,11 @@ import com.example.pilot.IOC.SecurityModule;
 import com.example.pilot.R;
 import com.example.pilot.networking.observers.AuthStatusObserver;
 import com.example.pilot.networking.observers.ConnectionStatusObserver;
+import com.example.pilot.networking.tcp.HeartbeatMonitor;
 import com.example.pilot.networking.tcp.Listener;
+import com.example.pilot.networking.udp.FrameAckBatcher;
 import com.example.pilot.networking.udp.MediaReceiver;
+import com.example.pilot.networking.udp.NetworkChangeMonitor;
 import com.example.pilot.networking.tcp.MessageReceiver;
 import com.example.pilot.networking.tcp.Sender;
 import com.example.pilot.ui.events.ImageScaleListener;
@@ -32,6 +36,7 @@ import com.example.pilot.ui.utils.GuiRunner;
 import com.example.pilot.ui.utils.ImageViewController;
 import com.example.pilot.ui.controller.KeyboardController;
 import com.example.pilot.ui.utils.SoundPlayer;
+import com.example.pilot.ui.utils.VideoPlayer;
 import com.example.pilot.ui.controller.AuthController;
 import com.example.pilot.ui.controller.MenuController;
 import com.example.pilot.ui.controller.SettingsController;
@@ -41,9 +46,13 @@ import com.example.pilot.networking.tcp.MessageSender;
 import com.example.pilot.networking.tcp.ConnectionHandler;
 import com.example.pilot.utils.SpecialKeyCode;
 import com.example.pilot.utils.PreferencesLoader;
+import com.example.pilot.security.CipherSuiteCalibration;
+import com.example.pilot.security.utils.CipherSuite;
 
 
 import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -73,6 +82,12 @@ public class MainActivity extends AppCompatActivity implements GuiRunner, Connec
     @Inject
     MediaReceiver mediaReceiver;
 
+    @Inject
+    NetworkChangeMonitor networkChangeMonitor;
+
+    @Inject
+    HeartbeatMonitor heartbeatMonitor;
+
     @Inject
     MessageReceiver messageReceiver;
 
@@ -91,6 +106,12 @@ public class MainActivity extends AppCompatActivity implements GuiRunner, Connec
     @Inject
     SoundPlayer soundPlayer;
 
+    @Inject
+    VideoPlayer videoPlayer;
+
+    @Inject
+    FrameAckBatcher frameAckBatcher;
+
     @Inject
     KeyboardController keyboardController;
 
@@ -144,7 +165,7 @@ public class MainActivity extends AppCompatActivity implements GuiRunner, Connec
     }
 
     private void initIOCModules() {
-        SecurityModule securityModule = new SecurityModule(this.getFilesDir(), preferencesLoader.getCAPublicKeyPath());
+        SecurityModule securityModule = new SecurityModule(this.getFilesDir(), preferencesLoader.getCAPublicKeyPath(), loadCipherSuites());
 
         ImageView imageView = createImageView();
         EditText keyboard = findViewById(R.id.keyboardInput);
@@ -164,7 +185,33 @@ public class MainActivity extends AppCompatActivity implements GuiRunner, Connec
                 .inject(this);
     }
 
+    // suites are ranked by speed on this device once, at first launch, in the background,
+    // until then default ranking is offered
+    private List<CipherSuite> loadCipherSuites() {
+        List<CipherSuite> cipherSuites = new CopyOnWriteArrayList<>(preferencesLoader.getCipherSuites());
+
+        if (cipherSuites.isEmpty()) {
+            cipherSuites.addAll(CipherSuiteCalibration.defaultRanking());
+            calibrateCipherSuites(cipherSuites);
+        }
+
+        return cipherSuites;
+    }
+
+    private void calibrateCipherSuites(List<CipherSuite> offeredCipherSuites) {
+        new Thread(() -> {
+            List<CipherSuite> ranked = new CipherSuiteCalibration().rankAvailableSuites();
+            Log.i(TAG, "cipher suites ranked by calibration: " + ranked);
+
+            preferencesLoader.saveCipherSuites(ranked);
+            CipherSuiteCalibration.applyRanking(offeredCipherSuites, ranked);
+        }, "Cipher suite calibration").start();
+    }
+
     private void initMediaStreamHandlers() {
+        mediaReceiver.setFragmentsMissingObserver(messageSender);
+        mediaReceiver.setQosChangedObserver(messageSender);
+        videoPlayer.setFrameAckBatcher(frameAckBatcher);
         mediaReceiver.addMediaStreamHandler(audioStreamHandler, false);
         mediaReceiver.addMediaStreamHandler(videoStreamHandler, true);
     }
@@ -183,6 +230,10 @@ public class MainActivity extends AppCompatActivity implements GuiRunner, Connec
         connectionHandler.addConnectionStatusObserver(keyboardController);
         connectionHandler.addConnectionStatusObserver(userInputController);
         connectionHandler.addConnectionStatusObserver(this);
+        connectionHandler.addConnectionStatusObserver(networkChangeMonitor);
+        connectionHandler.addConnectionStatusObserver(heartbeatMonitor);
+
+        networkChangeMonitor.register(getSystemService(ConnectivityManager.class));
 
         listener.addMsgRcvdObserver(messageReceiver);
     }
@@ -237,6 +288,16 @@ public class MainActivity extends AppCompatActivity implements GuiRunner, Connec
         });
 
 
+        menu.findItem(R.id.latestFrameBtn).setOnMenuItemClickListener(e -> {
+            // newest screenshot is shown as soon as it's assembled, skipping jitter buffer
+            boolean enabled = !videoPlayer.isLatestFrameMode();
+            videoStreamHandler.setLatestFrameMode(enabled);
+            videoPlayer.setLatestFrameMode(enabled);
+            menuController.setLatestFrameMode(enabled);
+
+            return true;
+        });
+
         menu.findItem(R.id.CtrlBtn)
                 .setOnMenuItemClickListener(e -> modifierHandler(KeyboardModifier.CTRL_KEY));
 
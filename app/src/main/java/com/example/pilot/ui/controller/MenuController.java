@@ -92,7 +92,7 @@ public class MenuController implements ConnectionStatusObserver, AuthStatusObser
         int[] items = {
                 R.id.monitorBtn, R.id.keyboardBtn, R.id.WinBtn, R.id.upBtn, R.id.downBtn,
                 R.id.fpsValue, R.id.backspaceBtn, R.id.CtrlBtn, R.id.AltBtn, R.id.ShiftBtn,
-                R.id.muteBtn
+                R.id.muteBtn, R.id.latestFrameBtn
         };
         Arrays.stream(items).forEach(id -> menu.findItem(id).setVisible(!hidden));
         menu.findItem(R.id.rightMouseON).setVisible(!hidden);
@@ -124,6 +124,10 @@ public class MenuController implements ConnectionStatusObserver, AuthStatusObser
         menu.findItem(R.id.rightMouseON).setTitle("Right Mouse " + (on ? " OFF" : " ON"));
     }
 
+    public void setLatestFrameMode(boolean on) {
+        menu.findItem(R.id.latestFrameBtn).setTitle("Low Latency" + (on ? " OFF" : " ON"));
+    }
+
     public boolean getRightMouseStatus() {
         return rightMouseOn;
     }
@@ -2,6 +2,9 @@ package com.example.pilot.ui.utils;
 
 import android.view.MenuItem;
 
+import com.example.pilot.networking.tcp.Heartbeat;
+import com.example.pilot.networking.tcp.HeartbeatMonitor;
+
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -15,18 +18,20 @@ import javax.inject.Singleton;
 public class FpsUpdater {
     private final GuiRunner guiRunner;
     private final FPSCounter fpsCounter;
+    private final HeartbeatMonitor heartbeatMonitor;
     private long updateEveryMs;
 
     private final ExecutorService executorService;
     private Future<?> updaterTask;
 
     @Inject
-    public FpsUpdater(GuiRunner guiRunner, FPSCounter fpsCounter,
+    public FpsUpdater(GuiRunner guiRunner, FPSCounter fpsCounter, HeartbeatMonitor heartbeatMonitor,
                       @Named("fps ui update time") long updateEvery,
                       @Named("fps ui update time unit") TimeUnit timeUnit)
     {
         this.guiRunner = guiRunner;
         this.fpsCounter = fpsCounter;
+        this.heartbeatMonitor = heartbeatMonitor;
         this.executorService = Executors.newSingleThreadExecutor();
 
         this.updateEveryMs = TimeUnit.MILLISECONDS.convert(updateEvery, timeUnit);
@@ -43,8 +48,8 @@ public class FpsUpdater {
                     return;
                 }
 
-                int fps = fpsCounter.getFps();
-                guiRunner.scheduleGuiTask(() -> fpsBox.setTitle("FPS: " + fps));
+                String stats = formatStats();
+                guiRunner.scheduleGuiTask(() -> fpsBox.setTitle(stats));
 
                 if (Thread.currentThread().isInterrupted())
                     return;
@@ -52,6 +57,16 @@ public class FpsUpdater {
         });
     }
 
+    private String formatStats() {
+        String stats = "FPS: " + fpsCounter.getFps();
+
+        long rttMs = heartbeatMonitor.getRttMs();
+        if (rttMs != Heartbeat.UNKNOWN_RTT)
+            stats += " RTT: " + rttMs + "ms";
+
+        return stats;
+    }
+
     public void stop() {
         if (updaterTask != null) {
             updaterTask.cancel(true);
@@ -1,6 +1,7 @@
 package com.example.pilot.ui.utils;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.widget.ImageView;
 
@@ -70,7 +71,11 @@ public abstract class ImageViewer {
     }
 
     public void updateImage(ScreenShot ss) {
-        this.view.setImageBitmap(ss.toBitmap());
+        updateImage(ss.toBitmap());
+    }
+
+    public void updateImage(Bitmap bitmap) {
+        this.view.setImageBitmap(bitmap);
         Drawable d = this.view.getDrawable();
         this.real_img_w = d.getIntrinsicWidth();
         this.real_img_h = d.getIntrinsicHeight();
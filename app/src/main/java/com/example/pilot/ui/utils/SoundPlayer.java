@@ -4,6 +4,7 @@ import android.media.AudioAttributes;
 import android.media.AudioFormat;
 import android.media.AudioManager;
 import android.media.AudioTrack;
+import android.os.Process;
 import android.util.Log;
 
 import androidx.annotation.GuardedBy;
@@ -11,6 +12,7 @@ import androidx.annotation.GuardedBy;
 import com.example.pilot.networking.observers.ConnectionStatusObserver;
 import com.example.pilot.networking.udp.MediaCode;
 import com.example.pilot.networking.udp.MediaFrame;
+import com.example.pilot.utils.PriorityThreadFactory;
 
 import java.net.Socket;
 import java.util.concurrent.BlockingQueue;
@@ -22,6 +24,8 @@ import java.util.concurrent.TimeUnit;
 
 public class SoundPlayer implements MediaPlayer {
     private static final String TAG = "Sound Player";
+    // audio track underruns are audible, unlike late video frames
+    private static final int PLAYER_THREAD_PRIORITY = Process.THREAD_PRIORITY_URGENT_AUDIO;
     private static final int QUEUE_CAPACITY = 1;
     private final BlockingQueue<MediaFrame> buffer;
     @GuardedBy("this") private final AudioTrack audioTrack;
@@ -42,7 +46,8 @@ public class SoundPlayer implements MediaPlayer {
         this.sampleRate = sampleRate;
         this.samplesInSingleFrame = samplesInSingleFrame;
         buffer = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
-        executorService = Executors.newSingleThreadExecutor();
+        executorService = Executors.newSingleThreadExecutor(
+                new PriorityThreadFactory("sound player", PLAYER_THREAD_PRIORITY));
 
         audioTrack = initAudioPlayer(internalBufferSize);
     }
@@ -72,7 +77,7 @@ public class SoundPlayer implements MediaPlayer {
 
     public synchronized void setMuted(boolean muted) {
         this.muted = muted;
-        buffer.clear();
+        releaseBuffered();
         audioTrack.flush();
     }
 
@@ -87,10 +92,10 @@ public class SoundPlayer implements MediaPlayer {
             while (true) {
                 try {
                     MediaFrame frame = buffer.take();
-                    byte[] bytes = frame.getBytes();
                     synchronized (this) {
-                        audioTrack.write(bytes, 0, bytes.length);
+                        audioTrack.write(frame.getBytes(), 0, frame.getTotalSize());
                     }
+                    frame.release();
                 } catch (InterruptedException e) {
                     Log.d(TAG, "Sound player interrupted, exiting");
                     break;
@@ -99,6 +104,12 @@ public class SoundPlayer implements MediaPlayer {
         });
     }
 
+    private void releaseBuffered() {
+        MediaFrame frame;
+        while ((frame = buffer.poll()) != null)
+            frame.release();
+    }
+
     @Override
     public void enqueueMediaFrame(MediaFrame mediaFrame) throws InterruptedException {
         buffer.put(mediaFrame);
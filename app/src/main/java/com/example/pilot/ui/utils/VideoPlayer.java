@@ -1,7 +1,10 @@
 package com.example.pilot.ui.utils;
 
+import android.graphics.Bitmap;
 import android.util.Log;
 
+import com.example.pilot.networking.udp.FrameAckBatcher;
+import com.example.pilot.networking.udp.LatestFrameSlot;
 import com.example.pilot.networking.udp.MediaCode;
 import com.example.pilot.networking.udp.MediaFrame;
 import com.example.pilot.utils.ScreenShot;
@@ -11,6 +14,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class VideoPlayer implements MediaPlayer {
     private static final String TAG = "Video Player";
@@ -25,6 +29,15 @@ public class VideoPlayer implements MediaPlayer {
     private final BlockingQueue<MediaFrame> buffer;
     private final FPSCounter fpsCounter;
 
+    // in latest frame mode frames are taken from the slot instead of buffer and displayed without pacing
+    private final LatestFrameSlot latestFrameSlot;
+    private volatile boolean latestFrameMode;
+    // decoded bitmap waiting for gui thread, replaced if gui thread doesn't keep up
+    private final AtomicReference<Bitmap> pendingBitmap;
+
+    // null if server isn't given credits for frames
+    private FrameAckBatcher frameAckBatcher;
+
     private final ExecutorService executorService;
     private Future<?> playerTask;
 
@@ -33,7 +46,9 @@ public class VideoPlayer implements MediaPlayer {
 
     private int lastDisplayedSeq;
 
-    public VideoPlayer(GuiRunner guiRunner, ImageViewController imageViewer, FPSCounter fpsCounter, int maxFps) {
+    public VideoPlayer(GuiRunner guiRunner, ImageViewController imageViewer, FPSCounter fpsCounter,
+                       LatestFrameSlot latestFrameSlot, int maxFps)
+    {
         this.guiRunner = guiRunner;
         this.imageViewer = imageViewer;
         this.fpsCounter = fpsCounter;
@@ -43,9 +58,17 @@ public class VideoPlayer implements MediaPlayer {
         executorService = Executors.newSingleThreadExecutor();
         lastDisplayedSeq = -1;
         underrunOverrunDelta = 15;
+        this.latestFrameSlot = latestFrameSlot;
+        this.latestFrameMode = false;
+        this.pendingBitmap = new AtomicReference<>();
     }
 
 
+    // shouldn't be used when player is already running
+    public void setFrameAckBatcher(FrameAckBatcher frameAckBatcher) {
+        this.frameAckBatcher = frameAckBatcher;
+    }
+
     @Override
     public void enqueueMediaFrame(MediaFrame mediaFrame) throws InterruptedException {
         buffer.put(mediaFrame);
@@ -65,6 +88,8 @@ public class VideoPlayer implements MediaPlayer {
     public synchronized void start() {
         fpsCounter.reset();
         lastDisplayedSeq = -1;
+        if (frameAckBatcher != null)
+            frameAckBatcher.start();
         initPlayerTask();
     }
 
@@ -95,38 +120,108 @@ public class VideoPlayer implements MediaPlayer {
             playerTask = null;
         }
 
-        buffer.clear();
+        if (frameAckBatcher != null)
+            frameAckBatcher.stop();
+
+        releaseBuffered();
+    }
+
+    // player is restarted if it's running, stream handler should be switched as well
+    public synchronized void setLatestFrameMode(boolean enabled) {
+        if (latestFrameMode == enabled)
+            return;
+
+        latestFrameMode = enabled;
+
+        if (playerTask != null) {
+            playerTask.cancel(true);
+            releaseBuffered();
+            initPlayerTask();
+        }
+    }
+
+    public boolean isLatestFrameMode() {
+        return latestFrameMode;
+    }
+
+    private void releaseBuffered() {
+        MediaFrame frame;
+        while ((frame = buffer.poll()) != null)
+            frame.release();
+
+        latestFrameSlot.clear();
     }
 
     private void initPlayerTask() {
-        playerTask = executorService.submit(() -> {
-            Log.i(TAG,"Video player started");
+        playerTask = executorService.submit(latestFrameMode ? this::playLatestFrames : this::playBufferedFrames);
+    }
 
-            try {
-                while (true) {
-                    MediaFrame frame = buffer.take();
+    private void playBufferedFrames() {
+        Log.i(TAG,"Video player started");
 
-                    displayFrame(frame);
+        try {
+            while (true) {
+                MediaFrame frame = buffer.take();
 
-                    waitBeforeNextFrame();
-                }
-            } catch (InterruptedException consumed) {
-                Log.d(TAG,"Video player interrupted, exiting");
+                displayFrame(frame);
+
+                waitBeforeNextFrame();
             }
-        });
+        } catch (InterruptedException consumed) {
+            Log.d(TAG,"Video player interrupted, exiting");
+        }
+    }
+
+    private void playLatestFrames() {
+        Log.i(TAG,"Video player started in latest frame mode");
+
+        try {
+            while (true)
+                displayLatestFrame(latestFrameSlot.take());
+        } catch (InterruptedException consumed) {
+            Log.d(TAG,"Video player interrupted, exiting");
+        }
+    }
+
+    // gui thread is scheduled only if it doesn't have bitmap to display yet, otherwise that bitmap is replaced
+    private void displayLatestFrame(MediaFrame mediaFrame) {
+        final int seqNum = mediaFrame.getSeqNum();
+        final Bitmap bitmap = new ScreenShot(mediaFrame.getBytes(), mediaFrame.getTotalSize()).toBitmap();
+        mediaFrame.release();
+        onFramePlayed(seqNum);
+
+        if (pendingBitmap.getAndSet(bitmap) == null) {
+            guiRunner.scheduleGuiTask(() -> {
+                Bitmap latest = pendingBitmap.getAndSet(null);
+                if (latest != null) {
+                    imageViewer.updateImage(latest);
+                    fpsCounter.onFrameReceived();
+                }
+            });
+        }
     }
 
     private void displayFrame(MediaFrame mediaFrame) {
-        final ScreenShot screenShot = new ScreenShot(mediaFrame.getBytes());
+        // decode here so that frame buffer can go back to the pool before gui thread gets to it
+        final int seqNum = mediaFrame.getSeqNum();
+        final Bitmap bitmap = new ScreenShot(mediaFrame.getBytes(), mediaFrame.getTotalSize()).toBitmap();
+        mediaFrame.release();
+        onFramePlayed(seqNum);
+
         guiRunner.scheduleGuiTask(() -> {
-            int seqNum = mediaFrame.getSeqNum();
             if (lastDisplayedSeq < seqNum) {
                 lastDisplayedSeq = seqNum;
-                imageViewer.updateImage(screenShot);
+                imageViewer.updateImage(bitmap);
             }
         });
     }
 
+    // frame is decoded and handed to gui thread, it doesn't hold any buffer anymore
+    private void onFramePlayed(int seqNum) {
+        if (frameAckBatcher != null)
+            frameAckBatcher.onFramePlayed(seqNum, System.nanoTime());
+    }
+
     private void waitBeforeNextFrame() throws InterruptedException {
         long estimatedFrameTime = fpsCounter.getFrameTimeApproxMs();
         float sleepTimeCoefficient = 1.0f + underrunOverrunDelta * 0.01f;
@@ -0,0 +1,73 @@
+package com.example.pilot.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative values with power-of-two buckets, bucket 0 holds 0, bucket k > 0 holds values
+ * in [2^(k-1), 2^k - 1], values above last bucket are counted in it. Recording doesn't allocate nor lock,
+ * so it can be used on hot paths and read from other threads.
+ */
+public class Log2Histogram {
+    private final AtomicLongArray buckets;
+
+    public Log2Histogram(int bucketCount) {
+        this.buckets = new AtomicLongArray(bucketCount);
+    }
+
+    public void record(long value) {
+        int bucket = value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+        buckets.incrementAndGet(Math.min(bucket, buckets.length() - 1));
+    }
+
+    public long getCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    public int getBucketCount() {
+        return buckets.length();
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++)
+            total += buckets.get(i);
+        return total;
+    }
+
+    // lowest value which falls into given bucket
+    public static long getBucketLowerBound(int bucket) {
+        return bucket == 0 ? 0 : 1L << (bucket - 1);
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++)
+            buckets.set(i, 0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        int last = buckets.length() - 1;
+
+        for (int i = 0; i <= last; i++) {
+            long count = buckets.get(i);
+            if (count == 0)
+                continue;
+
+            if (builder.length() > 0)
+                builder.append(", ");
+
+            long lower = getBucketLowerBound(i);
+            if (i == last)
+                builder.append(lower).append("+");
+            else if (i <= 1)
+                builder.append(lower);
+            else
+                builder.append(lower).append("-").append(getBucketLowerBound(i + 1) - 1);
+
+            builder.append(": ").append(count);
+        }
+
+        return builder.toString();
+    }
+}
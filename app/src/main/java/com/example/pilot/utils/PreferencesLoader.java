@@ -6,12 +6,16 @@ import android.util.Pair;
 
 import com.example.pilot.BuildConfig;
 import com.example.pilot.R;
+import com.example.pilot.security.utils.CipherSuite;
+
+import java.util.List;
 
 public class PreferencesLoader {
     private Context ctx;
     private final String PORT_KEY = "PORT";
     private final String IP_ADDR_KEY = "IP_ADDR";
     private final String CA_PUBLIC_KEY_PATH_KEY = "CA_PUBLIC_KEY_PATH_KEY";
+    private final String CIPHER_SUITES_KEY = "CIPHER_SUITES";
 
     public PreferencesLoader(Context ctx) {
         this.ctx = ctx;
@@ -34,6 +38,10 @@ public class PreferencesLoader {
         return getSharedPreferences().getString(CA_PUBLIC_KEY_PATH_KEY, BuildConfig.CA_PUBLIC_KEY_PATH);
     }
 
+    // ranked by calibration at first launch, empty until then
+    public List<CipherSuite> getCipherSuites() {
+        return CipherSuite.fromPreference(getSharedPreferences().getString(CIPHER_SUITES_KEY, null));
+    }
 
     public void savePort(int port) {
         SharedPreferences sharedPreferences = getSharedPreferences();
@@ -48,4 +56,11 @@ public class PreferencesLoader {
         editor.putString(IP_ADDR_KEY, ipAddr);
         editor.apply();
     }
+
+    public void saveCipherSuites(List<CipherSuite> cipherSuites) {
+        SharedPreferences sharedPreferences = getSharedPreferences();
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putString(CIPHER_SUITES_KEY, CipherSuite.toPreference(cipherSuites));
+        editor.apply();
+    }
 }
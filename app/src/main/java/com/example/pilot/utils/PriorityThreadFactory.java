@@ -0,0 +1,30 @@
+package com.example.pilot.utils;
+
+import android.os.Process;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named threads which set their Android priority (nice value, see android.os.Process) before running
+ * their task, java thread priorities are mostly ignored by the scheduler.
+ */
+public class PriorityThreadFactory implements ThreadFactory {
+    private final String name;
+    private final int priority;
+    private final AtomicInteger createdThreads;
+
+    public PriorityThreadFactory(String name, int priority) {
+        this.name = name;
+        this.priority = priority;
+        this.createdThreads = new AtomicInteger(0);
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        return new Thread(() -> {
+            Process.setThreadPriority(priority);
+            runnable.run();
+        }, name + "-" + createdThreads.incrementAndGet());
+    }
+}
@@ -5,12 +5,19 @@ import android.graphics.BitmapFactory;
 
 public class ScreenShot {
     private byte[] bytes;
+    private int length;
 
     public ScreenShot(byte[] bytes) {
+        this(bytes, bytes.length);
+    }
+
+    // only first length bytes of (possibly pooled) array hold the image
+    public ScreenShot(byte[] bytes, int length) {
         this.bytes = bytes;
+        this.length = length;
     }
 
     public Bitmap toBitmap() {
-        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        return BitmapFactory.decodeByteArray(bytes, 0, length);
     }
 }
@@ -0,0 +1,85 @@
+package com.example.pilot.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/**
+ * Snapshot of threads of this process and context switches they made so far, read from
+ * /proc/self/task/<tid>/status (Linux and Android). Two snapshots give rate of context switches, which tells
+ * how much scheduling I/O engine costs. Switches of threads which exited between snapshots are lost, so rate
+ * is rather underestimated. Where /proc isn't available only java threads are counted and switches are UNKNOWN.
+ */
+public class ThreadStats {
+    public static final long UNKNOWN = -1;
+    private static final File TASKS_DIR = new File("/proc/self/task");
+    private static final String VOLUNTARY_SWITCHES = "voluntary_ctxt_switches:";
+    private static final String INVOLUNTARY_SWITCHES = "nonvoluntary_ctxt_switches:";
+
+    private final int threads;
+    private final long contextSwitches;
+    private final long takenAtNs;
+
+    public ThreadStats(int threads, long contextSwitches, long takenAtNs) {
+        this.threads = threads;
+        this.contextSwitches = contextSwitches;
+        this.takenAtNs = takenAtNs;
+    }
+
+    public static ThreadStats sample() {
+        long nowNs = System.nanoTime();
+        File[] tasks = TASKS_DIR.listFiles();
+
+        if (tasks == null)
+            return new ThreadStats(Thread.activeCount(), UNKNOWN, nowNs);
+
+        long switches = 0;
+        for (File task : tasks) {
+            try {
+                byte[] status = Files.readAllBytes(new File(task, "status").toPath());
+                switches += parseContextSwitches(new String(status, StandardCharsets.US_ASCII));
+            } catch (IOException ignored) {
+                // thread exited meanwhile
+            }
+        }
+
+        return new ThreadStats(tasks.length, switches, nowNs);
+    }
+
+    // sum of voluntary (thread blocked) and involuntary (thread preempted) switches from status of a task
+    public static long parseContextSwitches(String status) {
+        long switches = 0;
+
+        for (String line : status.split("\n")) {
+            if (line.startsWith(VOLUNTARY_SWITCHES))
+                switches += Long.parseLong(line.substring(VOLUNTARY_SWITCHES.length()).trim());
+            else if (line.startsWith(INVOLUNTARY_SWITCHES))
+                switches += Long.parseLong(line.substring(INVOLUNTARY_SWITCHES.length()).trim());
+        }
+
+        return switches;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getContextSwitches() {
+        return contextSwitches;
+    }
+
+    public double getContextSwitchesPerSecondSince(ThreadStats earlier) {
+        long elapsedNs = takenAtNs - earlier.takenAtNs;
+        if (contextSwitches == UNKNOWN || earlier.contextSwitches == UNKNOWN || elapsedNs <= 0)
+            return UNKNOWN;
+
+        return Math.max(0, contextSwitches - earlier.contextSwitches) * 1e9 / elapsedNs;
+    }
+
+    public String describeSince(ThreadStats earlier) {
+        return String.format(Locale.UK, "%d threads (%d before), %.0f context switches per second",
+                threads, earlier.threads, getContextSwitchesPerSecondSince(earlier));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.udp.BandwidthEstimator;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BandwidthEstimatorTest {
+    private static final long INITIAL_BITRATE = 4_000_000;
+    private static final long MS = 1_000_000;
+    private static final int FRAME_INTERVAL_MS = 33;
+    private static final int FRAME_SIZE = 16_000;
+
+    private BandwidthEstimator estimator;
+    private long startNs;
+
+    @Before
+    public void setUp() {
+        estimator = new BandwidthEstimator(INITIAL_BITRATE, 100_000, 100_000_000);
+        startNs = System.nanoTime();
+    }
+
+    // every frame arrives with queueing delay growing by delayGrowthMs, returns time after last frame
+    private long receiveFrames(int frames, int firstSendTimeMs, long firstArrivalNs, double delayGrowthMs) {
+        long arrivalNs = firstArrivalNs;
+
+        for (int i = 0; i < frames; i++) {
+            arrivalNs = firstArrivalNs + (long) (i * (FRAME_INTERVAL_MS + delayGrowthMs) * MS);
+            estimator.onPacketReceived(FRAME_SIZE, arrivalNs);
+            estimator.onGroupReceived((firstSendTimeMs + i * FRAME_INTERVAL_MS) & 0xFFFFFF, arrivalNs);
+        }
+
+        return arrivalNs;
+    }
+
+    @Test
+    public void targetGrowsWhileDelayIsStable() {
+        // when
+        receiveFrames(100, 0, startNs, 0);
+
+        // then
+        Assert.assertEquals(BandwidthEstimator.Usage.NORMAL, estimator.getUsage());
+        Assert.assertTrue(estimator.getTargetBitrate() > INITIAL_BITRATE);
+        Assert.assertEquals(0, estimator.getOveruseEvents());
+    }
+
+    @Test
+    public void growingDelayIsDetectedAsOveruse() {
+        // given
+        long lastArrivalNs = receiveFrames(60, 0, startNs, 0);
+        long incomingBitrate = estimator.getIncomingBitrate();
+
+        // when
+        receiveFrames(60, 60 * FRAME_INTERVAL_MS, lastArrivalNs + FRAME_INTERVAL_MS * MS, 5);
+
+        // then
+        Assert.assertTrue(estimator.getOveruseEvents() > 0);
+        Assert.assertTrue(estimator.getTargetBitrate() < incomingBitrate);
+        Assert.assertTrue(estimator.getQueueingDelayMs() > 0);
+    }
+
+    @Test
+    public void sendTimeWrapAroundIsHandled() {
+        // when
+        receiveFrames(100, 0xFFFFFF - 10 * FRAME_INTERVAL_MS, startNs, 0);
+
+        // then
+        Assert.assertEquals(BandwidthEstimator.Usage.NORMAL, estimator.getUsage());
+        Assert.assertEquals(0, estimator.getOveruseEvents());
+    }
+
+    @Test
+    public void resetRestoresInitialTarget() {
+        // given
+        receiveFrames(100, 0, startNs, 0);
+
+        // when
+        estimator.reset();
+
+        // then
+        Assert.assertEquals(INITIAL_BITRATE, estimator.getTargetBitrate());
+        Assert.assertEquals(0, estimator.getIncomingBitrate());
+    }
+}
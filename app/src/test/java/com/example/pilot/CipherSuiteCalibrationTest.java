@@ -0,0 +1,107 @@
+package com.example.pilot;
+
+import com.example.pilot.security.CipherSuiteCalibration;
+import com.example.pilot.security.utils.CipherSuite;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.crypto.Cipher;
+
+public class CipherSuiteCalibrationTest {
+
+    @Test
+    public void fastestSuiteIsOfferedFirst() {
+        // given
+        Map<CipherSuite, Double> packetsPerSecond = new EnumMap<>(CipherSuite.class);
+        packetsPerSecond.put(CipherSuite.AES_256_GCM, 20_000.0);
+        packetsPerSecond.put(CipherSuite.CHACHA20_POLY1305, 90_000.0);
+
+        // when
+        List<CipherSuite> ranked = CipherSuiteCalibration.rank(packetsPerSecond);
+
+        // then
+        Assert.assertEquals(Arrays.asList(CipherSuite.CHACHA20_POLY1305, CipherSuite.AES_256_GCM), ranked);
+    }
+
+    @Test
+    public void unavailableSuitesAreNotOffered() {
+        // given ChaCha20 missing from providers of the device
+        CipherSuiteCalibration calibration = new CipherSuiteCalibration(1_000_000, CipherSuiteCalibration.defaultRanking(),
+                suite -> {
+                    if (suite == CipherSuite.CHACHA20_POLY1305)
+                        throw new NoSuchAlgorithmException(suite.getTransformation());
+                    return Cipher.getInstance(suite.getTransformation());
+                });
+
+        // when
+        List<CipherSuite> ranked = calibration.rankAvailableSuites();
+
+        // then
+        Assert.assertEquals(Collections.singletonList(CipherSuite.AES_256_GCM), ranked);
+    }
+
+    @Test
+    public void rankingIsAppliedToOfferedSuites() {
+        // given
+        List<CipherSuite> offered = new CopyOnWriteArrayList<>(CipherSuiteCalibration.defaultRanking());
+
+        // when
+        CipherSuiteCalibration.applyRanking(offered, Arrays.asList(CipherSuite.CHACHA20_POLY1305, CipherSuite.AES_256_GCM));
+
+        // then
+        Assert.assertEquals(Arrays.asList(CipherSuite.CHACHA20_POLY1305, CipherSuite.AES_256_GCM), offered);
+    }
+
+    @Test
+    public void emptyRankingKeepsDefaultSuites() {
+        // given
+        List<CipherSuite> offered = new CopyOnWriteArrayList<>(CipherSuiteCalibration.defaultRanking());
+
+        // when
+        CipherSuiteCalibration.applyRanking(offered, Collections.emptyList());
+
+        // then
+        Assert.assertEquals(CipherSuiteCalibration.defaultRanking(), offered);
+    }
+
+    @Test
+    public void rankingSurvivesPreferences() {
+        // given
+        List<CipherSuite> ranked = Arrays.asList(CipherSuite.CHACHA20_POLY1305, CipherSuite.AES_256_GCM);
+
+        // when
+        List<CipherSuite> loaded = CipherSuite.fromPreference(CipherSuite.toPreference(ranked));
+
+        // then
+        Assert.assertEquals(ranked, loaded);
+    }
+
+    @Test
+    public void unknownSuitesInPreferencesAreSkipped() {
+        // when
+        List<CipherSuite> loaded = CipherSuite.fromPreference("AES_128_CCM,AES_256_GCM");
+
+        // then
+        Assert.assertEquals(Arrays.asList(CipherSuite.AES_256_GCM), loaded);
+        Assert.assertTrue(CipherSuite.fromPreference(null).isEmpty());
+    }
+
+    @Test
+    public void helloCarriesSuiteIdsInOrder() {
+        // when
+        byte[] hello = CipherSuite.encode(Arrays.asList(CipherSuite.CHACHA20_POLY1305, CipherSuite.AES_256_GCM));
+
+        // then
+        Assert.assertArrayEquals(new byte[]{1, 0}, hello);
+        Assert.assertEquals(CipherSuite.CHACHA20_POLY1305, CipherSuite.fromId(hello[0]));
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.udp.DecryptPipeline;
+import com.example.pilot.networking.udp.MediaPacketView;
+import com.example.pilot.security.Guard;
+import com.example.pilot.security.MessageSecurityPreprocessor;
+import com.example.pilot.security.TCPGuard;
+import com.example.pilot.security.utils.Endpoint;
+import com.example.pilot.security.utils.TLSPacketView;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures decrypt throughput in packets per second, inline (like receiver thread without pipeline)
+ * and with pipeline of 1 to N workers, where N is amount of available cores. Packets are full sized
+ * and fed from memory, so numbers show ceiling of decrypt stage only.
+ *
+ * Uses AES-GCM guard since desktop JDKs don't register ChaCha20/Poly1305/NoPadding under that name.
+ * Replayed packets are rejected, so all of them are distinct and every round decrypts them with a fresh guard.
+ * Not a unit test, run manually.
+ */
+@Ignore("benchmark, run manually")
+public class DecryptPipelineBenchmark {
+    private static final int PACKETS = 20_000;
+    private static final int PAYLOAD_SIZE = 1440;
+    private static final int ROUNDS = 3;
+
+    @Test
+    public void compareWorkerCounts() throws Exception {
+        Guard guard = new TCPGuard(Endpoint.SERVER);
+
+        byte[][] packets = new byte[PACKETS][];
+        for (int i = 0; i < PACKETS; i++)
+            packets[i] = DecryptPipelineTest.encryptedMediaPacket(guard, i, PAYLOAD_SIZE);
+
+        System.out.printf("inline\t\t%8.0f packets/s%n", measureInline(guard, packets));
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int workers = 1; workers <= cores; workers++)
+            System.out.printf("%d workers\t%8.0f packets/s%n", workers, measurePipeline(guard, packets, workers));
+    }
+
+    private MessageSecurityPreprocessor createReceiver(Guard sender) throws Exception {
+        TCPGuard receiver = new TCPGuard();
+        receiver.setSessionKey(sender.getSessionKey().getEncoded());
+        return new MessageSecurityPreprocessor(receiver);
+    }
+
+    private double measureInline(Guard sender, byte[][] packets) throws Exception {
+        ByteBuffer packetBuffer = ByteBuffer.allocateDirect(1500);
+        ByteBuffer plaintextBuffer = ByteBuffer.allocateDirect(1500);
+        TLSPacketView tlsPacket = new TLSPacketView(packetBuffer);
+        MediaPacketView mediaPacket = new MediaPacketView(plaintextBuffer);
+        double best = 0;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            MessageSecurityPreprocessor preprocessor = createReceiver(sender);
+            long start = System.nanoTime();
+            for (int i = 0; i < PACKETS; i++) {
+                packetBuffer.clear();
+                packetBuffer.put(packets[i]);
+                packetBuffer.flip();
+
+                plaintextBuffer.clear();
+                preprocessor.preprocessReceived(tlsPacket.parse(), plaintextBuffer);
+                plaintextBuffer.flip();
+                mediaPacket.parse();
+            }
+            best = Math.max(best, PACKETS * 1e9 / (System.nanoTime() - start));
+        }
+
+        return best;
+    }
+
+    private double measurePipeline(Guard sender, byte[][] packets, int workers) throws Exception {
+        double best = 0;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            MessageSecurityPreprocessor preprocessor = createReceiver(sender);
+            CountDownLatch done = new CountDownLatch(PACKETS);
+            DecryptPipeline pipeline = new DecryptPipeline(preprocessor, new DecryptPipeline.PacketSink() {
+                @Override
+                public void onPacket(MediaPacketView packet, long arrivalNs) {
+                    done.countDown();
+                }
+
+                @Override
+                public void onPacketDropped(Exception cause) {
+                    throw new IllegalStateException(cause);
+                }
+
+                @Override
+                public boolean isRedundant(MediaPacketView header) {
+                    return false;
+                }
+            }, workers, 256, 1500);
+
+            pipeline.start();
+            long start = System.nanoTime();
+            for (int i = 0; i < PACKETS; i++) {
+                ByteBuffer buffer = pipeline.claim();
+                buffer.put(packets[i]);
+                buffer.flip();
+                pipeline.publish(System.nanoTime());
+            }
+            done.await();
+            best = Math.max(best, PACKETS * 1e9 / (System.nanoTime() - start));
+            pipeline.shutdown();
+        }
+
+        return best;
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.udp.DecryptPipeline;
+import com.example.pilot.networking.udp.MediaCode;
+import com.example.pilot.networking.udp.MediaPacketView;
+import com.example.pilot.security.Guard;
+import com.example.pilot.security.MessageSecurityPreprocessor;
+import com.example.pilot.security.TCPGuard;
+import com.example.pilot.security.exceptions.AuthenticationException;
+import com.example.pilot.security.utils.Endpoint;
+import com.example.pilot.security.utils.TLSCode;
+import com.example.pilot.security.utils.TLSPacket;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class DecryptPipelineTest {
+    private static final int PACKETS = 1000;
+
+    private Guard guard;
+    // encrypts packets like server does, sharing key with guard
+    private Guard serverGuard;
+    private DecryptPipeline pipeline;
+    private List<Integer> rcvdSeqs;
+    private List<Long> rcvdArrivals;
+    private List<Exception> failures;
+    private CountDownLatch handled;
+    private volatile boolean oddSeqsRedundant;
+
+    static byte[] encryptedMediaPacket(Guard guard, int seq, int payloadSize) throws Exception {
+        byte[] media = ByteBuffer.allocate(MediaPacketView.HEADER_SIZE + payloadSize)
+                .put((byte) MediaCode.VIDEO_FRAME.toInteger())
+                .put(new byte[3])
+                .putInt(seq)
+                .putInt(payloadSize)
+                .putInt(0)
+                .array();
+
+        byte[] nonce = guard.getNonce();
+        TLSPacket tlsPacket = new TLSPacket(TLSCode.SECURE, (short) media.length, nonce.length, nonce, media);
+
+        return new TLSPacket(tlsPacket.header, guard.encrypt(tlsPacket.data, tlsPacket.header, nonce)).full;
+    }
+
+    // media header in clear, authenticated with tls header
+    static byte[] encryptedMediaPacketWithCleartextHeader(Guard guard, int seq, int payloadSize) throws Exception {
+        int headerSize = MediaPacketView.HEADER_SIZE;
+        byte[] media = ByteBuffer.allocate(headerSize + payloadSize)
+                .put((byte) MediaCode.VIDEO_FRAME.toInteger())
+                .put(new byte[3])
+                .putInt(seq)
+                .putInt(payloadSize)
+                .putInt(0)
+                .array();
+
+        byte[] nonce = guard.getNonce();
+        byte[] payload = Arrays.copyOfRange(media, headerSize, media.length);
+        TLSPacket tlsPacket = new TLSPacket(TLSCode.SECURE_MEDIA, (short) payload.length, nonce.length, nonce, payload);
+
+        byte[] associatedData = ByteBuffer.allocate(tlsPacket.header.length + headerSize)
+                .put(tlsPacket.header)
+                .put(media, 0, headerSize)
+                .array();
+
+        return ByteBuffer.allocate(associatedData.length + payloadSize + guard.getTagLength())
+                .put(associatedData)
+                .put(guard.encrypt(payload, associatedData, nonce))
+                .array();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        guard = new TCPGuard();
+        serverGuard = new TCPGuard(Endpoint.SERVER);
+        serverGuard.setSessionKey(guard.getSessionKey().getEncoded());
+        rcvdSeqs = new CopyOnWriteArrayList<>();
+        rcvdArrivals = new CopyOnWriteArrayList<>();
+        failures = new CopyOnWriteArrayList<>();
+        handled = new CountDownLatch(PACKETS);
+
+        DecryptPipeline.PacketSink sink = new DecryptPipeline.PacketSink() {
+            @Override
+            public void onPacket(MediaPacketView packet, long arrivalNs) {
+                rcvdSeqs.add(packet.getSeqNum());
+                rcvdArrivals.add(arrivalNs);
+                handled.countDown();
+            }
+
+            @Override
+            public void onPacketDropped(Exception cause) {
+                failures.add(cause);
+                handled.countDown();
+            }
+
+            @Override
+            public boolean isRedundant(MediaPacketView header) {
+                if (!oddSeqsRedundant || header.getSeqNum() % 2 == 0)
+                    return false;
+
+                handled.countDown();
+                return true;
+            }
+        };
+
+        pipeline = new DecryptPipeline(new MessageSecurityPreprocessor(guard), sink, 3, 16, 1500);
+        pipeline.start();
+    }
+
+    @After
+    public void tearDown() {
+        pipeline.shutdown();
+    }
+
+    private void feed(byte[] packet) throws InterruptedException {
+        feed(packet, System.nanoTime());
+    }
+
+    private void feed(byte[] packet, long arrivalNs) throws InterruptedException {
+        ByteBuffer buffer = pipeline.claim();
+        buffer.put(packet);
+        buffer.flip();
+        pipeline.publish(arrivalNs);
+    }
+
+    @Test
+    public void packetsAreHandedOverInReceiveOrder() throws Exception {
+        // given
+        byte[][] packets = new byte[PACKETS][];
+        for (int seq = 0; seq < PACKETS; seq++)
+            packets[seq] = encryptedMediaPacket(serverGuard, seq, 4);
+
+        // when
+        for (byte[] packet : packets)
+            feed(packet);
+
+        // then
+        Assert.assertTrue(handled.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(failures.isEmpty());
+        for (int seq = 0; seq < PACKETS; seq++)
+            Assert.assertEquals(seq, (int) rcvdSeqs.get(seq));
+        Assert.assertEquals(PACKETS, pipeline.getMergedPackets());
+    }
+
+    @Test
+    public void tamperedPacketIsReportedWithoutStoppingPipeline() throws Exception {
+        // given
+        byte[] tampered = encryptedMediaPacket(serverGuard, 1, 4);
+        tampered[tampered.length - 1] ^= 1;
+
+        // when
+        feed(encryptedMediaPacket(serverGuard, 0, 4));
+        feed(tampered);
+        for (int seq = 2; seq < PACKETS; seq++)
+            feed(encryptedMediaPacket(serverGuard, seq, 4));
+
+        // then
+        Assert.assertTrue(handled.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, failures.size());
+        Assert.assertTrue(failures.get(0) instanceof AuthenticationException);
+        Assert.assertEquals(PACKETS - 1, rcvdSeqs.size());
+        Assert.assertEquals(2, (int) rcvdSeqs.get(1));
+    }
+
+    @Test
+    public void cleartextHeaderIsAuthenticated() throws Exception {
+        // given
+        byte[] tampered = encryptedMediaPacketWithCleartextHeader(serverGuard, 1, 4);
+        // seq in cleartext header
+        tampered[TLSPacket.HEADER_SIZE + guard.getNonceLength() + 7] ^= 1;
+
+        // when
+        feed(encryptedMediaPacketWithCleartextHeader(serverGuard, 0, 4));
+        feed(tampered);
+        for (int seq = 2; seq < PACKETS; seq++)
+            feed(encryptedMediaPacketWithCleartextHeader(serverGuard, seq, 4));
+
+        // then
+        Assert.assertTrue(handled.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, failures.size());
+        Assert.assertTrue(failures.get(0) instanceof AuthenticationException);
+        Assert.assertEquals(PACKETS - 1, rcvdSeqs.size());
+        Assert.assertEquals(2, (int) rcvdSeqs.get(1));
+    }
+
+    @Test
+    public void redundantPacketsAreDroppedWithoutDecryption() throws Exception {
+        // given
+        oddSeqsRedundant = true;
+        byte[][] packets = new byte[PACKETS][];
+        for (int seq = 0; seq < PACKETS; seq++)
+            packets[seq] = encryptedMediaPacketWithCleartextHeader(serverGuard, seq, 4);
+
+        // tampered payload would fail authentication if it was decrypted
+        packets[1][packets[1].length - 1] ^= 1;
+
+        // when
+        for (byte[] packet : packets)
+            feed(packet);
+
+        // then
+        Assert.assertTrue(handled.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(failures.isEmpty());
+        Assert.assertEquals(PACKETS / 2, rcvdSeqs.size());
+        for (int i = 0; i < rcvdSeqs.size(); i++)
+            Assert.assertEquals(2 * i, (int) rcvdSeqs.get(i));
+
+        // last packets are skipped by workers, merger may still be behind them
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (pipeline.getMergedPackets() < PACKETS && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        Assert.assertEquals(PACKETS, pipeline.getMergedPackets());
+    }
+
+    @Test
+    public void idleStagesSleepUntilPacketArrives() throws Exception {
+        // given
+        feed(encryptedMediaPacket(serverGuard, 0, 4));
+        Thread.sleep(200);
+
+        // when
+        List<Thread.State> idleStates = new ArrayList<>();
+        for (Map.Entry<Thread, StackTraceElement[]> thread : Thread.getAllStackTraces().entrySet()) {
+            for (StackTraceElement frame : thread.getValue()) {
+                if (frame.getClassName().equals(DecryptPipeline.class.getName())) {
+                    idleStates.add(thread.getKey().getState());
+                    break;
+                }
+            }
+        }
+        for (int seq = 1; seq < PACKETS; seq++)
+            feed(encryptedMediaPacket(serverGuard, seq, 4));
+
+        // then
+        Assert.assertEquals(4, idleStates.size());
+        for (Thread.State state : idleStates)
+            Assert.assertEquals(Thread.State.WAITING, state);
+        Assert.assertTrue(handled.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(PACKETS, rcvdSeqs.size());
+    }
+
+    @Test
+    public void arrivalTimeOfEveryDatagramIsKept() throws Exception {
+        // given
+        byte[][] packets = new byte[PACKETS][];
+        for (int seq = 0; seq < PACKETS; seq++)
+            packets[seq] = encryptedMediaPacket(serverGuard, seq, 4);
+
+        // when
+        for (int seq = 0; seq < PACKETS; seq++)
+            feed(packets[seq], 1000L * seq);
+
+        // then
+        Assert.assertTrue(handled.await(10, TimeUnit.SECONDS));
+        for (int seq = 0; seq < PACKETS; seq++)
+            Assert.assertEquals(1000L * seq, (long) rcvdArrivals.get(seq));
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.pilot;
+
+import com.example.pilot.security.EphemeralKeyExchange;
+import com.example.pilot.security.Hkdf;
+import com.example.pilot.security.exceptions.SecurityException;
+import com.example.pilot.security.utils.P256;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.interfaces.ECPublicKey;
+
+public class EphemeralKeyExchangeTest {
+    private static final byte[] TRANSCRIPT = "kntpilot transcript".getBytes(StandardCharsets.US_ASCII);
+
+    private static byte[] range(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) (from + i);
+        return bytes;
+    }
+
+    private static byte[] unhex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        return bytes;
+    }
+
+    private static String hex(byte[] bytes) {
+        return String.format("%0" + bytes.length * 2 + "x", new BigInteger(1, bytes));
+    }
+
+    @Test
+    public void hkdfMatchesRfc5869Vector() throws SecurityException {
+        // given test case 1 of RFC 5869
+        byte[] ikm = unhex("0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b");
+        byte[] salt = unhex("000102030405060708090a0b0c");
+        byte[] info = unhex("f0f1f2f3f4f5f6f7f8f9");
+
+        // when
+        byte[] prk = Hkdf.extract(salt, ikm);
+        byte[] okm = Hkdf.expand(prk, info, 42);
+
+        // then
+        Assert.assertEquals("077709362c2e32df0ddc3f0dc47bba6390b6c73bb50f9c3122ec844ad7c2b3e5", hex(prk));
+        Assert.assertEquals("3cb25f25faacd57a90434f64d0362f2a2d2d0a90cf1a5a4c5db02d56ecc4c5bf34007208d5b887185865",
+                hex(okm));
+    }
+
+    @Test
+    public void bothSidesAgreeOnSharedSecret() throws SecurityException {
+        // given
+        EphemeralKeyExchange client = new EphemeralKeyExchange();
+        EphemeralKeyExchange server = new EphemeralKeyExchange();
+
+        // when
+        byte[] clientSecret = client.computeSharedSecret(server.getPublicShare());
+        byte[] serverSecret = server.computeSharedSecret(client.getPublicShare());
+
+        // then
+        Assert.assertEquals(EphemeralKeyExchange.SHARE_LENGTH, client.getPublicShare().length);
+        Assert.assertEquals(32, clientSecret.length);
+        Assert.assertArrayEquals(clientSecret, serverSecret);
+    }
+
+    @Test
+    public void everyExchangeHasItsOwnShare() throws SecurityException {
+        // given
+        EphemeralKeyExchange first = new EphemeralKeyExchange();
+        EphemeralKeyExchange second = new EphemeralKeyExchange();
+
+        // when
+        String firstShare = hex(first.getPublicShare());
+        String secondShare = hex(second.getPublicShare());
+
+        // then
+        Assert.assertNotEquals(firstShare, secondShare);
+    }
+
+    @Test(expected = SecurityException.class)
+    public void shareOutsideOfCurveIsRejected() throws SecurityException {
+        // given
+        byte[] share = new byte[EphemeralKeyExchange.SHARE_LENGTH];
+        share[0] = 0x04;
+        share[share.length - 1] = 1;
+
+        // when
+        new EphemeralKeyExchange().computeSharedSecret(share);
+    }
+
+    @Test
+    public void pointSurvivesEncoding() throws Exception {
+        // given
+        byte[] share = new EphemeralKeyExchange().getPublicShare();
+
+        // when
+        ECPublicKey key = P256.decodePoint(share);
+
+        // then
+        Assert.assertArrayEquals(share, P256.encodePoint(key));
+    }
+
+    @Test
+    public void channelKeysMatchServerDerivation() throws SecurityException {
+        // given vectors computed by pcdaemon/security/ephemeral_key_exchange.py
+        byte[] sharedSecret = range(0, 32);
+
+        // when
+        byte[] tcpKey = EphemeralKeyExchange.deriveTcpKey(sharedSecret, TRANSCRIPT);
+        byte[] udpKey = EphemeralKeyExchange.deriveUdpKey(sharedSecret, TRANSCRIPT);
+
+        // then
+        Assert.assertEquals("f5491c241fc91517ed36c40a4fbfa63b095c94bb2c91ea05df214ada93258662", hex(tcpKey));
+        Assert.assertEquals("bd8124276867dd32553865ecec399adb8f23616e4047ae4500795e2d4c808004", hex(udpKey));
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.observers.QosChangedObserver;
+import com.example.pilot.networking.udp.BandwidthEstimator;
+import com.example.pilot.networking.udp.FragmentAssembler;
+import com.example.pilot.networking.udp.FrameBufferPool;
+import com.example.pilot.networking.udp.MediaCode;
+import com.example.pilot.networking.udp.MediaFrame;
+import com.example.pilot.networking.udp.MediaPacketView;
+import com.example.pilot.networking.udp.PartialFrameBudget;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+public class FragmentAssemblerTest {
+    private static final int FRAGMENT_SIZE = 4;
+    private static final int TOTAL_SIZE = 10;
+    private static final long MAX_AGE_MS = 1000;
+    // codes as sent by the server
+    private static final byte VIDEO_CODE = 2;
+    private static final byte PARITY_CODE = 3;
+
+    private static MediaPacketView fragment(int seq, int offset, int totalSize) {
+        int payloadSize = Math.min(FRAGMENT_SIZE, totalSize - offset);
+        ByteBuffer packet = ByteBuffer.allocate(MediaPacketView.HEADER_SIZE + payloadSize)
+                .put(VIDEO_CODE)
+                .put(new byte[3])
+                .putInt(seq)
+                .putInt(totalSize)
+                .putInt(offset);
+
+        return MediaPacketView.wrap(packet.array(), packet.capacity());
+    }
+
+    private static MediaPacketView fragment(int seq, int offset) {
+        return fragment(seq, offset, TOTAL_SIZE);
+    }
+
+    // parity of single fragment group is the fragment itself
+    private static MediaPacketView parity(int seq, int offset) {
+        MediaPacketView fragment = fragment(seq, offset);
+        byte[] packet = new byte[MediaPacketView.HEADER_SIZE + fragment.getPayloadSize()];
+        packet[0] = PARITY_CODE;
+        packet[1] = 1;
+        ByteBuffer.wrap(packet).putInt(4, seq).putInt(8, TOTAL_SIZE).putInt(12, offset);
+
+        return MediaPacketView.wrap(packet, packet.length);
+    }
+
+    private static FragmentAssembler assembler(PartialFrameBudget budget, long maxAgeMs) {
+        return new FragmentAssembler(true, FRAGMENT_SIZE, new FrameBufferPool(0), budget, maxAgeMs);
+    }
+
+    @Test
+    public void partialFramesReserveBudgetUntilCompleted() {
+        // given
+        PartialFrameBudget budget = new PartialFrameBudget(100);
+        FragmentAssembler assembler = assembler(budget, MAX_AGE_MS);
+
+        // when
+        assembler.handleDatagram(fragment(0, 0));
+        assembler.handleDatagram(fragment(0, 4));
+        long reservedWhilePartial = budget.getReservedBytes();
+        Optional<MediaFrame> frame = assembler.handleDatagram(fragment(0, 8));
+
+        // then
+        Assert.assertEquals(TOTAL_SIZE, reservedWhilePartial);
+        Assert.assertTrue(frame.isPresent());
+        Assert.assertEquals(0, budget.getReservedBytes());
+    }
+
+    @Test
+    public void completedFrameEvictsOlderPartialFrames() {
+        // given
+        PartialFrameBudget budget = new PartialFrameBudget(100);
+        FragmentAssembler assembler = assembler(budget, MAX_AGE_MS);
+        assembler.handleDatagram(fragment(0, 0));
+        assembler.handleDatagram(fragment(1, 0));
+
+        // when
+        assembler.handleDatagram(fragment(2, 0));
+        assembler.handleDatagram(fragment(2, 4));
+        assembler.handleDatagram(fragment(2, 8));
+        Optional<MediaFrame> late = assembler.handleDatagram(fragment(1, 4));
+
+        // then
+        Assert.assertFalse(late.isPresent());
+        Assert.assertEquals(2, budget.getEvictedSuperseded());
+        Assert.assertEquals(0, budget.getReservedBytes());
+    }
+
+    @Test
+    public void frameLargerThanBudgetIsRejected() {
+        // given
+        PartialFrameBudget budget = new PartialFrameBudget(100);
+        FragmentAssembler assembler = assembler(budget, MAX_AGE_MS);
+
+        // when
+        Optional<MediaFrame> frame = assembler.handleDatagram(fragment(0, 0, 1 << 30));
+
+        // then
+        Assert.assertFalse(frame.isPresent());
+        Assert.assertEquals(1, budget.getRejected());
+        Assert.assertEquals(0, budget.getReservedBytes());
+    }
+
+    @Test
+    public void olderPartialFramesAreEvictedToMakeRoomForNewerOne() {
+        // given
+        PartialFrameBudget budget = new PartialFrameBudget(2 * TOTAL_SIZE);
+        FragmentAssembler assembler = assembler(budget, MAX_AGE_MS);
+        assembler.handleDatagram(fragment(0, 0));
+        assembler.handleDatagram(fragment(1, 0));
+
+        // when
+        assembler.handleDatagram(fragment(2, 0));
+        assembler.handleDatagram(fragment(2, 4));
+        Optional<MediaFrame> frame = assembler.handleDatagram(fragment(2, 8));
+
+        // then
+        Assert.assertTrue(frame.isPresent());
+        Assert.assertEquals(2, budget.getEvictedOverBudget());
+        Assert.assertEquals(0, budget.getRejected());
+    }
+
+    @Test
+    public void budgetIsSharedBetweenAssemblers() {
+        // given
+        PartialFrameBudget budget = new PartialFrameBudget(TOTAL_SIZE);
+        FragmentAssembler first = assembler(budget, MAX_AGE_MS);
+        FragmentAssembler second = assembler(budget, MAX_AGE_MS);
+        first.handleDatagram(fragment(0, 0));
+
+        // when
+        second.handleDatagram(fragment(0, 0));
+
+        // then
+        Assert.assertEquals(1, budget.getRejected());
+        Assert.assertEquals(TOTAL_SIZE, budget.getReservedBytes());
+    }
+
+    @Test
+    public void stalePartialFramesAreEvicted() throws InterruptedException {
+        // given
+        PartialFrameBudget budget = new PartialFrameBudget(100);
+        FragmentAssembler assembler = assembler(budget, 1);
+        assembler.handleDatagram(fragment(0, 0));
+        Thread.sleep(5);
+
+        // when
+        assembler.evictStaleFrames();
+
+        // then
+        Assert.assertEquals(1, budget.getEvictedStale());
+        Assert.assertEquals(0, budget.getReservedBytes());
+    }
+
+    @Test
+    public void clearingBufferGivesBackBudget() {
+        // given
+        PartialFrameBudget budget = new PartialFrameBudget(100);
+        FragmentAssembler assembler = assembler(budget, MAX_AGE_MS);
+        assembler.handleDatagram(fragment(0, 0));
+        assembler.handleDatagram(fragment(1, 0));
+
+        // when
+        assembler.clearBuffer();
+
+        // then
+        Assert.assertEquals(0, budget.getReservedBytes());
+    }
+
+    @Test
+    public void frameIsCompletedWithParity() {
+        // given
+        PartialFrameBudget budget = new PartialFrameBudget(100);
+        FragmentAssembler assembler = assembler(budget, MAX_AGE_MS);
+        assembler.handleDatagram(fragment(0, 0));
+        assembler.handleDatagram(fragment(0, 8));
+
+        // when
+        Optional<MediaFrame> frame = assembler.handleDatagram(parity(0, 4));
+
+        // then
+        Assert.assertTrue(frame.isPresent());
+        Assert.assertEquals(MediaCode.VIDEO_FRAME, frame.get().getCode());
+        Assert.assertEquals(1, assembler.getRecoveredFragments());
+    }
+
+    @Test
+    public void parityOfCompletedFrameIsDropped() {
+        // given
+        PartialFrameBudget budget = new PartialFrameBudget(100);
+        FragmentAssembler assembler = assembler(budget, MAX_AGE_MS);
+        assembler.handleDatagram(fragment(0, 0));
+        assembler.handleDatagram(fragment(0, 4));
+        assembler.handleDatagram(fragment(0, 8));
+
+        // when
+        Optional<MediaFrame> frame = assembler.handleDatagram(parity(0, 8));
+
+        // then
+        Assert.assertFalse(frame.isPresent());
+        Assert.assertEquals(0, budget.getReservedBytes());
+        Assert.assertEquals(0, budget.getRejected());
+    }
+
+    @Test
+    public void duplicateAndStaleFragmentsAreRedundant() {
+        // given
+        FragmentAssembler assembler = assembler(new PartialFrameBudget(100), MAX_AGE_MS);
+        assembler.handleDatagram(fragment(0, 0));
+        assembler.handleDatagram(fragment(0, 4));
+        assembler.handleDatagram(fragment(0, 8));
+        assembler.handleDatagram(fragment(1, 0));
+
+        // when
+        boolean completedFrameRedundant = assembler.isRedundant(fragment(0, 4));
+        boolean duplicateRedundant = assembler.isRedundant(fragment(1, 0));
+        boolean missingRedundant = assembler.isRedundant(fragment(1, 4));
+        boolean newFrameRedundant = assembler.isRedundant(fragment(2, 0));
+
+        // then
+        Assert.assertTrue(completedFrameRedundant);
+        Assert.assertTrue(duplicateRedundant);
+        Assert.assertFalse(missingRedundant);
+        Assert.assertFalse(newFrameRedundant);
+    }
+
+    @Test
+    public void completedFramesDriveQosUpdates() {
+        // given
+        PartialFrameBudget budget = new PartialFrameBudget(100);
+        FragmentAssembler assembler = assembler(budget, MAX_AGE_MS);
+        QosChangedObserver observer = Mockito.mock(QosChangedObserver.class);
+        assembler.enableQosControl(observer, new BandwidthEstimator(1_000_000, 100_000, 10_000_000), 30);
+
+        // when
+        assembler.handleDatagram(fragment(0, 0));
+        assembler.handleDatagram(fragment(0, 4));
+        assembler.handleDatagram(fragment(0, 8));
+
+        // then
+        Mockito.verify(observer).onQosChanged(Mockito.eq(1_000_000L), Mockito.eq(30), Mockito.anyInt());
+        Assert.assertEquals(1, assembler.getQosController().getSentUpdates());
+    }
+}
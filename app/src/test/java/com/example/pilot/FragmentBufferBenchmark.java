@@ -0,0 +1,103 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.udp.FragmentBuffer;
+import com.example.pilot.networking.udp.LinkedFragmentBuffer;
+import com.example.pilot.networking.udp.MediaCode;
+import com.example.pilot.networking.udp.MediaFrame;
+import com.example.pilot.networking.udp.RingFragmentBuffer;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares fragment buffers under reordered fragment stream, each fragment is looked up and frames are
+ * inserted and removed the same way FragmentAssembler does it. Reordered fragment is delayed by up to
+ * MAX_DELAY positions, which keeps a few dozens partial frames around. Frames which never complete
+ * are dropped periodically, like when stream handler skips over a gap.
+ *
+ * Not a unit test, run manually.
+ */
+@Ignore("benchmark, run manually")
+public class FragmentBufferBenchmark {
+    private static final int FRAMES = 200_000;
+    private static final int FRAGMENTS_PER_FRAME = 8;
+    private static final int MAX_DELAY = 256;
+    private static final int ROUNDS = 5;
+    // how far behind the stream handler skips, as it would after a gap in playback
+    private static final int SKIP_LAG = 32;
+
+    @Test
+    public void compareUnderReorder() {
+        double[] reorderRates = {0.01, 0.05, 0.2};
+
+        for (double reorderRate : reorderRates) {
+            int[] stream = buildStream(reorderRate, new Random(42));
+
+            long linkedNs = measure(LinkedFragmentBuffer::new, stream);
+            long ringNs = measure(() -> new RingFragmentBuffer(64), stream);
+
+            System.out.printf("reorder %4.0f%%\tlinked: %6.1f ns/fragment\tring: %6.1f ns/fragment%n",
+                    reorderRate * 100, (double) linkedNs / stream.length, (double) ringNs / stream.length);
+        }
+    }
+
+    // best of ROUNDS runs, first runs warm up the JIT
+    private long measure(Supplier<FragmentBuffer> bufferFactory, int[] stream) {
+        long best = Long.MAX_VALUE;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            MediaFrame[] frames = new MediaFrame[FRAMES];
+            for (int seq = 0; seq < FRAMES; seq++)
+                frames[seq] = new MediaFrame(MediaCode.VIDEO_FRAME, seq, 0);
+
+            int[] rcvdFragments = new int[FRAMES];
+            FragmentBuffer buffer = bufferFactory.get();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < stream.length; i++) {
+                int seq = stream[i];
+
+                if (i % (SKIP_LAG * FRAGMENTS_PER_FRAME) == 0)
+                    buffer.removePreceding(i / FRAGMENTS_PER_FRAME - SKIP_LAG);
+
+                MediaFrame frame = buffer.get(seq);
+
+                if (frame == null) {
+                    if (rcvdFragments[seq] > 0 || !buffer.put(frames[seq]))
+                        continue;
+                    frame = frames[seq];
+                }
+
+                if (++rcvdFragments[seq] == FRAGMENTS_PER_FRAME)
+                    buffer.removeFullyReceived(frame);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return best;
+    }
+
+    // sequence numbers of consecutive fragments
+    private int[] buildStream(double reorderRate, Random random) {
+        int length = FRAMES * FRAGMENTS_PER_FRAME;
+        int[] stream = new int[length];
+
+        for (int i = 0; i < length; i++)
+            stream[i] = i / FRAGMENTS_PER_FRAME;
+
+        // move fragment forward, shifting fragments in between back by one
+        for (int i = length - 1; i >= 0; i--) {
+            if (random.nextDouble() < reorderRate) {
+                int target = Math.min(length - 1, i + 1 + random.nextInt(MAX_DELAY));
+                int delayed = stream[i];
+                System.arraycopy(stream, i + 1, stream, i, target - i);
+                stream[target] = delayed;
+            }
+        }
+
+        return stream;
+    }
+}
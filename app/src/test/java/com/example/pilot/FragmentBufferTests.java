@@ -1,21 +1,50 @@
 package com.example.pilot;
 import com.example.pilot.networking.udp.FragmentBuffer;
+import com.example.pilot.networking.udp.LinkedFragmentBuffer;
 import com.example.pilot.networking.udp.MediaFrame;
+import com.example.pilot.networking.udp.RingFragmentBuffer;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 import org.mockito.Mockito;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Supplier;
 
+
+@RunWith(Parameterized.class)
 public class FragmentBufferTests {
+    private final Supplier<FragmentBuffer> bufferFactory;
+
+    public FragmentBufferTests(String name, Supplier<FragmentBuffer> bufferFactory) {
+        this.bufferFactory = bufferFactory;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> implementations() {
+        return Arrays.asList(new Object[][] {
+                {"linked", (Supplier<FragmentBuffer>) LinkedFragmentBuffer::new},
+                {"ring", (Supplier<FragmentBuffer>) () -> new RingFragmentBuffer(8)}
+        });
+    }
+
     private static MediaFrame mf(int seq) {
         MediaFrame mediaFrame = Mockito.mock(MediaFrame.class);
         Mockito.when(mediaFrame.getSeqNum()).thenReturn(seq);
         return mediaFrame;
     }
 
-    private static FragmentBuffer getFragmentBuffer() {
-        return new FragmentBuffer();
+    private static MediaFrame mf(int seq, int totalSize) {
+        MediaFrame mediaFrame = mf(seq);
+        Mockito.when(mediaFrame.getTotalSize()).thenReturn(totalSize);
+        return mediaFrame;
+    }
+
+    private FragmentBuffer getFragmentBuffer() {
+        return bufferFactory.get();
     }
 
     @Test
@@ -146,4 +175,175 @@ public class FragmentBufferTests {
         Assert.assertSame(mf3, mf_3);
         Assert.assertSame(mf4, mf_4);
     }
+
+    @Test
+    public void framePrecedingLastInOrderFrameIsIgnored() {
+        // given
+        FragmentBuffer buffer = getFragmentBuffer();
+        MediaFrame mf1 = mf(1);
+        MediaFrame mf2 = mf(2);
+        buffer.put(mf2);
+
+        // when
+        buffer.removeFullyReceived(mf2);
+        boolean inserted = buffer.put(mf1);
+
+        // then
+        Assert.assertFalse(inserted);
+        Assert.assertEquals(0, buffer.getSize());
+        Assert.assertNull(buffer.get(1));
+    }
+
+    @Test
+    public void frameCompletedOutOfOrderDoesntBlockEarlierFrames() {
+        // given
+        FragmentBuffer buffer = getFragmentBuffer();
+        MediaFrame mf1 = mf(1);
+        MediaFrame mf2 = mf(2);
+        MediaFrame mf3 = mf(3);
+        buffer.put(mf1);
+        buffer.put(mf3);
+
+        // when
+        buffer.removeFullyReceived(mf3);
+        boolean inserted = buffer.put(mf2);
+
+        // then
+        Assert.assertTrue(inserted);
+        Assert.assertSame(mf1, buffer.get(1));
+        Assert.assertSame(mf2, buffer.get(2));
+    }
+
+    @Test
+    public void precedingFramesCanBeRemoved() {
+        // given
+        FragmentBuffer buffer = getFragmentBuffer();
+        MediaFrame mf1 = mf(1);
+        MediaFrame mf2 = mf(2);
+        MediaFrame mf4 = mf(4);
+        buffer.put(mf1);
+        buffer.put(mf2);
+        buffer.put(mf4);
+
+        // when
+        buffer.removePreceding(3);
+        boolean inserted = buffer.put(mf(3));
+
+        // then
+        Assert.assertFalse(inserted);
+        Assert.assertEquals(1, buffer.getSize());
+        Assert.assertNull(buffer.get(1));
+        Assert.assertSame(mf4, buffer.get(4));
+        Mockito.verify(mf1).release();
+        Mockito.verify(mf2).release();
+        Mockito.verify(mf4, Mockito.never()).release();
+    }
+
+    @Test
+    public void bufferedBytesFollowHeldFrames() {
+        // given
+        FragmentBuffer buffer = getFragmentBuffer();
+        MediaFrame mf1 = mf(1, 100);
+        MediaFrame mf2 = mf(2, 20);
+        MediaFrame mf3 = mf(3, 3);
+        buffer.put(mf1);
+        buffer.put(mf2);
+        buffer.put(mf3);
+
+        // when
+        buffer.removeFullyReceived(mf2);
+        long afterRemoval = buffer.getBufferedBytes();
+        buffer.removePreceding(2);
+        long afterSkip = buffer.getBufferedBytes();
+        buffer.releaseAll();
+
+        // then
+        Assert.assertEquals(103, afterRemoval);
+        Assert.assertEquals(3, afterSkip);
+        Assert.assertEquals(0, buffer.getBufferedBytes());
+    }
+
+    @Test
+    public void framesPutBeforeDeadlineAreRemovedTogetherWithPrecedingOnes() throws InterruptedException {
+        // given
+        FragmentBuffer buffer = getFragmentBuffer();
+        MediaFrame mf1 = mf(1);
+        MediaFrame mf2 = mf(2);
+        MediaFrame mf3 = mf(3);
+        buffer.put(mf2);
+        Thread.sleep(2);
+        buffer.put(mf1);
+        Thread.sleep(2);
+        long deadlineNs = System.nanoTime();
+        Thread.sleep(2);
+        buffer.put(mf3);
+
+        // when
+        int removed = buffer.removeOlderThan(deadlineNs);
+        boolean inserted = buffer.put(mf(2));
+
+        // then
+        Assert.assertEquals(2, removed);
+        Assert.assertFalse(inserted);
+        Assert.assertEquals(1, buffer.getSize());
+        Assert.assertSame(mf3, buffer.get(3));
+        Mockito.verify(mf1).release();
+        Mockito.verify(mf2).release();
+        Mockito.verify(mf3, Mockito.never()).release();
+    }
+
+    @Test
+    public void nothingIsRemovedIfAllFramesAreFresh() {
+        // given
+        FragmentBuffer buffer = getFragmentBuffer();
+        long deadlineNs = System.nanoTime() - 1_000_000_000L;
+        buffer.put(mf(1));
+        buffer.put(mf(2));
+
+        // when
+        int removed = buffer.removeOlderThan(deadlineNs);
+
+        // then
+        Assert.assertEquals(0, removed);
+        Assert.assertEquals(2, buffer.getSize());
+    }
+
+    @Test
+    public void skippedSequenceNeverMovesBack() {
+        // given
+        FragmentBuffer buffer = getFragmentBuffer();
+        buffer.removePreceding(5);
+
+        // when
+        buffer.removePreceding(2);
+        boolean inserted = buffer.put(mf(3));
+
+        // then
+        Assert.assertFalse(inserted);
+    }
+
+    @Test
+    public void framesUpToSeqCanBeRemoved() {
+        // given
+        FragmentBuffer buffer = getFragmentBuffer();
+        MediaFrame mf1 = mf(1);
+        MediaFrame mf2 = mf(2);
+        MediaFrame mf4 = mf(4);
+        buffer.put(mf1);
+        buffer.put(mf2);
+        buffer.put(mf4);
+
+        // when
+        int removed = buffer.removeUpTo(2);
+        boolean staleInserted = buffer.put(mf(2));
+        boolean inserted = buffer.put(mf(3));
+
+        // then
+        Assert.assertEquals(2, removed);
+        Assert.assertFalse(staleInserted);
+        Assert.assertTrue(inserted);
+        Assert.assertSame(mf4, buffer.get(4));
+        Mockito.verify(mf1).release();
+        Mockito.verify(mf2).release();
+    }
 }
@@ -0,0 +1,95 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.observers.SsRcvdObserver;
+import com.example.pilot.networking.udp.FrameAckBatcher;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class FrameAckBatcherTest {
+    private static final int BATCH_SIZE = 4;
+    private static final long MAX_ACK_DELAY_MS = 100;
+    private static final long MS = 1_000_000;
+
+    private SsRcvdObserver observer;
+    private int credits;
+    private FrameAckBatcher batcher;
+    private long startNs;
+
+    @Before
+    public void setUp() {
+        observer = Mockito.mock(SsRcvdObserver.class);
+        credits = 10;
+        batcher = new FrameAckBatcher(observer, () -> credits, BATCH_SIZE, MAX_ACK_DELAY_MS);
+        startNs = System.nanoTime();
+    }
+
+    @Test
+    public void creditsAreGrantedBeforeAnythingIsPlayed() {
+        // when
+        batcher.ackIfDue(startNs);
+
+        // then
+        Mockito.verify(observer).onScreenShotsRcvd(-1, 10);
+    }
+
+    @Test
+    public void playedFramesAreAckedInBatches() {
+        // given
+        batcher.ackIfDue(startNs);
+
+        // when
+        for (int seq = 0; seq < 2 * BATCH_SIZE; seq++)
+            batcher.onFramePlayed(seq, startNs + MS);
+
+        // then
+        Mockito.verify(observer).onScreenShotsRcvd(BATCH_SIZE - 1, 10);
+        Mockito.verify(observer).onScreenShotsRcvd(2 * BATCH_SIZE - 1, 10);
+        Assert.assertEquals(3, batcher.getSentAcks());
+    }
+
+    @Test
+    public void everyFrameIsAckedWhenCreditsRunLow() {
+        // given
+        credits = 1;
+        batcher.ackIfDue(startNs);
+
+        // when
+        batcher.onFramePlayed(0, startNs + MS);
+        batcher.onFramePlayed(1, startNs + MS);
+
+        // then
+        Mockito.verify(observer).onScreenShotsRcvd(0, 1);
+        Mockito.verify(observer).onScreenShotsRcvd(1, 1);
+    }
+
+    @Test
+    public void ackIsRepeatedAfterMaxDelay() {
+        // given
+        batcher.ackIfDue(startNs);
+        batcher.onFramePlayed(0, startNs + MS);
+
+        // when
+        batcher.ackIfDue(startNs + MAX_ACK_DELAY_MS * MS / 2);
+        batcher.ackIfDue(startNs + MAX_ACK_DELAY_MS * MS);
+
+        // then
+        Mockito.verify(observer).onScreenShotsRcvd(0, 10);
+        Assert.assertEquals(2, batcher.getSentAcks());
+    }
+
+    @Test
+    public void ackDoesNotMoveBackForLateFrame() {
+        // given
+        batcher.ackIfDue(startNs);
+        batcher.onFramePlayed(5, startNs);
+
+        // when
+        batcher.onFramePlayed(3, startNs);
+
+        // then
+        Assert.assertEquals(5, batcher.getLastPlayedSeq());
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.udp.FrameBufferPool;
+import com.example.pilot.networking.udp.MediaCode;
+import com.example.pilot.networking.udp.MediaFrame;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrameBufferPoolTest {
+    private static final int KB = 1024;
+
+    @Test
+    public void buffersAreRoundedUpToPowerOfTwo() {
+        // given
+        FrameBufferPool pool = new FrameBufferPool(KB * KB);
+
+        // when
+        byte[] small = pool.acquire(10);
+        byte[] medium = pool.acquire(3000);
+        byte[] exact = pool.acquire(4 * KB);
+
+        // then
+        Assert.assertEquals(KB, small.length);
+        Assert.assertEquals(4 * KB, medium.length);
+        Assert.assertEquals(4 * KB, exact.length);
+        Assert.assertEquals(3, pool.getMisses());
+    }
+
+    @Test
+    public void releasedBufferIsReusedWithinItsSizeClass() {
+        // given
+        FrameBufferPool pool = new FrameBufferPool(KB * KB);
+        byte[] buffer = pool.acquire(3000);
+
+        // when
+        pool.release(buffer);
+        byte[] reused = pool.acquire(2500);
+
+        // then
+        Assert.assertSame(buffer, reused);
+        Assert.assertEquals(1, pool.getHits());
+        Assert.assertEquals(1, pool.getMisses());
+        Assert.assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void bufferIsNotReusedAcrossSizeClasses() {
+        // given
+        FrameBufferPool pool = new FrameBufferPool(KB * KB);
+        pool.release(pool.acquire(3000));
+
+        // when
+        byte[] bigger = pool.acquire(5000);
+
+        // then
+        Assert.assertEquals(8 * KB, bigger.length);
+        Assert.assertEquals(0, pool.getHits());
+        Assert.assertEquals(4 * KB, pool.getPooledBytes());
+    }
+
+    @Test
+    public void leastRecentlyUsedClassIsEvictedWhenFull() {
+        // given
+        FrameBufferPool pool = new FrameBufferPool(8 * KB);
+        byte[] old = pool.acquire(4 * KB);
+        byte[] recent = pool.acquire(8 * KB);
+
+        // when
+        pool.release(old);
+        pool.release(recent);
+
+        // then
+        Assert.assertEquals(1, pool.getEvictions());
+        Assert.assertEquals(8 * KB, pool.getPooledBytes());
+        Assert.assertSame(recent, pool.acquire(8 * KB));
+    }
+
+    @Test
+    public void bufferLargerThanCapacityIsDropped() {
+        // given
+        FrameBufferPool pool = new FrameBufferPool(2 * KB);
+
+        // when
+        pool.release(pool.acquire(4 * KB));
+
+        // then
+        Assert.assertEquals(1, pool.getEvictions());
+        Assert.assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void frameReturnsBufferAfterLastRelease() {
+        // given
+        FrameBufferPool pool = new FrameBufferPool(KB * KB);
+        MediaFrame frame = new MediaFrame(MediaCode.VIDEO_FRAME, 0, 3000, MediaFrame.DEFAULT_FRAGMENT_PAYLOAD_SIZE, pool);
+
+        // when
+        frame.retain();
+        frame.release();
+        long pooledAfterFirstRelease = pool.getPooledBytes();
+        frame.release();
+
+        // then
+        Assert.assertEquals(0, pooledAfterFirstRelease);
+        Assert.assertEquals(4 * KB, pool.getPooledBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void frameCantBeReleasedTwice() {
+        // given
+        MediaFrame frame = new MediaFrame(MediaCode.VIDEO_FRAME, 0, 3000, MediaFrame.DEFAULT_FRAGMENT_PAYLOAD_SIZE,
+                new FrameBufferPool(KB * KB));
+
+        // when
+        frame.release();
+        frame.release();
+    }
+}
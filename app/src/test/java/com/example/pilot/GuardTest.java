@@ -0,0 +1,195 @@
+package com.example.pilot;
+
+import com.example.pilot.security.Guard;
+import com.example.pilot.security.MessageSecurityPreprocessor;
+import com.example.pilot.security.TCPGuard;
+import com.example.pilot.security.ReplayWindow;
+import com.example.pilot.security.exceptions.AuthenticationException;
+import com.example.pilot.security.utils.CipherSuite;
+import com.example.pilot.security.utils.Endpoint;
+import com.example.pilot.security.utils.TLSPacketView;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+public class GuardTest {
+    private static final int MESSAGE_SIZE = 1400;
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    // jdk names ChaCha20 cipher differently than android, so UDPGuard can't be tested here
+    private static TCPGuard createGuard(Endpoint endpoint, long seed) throws Exception {
+        TCPGuard guard = new TCPGuard(endpoint);
+        guard.setSessionKey(randomBytes(32, seed));
+        return guard;
+    }
+
+    @Test
+    public void guardEncryptsInPlace() throws Exception {
+        // given
+        Guard server = createGuard(Endpoint.SERVER, 3);
+        Guard client = createGuard(Endpoint.CLIENT, 3);
+        byte[] message = randomBytes(MESSAGE_SIZE, 1);
+        byte[] aad = randomBytes(16, 2);
+        byte[] nonce = server.getNonce();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MESSAGE_SIZE + server.getTagLength());
+        buffer.put(message).flip();
+        ByteBuffer output = buffer.duplicate();
+        output.clear();
+
+        // when
+        int written = server.encrypt(buffer.duplicate(), aad, nonce, output);
+
+        // then
+        byte[] ciphertext = new byte[written];
+        buffer.limit(written);
+        buffer.get(ciphertext);
+
+        Assert.assertEquals(MESSAGE_SIZE + server.getTagLength(), written);
+        Assert.assertArrayEquals(message, client.decrypt(ciphertext, aad, nonce));
+    }
+
+    @Test
+    public void cachedCipherPicksUpNewKey() throws Exception {
+        // given
+        TCPGuard server = createGuard(Endpoint.SERVER, 3);
+        TCPGuard client = createGuard(Endpoint.CLIENT, 3);
+        byte[] message = randomBytes(MESSAGE_SIZE, 1);
+        byte[] aad = new byte[0];
+        byte[] nonce = server.getNonce();
+        byte[] oldKeyCiphertext = server.encrypt(message, aad, nonce);
+
+        // when
+        server.setSessionKey(randomBytes(32, 4));
+        client.setSessionKey(randomBytes(32, 4));
+        byte[] ciphertext = server.encrypt(message, aad, server.getNonce());
+
+        // then
+        Assert.assertFalse(Arrays.equals(oldKeyCiphertext, ciphertext));
+        Assert.assertThrows(AuthenticationException.class, () -> client.decrypt(oldKeyCiphertext, aad, nonce));
+    }
+
+    @Test
+    public void cipherIsUsableAfterFailedDecryption() throws Exception {
+        // given
+        TCPGuard server = createGuard(Endpoint.SERVER, 3);
+        TCPGuard client = createGuard(Endpoint.CLIENT, 3);
+        byte[] message = randomBytes(MESSAGE_SIZE, 1);
+        byte[] aad = new byte[0];
+        byte[] nonce = server.getNonce();
+        byte[] ciphertext = server.encrypt(message, aad, nonce);
+        byte[] tampered = Arrays.copyOf(ciphertext, ciphertext.length);
+        tampered[0] ^= 1;
+
+        // when
+        Assert.assertThrows(AuthenticationException.class, () -> client.decrypt(tampered, aad, nonce));
+        byte[] decrypted = client.decrypt(ciphertext, aad, nonce);
+
+        // then
+        Assert.assertArrayEquals(message, decrypted);
+    }
+
+    @Test
+    public void ownNoncesAreNotAcceptedFromPeer() throws Exception {
+        // given
+        TCPGuard client = createGuard(Endpoint.CLIENT, 3);
+        byte[] nonce = client.getNonce();
+        byte[] reflected = client.encrypt(randomBytes(MESSAGE_SIZE, 1), new byte[0], nonce);
+
+        // when, then
+        Assert.assertThrows(AuthenticationException.class, () -> client.decrypt(reflected, new byte[0], nonce));
+    }
+
+    @Test
+    public void replayedPacketIsRejected() throws Exception {
+        // given
+        TCPGuard server = createGuard(Endpoint.SERVER, 3);
+        TCPGuard client = createGuard(Endpoint.CLIENT, 3);
+        byte[] nonce = server.getNonce();
+        byte[] ciphertext = server.encrypt(randomBytes(MESSAGE_SIZE, 1), new byte[0], nonce);
+
+        // when
+        client.decrypt(ciphertext, new byte[0], nonce);
+
+        // then
+        Assert.assertThrows(AuthenticationException.class, () -> client.decrypt(ciphertext, new byte[0], nonce));
+    }
+
+    @Test
+    public void reorderedPacketsWithinWindowAreAccepted() throws Exception {
+        // given
+        TCPGuard server = createGuard(Endpoint.SERVER, 3);
+        TCPGuard client = createGuard(Endpoint.CLIENT, 3);
+        byte[][] nonces = new byte[ReplayWindow.SIZE + 1][];
+        byte[][] ciphertexts = new byte[nonces.length][];
+        for (int i = 0; i < nonces.length; i++) {
+            nonces[i] = server.getNonce();
+            ciphertexts[i] = server.encrypt(randomBytes(16, i), new byte[0], nonces[i]);
+        }
+
+        // when
+        client.decrypt(ciphertexts[nonces.length - 1], new byte[0], nonces[nonces.length - 1]);
+        for (int i = nonces.length - 2; i > 0; i--)
+            client.decrypt(ciphertexts[i], new byte[0], nonces[i]);
+
+        // then
+        Assert.assertThrows(AuthenticationException.class, () -> client.decrypt(ciphertexts[0], new byte[0], nonces[0]));
+    }
+
+    @Test
+    public void negotiatedSuiteKeepsSessionKeyAndNonces() throws Exception {
+        // given
+        TCPGuard server = createGuard(Endpoint.SERVER, 3);
+        TCPGuard client = createGuard(Endpoint.CLIENT, 3);
+        byte[] firstNonce = server.getNonce();
+        byte[] keyBytes = server.getSessionKey().getEncoded();
+
+        // when
+        server.setCipherSuite(CipherSuite.CHACHA20_POLY1305);
+        server.setCipherSuite(CipherSuite.AES_256_GCM);
+        client.setCipherSuite(CipherSuite.AES_256_GCM);
+        byte[] nonce = server.getNonce();
+        byte[] ciphertext = server.encrypt(randomBytes(MESSAGE_SIZE, 1), new byte[0], nonce);
+
+        // then
+        Assert.assertArrayEquals(keyBytes, server.getSessionKey().getEncoded());
+        Assert.assertEquals("AES", server.getSessionKey().getAlgorithm());
+        Assert.assertFalse(Arrays.equals(firstNonce, nonce));
+        Assert.assertArrayEquals(randomBytes(MESSAGE_SIZE, 1), client.decrypt(ciphertext, new byte[0], nonce));
+    }
+
+    @Test
+    public void bufferSentPacketIsReceivedByPreprocessor() throws Exception {
+        // given
+        MessageSecurityPreprocessor sender = new MessageSecurityPreprocessor(createGuard(Endpoint.SERVER, 3));
+        MessageSecurityPreprocessor preprocessor = new MessageSecurityPreprocessor(createGuard(Endpoint.CLIENT, 3));
+        byte[] message = randomBytes(MESSAGE_SIZE, 1);
+        ByteBuffer packet = ByteBuffer.allocateDirect(1500);
+        packet.position(preprocessor.getSendHeaderSize());
+        packet.put(message);
+        packet.flip();
+        packet.position(preprocessor.getSendHeaderSize());
+        ByteBuffer messageView = packet.slice();
+        packet.clear();
+
+        // when
+        int written = sender.preprocessToSend(messageView, packet);
+
+        // then
+        packet.flip();
+        ByteBuffer plaintext = ByteBuffer.allocate(1500);
+        int read = preprocessor.preprocessReceived(new TLSPacketView(packet).parse(), plaintext);
+
+        Assert.assertEquals(written, packet.limit());
+        Assert.assertEquals(MESSAGE_SIZE, read);
+        Assert.assertArrayEquals(message, Arrays.copyOf(plaintext.array(), read));
+    }
+}
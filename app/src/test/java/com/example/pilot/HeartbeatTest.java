@@ -0,0 +1,96 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.tcp.Heartbeat;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HeartbeatTest {
+    private static final long MS = 1_000_000;
+    private static final int MAX_MISSED_BEATS = 3;
+
+    private Heartbeat heartbeat;
+
+    @Before
+    public void setUp() {
+        heartbeat = new Heartbeat(MAX_MISSED_BEATS);
+    }
+
+    @Test
+    public void firstEchoGivesRtt() {
+        // given
+        int seq = heartbeat.nextBeat(0);
+
+        // when
+        heartbeat.onAck(seq, 40 * MS);
+
+        // then
+        Assert.assertEquals(40, heartbeat.getSmoothedRttMs());
+        Assert.assertEquals(20, heartbeat.getRttVarMs());
+        Assert.assertEquals(40, heartbeat.getMinRttMs());
+    }
+
+    @Test
+    public void rttIsSmoothed() {
+        // given
+        heartbeat.onAck(heartbeat.nextBeat(0), 40 * MS);
+
+        // when
+        heartbeat.onAck(heartbeat.nextBeat(1000 * MS), 1120 * MS);
+
+        // then
+        Assert.assertEquals(50, heartbeat.getSmoothedRttMs());
+        Assert.assertEquals(40, heartbeat.getMinRttMs());
+    }
+
+    @Test
+    public void rttIsUnknownBeforeFirstEcho() {
+        // when
+        heartbeat.nextBeat(0);
+
+        // then
+        Assert.assertEquals(Heartbeat.UNKNOWN_RTT, heartbeat.getSmoothedRttMs());
+    }
+
+    @Test
+    public void peerIsDeadAfterMissedBeats() {
+        // when
+        for (int i = 0; i < MAX_MISSED_BEATS - 1; i++)
+            heartbeat.nextBeat(i * 1000 * MS);
+        boolean deadBeforeLastBeat = heartbeat.isPeerDead();
+        heartbeat.nextBeat(MAX_MISSED_BEATS * 1000 * MS);
+
+        // then
+        Assert.assertFalse(deadBeforeLastBeat);
+        Assert.assertTrue(heartbeat.isPeerDead());
+    }
+
+    @Test
+    public void lateEchoKeepsPeerAlive() {
+        // given
+        int firstSeq = heartbeat.nextBeat(0);
+        heartbeat.nextBeat(1000 * MS);
+
+        // when
+        heartbeat.onAck(firstSeq, 1500 * MS);
+        heartbeat.nextBeat(2000 * MS);
+
+        // then
+        Assert.assertFalse(heartbeat.isPeerDead());
+        Assert.assertEquals(1, heartbeat.getUnackedBeats());
+    }
+
+    @Test
+    public void unknownSeqIsIgnored() {
+        // given
+        heartbeat.nextBeat(0);
+
+        // when
+        heartbeat.onAck(5, 10 * MS);
+
+        // then
+        Assert.assertEquals(1, heartbeat.getUnackedBeats());
+        Assert.assertEquals(Heartbeat.UNKNOWN_RTT, heartbeat.getSmoothedRttMs());
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.udp.JitterBuffer;
+import com.example.pilot.networking.udp.LockedJitterBuffer;
+import com.example.pilot.networking.udp.MediaCode;
+import com.example.pilot.networking.udp.MediaFrame;
+import com.example.pilot.networking.udp.SpscJitterBuffer;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.function.Function;
+
+/**
+ * Hands frames from producer to consumer thread through both jitter buffers. Producer stays at most
+ * WINDOW frames ahead of consumer so that buffer doesn't overrun, consumer takes frames as fast as it can,
+ * so both threads contend for the buffer on every frame.
+ *
+ * Not a unit test, run manually.
+ */
+@Ignore("benchmark, run manually")
+public class JitterBufferBenchmark {
+    private static final int FRAMES = 1_000_000;
+    private static final int PREFETCH = 4;
+    private static final int CAPACITY = 64;
+    private static final int WINDOW = 32;
+    private static final int ROUNDS = 5;
+
+    private static final JitterBuffer.Listener NO_OP_LISTENER = new JitterBuffer.Listener() {
+        @Override
+        public void onPlaybackStarted() {}
+
+        @Override
+        public void onOverrun() {}
+
+        @Override
+        public void onSkippedTo(int seqNum) {}
+    };
+
+    private volatile int lastTakenSeq;
+    private volatile boolean consumerDone;
+
+    @Test
+    public void compareHandOff() throws InterruptedException {
+        long lockedNs = measure(listener -> new LockedJitterBuffer(PREFETCH, CAPACITY, 1000, listener));
+        long spscNs = measure(listener -> new SpscJitterBuffer(PREFETCH, CAPACITY, 1000, listener));
+
+        System.out.printf("locked: %6.1f ns/frame\tspsc: %6.1f ns/frame%n",
+                (double) lockedNs / FRAMES, (double) spscNs / FRAMES);
+    }
+
+    // best of ROUNDS runs, first runs warm up the JIT
+    private long measure(Function<JitterBuffer.Listener, JitterBuffer> bufferFactory) throws InterruptedException {
+        long best = Long.MAX_VALUE;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            JitterBuffer buffer = bufferFactory.apply(NO_OP_LISTENER);
+            lastTakenSeq = -1;
+            consumerDone = false;
+
+            Thread consumer = new Thread(() -> {
+                try {
+                    while (lastTakenSeq < FRAMES - 1) {
+                        MediaFrame frame = buffer.take();
+                        if (frame != null)
+                            lastTakenSeq = frame.getSeqNum();
+                    }
+                } catch (InterruptedException consumed) {
+                    // pass
+                }
+                consumerDone = true;
+            });
+
+            long start = System.nanoTime();
+            consumer.start();
+
+            // keeps producing past FRAMES, so that consumer which underran near the end can finish prefetch
+            for (int seq = 0; !consumerDone; seq++) {
+                while (seq - lastTakenSeq > WINDOW && !consumerDone)
+                    Thread.yield();
+
+                buffer.put(new MediaFrame(MediaCode.VIDEO_FRAME, seq, 0));
+            }
+
+            consumer.join();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return best;
+    }
+}
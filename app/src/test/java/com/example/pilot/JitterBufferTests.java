@@ -0,0 +1,275 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.udp.JitterBuffer;
+import com.example.pilot.networking.udp.LockedJitterBuffer;
+import com.example.pilot.networking.udp.MediaFrame;
+import com.example.pilot.networking.udp.SpscJitterBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+
+@RunWith(Parameterized.class)
+public class JitterBufferTests {
+    private static final int PREFETCH = 2;
+    private static final int CAPACITY = 8;
+    // larger than window, so that ring of SPSC buffer is sized by it
+    private static final int MAX_CAPACITY = 4 * CAPACITY + 4;
+    private static final long PREFETCH_TIMEOUT_MS = 60_000;
+
+    private final Function<JitterBuffer.Listener, JitterBuffer> bufferFactory;
+    private JitterBuffer.Listener listener;
+
+    public JitterBufferTests(String name, Function<JitterBuffer.Listener, JitterBuffer> bufferFactory) {
+        this.bufferFactory = bufferFactory;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> implementations() {
+        return Arrays.asList(new Object[][] {
+                {"locked", (Function<JitterBuffer.Listener, JitterBuffer>) listener ->
+                        new LockedJitterBuffer(PREFETCH, CAPACITY, PREFETCH_TIMEOUT_MS, listener)},
+                {"spsc", (Function<JitterBuffer.Listener, JitterBuffer>) listener ->
+                        new SpscJitterBuffer(PREFETCH, CAPACITY, PREFETCH_TIMEOUT_MS, listener)},
+                {"spsc with max capacity", (Function<JitterBuffer.Listener, JitterBuffer>) listener ->
+                        new SpscJitterBuffer(PREFETCH, CAPACITY, MAX_CAPACITY, PREFETCH_TIMEOUT_MS, listener)}
+        });
+    }
+
+    private static MediaFrame mf(int seq) {
+        MediaFrame mediaFrame = Mockito.mock(MediaFrame.class);
+        Mockito.when(mediaFrame.getSeqNum()).thenReturn(seq);
+        return mediaFrame;
+    }
+
+    private JitterBuffer getJitterBuffer() {
+        listener = Mockito.mock(JitterBuffer.Listener.class);
+        return bufferFactory.apply(listener);
+    }
+
+    private static void putAll(JitterBuffer buffer, MediaFrame... frames) throws InterruptedException {
+        for (MediaFrame frame : frames)
+            buffer.put(frame);
+    }
+
+    @Test
+    public void framesAreTakenInOrderAfterPrefetch() throws InterruptedException {
+        // given
+        JitterBuffer buffer = getJitterBuffer();
+        MediaFrame mf0 = mf(0), mf1 = mf(1), mf2 = mf(2);
+
+        // when
+        putAll(buffer, mf0, mf2, mf1);
+
+        // then
+        Mockito.verify(listener).onPlaybackStarted();
+        Assert.assertEquals(mf0, buffer.take());
+        Assert.assertEquals(mf1, buffer.take());
+        Assert.assertEquals(mf2, buffer.take());
+    }
+
+    @Test
+    public void consumerWaitsForPrefetch() throws Exception {
+        // given
+        JitterBuffer buffer = getJitterBuffer();
+        MediaFrame mf0 = mf(0), mf1 = mf(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        // when
+        Future<MediaFrame> taken = executor.submit(buffer::take);
+        buffer.put(mf0);
+        Thread.sleep(50);
+        boolean doneBeforePrefetch = taken.isDone();
+        buffer.put(mf1);
+
+        // then
+        Assert.assertFalse(doneBeforePrefetch);
+        Assert.assertEquals(mf0, taken.get(5, TimeUnit.SECONDS));
+
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void gapIsSkipped() throws InterruptedException {
+        // given
+        JitterBuffer buffer = getJitterBuffer();
+        MediaFrame mf0 = mf(0), mf1 = mf(1), mf3 = mf(3), mf4 = mf(4);
+
+        // when
+        putAll(buffer, mf0, mf1, mf3, mf4);
+        buffer.take();
+        buffer.take();
+
+        // then
+        Assert.assertEquals(mf3, buffer.take());
+        Mockito.verify(listener).onSkippedTo(3);
+        Assert.assertEquals(mf4, buffer.take());
+    }
+
+    @Test
+    public void underrunReturnsNullAndStartsNewSequence() throws InterruptedException {
+        // given
+        JitterBuffer buffer = getJitterBuffer();
+        MediaFrame mf10 = mf(10), mf11 = mf(11);
+
+        // when
+        putAll(buffer, mf(0), mf(1));
+        buffer.take();
+        buffer.take();
+        MediaFrame underrun = buffer.take();
+        putAll(buffer, mf10, mf11);
+
+        // then
+        Assert.assertNull(underrun);
+        Assert.assertEquals(mf10, buffer.take());
+        Assert.assertEquals(mf11, buffer.take());
+    }
+
+    @Test
+    public void duplicateIsReleased() throws InterruptedException {
+        // given
+        JitterBuffer buffer = getJitterBuffer();
+        MediaFrame mf0 = mf(0), mf1 = mf(1), duplicate = mf(0);
+
+        // when
+        putAll(buffer, mf0, mf1, duplicate);
+
+        // then
+        Mockito.verify(duplicate).release();
+        Mockito.verify(mf0, Mockito.never()).release();
+        Assert.assertEquals(mf0, buffer.take());
+        Assert.assertEquals(mf1, buffer.take());
+    }
+
+    @Test
+    public void overrunDropsOldestFrames() throws InterruptedException {
+        // given
+        JitterBuffer buffer = getJitterBuffer();
+        MediaFrame[] frames = new MediaFrame[CAPACITY + 1];
+        for (int i = 0; i < frames.length; i++)
+            frames[i] = mf(i);
+
+        // when
+        putAll(buffer, frames);
+
+        // then
+        Mockito.verify(listener).onOverrun();
+        Mockito.verify(frames[0]).release();
+        Assert.assertEquals(frames[1], buffer.take());
+    }
+
+    @Test
+    public void resetDropsBufferedFrames() throws InterruptedException {
+        // given
+        JitterBuffer buffer = getJitterBuffer();
+        MediaFrame mf0 = mf(0), mf1 = mf(1), mf5 = mf(5), mf6 = mf(6);
+
+        // when
+        putAll(buffer, mf0, mf1);
+        buffer.reset();
+        putAll(buffer, mf5, mf6);
+
+        // then
+        Mockito.verify(mf0).release();
+        Mockito.verify(mf1).release();
+        Assert.assertEquals(mf5, buffer.take());
+    }
+
+    @Test
+    public void shrinkingPrefetchDropsExcessFrames() throws InterruptedException {
+        // given
+        JitterBuffer buffer = getJitterBuffer();
+        MediaFrame[] frames = new MediaFrame[6];
+        for (int i = 0; i < frames.length; i++)
+            frames[i] = mf(i);
+        putAll(buffer, frames);
+
+        // when
+        buffer.resize(1, CAPACITY, PREFETCH_TIMEOUT_MS);
+
+        // then
+        for (int i = 0; i < 5; i++)
+            Mockito.verify(frames[i]).release();
+        Assert.assertEquals(frames[5], buffer.take());
+    }
+
+    @Test
+    public void growingPrefetchAppliesFromNextPrefetch() throws InterruptedException {
+        // given
+        JitterBuffer buffer = getJitterBuffer();
+        putAll(buffer, mf(0), mf(1));
+
+        // when
+        buffer.resize(3, CAPACITY, PREFETCH_TIMEOUT_MS);
+        buffer.take();
+        buffer.take();
+        buffer.take();
+        putAll(buffer, mf(2), mf(3));
+
+        // then
+        Mockito.verify(listener, Mockito.times(1)).onPlaybackStarted();
+        putAll(buffer, mf(4));
+        Mockito.verify(listener, Mockito.times(2)).onPlaybackStarted();
+    }
+
+    @Test
+    public void sequenceWrapsAroundRingAndRestarts() throws InterruptedException {
+        // given
+        JitterBuffer buffer = getJitterBuffer();
+        int frames = 4 * MAX_CAPACITY;
+        putAll(buffer, mf(0));
+
+        // when
+        for (int seq = 1; seq < frames; seq++) {
+            buffer.put(mf(seq));
+            Assert.assertEquals(seq - 1, buffer.take().getSeqNum());
+        }
+        buffer.take();
+        MediaFrame underrun = buffer.take();
+        MediaFrame restarted = mf(frames + MAX_CAPACITY + 3);
+        putAll(buffer, restarted, mf(frames + MAX_CAPACITY + 4));
+
+        // then
+        Assert.assertNull(underrun);
+        Assert.assertEquals(restarted, buffer.take());
+    }
+
+    @Test
+    public void halfFilledBufferGrantsCreditsPastBufferedFrames() throws InterruptedException {
+        // given
+        JitterBuffer buffer = getJitterBuffer();
+        int buffered = CAPACITY / 2;
+        for (int seq = 0; seq < buffered; seq++)
+            buffer.put(mf(seq));
+
+        // when
+        // steady stream, server sends up to last played seq + credits after every played frame
+        int nextSeq = buffered;
+        int minInFlight = Integer.MAX_VALUE;
+        for (int i = 0; i < 4 * MAX_CAPACITY; i++) {
+            int played = buffer.take().getSeqNum();
+            int creditLimit = played + buffer.getCapacity();
+            minInFlight = Math.min(minInFlight, creditLimit - played);
+
+            // server has captured next frame only, rest of window stays available
+            if (nextSeq <= creditLimit)
+                buffer.put(mf(nextSeq++));
+        }
+
+        // then
+        Mockito.verify(listener, Mockito.never()).onOverrun();
+        Assert.assertTrue(minInFlight >= CAPACITY);
+        Assert.assertEquals(4 * MAX_CAPACITY + buffered, nextSeq);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.udp.JitterEstimator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JitterEstimatorTest {
+    private static final long MS = 1_000_000;
+    private static final double SPACING_MS = 20;
+
+    private static long feedSteady(JitterEstimator estimator, int fromSeq, int frames, long startNs) {
+        long arrivalNs = startNs;
+        for (int seq = fromSeq; seq < fromSeq + frames; seq++) {
+            estimator.onFrameArrived(seq, arrivalNs);
+            arrivalNs += (long) (SPACING_MS * MS);
+        }
+        return arrivalNs;
+    }
+
+    @Test
+    public void steadyStreamHasNoJitter() {
+        // given
+        JitterEstimator estimator = new JitterEstimator(64, 0.95f, SPACING_MS);
+
+        // when
+        feedSteady(estimator, 0, 100, 0);
+
+        // then
+        Assert.assertEquals(0, estimator.getJitterMs(), 0.01);
+        Assert.assertEquals(0, estimator.getDelayTargetMs(), 0.01);
+        Assert.assertEquals(SPACING_MS, estimator.getExpectedSpacingMs(), 0.01);
+    }
+
+    @Test
+    public void delayedBurstRaisesDelayTarget() {
+        // given
+        JitterEstimator estimator = new JitterEstimator(64, 0.95f, SPACING_MS);
+        long arrivalNs = feedSteady(estimator, 0, 32, 0);
+
+        // when
+        // frames 32..41 are held back by 100 ms and arrive at once
+        long burstNs = arrivalNs + 100 * MS;
+        for (int seq = 32; seq < 42; seq++)
+            estimator.onFrameArrived(seq, burstNs);
+
+        // then
+        Assert.assertTrue(estimator.getJitterMs() > 1);
+        Assert.assertTrue(estimator.getDelayTargetMs() >= 50);
+    }
+
+    @Test
+    public void delayTargetShrinksWhenBurstLeavesWindow() {
+        // given
+        JitterEstimator estimator = new JitterEstimator(64, 0.95f, SPACING_MS);
+        long arrivalNs = feedSteady(estimator, 0, 32, 0);
+        long burstNs = arrivalNs + 100 * MS;
+        for (int seq = 32; seq < 42; seq++)
+            estimator.onFrameArrived(seq, burstNs);
+
+        // when
+        feedSteady(estimator, 42, 128, burstNs + (long) (SPACING_MS * MS));
+
+        // then
+        Assert.assertEquals(0, estimator.getDelayTargetMs(), 1);
+    }
+
+    @Test
+    public void duplicatesAndLongPausesAreIgnored() {
+        // given
+        JitterEstimator estimator = new JitterEstimator(64, 0.95f, SPACING_MS);
+        long arrivalNs = feedSteady(estimator, 0, 10, 0);
+
+        // when
+        estimator.onFrameArrived(9, arrivalNs);
+        feedSteady(estimator, 10, 10, arrivalNs + 5000 * MS);
+
+        // then
+        Assert.assertEquals(0, estimator.getDelayTargetMs(), 0.01);
+        Assert.assertEquals(9, estimator.getSampleCount());
+    }
+
+    @Test
+    public void sequenceRestartStartsNewWindow() {
+        // given
+        JitterEstimator estimator = new JitterEstimator(64, 0.95f, SPACING_MS);
+        long arrivalNs = feedSteady(estimator, 1000, 32, 0);
+
+        // when
+        feedSteady(estimator, 0, 10, arrivalNs);
+
+        // then
+        Assert.assertEquals(0, estimator.getJitterMs(), 0.01);
+        Assert.assertEquals(9, estimator.getSampleCount());
+    }
+
+    @Test
+    public void resetForgetsPreviousStream() {
+        // given
+        JitterEstimator estimator = new JitterEstimator(64, 0.95f, SPACING_MS);
+        long arrivalNs = feedSteady(estimator, 0, 32, 0);
+        for (int seq = 32; seq < 42; seq++)
+            estimator.onFrameArrived(seq, arrivalNs + 100 * MS);
+
+        // when
+        estimator.reset();
+
+        // then
+        Assert.assertEquals(0, estimator.getJitterMs(), 0.01);
+        Assert.assertEquals(0, estimator.getDelayTargetMs(), 0.01);
+        Assert.assertEquals(SPACING_MS, estimator.getExpectedSpacingMs(), 0.01);
+    }
+}
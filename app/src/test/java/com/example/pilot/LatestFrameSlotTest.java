@@ -0,0 +1,125 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.udp.LatestFrameSlot;
+import com.example.pilot.networking.udp.MediaFrame;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class LatestFrameSlotTest {
+    private static MediaFrame mf(int seq) {
+        MediaFrame mediaFrame = Mockito.mock(MediaFrame.class);
+        Mockito.when(mediaFrame.getSeqNum()).thenReturn(seq);
+        return mediaFrame;
+    }
+
+    @Test
+    public void newestFrameReplacesUntakenOne() throws InterruptedException {
+        // given
+        LatestFrameSlot slot = new LatestFrameSlot();
+        MediaFrame mf0 = mf(0), mf1 = mf(1);
+
+        // when
+        slot.publish(mf0);
+        slot.publish(mf1);
+
+        // then
+        Mockito.verify(mf0).release();
+        Assert.assertEquals(mf1, slot.take());
+        Assert.assertEquals(1, slot.getDroppedFrames());
+    }
+
+    @Test
+    public void olderFrameIsDropped() {
+        // given
+        LatestFrameSlot slot = new LatestFrameSlot();
+        MediaFrame mf5 = mf(5), mf3 = mf(3);
+
+        // when
+        slot.publish(mf5);
+        slot.publish(mf3);
+
+        // then
+        Mockito.verify(mf3).release();
+        Assert.assertEquals(mf5, slot.poll());
+        Assert.assertNull(slot.poll());
+    }
+
+    @Test
+    public void clearStartsNewSequence() {
+        // given
+        LatestFrameSlot slot = new LatestFrameSlot();
+        MediaFrame mf5 = mf(5), mf0 = mf(0);
+        slot.publish(mf5);
+
+        // when
+        slot.clear();
+        slot.publish(mf0);
+
+        // then
+        Mockito.verify(mf5).release();
+        Assert.assertEquals(mf0, slot.poll());
+    }
+
+    @Test
+    public void restartedNumberingStartsNewSequence() {
+        // given
+        LatestFrameSlot slot = new LatestFrameSlot();
+        MediaFrame mf5000 = mf(5000), mf0 = mf(0), mf1 = mf(1);
+        slot.publish(mf5000);
+        slot.poll();
+
+        // when
+        slot.publish(mf0);
+        MediaFrame restarted = slot.poll();
+        slot.publish(mf1);
+
+        // then
+        Assert.assertEquals(mf0, restarted);
+        Assert.assertEquals(mf1, slot.poll());
+        Assert.assertEquals(0, slot.getDroppedFrames());
+    }
+
+    @Test
+    public void sequenceWrapsAround() {
+        // given
+        LatestFrameSlot slot = new LatestFrameSlot();
+        MediaFrame last = mf(Integer.MAX_VALUE), wrapped = mf(Integer.MIN_VALUE);
+        slot.publish(last);
+        slot.poll();
+
+        // when
+        slot.publish(wrapped);
+        slot.publish(mf(Integer.MAX_VALUE - 1));
+
+        // then
+        Assert.assertEquals(wrapped, slot.poll());
+        Assert.assertNull(slot.poll());
+    }
+
+    @Test
+    public void takeWaitsForFrame() throws Exception {
+        // given
+        LatestFrameSlot slot = new LatestFrameSlot();
+        MediaFrame mf0 = mf(0);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        // when
+        Future<MediaFrame> taken = executor.submit(slot::take);
+        Thread.sleep(50);
+        boolean doneBeforePublish = taken.isDone();
+        slot.publish(mf0);
+
+        // then
+        Assert.assertFalse(doneBeforePublish);
+        Assert.assertEquals(mf0, taken.get(5, TimeUnit.SECONDS));
+
+        executor.shutdownNow();
+    }
+}
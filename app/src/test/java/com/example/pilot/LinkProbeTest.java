@@ -0,0 +1,89 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.udp.LinkProbe;
+import com.example.pilot.networking.udp.MediaPacketView;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class LinkProbeTest {
+    private static final long US = 1000;
+    // code as sent by the server
+    private static final byte PROBE_CODE = 4;
+
+    private LinkProbe linkProbe;
+
+    @Before
+    public void setUp() {
+        linkProbe = new LinkProbe();
+    }
+
+    private static MediaPacketView probe(int train, int index, int payloadSize) {
+        ByteBuffer packet = ByteBuffer.allocate(MediaPacketView.HEADER_SIZE + payloadSize)
+                .put(PROBE_CODE)
+                .put(new byte[3])
+                .putInt(train)
+                .putInt(0)
+                .putInt(index);
+
+        return MediaPacketView.wrap(packet.array(), packet.capacity());
+    }
+
+    @Test
+    public void largestProbeIsReported() {
+        // when
+        linkProbe.onProbeReceived(probe(1, 0, 512), 0);
+        linkProbe.onProbeReceived(probe(1, 1, 1200), 0);
+        linkProbe.onProbeReceived(probe(1, 2, 1024), 0);
+
+        // then
+        Assert.assertEquals(1200, linkProbe.getMaxPayloadSize());
+    }
+
+    @Test
+    public void spanOfLatestTrainIsMeasured() {
+        // given
+        linkProbe.onProbeReceived(probe(1, 0, 1440), 0);
+
+        // when
+        linkProbe.onProbeReceived(probe(2, 0, 1200), 1000 * US);
+        linkProbe.onProbeReceived(probe(2, 1, 1200), 1300 * US);
+        linkProbe.onProbeReceived(probe(2, 2, 1200), 1700 * US);
+
+        // then
+        Assert.assertEquals(2, linkProbe.getTrain());
+        Assert.assertEquals(3, linkProbe.getTrainPackets());
+        Assert.assertEquals(700, linkProbe.getTrainSpanUs());
+        Assert.assertEquals(1440, linkProbe.getMaxPayloadSize());
+    }
+
+    @Test
+    public void lateProbeOfOlderTrainIsIgnored() {
+        // given
+        linkProbe.onProbeReceived(probe(2, 0, 1200), 0);
+
+        // when
+        linkProbe.onProbeReceived(probe(1, 1, 512), 5000 * US);
+
+        // then
+        Assert.assertEquals(1, linkProbe.getTrainPackets());
+        Assert.assertEquals(0, linkProbe.getTrainSpanUs());
+    }
+
+    @Test
+    public void resetForgetsProbes() {
+        // given
+        linkProbe.onProbeReceived(probe(1, 0, 1440), 0);
+
+        // when
+        linkProbe.reset();
+
+        // then
+        Assert.assertEquals(0, linkProbe.getMaxPayloadSize());
+        Assert.assertEquals(0, linkProbe.getTrain());
+        Assert.assertEquals(0, linkProbe.getTrainPackets());
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.pilot;
+
+import com.example.pilot.utils.Log2Histogram;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Log2HistogramTest {
+    @Test
+    public void valuesAreRecordedInPowerOfTwoBuckets() {
+        // given
+        Log2Histogram histogram = new Log2Histogram(8);
+
+        // when
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(2);
+        histogram.record(3);
+        histogram.record(4);
+        histogram.record(7);
+
+        // then
+        Assert.assertEquals(1, histogram.getCount(0));
+        Assert.assertEquals(1, histogram.getCount(1));
+        Assert.assertEquals(2, histogram.getCount(2));
+        Assert.assertEquals(2, histogram.getCount(3));
+        Assert.assertEquals(6, histogram.getTotalCount());
+    }
+
+    @Test
+    public void overflowIsCountedInLastBucket() {
+        // given
+        Log2Histogram histogram = new Log2Histogram(4);
+
+        // when
+        histogram.record(8);
+        histogram.record(1_000_000);
+
+        // then
+        Assert.assertEquals(2, histogram.getCount(3));
+        Assert.assertEquals(4, Log2Histogram.getBucketLowerBound(3));
+    }
+
+    @Test
+    public void resetClearsAllBuckets() {
+        // given
+        Log2Histogram histogram = new Log2Histogram(4);
+        histogram.record(2);
+
+        // when
+        histogram.reset();
+
+        // then
+        Assert.assertEquals(0, histogram.getTotalCount());
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.udp.MediaCode;
+import com.example.pilot.networking.udp.MediaFrame;
+import com.example.pilot.networking.udp.MediaPacketView;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class MediaFrameTest {
+    private static final int FRAGMENT_SIZE = 4;
+    private static final int TOTAL_SIZE = 10;
+
+    private static MediaPacketView fragment(int offset) {
+        int payloadSize = Math.min(FRAGMENT_SIZE, TOTAL_SIZE - offset);
+        ByteBuffer packet = ByteBuffer.allocate(MediaPacketView.HEADER_SIZE + payloadSize)
+                .put((byte) MediaCode.VIDEO_FRAME.toInteger())
+                .put(new byte[3])
+                .putInt(0)
+                .putInt(TOTAL_SIZE)
+                .putInt(offset);
+
+        for (int i = 0; i < payloadSize; i++)
+            packet.put((byte) (offset + i));
+
+        return MediaPacketView.wrap(packet.array(), packet.capacity());
+    }
+
+    private static final int PARITY_CODE = 3;
+    private static final int GROUP_SIZE = 2;
+
+    // xor of fragments of the group starting at offset, shorter fragments padded with zeros
+    private static MediaPacketView parity(int offset) {
+        int payloadSize = Math.min(FRAGMENT_SIZE, TOTAL_SIZE - offset);
+        byte[] payload = new byte[payloadSize];
+
+        for (int fragmentOffset = offset; fragmentOffset < Math.min(offset + GROUP_SIZE * FRAGMENT_SIZE, TOTAL_SIZE);
+             fragmentOffset += FRAGMENT_SIZE)
+        {
+            for (int i = 0; i < Math.min(payloadSize, TOTAL_SIZE - fragmentOffset); i++)
+                payload[i] ^= (byte) (fragmentOffset + i);
+        }
+
+        ByteBuffer packet = ByteBuffer.allocate(MediaPacketView.HEADER_SIZE + payloadSize)
+                .put((byte) PARITY_CODE)
+                .put((byte) GROUP_SIZE)
+                .put(new byte[2])
+                .putInt(0)
+                .putInt(TOTAL_SIZE)
+                .putInt(offset)
+                .put(payload);
+
+        return MediaPacketView.wrap(packet.array(), packet.capacity());
+    }
+
+    private static MediaFrame frame() {
+        return new MediaFrame(MediaCode.VIDEO_FRAME, 0, TOTAL_SIZE, FRAGMENT_SIZE, null);
+    }
+
+    @Test
+    public void frameIsAssembledFromFragments() {
+        // given
+        MediaFrame frame = frame();
+
+        // when
+        frame.putFragment(fragment(8));
+        frame.putFragment(fragment(0));
+        frame.putFragment(fragment(4));
+
+        // then
+        Assert.assertTrue(frame.isFullyRecvd());
+        Assert.assertEquals(0, frame.getMissingFragmentCount());
+        Assert.assertEquals(-1, frame.getFirstMissingOffset());
+        for (int i = 0; i < TOTAL_SIZE; i++)
+            Assert.assertEquals(i, frame.getBytes()[i]);
+    }
+
+    @Test
+    public void duplicateFragmentIsIgnored() {
+        // given
+        MediaFrame frame = frame();
+
+        // when
+        frame.putFragment(fragment(0));
+        frame.putFragment(fragment(0));
+
+        // then
+        Assert.assertFalse(frame.isFullyRecvd());
+        Assert.assertEquals(2, frame.getMissingFragmentCount());
+    }
+
+    @Test
+    public void missingRangesCanBeWalked() {
+        // given
+        MediaFrame frame = frame();
+
+        // when
+        frame.putFragment(fragment(4));
+
+        // then
+        Assert.assertEquals(3, frame.getFragmentCount());
+        Assert.assertEquals(0, frame.getFirstMissingOffset());
+        Assert.assertEquals(4, frame.getNextReceivedOffset(0));
+        Assert.assertEquals(8, frame.getNextMissingOffset(4));
+        Assert.assertEquals(-1, frame.getNextReceivedOffset(8));
+        Assert.assertEquals(-1, frame.getNextMissingOffset(TOTAL_SIZE));
+    }
+
+    @Test
+    public void bitsetSpansMultipleWords() {
+        // given
+        int fragments = 130;
+        MediaFrame frame = new MediaFrame(MediaCode.VIDEO_FRAME, 0, fragments, 1, null);
+        ByteBuffer packet = ByteBuffer.allocate(MediaPacketView.HEADER_SIZE + 1);
+        MediaPacketView view = new MediaPacketView(packet);
+
+        // when
+        for (int offset = 0; offset < fragments; offset++) {
+            if (offset == 64 || offset == 129)
+                continue;
+            packet.clear();
+            packet.put((byte) MediaCode.VIDEO_FRAME.toInteger()).put(new byte[3])
+                    .putInt(0).putInt(fragments).putInt(offset).put((byte) 0);
+            packet.flip();
+            frame.putFragment(view.parse());
+        }
+
+        // then
+        Assert.assertEquals(2, frame.getMissingFragmentCount());
+        Assert.assertEquals(64, frame.getFirstMissingOffset());
+        Assert.assertEquals(129, frame.getNextMissingOffset(65));
+        Assert.assertEquals(65, frame.getNextReceivedOffset(64));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void misalignedFragmentIsRejected() {
+        // given
+        MediaFrame frame = frame();
+
+        // when
+        frame.putFragment(MediaPacketView.wrap(ByteBuffer.allocate(MediaPacketView.HEADER_SIZE + 2)
+                .put((byte) MediaCode.VIDEO_FRAME.toInteger()).put(new byte[3])
+                .putInt(0).putInt(TOTAL_SIZE).putInt(2).array(), MediaPacketView.HEADER_SIZE + 2));
+    }
+
+    @Test
+    public void missingFragmentIsRecoveredFromParity() {
+        // given
+        MediaFrame frame = frame();
+
+        // when
+        frame.putFragment(fragment(4));
+        frame.putFragment(fragment(8));
+        frame.putFragment(parity(0));
+
+        // then
+        Assert.assertTrue(frame.isFullyRecvd());
+        Assert.assertEquals(1, frame.getRecoveredFragmentCount());
+        for (int i = 0; i < TOTAL_SIZE; i++)
+            Assert.assertEquals(i, frame.getBytes()[i]);
+    }
+
+    @Test
+    public void fragmentIsRecoveredWhenParityArrivesFirst() {
+        // given
+        MediaFrame frame = frame();
+
+        // when
+        frame.putFragment(parity(0));
+        frame.putFragment(parity(8));
+        frame.putFragment(fragment(0));
+
+        // then
+        Assert.assertTrue(frame.isFullyRecvd());
+        Assert.assertEquals(2, frame.getRecoveredFragmentCount());
+        for (int i = 0; i < TOTAL_SIZE; i++)
+            Assert.assertEquals(i, frame.getBytes()[i]);
+    }
+
+    @Test
+    public void twoMissingFragmentsOfGroupCantBeRecovered() {
+        // given
+        MediaFrame frame = frame();
+
+        // when
+        frame.putFragment(fragment(8));
+        frame.putFragment(parity(0));
+
+        // then
+        Assert.assertFalse(frame.isFullyRecvd());
+        Assert.assertEquals(2, frame.getMissingFragmentCount());
+        Assert.assertEquals(0, frame.getRecoveredFragmentCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parityNotAlignedToGroupIsRejected() {
+        // given
+        MediaFrame frame = frame();
+
+        // when
+        frame.putFragment(parity(4));
+    }
+}
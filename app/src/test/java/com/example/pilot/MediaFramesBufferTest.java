@@ -8,6 +8,7 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -131,6 +132,45 @@ public class MediaFramesBufferTest {
         Assert.assertEquals(mediaFrames.get(3), buffer.get());
     }
 
+    @Test
+    public void duplicateFrameIsReleased() {
+        // given
+        MediaFramesBuffer buffer = new MediaFramesBuffer(4);
+        List<MediaFrame> mediaFrames = getMockList(2);
+        MediaFrame duplicate = mf(0);
+
+        // when
+        insertFrames(mediaFrames, buffer);
+        insertFrames(Collections.singletonList(duplicate), buffer);
+
+        // then
+        Mockito.verify(duplicate).release();
+        mediaFrames.forEach(frame -> Mockito.verify(frame, Mockito.never()).release());
+    }
+
+    @Test
+    public void skippedFramesAreReleased() {
+        // given
+        MediaFramesBuffer buffer = new MediaFramesBuffer(6);
+        List<MediaFrame> mediaFrames = getMockList(4);
+
+        // when
+        try {
+            buffer.put(mediaFrames.get(0));
+            buffer.put(mediaFrames.get(2));
+            buffer.put(mediaFrames.get(3));
+        } catch (OverrunException e) {
+            Assert.fail();
+        }
+
+        buffer.skipMissingGap();
+
+        // then
+        Mockito.verify(mediaFrames.get(0)).release();
+        Mockito.verify(mediaFrames.get(2), Mockito.never()).release();
+        Mockito.verify(mediaFrames.get(3), Mockito.never()).release();
+    }
+
     private static List<MediaFrame> getMockList(int size) {
         List<MediaFrame> res = new LinkedList<>();
         for (int i=0; i<size; i++)
@@ -0,0 +1,153 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.observers.FragmentsMissingObserver;
+import com.example.pilot.networking.udp.FragmentBuffer;
+import com.example.pilot.networking.udp.MediaCode;
+import com.example.pilot.networking.udp.MediaFrame;
+import com.example.pilot.networking.udp.MediaPacketView;
+import com.example.pilot.networking.udp.NackTracker;
+import com.example.pilot.networking.udp.RingFragmentBuffer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class NackTrackerTest {
+    private static final int FRAGMENT_SIZE = 4;
+    private static final int TOTAL_SIZE = 16;
+    private static final int CAPACITY = 8;
+    private static final long MS = 1_000_000;
+    // jitter buffer depth
+    private static final double DEPTH_MS = 100;
+
+    private FragmentsMissingObserver observer;
+    private FragmentBuffer fragmentBuffer;
+    private NackTracker tracker;
+    private long startNs;
+
+    private static MediaPacketView fragment(int seq, int offset) {
+        ByteBuffer packet = ByteBuffer.allocate(MediaPacketView.HEADER_SIZE + FRAGMENT_SIZE)
+                .put((byte) 2)
+                .put(new byte[3])
+                .putInt(seq)
+                .putInt(TOTAL_SIZE)
+                .putInt(offset);
+
+        return MediaPacketView.wrap(packet.array(), packet.capacity());
+    }
+
+    @Before
+    public void setUp() {
+        observer = Mockito.mock(FragmentsMissingObserver.class);
+        fragmentBuffer = new RingFragmentBuffer(CAPACITY);
+        tracker = new NackTracker(CAPACITY, MediaCode.VIDEO_FRAME, observer, () -> DEPTH_MS);
+        startNs = System.nanoTime();
+    }
+
+    private void receive(int seq, int offset, long atNs) {
+        MediaFrame frame = fragmentBuffer.get(seq);
+
+        if (frame == null) {
+            frame = new MediaFrame(MediaCode.VIDEO_FRAME, seq, TOTAL_SIZE, FRAGMENT_SIZE, null);
+            fragmentBuffer.put(frame);
+        }
+
+        frame.putFragment(fragment(seq, offset));
+        tracker.onFragmentReceived(seq, atNs);
+    }
+
+    @Test
+    public void missingFragmentsAreRequestedAfterReorderWindow() {
+        // given
+        receive(0, 0, startNs);
+        receive(0, 8, startNs + MS);
+
+        // when
+        tracker.requestRepairsIfDue(fragmentBuffer, startNs + 2 * MS);
+        Mockito.verifyNoInteractions(observer);
+        tracker.requestRepairsIfDue(fragmentBuffer, startNs + 20 * MS);
+
+        // then
+        Mockito.verify(observer).onFragmentsMissing(MediaCode.VIDEO_FRAME, 0, Arrays.asList(4, 12));
+        Assert.assertEquals(1, tracker.getSentRequests());
+        Assert.assertEquals(2, tracker.getRequestedFragments());
+    }
+
+    @Test
+    public void repairWhichWouldArriveTooLateIsNotRequested() {
+        // given
+        receive(0, 0, startNs);
+
+        // when
+        tracker.requestRepairsIfDue(fragmentBuffer, startNs + (long) (DEPTH_MS * MS) - MS);
+
+        // then
+        Mockito.verifyNoInteractions(observer);
+    }
+
+    @Test
+    public void requestIsRepeatedOnlyAfterRoundTrips() {
+        // given
+        receive(0, 0, startNs);
+        tracker.requestRepairsIfDue(fragmentBuffer, startNs + 20 * MS);
+
+        // when
+        tracker.requestRepairsIfDue(fragmentBuffer, startNs + 30 * MS);
+        tracker.requestRepairsIfDue(fragmentBuffer, startNs + 70 * MS);
+        tracker.requestRepairsIfDue(fragmentBuffer, startNs + 72 * MS);
+
+        // then
+        Mockito.verify(observer, Mockito.times(2))
+                .onFragmentsMissing(Mockito.eq(MediaCode.VIDEO_FRAME), Mockito.eq(0), Mockito.anyList());
+    }
+
+    @Test
+    public void roundTripIsMeasuredFromRepairs() {
+        // given
+        receive(0, 0, startNs);
+        tracker.requestRepairsIfDue(fragmentBuffer, startNs + 20 * MS);
+        double initialRttMs = tracker.getRttMs();
+
+        // when
+        receive(0, 4, startNs + 22 * MS);
+
+        // then
+        Assert.assertTrue(tracker.getRttMs() < initialRttMs);
+    }
+
+    @Test
+    public void completedFramesAreNotRequested() {
+        // given
+        receive(0, 0, startNs);
+        receive(0, 4, startNs);
+        receive(0, 8, startNs);
+        receive(0, 12, startNs);
+        fragmentBuffer.removeFullyReceived(fragmentBuffer.get(0));
+
+        // when
+        tracker.requestRepairsIfDue(fragmentBuffer, startNs + 20 * MS);
+
+        // then
+        Mockito.verifyNoInteractions(observer);
+    }
+
+    @Test
+    public void pendingRepairIsReported() {
+        // given
+        receive(1, 0, startNs);
+        receive(2, 0, startNs);
+        tracker.requestRepairsIfDue(fragmentBuffer, startNs + 20 * MS);
+
+        // when
+        int pendingBefore3 = tracker.firstPendingRepair(3, startNs + 21 * MS);
+        int pendingAfterDeadline = tracker.firstPendingRepair(3, startNs + 200 * MS);
+
+        // then
+        Assert.assertEquals(1, pendingBefore3);
+        Assert.assertEquals(3, pendingAfterDeadline);
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.udp.MediaCode;
+import com.example.pilot.networking.udp.PathMigration;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class PathMigrationTest {
+    private static final byte[] SESSION_ID = new byte[PathMigration.SESSION_ID_SIZE];
+
+    static {
+        Arrays.fill(SESSION_ID, (byte) 7);
+    }
+
+    private PathMigration pathMigration;
+
+    @Before
+    public void setUp() {
+        pathMigration = new PathMigration();
+    }
+
+    @Test
+    public void requestCarriesSessionSeqAndLane() {
+        // given
+        pathMigration.enable(SESSION_ID);
+        pathMigration.start();
+        long seq = pathMigration.start();
+
+        // when
+        ByteBuffer request = ByteBuffer.wrap(pathMigration.buildRequest(MediaCode.AUDIO_FRAME));
+
+        // then
+        byte[] sessionId = new byte[PathMigration.SESSION_ID_SIZE];
+        request.get(sessionId);
+        Assert.assertArrayEquals(SESSION_ID, sessionId);
+        Assert.assertEquals(seq, request.getLong());
+        Assert.assertEquals(1, request.get());
+        Assert.assertFalse(request.hasRemaining());
+    }
+
+    @Test
+    public void migrationCompletesWhenAllLanesAreConfirmed() {
+        // given
+        pathMigration.enable(SESSION_ID);
+        long seq = pathMigration.start();
+
+        // when
+        boolean afterVideo = pathMigration.onMigrated(MediaCode.VIDEO_FRAME, seq);
+        boolean afterAudio = pathMigration.onMigrated(MediaCode.AUDIO_FRAME, seq);
+
+        // then
+        Assert.assertFalse(afterVideo);
+        Assert.assertTrue(afterAudio);
+        Assert.assertFalse(pathMigration.isPending());
+        Assert.assertEquals(1, pathMigration.getCompletedMigrations());
+    }
+
+    @Test
+    public void confirmationOfEarlierMigrationIsIgnored() {
+        // given
+        pathMigration.enable(SESSION_ID);
+        long oldSeq = pathMigration.start();
+        pathMigration.start();
+
+        // when
+        pathMigration.onMigrated(MediaCode.VIDEO_FRAME, oldSeq);
+
+        // then
+        Assert.assertTrue(pathMigration.isPending(MediaCode.VIDEO_FRAME));
+        Assert.assertTrue(pathMigration.isPending(MediaCode.AUDIO_FRAME));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void migrationRequiresSessionId() {
+        // when
+        pathMigration.start();
+    }
+
+    @Test
+    public void resetDisablesMigration() {
+        // given
+        pathMigration.enable(SESSION_ID);
+        pathMigration.start();
+
+        // when
+        pathMigration.reset();
+
+        // then
+        Assert.assertFalse(pathMigration.isEnabled());
+        Assert.assertFalse(pathMigration.isPending());
+        Assert.assertEquals(0, pathMigration.getSeq());
+    }
+
+    @Test
+    public void resumedSessionContinuesFromLastSeq() {
+        // given
+        pathMigration.enable(SESSION_ID);
+        long seq = pathMigration.start();
+        pathMigration.detach();
+
+        // when
+        boolean reattached = pathMigration.enable(SESSION_ID.clone());
+        long nextSeq = pathMigration.start();
+
+        // then
+        Assert.assertTrue(reattached);
+        Assert.assertEquals(seq + 1, nextSeq);
+    }
+
+    @Test
+    public void detachDisablesMigrationUntilEnabled() {
+        // given
+        pathMigration.enable(SESSION_ID);
+        pathMigration.start();
+
+        // when
+        pathMigration.detach();
+
+        // then
+        Assert.assertFalse(pathMigration.isEnabled());
+        Assert.assertFalse(pathMigration.isPending());
+    }
+
+    @Test
+    public void newSessionStartsFromScratch() {
+        // given
+        byte[] otherSessionId = new byte[PathMigration.SESSION_ID_SIZE];
+        pathMigration.enable(SESSION_ID);
+        pathMigration.start();
+        pathMigration.detach();
+
+        // when
+        boolean reattached = pathMigration.enable(otherSessionId);
+
+        // then
+        Assert.assertFalse(reattached);
+        Assert.assertEquals(0, pathMigration.getSeq());
+        Assert.assertEquals(1, pathMigration.start());
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.udp.QueueingDelayMeter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueueingDelayMeterTest {
+    private static final long MS = 1_000_000;
+    // arbitrary offset between server and client clocks
+    private static final long CLOCK_OFFSET_MS = 123_456_789;
+
+    private QueueingDelayMeter meter;
+
+    @Before
+    public void setUp() {
+        meter = new QueueingDelayMeter();
+    }
+
+    private void receive(long sendTimeMs, long delayMs) {
+        meter.onPacketReceived((int) (sendTimeMs & 0xFFFFFF), (sendTimeMs + CLOCK_OFFSET_MS + delayMs) * MS);
+    }
+
+    @Test
+    public void delayIsMeasuredAboveFastestPacket() {
+        // when
+        receive(0, 5);
+        receive(10, 5);
+        receive(20, 35);
+
+        // then
+        Assert.assertEquals(30, meter.getMaxDelayMs());
+        Assert.assertEquals(3, meter.getDelays().getTotalCount());
+    }
+
+    @Test
+    public void fasterPacketLowersBase() {
+        // given
+        receive(0, 20);
+
+        // when
+        receive(10, 0);
+        receive(20, 8);
+
+        // then
+        Assert.assertEquals(8, meter.getMaxDelayMs());
+    }
+
+    @Test
+    public void sendTimeWrapAroundIsHandled() {
+        // given
+        long sendTimeMs = 0xFFFFFF - 5;
+
+        // when
+        receive(sendTimeMs, 0);
+        receive(sendTimeMs + 10, 4);
+
+        // then
+        Assert.assertEquals(4, meter.getMaxDelayMs());
+    }
+
+    @Test
+    public void resetForgetsBase() {
+        // given
+        receive(0, 0);
+        receive(10, 50);
+
+        // when
+        meter.reset();
+        receive(20, 50);
+
+        // then
+        Assert.assertEquals(0, meter.getMaxDelayMs());
+        Assert.assertEquals(1, meter.getDelays().getTotalCount());
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.pilot;
+
+import com.example.pilot.security.ReplayWindow;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReplayWindowTest {
+    private ReplayWindow window;
+
+    @Before
+    public void setUp() {
+        window = new ReplayWindow();
+    }
+
+    @Test
+    public void newSeqsAreAccepted() {
+        // when
+        boolean first = window.markReceived(0);
+        boolean skipped = window.markReceived(5);
+
+        // then
+        Assert.assertTrue(first);
+        Assert.assertTrue(skipped);
+        Assert.assertEquals(5, window.getHighestSeq());
+    }
+
+    @Test
+    public void duplicateIsReplayed() {
+        // given
+        window.markReceived(7);
+
+        // when, then
+        Assert.assertTrue(window.isReplayed(7));
+        Assert.assertFalse(window.markReceived(7));
+    }
+
+    @Test
+    public void missedSeqInsideWindowIsAcceptedOnce() {
+        // given
+        window.markReceived(10);
+        window.markReceived(12);
+
+        // when
+        boolean late = window.markReceived(11);
+
+        // then
+        Assert.assertTrue(late);
+        Assert.assertTrue(window.isReplayed(11));
+        Assert.assertEquals(12, window.getHighestSeq());
+    }
+
+    @Test
+    public void seqOlderThanWindowIsReplayed() {
+        // given
+        window.markReceived(ReplayWindow.SIZE);
+
+        // when, then
+        Assert.assertTrue(window.isReplayed(0));
+        Assert.assertFalse(window.isReplayed(1));
+    }
+
+    @Test
+    public void largeJumpClearsWindow() {
+        // given
+        window.markReceived(1);
+
+        // when
+        window.markReceived(1000);
+
+        // then
+        Assert.assertFalse(window.isReplayed(999));
+        Assert.assertTrue(window.isReplayed(1000));
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.pilot;
+
+import com.example.pilot.networking.udp.MediaFrame;
+import com.example.pilot.networking.udp.RingFragmentBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class RingFragmentBufferTests {
+    private static MediaFrame mf(int seq) {
+        MediaFrame mediaFrame = Mockito.mock(MediaFrame.class);
+        Mockito.when(mediaFrame.getSeqNum()).thenReturn(seq);
+        return mediaFrame;
+    }
+
+    @Test
+    public void frameFromOtherGenerationIsNotReturned() {
+        // given
+        RingFragmentBuffer buffer = new RingFragmentBuffer(4);
+        buffer.put(mf(1));
+
+        // when
+        MediaFrame sameSlot = buffer.get(5);
+
+        // then
+        Assert.assertNull(sameSlot);
+    }
+
+    @Test
+    public void olderGenerationIsEvictedByNewerOne() {
+        // given
+        RingFragmentBuffer buffer = new RingFragmentBuffer(4);
+        MediaFrame old = mf(1);
+        MediaFrame recent = mf(5);
+        buffer.put(old);
+
+        // when
+        boolean inserted = buffer.put(recent);
+
+        // then
+        Assert.assertTrue(inserted);
+        Assert.assertEquals(1, buffer.getSize());
+        Assert.assertSame(recent, buffer.get(5));
+        Assert.assertNull(buffer.get(1));
+        Mockito.verify(old).release();
+    }
+
+    @Test
+    public void olderGenerationDoesntEvictNewerOne() {
+        // given
+        RingFragmentBuffer buffer = new RingFragmentBuffer(4);
+        MediaFrame recent = mf(5);
+        buffer.put(recent);
+
+        // when
+        boolean inserted = buffer.put(mf(1));
+
+        // then
+        Assert.assertFalse(inserted);
+        Assert.assertSame(recent, buffer.get(5));
+    }
+
+    @Test
+    public void precedingFramesFarBehindCanBeRemoved() {
+        // given
+        RingFragmentBuffer buffer = new RingFragmentBuffer(4);
+        MediaFrame mf1 = mf(1);
+        MediaFrame mf3 = mf(3);
+        buffer.put(mf1);
+        buffer.put(mf3);
+
+        // when
+        buffer.removePreceding(100);
+
+        // then
+        Assert.assertEquals(0, buffer.getSize());
+        Mockito.verify(mf1).release();
+        Mockito.verify(mf3).release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityHasToBePowerOfTwo() {
+        new RingFragmentBuffer(6);
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.pilot;
+
+import com.example.pilot.security.SessionResumption;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+public class SessionResumptionTest {
+    private static final InetSocketAddress SERVER = new InetSocketAddress("192.168.1.10", 9000);
+    private static final long LIFETIME_MS = 60_000;
+    private static final long NOW_NS = 1_000_000_000L;
+
+    private static byte[] range(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) (from + i);
+        return bytes;
+    }
+
+    private static byte[] filled(int value, int size) {
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+
+    private static String hex(byte[] bytes) {
+        return String.format("%0" + bytes.length * 2 + "x", new BigInteger(1, bytes));
+    }
+
+    private static SessionResumption resumptionWithTicket() {
+        SessionResumption resumption = new SessionResumption();
+        resumption.takeTicket(SERVER, NOW_NS);
+        resumption.storeTicket(range(0, 16), range(32, 64), LIFETIME_MS, NOW_NS);
+        return resumption;
+    }
+
+    @Test
+    public void ticketIsRedeemedOnlyOnce() {
+        // given
+        SessionResumption resumption = resumptionWithTicket();
+
+        // when
+        SessionResumption.Ticket first = resumption.takeTicket(SERVER, NOW_NS + 1);
+        SessionResumption.Ticket second = resumption.takeTicket(SERVER, NOW_NS + 2);
+
+        // then
+        Assert.assertNotNull(first);
+        Assert.assertArrayEquals(range(0, 16), first.getId());
+        Assert.assertNull(second);
+    }
+
+    @Test
+    public void ticketOfAnotherServerIsNotPresented() {
+        // given
+        SessionResumption resumption = resumptionWithTicket();
+
+        // when
+        SessionResumption.Ticket ticket = resumption.takeTicket(new InetSocketAddress("192.168.1.10", 9001), NOW_NS);
+
+        // then
+        Assert.assertNull(ticket);
+    }
+
+    @Test
+    public void expiredTicketIsNotPresented() {
+        // given
+        SessionResumption resumption = resumptionWithTicket();
+
+        // when
+        SessionResumption.Ticket ticket = resumption.takeTicket(SERVER, NOW_NS + LIFETIME_MS * 1_000_000);
+
+        // then
+        Assert.assertNull(ticket);
+    }
+
+    // vectors computed by pcdaemon/security/resumption_tickets.py
+    @Test
+    public void derivationMatchesServer() throws Exception {
+        // given
+        SessionResumption.Ticket ticket = resumptionWithTicket().takeTicket(SERVER, NOW_NS);
+        byte[] clientRandom = filled(1, SessionResumption.RANDOM_LENGTH);
+        byte[] serverRandom = filled(2, SessionResumption.RANDOM_LENGTH);
+
+        // when
+        byte[] binder = ticket.computeBinder(new byte[SessionResumption.RANDOM_LENGTH], new byte[]{1, 0});
+        byte[] tcpKey = ticket.deriveTcpKey(clientRandom, serverRandom);
+
+        // then
+        Assert.assertEquals("1ad30f0baa1cf93c3dde001c1ee9fbcd15d14a0b9a9a98efb1dacbe3e2fe37b7", hex(binder));
+        Assert.assertEquals("b5553f2d046da2a20fa92c8a89c12a2dac72d54750406e6769ac0f23f11b2742", hex(tcpKey));
+        Assert.assertFalse(Arrays.equals(tcpKey, ticket.deriveUdpKey(clientRandom, serverRandom)));
+    }
+
+    @Test
+    public void finishedOfServerKnowingSecretIsAccepted() throws Exception {
+        // given
+        SessionResumption.Ticket ticket = resumptionWithTicket().takeTicket(SERVER, NOW_NS);
+        byte[] clientRandom = filled(1, SessionResumption.RANDOM_LENGTH);
+        byte[] serverRandom = filled(2, SessionResumption.RANDOM_LENGTH);
+        byte[] finished = new BigInteger("6e14c0090a56681000bf0bf6cb5f922ef5438a639f7b69b7e2cc3624a4590d14", 16)
+                .toByteArray();
+        byte[] forged = Arrays.copyOf(finished, finished.length);
+        forged[0] ^= 1;
+
+        // when, then
+        Assert.assertTrue(ticket.isFinishedValid(finished, clientRandom, serverRandom, new byte[]{0, 1}));
+        Assert.assertFalse(ticket.isFinishedValid(forged, clientRandom, serverRandom, new byte[]{0, 1}));
+        Assert.assertFalse(ticket.isFinishedValid(finished, clientRandom, serverRandom, new byte[]{1, 1}));
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.pilot;
+
+import com.example.pilot.security.TLSHandler;
+import com.example.pilot.security.exceptions.SecurityException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+public class TLSHandlerTest {
+    private static byte[] unhex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        return bytes;
+    }
+
+    private static String hex(byte[] bytes) {
+        return String.format("%0" + bytes.length * 2 + "x", new BigInteger(1, bytes));
+    }
+
+    @Test
+    public void transcriptHashMatchesServer() throws SecurityException {
+        // given vector computed as in _full_handshake of pcdaemon/security/tls_handler.py
+        byte[] offer = unhex("020001020100000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f" +
+                "202122232425262728292a2b2c2d2e2f303132333435363738393a3b3c3d3e3f40");
+        byte[] pickedSuites = {0, 1};
+
+        // when
+        byte[] transcriptHash = TLSHandler.hashTranscript(offer, pickedSuites);
+
+        // then
+        Assert.assertEquals("a480e5512b30339eb1f568268b7f8a95a631156e87ecbf90f30e3bdd7b1f9c35", hex(transcriptHash));
+    }
+
+    @Test
+    public void differentSuitesGiveDifferentHash() throws SecurityException {
+        // given
+        byte[] offer = {2, 0, 1, 2, 1, 0};
+
+        // when
+        String picked = hex(TLSHandler.hashTranscript(offer, new byte[]{0, 1}));
+        String tampered = hex(TLSHandler.hashTranscript(offer, new byte[]{1, 1}));
+
+        // then
+        Assert.assertNotEquals(picked, tampered);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.pilot;
+
+import com.example.pilot.utils.ThreadStats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ThreadStatsTest {
+    private static final long SECOND_NS = 1_000_000_000;
+
+    @Test
+    public void voluntaryAndInvoluntarySwitchesAreSummed() {
+        // given
+        String status = "Name:\treactor\n" +
+                "State:\tS (sleeping)\n" +
+                "Threads:\t1\n" +
+                "voluntary_ctxt_switches:\t120\n" +
+                "nonvoluntary_ctxt_switches:\t7\n";
+
+        // when
+        long switches = ThreadStats.parseContextSwitches(status);
+
+        // then
+        Assert.assertEquals(127, switches);
+    }
+
+    @Test
+    public void statusWithoutSwitchesGivesZero() {
+        // when
+        long switches = ThreadStats.parseContextSwitches("Name:\treactor\nState:\tR (running)\n");
+
+        // then
+        Assert.assertEquals(0, switches);
+    }
+
+    @Test
+    public void rateIsComputedBetweenSamples() {
+        // given
+        ThreadStats earlier = new ThreadStats(10, 1000, 0);
+        ThreadStats later = new ThreadStats(14, 4000, 2 * SECOND_NS);
+
+        // when
+        double rate = later.getContextSwitchesPerSecondSince(earlier);
+
+        // then
+        Assert.assertEquals(1500, rate, 0.001);
+        Assert.assertEquals("14 threads (10 before), 1500 context switches per second", later.describeSince(earlier));
+    }
+
+    @Test
+    public void rateIsUnknownWithoutSwitches() {
+        // given
+        ThreadStats earlier = new ThreadStats(10, ThreadStats.UNKNOWN, 0);
+        ThreadStats later = new ThreadStats(10, ThreadStats.UNKNOWN, SECOND_NS);
+
+        // when
+        double rate = later.getContextSwitchesPerSecondSince(earlier);
+
+        // then
+        Assert.assertEquals(ThreadStats.UNKNOWN, rate, 0);
+    }
+}
@@ -9,15 +9,20 @@ from networking.session_handler import SessionHandler
 from networking.stream_msg_handler import StreamMsgHandler
 from networking.message_listener import MessageListener
 from networking.media_handler import MediaHandler
+from networking.link_prober import LinkProber
+from networking.path_migration_handler import PathMigrationHandler
+from networking.heartbeat_monitor import HeartbeatMonitor
 from security.certificate_authority import CertificateAuthority
 from security.key_generator import KeyGenerator
-from security.primitives import AsymmetricAlgorithm, RSA_AsymmetricParams, RSA_PublicKey
+from security.primitives import AsymmetricAlgorithm, RSA_AsymmetricParams, RSA_PublicKey, EC_AsymmetricParams, \
+    EC_PublicKey
 from security.UDPGuard import UDPGuard
-from security.asymmetric_security_handler import RSA_AsymmetricSecurityHandler
+from security.asymmetric_security_handler import RSA_AsymmetricSecurityHandler, ECDSA_Signer
 from security.message_security_preprocessor import MessageSecurityPreprocessor
 from security.authenticator import Authenticator
 from security.TCPGuard import TCPGuard
 from security.tls_handler import TLSHandler
+from security.resumption_tickets import ResumptionTickets
 from media.streamers.streamer import Streamer
 from media.ss_capturer import SSCapturer
 from media.sound_capturer import SoundCapturer
@@ -28,15 +33,26 @@ config = dotenv_values(path)
 ip_addr = config['IP_ADDR']
 tcp_port = int(config['TCP_PORT'])
 udp_port = int(config['UDP_PORT'])
+# audio gets its own port so that it doesn't queue behind video fragment bursts
+audio_udp_port = int(config.get('AUDIO_UDP_PORT', udp_port + 1))
 
 password = config['PASSWORD']
 private_key_path = Path(config["PRIVATE_KEY_PATH"])
 certificate_path = Path(config['CERTIFICATE_PATH'])
+# optional EC key signing ephemeral shares, without it clients fall back to RSA key transport
+ec_private_key_path = Path(config['EC_PRIVATE_KEY_PATH']) if 'EC_PRIVATE_KEY_PATH' in config else None
+ec_certificate_path = Path(config['EC_CERTIFICATE_PATH']) if 'EC_CERTIFICATE_PATH' in config else None
 
 sound_args = [int(config['AUDIO_' + arg])
               for arg in ('CHUNK_SIZE', 'SAMPLE_RATE', 'CHANNELS')]
 mute_on_start = config['MUTE_ON_START'] == 'false'
 max_fps = int(config['MAX_FPS'])
+# one parity packet per that many video fragments, 0 disables forward error correction
+fec_group_size = int(config.get('FEC_GROUP_SIZE', 10))
+# seconds without client's heartbeat after which connection is considered dead
+heartbeat_timeout = float(config.get('HEARTBEAT_TIMEOUT', 5))
+# seconds for which client can reconnect with resumption ticket instead of full handshake and password
+resumption_ticket_lifetime = float(config.get('RESUMPTION_TICKET_LIFETIME', 3600))
 
 
 def setup_logger():
@@ -88,6 +104,22 @@ certificate saved at: {certificate_path}
 public key saved at:  {public_key_path}
 private key saved at: {private_key_path}''')
 
+    if ec_private_key_path is None or ec_certificate_path is None:
+        return
+
+    ec_public_key_path = Path(config['EC_PUBLIC_KEY_PATH'])
+    ec_key = KeyGenerator.generate_EC_key(ec_public_key_path, ec_private_key_path).public_key()
+    ec_pub_key = EC_PublicKey(int(ec_key.pointQ.x), int(ec_key.pointQ.y))
+
+    ec_cert = ca.generate_certificate(ec_pub_key, EC_AsymmetricParams('P-256'), AsymmetricAlgorithm.EC)
+
+    ec_cert.save_as_json(ec_certificate_path)
+
+    click.echo(f'''
+EC certificate saved at: {ec_certificate_path}
+EC public key saved at:  {ec_public_key_path}
+EC private key saved at: {ec_private_key_path}''')
+
 
 @click.command(name='serve', help="run server")
 def run_server():
@@ -99,10 +131,12 @@ def run_server():
     udp_guard = UDPGuard()
     tcp_preprocessor = MessageSecurityPreprocessor(tcp_guard)
     udp_preprocessor = MessageSecurityPreprocessor(udp_guard)
-    tls_handler = TLSHandler(certificate_path, tcp_guard, asym_handler)
+    tickets = ResumptionTickets(resumption_ticket_lifetime)
+    share_signer = ECDSA_Signer(ec_private_key_path) if ec_private_key_path is not None else None
+    tls_handler = TLSHandler(certificate_path, tcp_guard, asym_handler, tickets, ec_certificate_path, share_signer)
 
     # ----- init communication and media
-    media_handler = MediaHandler(ip_addr, udp_port, udp_preprocessor)
+    media_handler = MediaHandler(ip_addr, udp_port, udp_preprocessor, fec_group_size, audio_udp_port)
     session_handler = SessionHandler()
 
     sound_capturer = SoundCapturer(mute_on_start, *sound_args)
@@ -110,15 +144,19 @@ def run_server():
     streamer = Streamer(media_handler, ss_capturer,
                         sound_capturer, max_fps=max_fps)
 
-    msg_handler = StreamMsgHandler(auth, streamer)
-
     sender = MessageSender(tcp_preprocessor)
+    link_prober = LinkProber(sender, media_handler, max_fps)
+    path_migration_handler = PathMigrationHandler(media_handler.get_media_socket(), udp_preprocessor, sender)
+    heartbeat_monitor = HeartbeatMonitor(sender, heartbeat_timeout)
+
+    msg_handler = StreamMsgHandler(auth, streamer, link_prober, heartbeat_monitor)
     listener = MessageListener(tcp_preprocessor, tls_handler, msg_handler)
 
     server = Server(ip_addr, tcp_port, auth, msg_handler,
-                    tls_handler, session_handler, sender, streamer)
+                    tls_handler, session_handler, sender, streamer, link_prober, tickets)
 
-    for conn_obs in (tls_handler, media_handler, sender, listener, auth, msg_handler, streamer):
+    for conn_obs in (tls_handler, media_handler, sender, listener, auth, msg_handler, streamer, link_prober,
+                     path_migration_handler, heartbeat_monitor):
         server.add_connection_state_observer(conn_obs)
         msg_handler.add_connection_state_observer(conn_obs)
 
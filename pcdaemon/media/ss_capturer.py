@@ -7,15 +7,20 @@ from threading import Lock
 
 
 class SSCapturer:
+    _MIN_QUALITY = 1
+    _MAX_QUALITY = 95  # above that jpeg grows a lot with hardly any gain
+
     def __init__(self, top: int = 0, left: int = 0,
                  widht: int = 840, height: int = 800,
-                 screen_num: int = 2):
+                 screen_num: int = 2, quality: int = 75):
         self.DEFAULT_WIDTH, self.DEFAULT_HEIGHT = widht, height
+        self.DEFAULT_QUALITY = quality
 
         self.screen_x, self.screen_y = left, top
         self.ss_witdth, self.ss_height = widht, height
 
         self.streamed_screen_num = screen_num
+        self.quality = quality
 
         self.monitor_offset_x = None
         self.screen_w, self.screen_h = None, None
@@ -28,13 +33,14 @@ class SSCapturer:
             mon = {"top":   self.screen_y,   "left": self.screen_x + self.monitor_offset_x,
                    "width": self.ss_witdth, "height": self.ss_height,
                    "mon":   self.sct.monitors[self.streamed_screen_num]}
+            quality = self.quality
 
         im = self.sct.grab(mon)
 
         img = Image.frombytes("RGB", im.size, im.bgra, "raw", "BGRX")
 
         with io.BytesIO() as stream:
-            img.save(stream, format='JPEG')
+            img.save(stream, format='JPEG', quality=quality)
             stream.seek(0)
             ss_bytes = stream.read()
 
@@ -63,6 +69,13 @@ class SSCapturer:
 
             self._fix_bounds()
 
+    def set_quality(self, quality: int):
+        with self.screen_settings_lock:
+            self.quality = max(self._MIN_QUALITY, min(quality, self._MAX_QUALITY))
+
+    def reset_quality(self):
+        self.set_quality(self.DEFAULT_QUALITY)
+
     def get_monitor_num(self) -> int:
         with self.screen_settings_lock:
             return self.streamed_screen_num
@@ -1,7 +1,7 @@
 import logging
 import threading
 import atexit
-from typing import Iterable
+from typing import Iterable, List
 from networking.abstract.conn_state_obs import ConnectionStateObserver
 from media.sound_capturer import SoundCapturer
 from media.streamers.sound_streamer import SoundStreamer
@@ -11,20 +11,21 @@ from networking.session import Session
 from utils.special_key_codes import KeyboardModifier, SpecialKeyCode
 from media.input_ctl import InputController
 from media.ss_capturer import SSCapturer
+from networking.link_prober import LinkProfile
 
 
 class Streamer(ConnectionStateObserver):
     def __init__(self, sender: MediaSender, ss_capturer: SSCapturer, sound_capturer: SoundCapturer,
-                 max_fps: int = 30, max_batch_sent_ss: int = 3) -> None:
+                 max_fps: int = 30, initial_video_credits: int = 8) -> None:
         self.sender = sender
         self.ss_capturer = ss_capturer
         self.sound_capturer = sound_capturer
         self.max_fps = max_fps
-        self.max_batch_sent_ss = max_batch_sent_ss
+        self.initial_video_credits = initial_video_credits
         self.input_ctl = InputController()
 
         self.video_streamer = VideoStreamer(
-            sender, ss_capturer, max_fps, max_batch_sent_ss)
+            sender, ss_capturer, max_fps, initial_video_credits)
 
         self.sound_streamer = SoundStreamer(sender, sound_capturer)
 
@@ -100,8 +101,17 @@ class Streamer(ConnectionStateObserver):
     def scroll(self, up: bool):
         self.input_ctl.scroll(up)
 
-    def ss_rcvd(self):
-        self.video_streamer.ss_rcvd()
+    def ss_rcvd(self, seq_num: int, credits: int):
+        self.video_streamer.ss_rcvd(seq_num, credits)
+
+    def change_qos(self, bitrate: int, fps: int, quality: int):
+        self.video_streamer.change_qos(bitrate, fps, quality)
+
+    def apply_link_profile(self, profile: LinkProfile):
+        self.video_streamer.set_initial_qos(profile.bitrate, profile.fps, profile.quality)
+
+    def resend_video_fragments(self, seq_num: int, offsets: List[int]):
+        self.sender.resend_ss_fragments(seq_num, offsets)
 
     def mute_sound(self):
         self.sound_streamer.mute()
@@ -6,30 +6,42 @@ from utils.fps_ctl import FpsController
 
 
 class VideoStreamer:
-    def __init__(self, sender: SsSender, ss_capturer: SSCapturer, max_fps: int = 30, max_batch_sent_ss: int = 3) -> None:
+    def __init__(self, sender: SsSender, ss_capturer: SSCapturer, max_fps: int = 30, initial_credits: int = 8,
+                 ack_timeout: float = 1.0) -> None:
         self.sender = sender
         self.ss_capturer = ss_capturer
         self.max_fps = max_fps
-        self.max_batch_sent_ss = max_batch_sent_ss
+        # frames which can be sent before client acks any
+        self.initial_credits = initial_credits
+        # if client doesn't ack for that long single frame is sent anyway, so stream can't get stuck
+        self.ack_timeout = ack_timeout
         self.fps_ctl = FpsController(self.max_fps)
+        # what stream starts with, picked for the link before streaming
+        self.initial_bitrate = None
+        self.initial_fps = self.max_fps
+        self.initial_quality = self.ss_capturer.DEFAULT_QUALITY
 
         self.keep_streaming = False
-        # guards sent_overhead and keep_streaming variable
+        # guards keep_streaming variable
         self.stream_lock = threading.Lock()
 
-        self.sent_overhead = 0  # how many sshots were sent without confirmation
-        self.ss_rcvd_lock = threading.Lock()  # guards number of ss sent
+        # client acks played frames cumulatively, granting credits for frames past them,
+        # ss is captured only when there is credit for it, so slow client gets fewer but fresh frames
+        self.last_sent_seq = -1
+        self.credit_limit = self.initial_credits - 1  # highest seq which can be sent
+        self.credit_waits = 0
+        self.ss_rcvd_lock = threading.Lock()  # guards credits and seq of sent frames
         self.ss_rcvd_cond = threading.Condition(self.ss_rcvd_lock)
 
     def stop_streaming(self):
         with self.stream_lock:
             self.keep_streaming = False
-            self.sent_overhead = 0
 
         with self.ss_rcvd_lock:
-            self.ss_rcvd_cond.notify_all()  # if its blocked waiting for confirmation
+            self._reset_credits()
+            self.ss_rcvd_cond.notify_all()  # if its blocked waiting for credits
 
-        logging.info("video streamer stopped")
+        logging.info(f"video streamer stopped, waited for credits {self.credit_waits} times")
 
     def stream_video(self):
         # possible race condition if stop_streaming is called before
@@ -37,17 +49,19 @@ class VideoStreamer:
         with self.stream_lock:
             self.keep_streaming = True
 
+        with self.ss_rcvd_lock:
+            self._reset_credits()
+            self.credit_waits = 0
+
+        # qos of previous client doesn't apply
+        self.fps_ctl.set_limits(self.initial_fps, self.initial_bitrate)
+        self.ss_capturer.set_quality(self.initial_quality)
         self.fps_ctl.reset()
         self.fps_ctl.start_timer()
 
         with self.ss_capturer:
             while True:
-                # TODO
-                # with self.ss_rcvd_lock:
-                #     while self.keep_streaming and self.sent_overhead >= self.max_batch_sent_ss:
-                #         self.ss_rcvd_cond.wait()
-
-                #     self.sent_overhead += 1
+                self._await_credit()
 
                 ss_bytes = self.ss_capturer.get_ss_bytes()
                 with self.stream_lock:
@@ -55,13 +69,47 @@ class VideoStreamer:
                         raise ConnectionError('Stream interrupted')
 
                 # throws connection error on lost connection
-                self.sender.send_ss_bytes(ss_bytes)
+                seq_num = self.sender.send_ss_bytes(ss_bytes)
 
-                self.fps_ctl.frame_sent()
+                with self.ss_rcvd_lock:
+                    self.last_sent_seq = seq_num
+
+                self.fps_ctl.frame_sent(len(ss_bytes))
                 fps = self.fps_ctl.wait_when_legal()
                 logging.debug(f'FPS ~ {fps}')
 
-    def ss_rcvd(self):
+    def ss_rcvd(self, seq_num: int, credits: int):
+        # acks come in order over tcp, so latest one is valid even if it takes credits back
         with self.ss_rcvd_lock:
-            self.sent_overhead -= 1
+            self.credit_limit = seq_num + max(0, credits)
             self.ss_rcvd_cond.notify_all()
+
+    def change_qos(self, bitrate: int, fps: int, quality: int):
+        # client can only lower configured fps
+        fps = max(1, min(fps, self.max_fps))
+        logging.info(f'changing video qos to {bitrate // 1000} kbps, {fps} fps, quality {quality}')
+
+        self.fps_ctl.set_limits(fps, bitrate)
+        self.ss_capturer.set_quality(quality)
+
+    def set_initial_qos(self, bitrate: int, fps: int, quality: int):
+        """applies from next stream_video call, bitrate may be None if it's unknown"""
+        self.initial_bitrate = bitrate
+        self.initial_fps = max(1, min(fps, self.max_fps))
+        self.initial_quality = quality
+
+    def _await_credit(self):
+        with self.ss_rcvd_lock:
+            if self.last_sent_seq < self.credit_limit:
+                return
+
+            self.credit_waits += 1
+            while self.keep_streaming and self.last_sent_seq >= self.credit_limit:
+                if not self.ss_rcvd_cond.wait(self.ack_timeout):
+                    logging.warning(f'no credits granted for {self.ack_timeout}s, sending frame anyway')
+                    return
+
+    # caller should hold ss_rcvd_lock
+    def _reset_credits(self):
+        self.last_sent_seq = -1
+        self.credit_limit = self.initial_credits - 1
@@ -0,0 +1,12 @@
+from abc import ABC, abstractmethod
+
+
+class ProbeSender(ABC):
+    @abstractmethod
+    def send_probes(self, train_id: int, count: int, payload_size: int, dont_fragment: bool = False) -> int:
+        # sends count probe packets back to back, returns how many of them left the socket
+        pass
+
+    @abstractmethod
+    def set_max_fragment_size(self, fragment_size: int):
+        pass
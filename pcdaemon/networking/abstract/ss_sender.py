@@ -1,7 +1,13 @@
 from abc import ABC, abstractmethod
+from typing import List
 
 
 class SsSender(ABC):
     @abstractmethod
-    def send_ss_bytes(self, ss: bytes):
+    def send_ss_bytes(self, ss: bytes) -> int:
+        # returns seq number of sent frame
+        pass
+
+    @abstractmethod
+    def resend_ss_fragments(self, seq_num: int, offsets: List[int]):
         pass
@@ -1,5 +1,9 @@
+import logging
+import threading
+import time
+from collections import OrderedDict
 from struct import pack
-from typing import Generator
+from typing import Generator, List
 from security.message_security_preprocessor import MessageSecurityPreprocessor
 from networking.session import Session
 from utils.media_msg_codes import MediaMsgCode
@@ -7,7 +11,7 @@ from utils.media_msg_codes import MediaMsgCode
 """
     Media packet:
     |--------------------------------------------|
-    |  code(8)    |         reserved(24)         |
+    |  code(8)    |       send time(24)          |
     |--------------------------------------------|
     |           sequence number(32)              |
     |--------------------------------------------|
@@ -17,49 +21,171 @@ from utils.media_msg_codes import MediaMsgCode
     |--------------------------------------------|
     |                   data                     |
     |--------------------------------------------|
+
+    send time - milliseconds of monotonic clock modulo 2^24, client estimates bandwidth from its variation
+
+    Parity packet has the same layout, but instead of send time first byte after code holds group size k,
+    data is xor of k consecutive fragments starting at offset (shorter ones padded with zeros).
+
+    Probe packet holds id of its train instead of sequence number, train length instead of size and
+    its index in the train instead of offset, data is just padding.
 """
 
 
 class DataSender:
-    _PACKET_FORMAT = '>bxxxIII'
+    _PACKET_FORMAT = '>IIII'
+    _HEADER_SIZE = 16
+    _SEND_TIME_MASK = 0xFFFFFF
+    _PARITY_PACKET_FORMAT = '>bBxxIII'
+    _MAX_FEC_GROUP_SIZE = 255
+    _PARITY_CODES = {MediaMsgCode.VIDEO_FRAME: MediaMsgCode.VIDEO_PARITY}
+    # client requests repairs only while they can still be played, that's less than a second of frames
+    _RESEND_CACHE_SIZE = 16
 
-    def __init__(self, session: Session, msg_security_preproc: MessageSecurityPreprocessor, max_data_size: int = 1440):
+    def __init__(self, session: Session, msg_security_preproc: MessageSecurityPreprocessor, max_data_size: int = 1440,
+                 fec_group_size: int = 0):
         self.session = session
         self.msg_preproc = msg_security_preproc
 
         self.max_data_size = max_data_size
+        # chosen for the link before streaming, audio frames are never fragmented so they keep the default
+        self.video_data_size = max_data_size
+        self.fec_group_size = 0
+        self.set_fec_group_size(fec_group_size)
 
         # probably no need to randomize seq's like in tcp since all communication should be encrypted either way
         self.audio_frame_seq = 0
         self.video_frame_seq = 0
 
+        # recently sent video frames by seq, guarded by cache_lock since repairs are requested from listener thread
+        self.video_frame_cache = OrderedDict()
+        self.cache_lock = threading.Lock()
+
+    def set_fec_group_size(self, fec_group_size: int):
+        """one parity packet is sent per fec_group_size fragments of video frame, 0 disables parity"""
+        if not 0 <= fec_group_size <= self._MAX_FEC_GROUP_SIZE:
+            raise ValueError(f'fec group size has to be in [0, {self._MAX_FEC_GROUP_SIZE}], got {fec_group_size}')
+
+        self.fec_group_size = fec_group_size
+
+    def set_video_data_size(self, video_data_size: int):
+        """applies to frames sent after this call, repairs of earlier frames would use wrong offsets"""
+        self.video_data_size = min(video_data_size, self.max_data_size)
+
+    def send_probes(self, train_id: int, count: int, payload_size: int) -> int:
+        payload = bytes(payload_size)
+        sent = 0
+
+        for index in range(count):
+            header = pack(self._PACKET_FORMAT, (MediaMsgCode.PROBE.value << 24) | self._send_time_ms(),
+                          train_id, count, index)
+            try:
+                self._send_packet(header + payload)
+                sent += 1
+            except OSError:
+                # too large for path mtu known to the kernel when fragmentation is disabled
+                logging.debug(f'probe of {payload_size} bytes not sent', exc_info=True)
+
+        return sent
+
     def send_audio_frame(self, audio_frame: bytes):
-        self._send_fragmented(MediaMsgCode.AUDIO_FRAME,
-                              audio_frame, self.audio_frame_seq)
+        for packet in self._build_media_packets(MediaMsgCode.AUDIO_FRAME, audio_frame, self.audio_frame_seq):
+            self._send_packet(packet, audio=True)
         self.audio_frame_seq += 1
 
-    def send_video_frame(self, video_frame: bytes):
+    def send_video_frame(self, video_frame: bytes) -> int:
+        seq_num = self.video_frame_seq
+        with self.cache_lock:
+            self.video_frame_cache[seq_num] = video_frame
+            if len(self.video_frame_cache) > self._RESEND_CACHE_SIZE:
+                self.video_frame_cache.popitem(last=False)
+
         self._send_fragmented(MediaMsgCode.VIDEO_FRAME,
-                              video_frame, self.video_frame_seq)
+                              video_frame, seq_num)
         self.video_frame_seq += 1
 
+        return seq_num
+
+    def resend_video_fragments(self, seq_num: int, offsets: List[int]):
+        with self.cache_lock:
+            video_frame = self.video_frame_cache.get(seq_num)
+
+        if video_frame is None:
+            logging.debug(f'video frame {seq_num} is no longer cached, skipping repair')
+            return
+
+        size = len(video_frame)
+
+        for offset in offsets:
+            if offset < 0 or offset >= size or offset % self.video_data_size != 0:
+                logging.warning(f'invalid fragment offset {offset} requested for video frame {seq_num}')
+                return
+
+        for offset in offsets:
+            self._send_packet(self._build_media_packet(
+                MediaMsgCode.VIDEO_FRAME.value, seq_num, video_frame, offset, self.video_data_size))
+
     def _send_fragmented(self, media_code: MediaMsgCode, media_frame: bytes, seq_num: int):
         for fragment in self._build_media_packets(media_code, media_frame, seq_num):
-            encrypted_fragment = self.msg_preproc.preprocess_to_send(
-                self.session, fragment)
+            self._send_packet(fragment)
+
+    def _send_packet(self, packet: bytes, audio: bool = False):
+        # header goes in clear, client drops duplicates and fragments of skipped frames before decrypting them
+        encrypted_packet = self.msg_preproc.preprocess_media_to_send(
+            self.session, packet[:self._HEADER_SIZE], packet[self._HEADER_SIZE:])
 
+        if audio:
+            self.session.get_udp_audio_socket().sendto(
+                encrypted_packet, self.session.get_udp_audio_peer_addr())
+        else:
             self.session.get_udp_socket().sendto(
-                encrypted_fragment, self.session.get_udp_peer_addr())
+                encrypted_packet, self.session.get_udp_peer_addr())
 
     def _build_media_packets(self, media_code: MediaMsgCode, media_frame: bytes, seq_num: int) -> Generator[bytes, None, None]:
         code = media_code.value
         size = len(media_frame)
+        data_size = self.video_data_size if media_code == MediaMsgCode.VIDEO_FRAME else self.max_data_size
+
+        parity_code = self._PARITY_CODES.get(media_code)
+        group_size = self.fec_group_size if parity_code is not None else 0
+        group = []
+
+        for offset in range(0, len(media_frame), data_size):
+            packet = self._build_media_packet(code, seq_num, media_frame, offset, data_size)
+
+            yield packet
+
+            if group_size > 0:
+                group.append(media_frame[offset: offset + data_size])
+
+                if len(group) == group_size or offset + data_size >= size:
+                    group_offset = offset - (len(group) - 1) * data_size
+                    yield self._build_parity_packet(parity_code, seq_num, size, group_offset, group_size, group)
+                    group = []
+
+    def _build_media_packet(self, code: int, seq_num: int, media_frame: bytes, offset: int,
+                            data_size: int) -> bytes:
+        header = pack(self._PACKET_FORMAT, (code << 24) | self._send_time_ms(),
+                      seq_num, len(media_frame), offset)
+
+        data = media_frame[offset: offset +
+                           data_size]
+
+        return header + data
+
+    def _send_time_ms(self) -> int:
+        return int(time.monotonic() * 1000) & self._SEND_TIME_MASK
+
+    def _build_parity_packet(self, parity_code: MediaMsgCode, seq_num: int, size: int,
+                             offset: int, group_size: int, group: list) -> bytes:
+        # first fragment of a group is never shorter than the others
+        length = len(group[0])
+        parity = 0
 
-        for offset in range(0, len(media_frame), self.max_data_size):
-            header = pack(self._PACKET_FORMAT, code,
-                          seq_num, size, offset)
+        for data in group:
+            parity ^= int.from_bytes(data.ljust(length, b'\0'), 'big')
 
-            data = media_frame[offset: offset +
-                               self.max_data_size]
+        header = pack(self._PARITY_PACKET_FORMAT, parity_code.value,
+                      group_size, seq_num, size, offset)
 
-            yield header + data
+        return header + parity.to_bytes(length, 'big')
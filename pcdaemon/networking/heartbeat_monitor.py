@@ -0,0 +1,67 @@
+import logging
+import socket
+import threading
+import time
+from typing import Any, Optional
+from networking.abstract.conn_state_obs import ConnectionStateObserver
+from networking.message_sender import MessageSender
+from networking.session import Session
+from utils.msg_codes import MsgCode
+
+
+class HeartbeatMonitor(ConnectionStateObserver):
+    """
+    Echoes client's heartbeats, so that client can measure rtt and notice dead server, and watches them in turn.
+    Once client has sent first heartbeat and then goes silent for timeout seconds, tcp socket is shut down,
+    which ends listener's recv like any other lost connection. Without it half open connection (phone left
+    Wi-Fi range) would hold the server until tcp keepalive, if any, gives up.
+    """
+    _CHECK_INTERVAL = 0.5
+
+    def __init__(self, sender: MessageSender, timeout: float):
+        self.sender = sender
+        self.timeout = timeout
+
+        self.session: Optional[Session] = None
+        # None until first heartbeat, clients which don't send them aren't watched
+        self.last_beat_at: Optional[float] = None
+        self.lock = threading.Lock()  # guards session and last_beat_at
+        self.thread = None
+
+    def beat_rcvd(self, beat: Any):
+        with self.lock:
+            self.last_beat_at = time.monotonic()
+
+        self.sender.send_json(MsgCode.HEARTBEAT_ACK, {'seq': beat['seq']})
+
+    def connection_established(self, session: Session):
+        with self.lock:
+            self.session = session
+            self.last_beat_at = None
+
+        if self.thread is None:
+            self.thread = threading.Thread(target=self._watch, daemon=True)
+            self.thread.start()
+
+    def connection_lost(self, session: Session):
+        with self.lock:
+            self.session = None
+
+    def _watch(self):
+        while True:
+            time.sleep(self._CHECK_INTERVAL)
+
+            with self.lock:
+                session = self.session
+                silent_for = time.monotonic() - self.last_beat_at if self.last_beat_at is not None else 0
+
+                if session is None or silent_for < self.timeout:
+                    continue
+
+                self.session = None
+
+            logging.warning(f'no heartbeat from client for {silent_for:.1f}s, dropping connection')
+            try:
+                session.get_tcp_socket().shutdown(socket.SHUT_RDWR)
+            except OSError:
+                logging.info('failed to shut down client socket', exc_info=True)
@@ -0,0 +1,218 @@
+import logging
+import threading
+import time
+from typing import Any, Dict, Optional
+from networking.abstract.conn_state_obs import ConnectionStateObserver
+from networking.abstract.probe_sender import ProbeSender
+from networking.message_sender import MessageSender
+from networking.session import Session
+from utils.msg_codes import MsgCode
+
+
+class LinkProfile:
+    def __init__(self, rtt: float, fragment_size: int, bandwidth: Optional[int],
+                 bitrate: Optional[int], fps: int, quality: int):
+        self.rtt = rtt
+        self.fragment_size = fragment_size
+        # bits per second, None if it couldn't be measured
+        self.bandwidth = bandwidth
+        self.bitrate = bitrate
+        self.fps = fps
+        self.quality = quality
+        self.measured_at = time.monotonic()
+
+    def to_json(self) -> Dict[str, int]:
+        return {
+            'fragment_size': self.fragment_size,
+            'bitrate': self.bitrate if self.bitrate else 0,
+            'fps': self.fps,
+            'quality': self.quality,
+            'rtt_ms': int(self.rtt * 1000)
+        }
+
+    def __str__(self) -> str:
+        bandwidth = f'{self.bandwidth // 1000} kbps' if self.bandwidth else 'unknown'
+        return (f'rtt {self.rtt * 1000:.1f} ms, fragment size {self.fragment_size}, bandwidth {bandwidth}, '
+                f'{self.fps} fps, quality {self.quality}')
+
+
+class LinkProber(ConnectionStateObserver):
+    """
+    Characterizes the link after media channel is established, before anything is streamed:
+    - rtt - minimum of few pings over tcp
+    - fragment size - largest of candidate sizes whose probes reach the client, sent with fragmentation disabled
+    - bandwidth - rate at which a train of back to back probes arrives at the client
+    Client reports what it got in replies to pings, results decide fragment size, initial fps and jpeg quality.
+    They are kept per client address, so client which reconnects soon isn't probed again.
+    """
+    _FRAGMENT_SIZES = (1440, 1360, 1200, 1024, 512)
+    _PROBES_PER_SIZE = 2
+    _PING_COUNT = 3
+    _TRAIN_LENGTH = 32
+    _SIZE_PROBE_TRAIN = 1
+    _BANDWIDTH_TRAIN = 2
+    _PONG_TIMEOUT = 1.0
+    # probes get that long on top of rtt to arrive before client is asked about them
+    _SETTLE_TIME = 0.05
+    _PROFILE_TTL = 600
+    # probes arriving closer than that (~1 Gbps with largest fragment) mean client's clock is too coarse
+    # or the train was queued in front of it, such measurement says nothing about the link
+    _MIN_PROBE_GAP = 10e-6
+    # rest is left for audio, repairs and cross traffic
+    _VIDEO_BANDWIDTH_SHARE = 0.7
+    # rough jpeg of HD screen at reference quality, size changes about linearly with quality
+    _REFERENCE_FRAME_BYTES = 120_000
+    _REFERENCE_QUALITY = 75
+    _QUALITIES = (75, 60, 45, 30)
+    _COMFORTABLE_FPS = 15
+    _MIN_FPS = 5
+
+    def __init__(self, sender: MessageSender, probe_sender: ProbeSender, max_fps: int,
+                 max_fragment_size: int = 1440):
+        self.sender = sender
+        self.probe_sender = probe_sender
+        self.max_fps = max_fps
+        self.fragment_sizes = [size for size in self._FRAGMENT_SIZES if size <= max_fragment_size]
+
+        # by client ip, used only by serving thread
+        self.profiles: Dict[str, LinkProfile] = {}
+
+        self.connected = False
+        self.ping_seq = 0
+        self.pongs: Dict[int, Any] = {}
+        self.pong_lock = threading.Lock()  # guards connected and pongs
+        self.pong_cond = threading.Condition(self.pong_lock)
+
+    def probe(self, session: Session) -> LinkProfile:
+        peer_ip, _ = session.get_udp_peer_addr()
+        # re-attached session brings profile of its path along, client may have migrated it to another ip
+        profile = session.get_link_profile() or self.profiles.get(peer_ip)
+
+        if profile is not None and time.monotonic() - profile.measured_at < self._PROFILE_TTL:
+            logging.info(f'reusing link profile of {peer_ip}: {profile}')
+        else:
+            start = time.monotonic()
+            profile = self._measure()
+
+            if profile is not None:
+                logging.info(f'link to {peer_ip} probed in {time.monotonic() - start:.2f}s: {profile}')
+                self.profiles[peer_ip] = profile
+            else:
+                profile = self._default_profile()
+                logging.warning(f'client did not answer link probe, using defaults: {profile}')
+
+        session.set_link_profile(profile)
+        self.probe_sender.set_max_fragment_size(profile.fragment_size)
+        self.sender.send_json(MsgCode.PROBE_RESULT, profile.to_json())
+
+        # pong comes after client handled the result, so first frame is already split the way client expects
+        self._ping()
+
+        return profile
+
+    def pong_rcvd(self, report: Any):
+        with self.pong_lock:
+            self.pongs[report['seq']] = report
+            self.pong_cond.notify_all()
+
+    def _measure(self) -> Optional[LinkProfile]:
+        rtts = []
+        for _ in range(self._PING_COUNT):
+            start = time.monotonic()
+            if self._ping() is None:
+                return None
+            rtts.append(time.monotonic() - start)
+
+        rtt = min(rtts)
+
+        for size in self.fragment_sizes:
+            self.probe_sender.send_probes(self._SIZE_PROBE_TRAIN, self._PROBES_PER_SIZE, size, dont_fragment=True)
+
+        report = self._ping_after(rtt)
+        if report is None:
+            return None
+
+        fitting = [size for size in self.fragment_sizes if size <= report['max_size']]
+        # nothing got through, smallest one is most likely to
+        fragment_size = max(fitting) if fitting else self.fragment_sizes[-1]
+
+        self.probe_sender.send_probes(self._BANDWIDTH_TRAIN, self._TRAIN_LENGTH, fragment_size)
+
+        report = self._ping_after(rtt)
+        if report is None:
+            return None
+
+        bandwidth = self._estimate_bandwidth(report, fragment_size)
+
+        bitrate, fps, quality = self._choose_qos(bandwidth)
+
+        return LinkProfile(rtt, fragment_size, bandwidth, bitrate, fps, quality)
+
+    def _estimate_bandwidth(self, report: Any, fragment_size: int) -> Optional[int]:
+        """None if train didn't arrive or its span is too short to be trusted"""
+        if report['train'] != self._BANDWIDTH_TRAIN or report['train_packets'] <= 1:
+            return None
+
+        # first packet only marks the start
+        gaps = report['train_packets'] - 1
+        span = report['train_span_us'] / 1e6
+        if span < gaps * self._MIN_PROBE_GAP:
+            logging.warning(f'probe train of {gaps + 1} packets arrived within {span * 1e6:.0f} us, '
+                            f'bandwidth unknown')
+            return None
+
+        return int(gaps * fragment_size * 8 / span)
+
+    def _choose_qos(self, bandwidth: Optional[int]):
+        if bandwidth is None:
+            return None, self.max_fps, self._REFERENCE_QUALITY
+
+        bitrate = int(bandwidth * self._VIDEO_BANDWIDTH_SHARE)
+
+        # lower quality only when even comfortable frame rate doesn't fit
+        for quality in self._QUALITIES:
+            frame_bits = self._REFERENCE_FRAME_BYTES * 8 * quality / self._REFERENCE_QUALITY
+            fps = int(bitrate / frame_bits)
+            if fps >= self._COMFORTABLE_FPS:
+                break
+
+        return bitrate, max(self._MIN_FPS, min(fps, self.max_fps)), quality
+
+    def _default_profile(self) -> LinkProfile:
+        return LinkProfile(0, self.fragment_sizes[0], None, None, self.max_fps, self._REFERENCE_QUALITY)
+
+    def _ping_after(self, rtt: float) -> Optional[Any]:
+        time.sleep(rtt + self._SETTLE_TIME)
+        return self._ping()
+
+    def _ping(self) -> Optional[Any]:
+        """returns client's report, None if it didn't come in time"""
+        with self.pong_lock:
+            self.ping_seq += 1
+            seq = self.ping_seq
+
+        self.sender.send_json(MsgCode.PROBE_PING, {'seq': seq})
+
+        deadline = time.monotonic() + self._PONG_TIMEOUT
+        with self.pong_lock:
+            while seq not in self.pongs:
+                if not self.connected:
+                    raise ConnectionError('Connection lost while probing link')
+
+                remaining = deadline - time.monotonic()
+                if remaining <= 0:
+                    return None
+
+                self.pong_cond.wait(remaining)
+
+            return self.pongs.pop(seq)
+
+    def connection_established(self, session: Session):
+        with self.pong_lock:
+            self.connected = True
+            self.pongs.clear()
+
+    def connection_lost(self, session: Session):
+        with self.pong_lock:
+            self.connected = False
+            self.pong_cond.notify_all()
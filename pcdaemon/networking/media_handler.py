@@ -1,23 +1,42 @@
 import logging
 import atexit
 import socket
-from socket import AF_INET, SOCK_DGRAM
+import sys
+from typing import List
+from socket import AF_INET, SOCK_DGRAM, IPPROTO_IP, IP_TOS
 from networking.abstract.conn_state_obs import ConnectionStateObserver
 from networking.abstract.media_sender import MediaSender
+from networking.abstract.probe_sender import ProbeSender
 from networking.data_sender import DataSender
 from security.message_security_preprocessor import MessageSecurityPreprocessor
 from networking.session import Session
 
 
-class MediaHandler(ConnectionStateObserver, MediaSender):
-    def __init__(self, ip_addr: str, port: int, msg_security_preproc: MessageSecurityPreprocessor):
+class MediaHandler(ConnectionStateObserver, MediaSender, ProbeSender):
+    # expedited forwarding DSCP, routers which honor it won't queue audio behind video
+    _AUDIO_TOS = 0xB8
+    # from linux/in.h, not exported by socket module
+    _IP_MTU_DISCOVER = 10
+    _IP_PMTUDISC_WANT = 1
+    _IP_PMTUDISC_DO = 2
+
+    def __init__(self, ip_addr: str, port: int, msg_security_preproc: MessageSecurityPreprocessor,
+                 fec_group_size: int = 0, audio_port: int = None):
         self.ip_addr = ip_addr
         self.port = port
         self.msg_security_preproc = msg_security_preproc
+        self.fec_group_size = fec_group_size
         self.remote_port = self.port
+        self.remote_audio_port = audio_port if audio_port is not None else self.port + 1
         self.data_sender = None
 
-        self.serv_sock = self._setup_server_socket()
+        # bound so that client knows where to send path migration requests
+        self.serv_sock = self._setup_server_socket(bind=True)
+        self.audio_sock = self._setup_server_socket()
+        try:
+            self.audio_sock.setsockopt(IPPROTO_IP, IP_TOS, self._AUDIO_TOS)
+        except OSError:
+            logging.warning('failed to mark audio packets as expedited, sending them as best effort')
 
     def connection_established(self, session: Session):
         client_tcp_socket = session.get_tcp_socket()
@@ -26,22 +45,60 @@ class MediaHandler(ConnectionStateObserver, MediaSender):
         session.set_udp_socket(self.serv_sock)
         session.set_udp_secret_key(self.msg_security_preproc.generate_key())
         session.set_udp_peer_addr(ip_addr, self.remote_port)
+        session.set_udp_audio_socket(self.audio_sock)
+        session.set_udp_audio_peer_addr(ip_addr, self.remote_audio_port)
 
-        logging.info(f'setting remote address as {ip_addr}:{self.remote_port}')
+        logging.info(f'setting remote address as {ip_addr}:{self.remote_port}, audio port {self.remote_audio_port}')
 
-        self.data_sender = DataSender(session, self.msg_security_preproc)
+        self.data_sender = DataSender(session, self.msg_security_preproc,
+                                      fec_group_size=self.fec_group_size)
 
     def connection_lost(self, session: Session):
         self.data_sender = None
 
-    def _setup_server_socket(self):
+    def _setup_server_socket(self, bind: bool = False):
         sock = socket.socket(AF_INET, SOCK_DGRAM)
         atexit.register(sock.close)
 
+        if bind:
+            sock.bind((self.ip_addr, 0))
+
         return sock
 
+    def get_media_socket(self) -> socket.socket:
+        return self.serv_sock
+
+    def send_probes(self, train_id: int, count: int, payload_size: int, dont_fragment: bool = False) -> int:
+        if dont_fragment:
+            self._set_dont_fragment(True)
+
+        try:
+            return self.data_sender.send_probes(train_id, count, payload_size)
+        finally:
+            if dont_fragment:
+                self._set_dont_fragment(False)
+
+    def set_max_fragment_size(self, fragment_size: int):
+        self.data_sender.set_video_data_size(fragment_size)
+
+    def _set_dont_fragment(self, enabled: bool):
+        # elsewhere oversized probes are fragmented and get lost only if any of their fragments does
+        if not sys.platform.startswith('linux'):
+            return
+
+        mode = self._IP_PMTUDISC_DO if enabled else self._IP_PMTUDISC_WANT
+        try:
+            self.serv_sock.setsockopt(IPPROTO_IP, self._IP_MTU_DISCOVER, mode)
+        except OSError:
+            logging.warning('failed to change path mtu discovery mode', exc_info=True)
+
     def send_audio_bytes(self, audio_frame: bytes):
         self.data_sender.send_audio_frame(audio_frame)
 
-    def send_ss_bytes(self, ss: bytes):
-        self.data_sender.send_video_frame(ss)
+    def send_ss_bytes(self, ss: bytes) -> int:
+        return self.data_sender.send_video_frame(ss)
+
+    def resend_ss_fragments(self, seq_num: int, offsets: List[int]):
+        data_sender = self.data_sender
+        if data_sender is not None:
+            data_sender.resend_video_fragments(seq_num, offsets)
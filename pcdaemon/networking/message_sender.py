@@ -1,3 +1,4 @@
+import base64
 import json
 from threading import Lock
 from typing import Any
@@ -5,6 +6,7 @@ from networking.abstract.conn_state_obs import ConnectionStateObserver
 from security.message_security_preprocessor import MessageSecurityPreprocessor
 from networking.session import Session
 from security.auth_state_obs import AuthStateObserver
+from security.resumption_tickets import ResumptionTicket
 from utils.msg_codes import MsgCode
 
 
@@ -43,4 +45,22 @@ class MessageSender(ConnectionStateObserver, AuthStateObserver):
 
     def send_media_secret_key(self, session: Session):
         encoded_key = self.preprocessor.encode_media_secret_key(session)
-        self.send_json(MsgCode.UDP_SECRET, {'secret': encoded_key})
+        self.send_json(MsgCode.UDP_SECRET, {
+            'secret': encoded_key,
+            'session_id': base64.b64encode(session.get_session_id()).decode('utf-8'),
+            'migration_port': session.get_udp_socket().getsockname()[1]
+        })
+
+    def send_media_params(self, session: Session):
+        """UDP_SECRET of session whose media key was derived in handshake (resumption, ECDHE)"""
+        self.send_json(MsgCode.UDP_SECRET, {
+            'session_id': base64.b64encode(session.get_session_id()).decode('utf-8'),
+            'migration_port': session.get_udp_socket().getsockname()[1]
+        })
+
+    def send_resumption_ticket(self, ticket: ResumptionTicket, lifetime_s: float):
+        self.send_json(MsgCode.NEW_TICKET, {
+            'ticket': base64.b64encode(ticket.ticket_id).decode('utf-8'),
+            'secret': base64.b64encode(ticket.secret).decode('utf-8'),
+            'lifetime_s': int(lifetime_s)
+        })
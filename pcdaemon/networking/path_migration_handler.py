@@ -0,0 +1,143 @@
+import hmac
+import logging
+import socket
+import struct
+import threading
+import time
+from typing import Optional, Tuple
+from networking.abstract.conn_state_obs import ConnectionStateObserver
+from networking.message_sender import MessageSender
+from networking.session import Session
+from security.message_security_preprocessor import MessageSecurityPreprocessor
+from utils.media_msg_codes import MediaMsgCode
+from utils.msg_codes import MsgCode
+
+
+class PathMigrationHandler(ConnectionStateObserver):
+    """
+    Lets client move its media endpoints without reconnecting, eg. when phone roams to another access point.
+    Client sends a request from every socket it receives media on to server's media socket, encrypted with
+    media key like any media packet, plaintext:
+    |--------------------------------------------|
+    |               session id(128)              |
+    |--------------------------------------------|
+    |                  seq(64)                   |
+    |--------------------------------------------|
+    |                  lane(8)                   |
+    |--------------------------------------------|
+    - lane - media code of the stream received on that socket (AUDIO_FRAME or VIDEO_FRAME)
+    - seq - number of migration, grows with every network change
+    Source address of valid request becomes destination of its lane, so NATs on the new path let media through,
+    then it's confirmed with PATH_MIGRATED media packet sent to that address (lane instead of sequence number,
+    data is seq(64)), which proves the new path works even if tcp connection didn't survive the network change.
+    PATH_MIGRATED message over tcp is sent as well while it's up. Request with seq lower than the last accepted
+    is a replay.
+    """
+    _REQUEST_FORMAT = '!16sQB'
+    _CONFIRMATION_FORMAT = '>IIII'
+    _CONFIRMED_SEQ_FORMAT = '>Q'
+    _SEND_TIME_MASK = 0xFFFFFF
+    _MAX_DATAGRAM_SIZE = 1500
+
+    def __init__(self, sock: socket.socket, msg_security_preproc: MessageSecurityPreprocessor,
+                 sender: MessageSender):
+        self.sock = sock
+        self.msg_security_preproc = msg_security_preproc
+        self.sender = sender
+
+        self.session: Optional[Session] = None
+        self.session_lock = threading.Lock()
+        # socket outlives sessions, so does its listener
+        self.thread = None
+
+    def connection_established(self, session: Session):
+        with self.session_lock:
+            self.session = session
+
+        if self.thread is None:
+            self.thread = threading.Thread(target=self._listen, daemon=True)
+            self.thread.start()
+
+    def connection_lost(self, session: Session):
+        with self.session_lock:
+            self.session = None
+
+    def _listen(self):
+        logging.info(f'listening for path migration requests at {self.sock.getsockname()}')
+
+        while True:
+            try:
+                datagram, addr = self.sock.recvfrom(self._MAX_DATAGRAM_SIZE)
+            except OSError:
+                # closed by atexit, nothing will ever come again
+                if self.sock.fileno() == -1:
+                    logging.info('media socket closed, no longer listening for path migration requests')
+                    break
+
+                logging.warning('failed to receive path migration request', exc_info=True)
+                continue
+
+            with self.session_lock:
+                session = self.session
+
+            # media key is sent only once client is authenticated
+            if session is None or session.get_udp_secret_key() is None:
+                continue
+
+            try:
+                lane, seq = self._parse_request(session, datagram)
+            except Exception as e:
+                logging.warning(f'dropping invalid path migration request from {addr}: {e!r}')
+                continue
+
+            self._migrate(session, lane, seq, addr)
+
+    def _parse_request(self, session: Session, datagram: bytes) -> Tuple[MediaMsgCode, int]:
+        plaintext = self.msg_security_preproc.preprocess_received(session, datagram)
+        session_id, seq, lane = struct.unpack(self._REQUEST_FORMAT, plaintext)
+
+        if not hmac.compare_digest(session_id, session.get_session_id()):
+            raise ValueError('request of another session')
+
+        lane = MediaMsgCode(lane)
+        if lane not in (MediaMsgCode.AUDIO_FRAME, MediaMsgCode.VIDEO_FRAME):
+            raise ValueError(f'unsupported lane {lane}')
+
+        return lane, seq
+
+    def _migrate(self, session: Session, lane: MediaMsgCode, seq: int, addr: Tuple[str, int]):
+        # every lane sends its own request for the same seq
+        if seq < session.get_path_migration_seq():
+            logging.warning(f'dropping replayed path migration request {seq} from {addr}')
+            return
+
+        session.set_path_migration_seq(seq)
+
+        if lane == MediaMsgCode.AUDIO_FRAME:
+            if session.get_udp_audio_peer_addr() != addr:
+                logging.info(f'audio path migrated to {addr}')
+            session.set_udp_audio_peer_addr(*addr)
+        else:
+            if session.get_udp_peer_addr() != addr:
+                logging.info(f'video path migrated to {addr}')
+            session.set_udp_peer_addr(*addr)
+
+        try:
+            self._confirm(session, lane, seq, addr)
+        except OSError:
+            # client resends request until it's confirmed
+            logging.warning(f'failed to confirm path migration to {addr}', exc_info=True)
+
+        try:
+            self.sender.send_json(MsgCode.PATH_MIGRATED, {'lane': lane.value, 'seq': seq})
+        except (OSError, AttributeError):
+            # connection is being torn down, confirmation over udp is enough
+            logging.info('failed to confirm path migration over tcp', exc_info=True)
+
+    def _confirm(self, session: Session, lane: MediaMsgCode, seq: int, addr: Tuple[str, int]):
+        send_time_ms = int(time.monotonic() * 1000) & self._SEND_TIME_MASK
+        payload = struct.pack(self._CONFIRMED_SEQ_FORMAT, seq)
+        header = struct.pack(self._CONFIRMATION_FORMAT, (MediaMsgCode.PATH_MIGRATED.value << 24) | send_time_ms,
+                             lane.value, len(payload), 0)
+
+        self.sock.sendto(self.msg_security_preproc.preprocess_media_to_send(session, header, payload), addr)
@@ -9,6 +9,8 @@ from security.authenticator import Authenticator
 from media.streamers.streamer import Streamer
 from networking.abstract.conn_state_obs import ConnectionStateObserver
 from networking.message_sender import MessageSender
+from networking.link_prober import LinkProber
+from security.resumption_tickets import ResumptionTickets
 
 
 class Server:
@@ -18,7 +20,7 @@ class Server:
     def __init__(self, addr: str, tcp_port: int,
                  auth: Authenticator, msg_handler: MsgHandler,
                  tls_handler: TLSHandler, session_handler: SessionHandler,
-                 sender: MessageSender, streamer: Streamer):
+                 sender: MessageSender, streamer: Streamer, link_prober: LinkProber, tickets: ResumptionTickets):
         self._PORT = tcp_port
         self._IP_ADDR = addr
         self.auth = auth
@@ -27,6 +29,8 @@ class Server:
         self.tls_handler = tls_handler
         self.sender = sender
         self.streamer = streamer
+        self.link_prober = link_prober
+        self.tickets = tickets
 
         self._init_server_socket()
 
@@ -57,12 +61,23 @@ class Server:
 
         logging.info("waiting for secure channel")
         self.tls_handler.await_secure_channel(session)
+        if session.is_resumed():
+            self.auth.restore(session)
         logging.info("waiting for user authentication")
         self.auth.await_authentication(session)
-        logging.info("auth established, sending media secret key")
-        self.sender.send_media_secret_key(session)
-        logging.info("key sent, waiting for confirmation")
-        self.streamer.await_secure_media_channel()
+        if session.is_media_key_agreed():
+            logging.info("media key derived in handshake, sending media params")
+            self.sender.send_media_params(session)
+            self.streamer.secure_channel_established()
+        else:
+            logging.info("auth established, sending media secret key")
+            self.sender.send_media_secret_key(session)
+            logging.info("key sent, waiting for confirmation")
+            self.streamer.await_secure_media_channel()
+        # ticket is redeemed only once, so every session issues the next one
+        self.sender.send_resumption_ticket(self.tickets.issue(session), self.tickets.get_lifetime())
+        logging.info("probing link")
+        self.streamer.apply_link_profile(self.link_prober.probe(session))
         logging.info("staring streaming")
         self.streamer.stream()
 
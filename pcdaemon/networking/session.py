@@ -1,6 +1,9 @@
+import secrets
 from enum import Enum
 from socket import socket
 from typing import Tuple
+from security.cipher_suite import CipherSuite, DEFAULT_TCP_CIPHER_SUITE, DEFAULT_UDP_CIPHER_SUITE
+from security.session_nonces import SessionNonces
 
 
 class SessionState(Enum):
@@ -11,18 +14,40 @@ class SessionState(Enum):
 
 
 class Session:
+    SESSION_ID_LENGTH = 16
+
     def __init__(self, client_tcp_socket: socket):
         self.tcp_sock = client_tcp_socket
         self.session_state = SessionState.START
+        # identifies session in path migration requests, which come from addresses unknown to the server
+        self.session_id = secrets.token_bytes(self.SESSION_ID_LENGTH)
 
         self.udp_sock = None
-        self.udp_peer_ip = None
-        self.udp_peer_port = None
+        # (ip, port) tuples, replaced as a whole so that sender never sees half migrated address
+        self.udp_peer_addr = (None, None)
+        # audio is sent from separate socket to separate port, after path migration possibly of another address
+        self.udp_audio_sock = None
+        self.udp_audio_peer_addr = (None, None)
+        # seq of last accepted path migration, older requests are replays
+        self.path_migration_seq = 0
 
         self.tcp_secret_key = None
         self.udp_secret_key = None
+        # counted from 0 for every key
+        self.tcp_nonces = SessionNonces()
+        self.udp_nonces = SessionNonces()
+        # picked from suites offered by client in HELLO
+        self.tcp_cipher_suite = DEFAULT_TCP_CIPHER_SUITE
+        self.udp_cipher_suite = DEFAULT_UDP_CIPHER_SUITE
 
         self.authenticated = False
+        # keys and authentication restored from resumption ticket
+        self.resumed = False
+        # media key derived in handshake (resumption, ECDHE), so it isn't sent in UDP_SECRET
+        self.media_key_agreed = False
+
+        # measured by link prober before streaming, None until then
+        self.link_profile = None
 
     def get_session_state(self) -> SessionState:
         return self.session_state
@@ -34,17 +59,47 @@ class Session:
         return self.authenticated
 
     def set_tcp_secret_key(self, key: bytes):
+        self.tcp_nonces = SessionNonces()
         self.tcp_secret_key = key
 
     def get_tcp_secret_key(self) -> bytes:
         return self.tcp_secret_key
 
+    def get_tcp_nonces(self) -> SessionNonces:
+        return self.tcp_nonces
+
     def set_udp_secret_key(self, key: bytes):
+        self.udp_nonces = SessionNonces()
         self.udp_secret_key = key
 
     def get_udp_secret_key(self) -> bytes:
         return self.udp_secret_key
 
+    def get_udp_nonces(self) -> SessionNonces:
+        return self.udp_nonces
+
+    def set_cipher_suites(self, tcp_cipher_suite: CipherSuite, udp_cipher_suite: CipherSuite):
+        self.tcp_cipher_suite = tcp_cipher_suite
+        self.udp_cipher_suite = udp_cipher_suite
+
+    def get_tcp_cipher_suite(self) -> CipherSuite:
+        return self.tcp_cipher_suite
+
+    def get_udp_cipher_suite(self) -> CipherSuite:
+        return self.udp_cipher_suite
+
+    def set_resumed(self, resumed: bool):
+        self.resumed = resumed
+
+    def is_resumed(self) -> bool:
+        return self.resumed
+
+    def set_media_key_agreed(self, media_key_agreed: bool):
+        self.media_key_agreed = media_key_agreed
+
+    def is_media_key_agreed(self) -> bool:
+        return self.media_key_agreed
+
     def set_session_state(self, session_state: SessionState):
         self.session_state = session_state
 
@@ -57,15 +112,50 @@ class Session:
     def set_udp_socket(self, sock: socket):
         self.udp_sock = sock
 
+    def get_udp_audio_socket(self) -> socket:
+        return self.udp_audio_sock
+
+    def set_udp_audio_socket(self, sock: socket):
+        self.udp_audio_sock = sock
+
     def is_secure(self) -> bool:
         return self.session_state == SessionState.ESTABLISHED
 
+    def get_session_id(self) -> bytes:
+        return self.session_id
+
     def set_udp_peer_addr(self, ip_addr: str, port: int):
-        self.udp_peer_ip = ip_addr
-        self.udp_peer_port = port
+        self.udp_peer_addr = (ip_addr, port)
 
     def get_udp_peer_addr(self) -> Tuple[str, int]:
-        return self.udp_peer_ip, self.udp_peer_port
+        return self.udp_peer_addr
+
+    def set_udp_audio_peer_addr(self, ip_addr: str, port: int):
+        self.udp_audio_peer_addr = (ip_addr, port)
+
+    def get_udp_audio_peer_addr(self) -> Tuple[str, int]:
+        return self.udp_audio_peer_addr
+
+    def get_path_migration_seq(self) -> int:
+        return self.path_migration_seq
+
+    def set_path_migration_seq(self, seq: int):
+        self.path_migration_seq = seq
+
+    def reattach(self, previous: 'Session'):
+        """resumed session takes over media path of the session which issued its ticket, so that client keeps
+        migrating it under the same id and link isn't probed again when tcp didn't survive network change"""
+        self.session_id = previous.get_session_id()
+        self.udp_peer_addr = previous.get_udp_peer_addr()
+        self.udp_audio_peer_addr = previous.get_udp_audio_peer_addr()
+        self.path_migration_seq = previous.get_path_migration_seq()
+        self.link_profile = previous.get_link_profile()
+
+    def get_link_profile(self):
+        return self.link_profile
+
+    def set_link_profile(self, link_profile):
+        self.link_profile = link_profile
 
     def __str__(self) -> str:
         return f'[Peer: {self.tcp_sock.getpeername()} - {self.session_state} - authenticated: {self.authenticated}]'
@@ -8,13 +8,18 @@ from utils.msg_codes import MsgCode
 from networking.abstract.msg_handler import MsgHandler
 from security.authenticator import Authenticator
 from media.streamers.streamer import Streamer
+from networking.link_prober import LinkProber
+from networking.heartbeat_monitor import HeartbeatMonitor
 
 
 class StreamMsgHandler(MsgHandler, ConnectionStateObserver):
-    def __init__(self, auth: Authenticator, streamer: Streamer):
+    def __init__(self, auth: Authenticator, streamer: Streamer, link_prober: LinkProber,
+                 heartbeat_monitor: HeartbeatMonitor):
         super().__init__()
         self.auth = auth
         self.streamer = streamer
+        self.link_prober = link_prober
+        self.heartbeat_monitor = heartbeat_monitor
         self.session = None
 
     def connection_established(self, session: Session):
@@ -28,6 +33,10 @@ class StreamMsgHandler(MsgHandler, ConnectionStateObserver):
             self.auth.validate(data['password'], self.session)
             return
 
+        if code == MsgCode.HEARTBEAT:
+            self.heartbeat_monitor.beat_rcvd(data)
+            return
+
         assert self.session.is_authenticated(
         ), f"Rcvd code {code} before authentication"
 
@@ -48,13 +57,19 @@ class StreamMsgHandler(MsgHandler, ConnectionStateObserver):
         elif code == MsgCode.SCROLL:
             self.streamer.scroll(data['up'])
         elif code == MsgCode.SS_RCVD:
-            self.streamer.ss_rcvd()
+            self.streamer.ss_rcvd(data['seq'], data['credits'])
+        elif code == MsgCode.QOS:
+            self.streamer.change_qos(data['bitrate'], data['fps'], data['quality'])
+        elif code == MsgCode.NACK:
+            self.streamer.resend_video_fragments(data['seq'], data['offsets'])
         elif code == MsgCode.MUTE:
             self.streamer.mute_sound()
         elif code == MsgCode.UNMUTE:
             self.streamer.unmute_sound()
         elif code == MsgCode.UDP_SECRET_ACK:
             self.streamer.secure_channel_established()
+        elif code == MsgCode.PROBE_PONG:
+            self.link_prober.pong_rcvd(data)
         else:
             raise RuntimeError(
                 f'Received unsupported msg code {code} with data\n{data}')
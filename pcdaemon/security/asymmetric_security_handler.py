@@ -1,7 +1,9 @@
 from abc import ABC, abstractmethod
 from pathlib import Path
-from Crypto.PublicKey import RSA
+from Crypto.PublicKey import RSA, ECC
 from Crypto.Cipher import PKCS1_OAEP
+from Crypto.Hash import SHA256
+from Crypto.Signature import DSS
 
 
 class AsymmetricSecurityHandler(ABC):
@@ -28,3 +30,20 @@ class RSA_AsymmetricSecurityHandler(AsymmetricSecurityHandler):
 
         cipher = PKCS1_OAEP.new(key)
         return cipher.decrypt(data)
+
+
+class ECDSA_Signer:
+    """Signs ephemeral key shares of ECDHE handshakes with EC key certified by CA"""
+    SUPPORTED_EXTENCTION = "pem"
+
+    def __init__(self, private_key_path: Path):
+        assert private_key_path.name.endswith(
+            self.SUPPORTED_EXTENCTION), f"unsupported extension, expected {self.SUPPORTED_EXTENCTION}"
+
+        # used in every handshake, unlike RSA key which was needed only for key transport
+        with open(private_key_path, 'rt') as f:
+            self.key = ECC.import_key(f.read())
+
+    def sign(self, data: bytes) -> bytes:
+        """DER encoded ECDSA signature of SHA-256 of data, as expected by SHA256withECDSA of the client"""
+        return DSS.new(self.key, 'fips-186-3', encoding='der').sign(SHA256.new(data))
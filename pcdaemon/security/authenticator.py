@@ -36,6 +36,17 @@ class Authenticator(ConnectionStateObserver):
 
             self.auth_state_changed.notify_all()
 
+    def restore(self, session: Session):
+        """session resumed with a ticket, which was issued only after password was validated"""
+        logging.info(f'{session} auth restored from resumption ticket')
+
+        with self.auth_lock:
+            session.set_auth_state(True)
+            for obs in self.auth_state_obss:
+                obs.auth_suceeded(session)
+
+            self.auth_state_changed.notify_all()
+
     def await_authentication(self, session: Session):
         with self.auth_lock:
             while not session.is_authenticated():
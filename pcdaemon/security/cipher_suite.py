@@ -0,0 +1,33 @@
+from enum import Enum
+from typing import List
+
+from Crypto.Cipher import AES, ChaCha20_Poly1305
+
+
+class CipherSuite(Enum):
+    """AEAD protecting a channel, values have to match CipherSuite.java of the client"""
+    AES_256_GCM = 0
+    CHACHA20_POLY1305 = 1
+
+    def new_cipher(self, key: bytes, nonce: bytes):
+        if self == CipherSuite.AES_256_GCM:
+            return AES.new(key, AES.MODE_GCM, nonce=nonce)
+
+        return ChaCha20_Poly1305.new(key=key, nonce=nonce)
+
+
+# used with clients which don't offer any known suite in HELLO
+DEFAULT_TCP_CIPHER_SUITE = CipherSuite.AES_256_GCM
+DEFAULT_UDP_CIPHER_SUITE = CipherSuite.CHACHA20_POLY1305
+
+
+def parse_offered_suites(data: bytes) -> List[CipherSuite]:
+    """HELLO carries ids of suites ordered by client's preference (fastest on the phone first),
+    unknown ids are skipped"""
+    known_ids = {suite.value for suite in CipherSuite}
+
+    return [CipherSuite(suite_id) for suite_id in data if suite_id in known_ids]
+
+
+def pick_cipher_suite(offered: List[CipherSuite], default: CipherSuite) -> CipherSuite:
+    return offered[0] if offered else default
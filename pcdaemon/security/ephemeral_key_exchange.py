@@ -0,0 +1,68 @@
+import hashlib
+import hmac
+from typing import Tuple
+
+from Crypto.PublicKey import ECC
+
+
+class EphemeralKeyExchange:
+    """
+    Ephemeral P-256 ECDH of a single handshake. Key pair is generated for every connection and dropped with it,
+    so recorded traffic can't be decrypted with keys stolen later (forward secrecy). TCP and UDP keys are derived
+    with HKDF from shared secret, salted with hash of the handshake transcript.
+
+    Has to match EphemeralKeyExchange.java of the client.
+    """
+    CURVE = 'P-256'
+    COORDINATE_LENGTH = 32
+    SHARE_LENGTH = 1 + 2 * COORDINATE_LENGTH
+    _UNCOMPRESSED = 0x04
+    _KEY_LENGTH = 32
+    _TCP_KEY_LABEL = b'kntpilot ecdhe tcp key'
+    _UDP_KEY_LABEL = b'kntpilot ecdhe udp key'
+
+    def __init__(self):
+        self.key = ECC.generate(curve=self.CURVE)
+
+    def get_public_share(self) -> bytes:
+        point = self.key.pointQ
+        return bytes([self._UNCOMPRESSED]) + int(point.x).to_bytes(self.COORDINATE_LENGTH, 'big') + \
+            int(point.y).to_bytes(self.COORDINATE_LENGTH, 'big')
+
+    def compute_shared_secret(self, peer_share: bytes) -> bytes:
+        """x coordinate of the shared point, raises ValueError if share isn't a point of the curve"""
+        if len(peer_share) != self.SHARE_LENGTH or peer_share[0] != self._UNCOMPRESSED:
+            raise ValueError(f'expected uncompressed {self.CURVE} point, got {len(peer_share)} bytes')
+
+        x = int.from_bytes(peer_share[1:1 + self.COORDINATE_LENGTH], 'big')
+        y = int.from_bytes(peer_share[1 + self.COORDINATE_LENGTH:], 'big')
+        peer_key = ECC.construct(curve=self.CURVE, point_x=x, point_y=y)
+
+        shared_point = peer_key.pointQ * int(self.key.d)
+        return int(shared_point.x).to_bytes(self.COORDINATE_LENGTH, 'big')
+
+    @classmethod
+    def derive_channel_keys(cls, shared_secret: bytes, transcript: bytes) -> Tuple[bytes, bytes]:
+        """(TCP key, UDP key)"""
+        prk = hkdf_extract(hashlib.sha256(transcript).digest(), shared_secret)
+
+        return hkdf_expand(prk, cls._TCP_KEY_LABEL, cls._KEY_LENGTH), \
+            hkdf_expand(prk, cls._UDP_KEY_LABEL, cls._KEY_LENGTH)
+
+
+def hkdf_extract(salt: bytes, input_key_material: bytes) -> bytes:
+    """HKDF with HMAC-SHA256 (RFC 5869), has to match Hkdf.java of the client"""
+    return hmac.new(salt or bytes(hashlib.sha256().digest_size), input_key_material, hashlib.sha256).digest()
+
+
+def hkdf_expand(pseudo_random_key: bytes, info: bytes, length: int) -> bytes:
+    output = b''
+    block = b''
+    counter = 1
+
+    while len(output) < length:
+        block = hmac.new(pseudo_random_key, block + info + bytes([counter]), hashlib.sha256).digest()
+        output += block
+        counter += 1
+
+    return output[:length]
@@ -1,40 +1,57 @@
 from abc import ABC, abstractmethod
-from Crypto.Random import get_random_bytes
 
 from networking.session import Session
+from security.cipher_suite import CipherSuite
+from security.session_nonces import SessionNonces
 
 
 class Guard(ABC):
-    def __init__(self, nonce_length: int, tag_length: int, key_length: int) -> None:
-        self.nonce_length = nonce_length
+    def __init__(self, tag_length: int, key_length: int) -> None:
+        self.nonce_length = SessionNonces.WIRE_NONCE_LENGTH
         self.tag_length = tag_length
         self.key_length = key_length
 
-    @abstractmethod
-    def encrypt(self, key: bytes, message: bytes, aad: bytes, nonce: bytes) -> bytes:
-        """Encrypts message using given key and nonce, AAD is guarded by mac tag and appended to the end of encrypted message.
+    def encrypt(self, suite: CipherSuite, key: bytes, message: bytes, aad: bytes, nonce: bytes) -> bytes:
+        """Encrypts message with given suite, key and nonce, AAD is guarded by mac tag and appended to the end of encrypted message.
         """
-        pass
+        cipher = suite.new_cipher(key, SessionNonces.expand(nonce, SessionNonces.SERVER))
+        cipher.update(aad)
+        ciphertext, tag = cipher.encrypt_and_digest(message)
 
-    @abstractmethod
-    def decrypt(self, key: bytes, message: bytes, aad: bytes, nonce: bytes) -> bytes:
-        """Decrypts message using given key and nonce, verifies it with AAD using MAC
+        return ciphertext + tag
+
+    def decrypt(self, suite: CipherSuite, key: bytes, message: bytes, aad: bytes, nonce: bytes) -> bytes:
+        """Decrypts message with given suite, key and nonce, verifies it with AAD using MAC
            tag which is assumed to be appended to the end of encrypted message.
         """
+        ciphertext, tag = message[:-self.tag_length], message[-self.tag_length:]
+        cipher = suite.new_cipher(key, SessionNonces.expand(nonce, SessionNonces.CLIENT))
+        cipher.update(aad)
+
+        return cipher.decrypt_and_verify(ciphertext, tag)
+
+    @abstractmethod
+    def get_cipher_suite(self, session: Session) -> CipherSuite:
+        """Suite picked for the channel in TLS handshake"""
         pass
 
     @abstractmethod
     def get_secret_key(self, session: Session) -> bytes:
         pass
 
+    @abstractmethod
+    def get_nonces(self, session: Session) -> SessionNonces:
+        """Nonces of current secret key"""
+        pass
+
     def get_nonce_length(self) -> int:
         return self.nonce_length
 
     def get_tag_length(self) -> int:
         return self.tag_length
 
-    def get_nonce(self) -> bytes:
-        return get_random_bytes(self.get_nonce_length())
+    def get_nonce(self, session: Session, stream: int = SessionNonces.CONTROL_STREAM) -> bytes:
+        return self.get_nonces(session).next(stream)
 
     def get_key_length(self) -> int:
         return self.key_length
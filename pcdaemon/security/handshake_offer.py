@@ -0,0 +1,43 @@
+from enum import Enum
+from typing import List, NamedTuple
+
+from security.cipher_suite import CipherSuite, parse_offered_suites
+
+
+class KeyExchange(Enum):
+    """How TCP key is established in full handshake, values have to match KeyExchange.java of the client"""
+    # client generated key wrapped with server's RSA key from certificate, UDP key sent in UDP_SECRET
+    RSA_OAEP = 0
+    # ephemeral P-256 ECDH, server's share signed with ECDSA key from certificate, both keys derived with HKDF
+    ECDHE_P256 = 1
+
+
+class HandshakeOffer(NamedTuple):
+    """
+    Data of HELLO (and tail of RESUME): count of suites, suite ids, count of key exchanges, key exchange ids,
+    all ordered by client's preference, followed by client's ECDHE share if that key exchange is offered
+    """
+    suites: List[CipherSuite]
+    key_exchanges: List[KeyExchange]
+    client_share: bytes
+
+    @staticmethod
+    def parse(data: bytes) -> 'HandshakeOffer':
+        if len(data) == 0:
+            return HandshakeOffer([], [], b'')
+
+        suites_end = 1 + data[0]
+        key_exchanges_end = suites_end + 1 + data[suites_end] if len(data) > suites_end else suites_end
+        known_ids = {key_exchange.value for key_exchange in KeyExchange}
+        key_exchanges = [KeyExchange(key_exchange_id) for key_exchange_id in data[suites_end + 1:key_exchanges_end]
+                         if key_exchange_id in known_ids]
+
+        return HandshakeOffer(parse_offered_suites(data[1:suites_end]), key_exchanges, data[key_exchanges_end:])
+
+    def pick_key_exchange(self, supported: List[KeyExchange]) -> KeyExchange:
+        """first offered key exchange server supports, RSA for clients which don't offer any"""
+        for key_exchange in self.key_exchanges:
+            if key_exchange in supported:
+                return key_exchange
+
+        return KeyExchange.RSA_OAEP
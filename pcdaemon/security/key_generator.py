@@ -2,7 +2,7 @@ from enum import Enum
 from pathlib import Path
 from Crypto.Protocol.KDF import scrypt
 from Crypto.Random import get_random_bytes
-from Crypto.PublicKey import RSA
+from Crypto.PublicKey import RSA, ECC
 
 
 class SecurityLevel(Enum):
@@ -26,7 +26,7 @@ class KeyGenerator:
 
     @classmethod
     def generate_RSA_key(cls, public_path: Path, private_path: Path, bit_len: int, public_exp: int = 65537) -> RSA.RsaKey:
-        cls._assert_rsa_filename(private_path)
+        cls._assert_pem_filename(private_path)
 
         key = RSA.generate(bit_len, e=public_exp)
 
@@ -41,13 +41,35 @@ class KeyGenerator:
     @classmethod
     def load_RSA_key(cls, path: Path) -> RSA.RsaKey:
         """ Raises FileNotFoudException"""
-        cls._assert_rsa_filename(path)
+        cls._assert_pem_filename(path)
 
         with open(path, 'rb') as f:
             return RSA.import_key(f.read())
 
     @classmethod
-    def _assert_rsa_filename(cls, path: Path):
+    def generate_EC_key(cls, public_path: Path, private_path: Path, curve: str = 'P-256') -> ECC.EccKey:
+        cls._assert_pem_filename(private_path)
+
+        key = ECC.generate(curve=curve)
+
+        with open(private_path, 'wt') as f:
+            f.write(key.export_key(format=cls.RSA_KEY_FORMAT))
+
+        with open(public_path, 'wt') as f:
+            f.write(key.public_key().export_key(format=cls.RSA_KEY_FORMAT))
+
+        return key
+
+    @classmethod
+    def load_EC_key(cls, path: Path) -> ECC.EccKey:
+        """ Raises FileNotFoudException"""
+        cls._assert_pem_filename(path)
+
+        with open(path, 'rt') as f:
+            return ECC.import_key(f.read())
+
+    @classmethod
+    def _assert_pem_filename(cls, path: Path):
         assert path.name.endswith(cls.RSA_KEY_FORMAT.lower(
         )), f"only {cls.RSA_KEY_FORMAT} files are supported"
 
@@ -12,24 +12,48 @@ class MessageSecurityPreprocessor:
         self.guard = guard
 
     def preprocess_to_send(self, session: Session, message_to_send: bytes) -> bytes:
-        nonce = self.guard.get_nonce()
+        nonce = self.guard.get_nonce(session)
 
         tls_packet = TLSPacket(TLSCode.SECURE, len(
             message_to_send), len(nonce), nonce, message_to_send)
 
         encrypted_data = self.guard.encrypt(
-            self.guard.get_secret_key(session), tls_packet.data, tls_packet.header, nonce)
+            self.guard.get_cipher_suite(session), self.guard.get_secret_key(session), tls_packet.data, tls_packet.header, nonce)
 
         return TLSPacket.build_from_header_and_data(tls_packet.header, encrypted_data).full
 
+    def preprocess_media_to_send(self, session: Session, media_header: bytes, payload: bytes) -> bytes:
+        """media header is sent in clear, so that receiver can drop packets it doesn't need without decrypting them,
+        it's authenticated together with tls header, every media code counts its own nonces"""
+        nonce = self.guard.get_nonce(session, media_header[0])
+
+        tls_packet = TLSPacket(TLSCode.SECURE_MEDIA, len(
+            payload), len(nonce), nonce, payload)
+        associated_data = tls_packet.header + media_header
+
+        encrypted_data = self.guard.encrypt(
+            self.guard.get_cipher_suite(session), self.guard.get_secret_key(session), payload, associated_data, nonce)
+
+        return associated_data + encrypted_data
+
     def preprocess_received(self, session: Session, received_message: bytes) -> bytes:
         tls_packet = TLSPacket.build_from_raw(received_message)
 
         assert tls_packet.code == TLSCode.SECURE, "preprocessor got unsecure packet"
         assert len(tls_packet.nonce) == self.guard.get_nonce_length()
 
-        return self.guard.decrypt(
-            self.guard.get_secret_key(session), tls_packet.data, tls_packet.header, tls_packet.nonce)
+        # replays are rejected before they cost a decryption, nonce is marked once packet is authenticated
+        nonces = self.guard.get_nonces(session)
+        if nonces.is_replayed(tls_packet.nonce):
+            raise ValueError('replayed or too old nonce')
+
+        message = self.guard.decrypt(
+            self.guard.get_cipher_suite(session), self.guard.get_secret_key(session), tls_packet.data, tls_packet.header, tls_packet.nonce)
+
+        if not nonces.mark_received(tls_packet.nonce):
+            raise ValueError('nonce received twice')
+
+        return message
 
     def get_basic_header_size(self) -> int:
         return TLSPacket.HEADER_SIZE
@@ -8,6 +8,7 @@ class HashAlgorithm(Enum):
 
 class AsymmetricAlgorithm(Enum):
     RSA = "RSA"
+    EC = "EC"
 
 
 class SignatureAlgorithm(Enum):
@@ -57,6 +58,16 @@ class RSA_AsymmetricParams(AsymmetricParams):
         }
 
 
+class EC_AsymmetricParams(AsymmetricParams):
+    def __init__(self, curve: str):
+        self.curve = curve
+
+    def get_as_dict(self):
+        return {
+            "curve": self.curve
+        }
+
+
 class EmptyParams(SignatureParams):
     def get_as_dict(self):
         return {}
@@ -87,6 +98,18 @@ class RSA_PublicKey(PublicKey):
         }
 
 
+class EC_PublicKey(PublicKey):
+    def __init__(self, x: int, y: int):
+        self.x = x
+        self.y = y
+
+    def get_as_dict(self):
+        return {
+            'x': str(self.x),
+            'y': str(self.y)
+        }
+
+
 class AES_SymmetricParams(SymmetricParams):
     def __init__(self, key_size: int) -> None:
         self.key_size = key_size
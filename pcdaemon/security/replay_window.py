@@ -0,0 +1,42 @@
+import threading
+
+
+class ReplayWindow:
+    """
+    Sliding window of received sequence numbers, as in DTLS (RFC 6347 4.1.2.6). Sequence numbers older than
+    the window or marked already are replays. Packets are checked before they are decrypted and marked only once
+    they are authenticated, so that forged packets can't move the window.
+    """
+    SIZE = 64
+
+    def __init__(self):
+        self.highest_seq = -1
+        # bit i is set if highest_seq - i was received
+        self.received_bits = 0
+        self.lock = threading.Lock()
+
+    def is_replayed(self, seq: int) -> bool:
+        with self.lock:
+            return self._is_replayed(seq)
+
+    def mark_received(self, seq: int) -> bool:
+        """Returns False if seq was replayed meanwhile"""
+        with self.lock:
+            if self._is_replayed(seq):
+                return False
+
+            if seq > self.highest_seq:
+                shift = seq - self.highest_seq
+                self.received_bits = ((self.received_bits << shift) | 1) & ((1 << self.SIZE) - 1)
+                self.highest_seq = seq
+            else:
+                self.received_bits |= 1 << (self.highest_seq - seq)
+
+            return True
+
+    def _is_replayed(self, seq: int) -> bool:
+        if seq > self.highest_seq:
+            return False
+
+        age = self.highest_seq - seq
+        return age >= self.SIZE or bool(self.received_bits & (1 << age))
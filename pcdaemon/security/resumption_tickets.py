@@ -0,0 +1,87 @@
+import hashlib
+import hmac
+import secrets
+import threading
+import time
+from typing import Dict, NamedTuple, Optional
+from networking.session import Session
+
+
+class ResumptionTicket(NamedTuple):
+    ticket_id: bytes
+    secret: bytes
+    expires_at: float
+    # session which issued the ticket, resumed one re-attaches to its media path
+    session: Session
+
+
+class ResumptionTickets:
+    """
+    Tickets issued to client after successful session, reconnect presents one instead of going through certificate,
+    RSA key transport and password. Ticket proves that its holder authenticated with password before, so it's
+    redeemed only once and a new one is issued in every session. Resumed session re-attaches to media path of the
+    session which issued its ticket (session id, peer addresses, migration seq, link profile). Keys of resumed session are derived from secret
+    of the ticket and randoms of both sides, so they are never reused.
+
+    Derivation has to match SessionResumption.java of the client.
+    """
+    TICKET_LENGTH = 16
+    RANDOM_LENGTH = 32
+    MAC_LENGTH = 32
+    _SECRET_LENGTH = 32
+
+    _BINDER_LABEL = b'kntpilot binder'
+    _FINISHED_LABEL = b'kntpilot finished'
+    _TCP_KEY_LABEL = b'kntpilot tcp key'
+    _UDP_KEY_LABEL = b'kntpilot udp key'
+
+    def __init__(self, lifetime_s: float):
+        self.lifetime_s = lifetime_s
+        self.tickets: Dict[bytes, ResumptionTicket] = {}
+        self.lock = threading.Lock()
+
+    def issue(self, session: Session) -> ResumptionTicket:
+        now = time.monotonic()
+        ticket = ResumptionTicket(secrets.token_bytes(self.TICKET_LENGTH), secrets.token_bytes(self._SECRET_LENGTH),
+                                  now + self.lifetime_s, session)
+
+        with self.lock:
+            self.tickets = {ticket_id: t for ticket_id, t in self.tickets.items() if t.expires_at > now}
+            self.tickets[ticket.ticket_id] = ticket
+
+        return ticket
+
+    def redeem(self, ticket_id: bytes, client_random: bytes, binder: bytes, offer: bytes) \
+            -> Optional[ResumptionTicket]:
+        """Ticket if it's known, not expired and client proved it knows its secret, None means full handshake"""
+        with self.lock:
+            ticket = self.tickets.pop(ticket_id, None)
+
+        if ticket is None or ticket.expires_at <= time.monotonic():
+            return None
+
+        expected = self._hmac(ticket.secret, self._BINDER_LABEL, ticket_id, client_random, offer)
+        if not hmac.compare_digest(expected, binder):
+            return None
+
+        return ticket
+
+    def get_lifetime(self) -> float:
+        return self.lifetime_s
+
+    @classmethod
+    def compute_finished(cls, ticket: ResumptionTicket, client_random: bytes, server_random: bytes,
+                         picked_suites: bytes) -> bytes:
+        return cls._hmac(ticket.secret, cls._FINISHED_LABEL, client_random, server_random, picked_suites)
+
+    @classmethod
+    def derive_tcp_key(cls, ticket: ResumptionTicket, client_random: bytes, server_random: bytes) -> bytes:
+        return cls._hmac(ticket.secret, cls._TCP_KEY_LABEL, client_random, server_random)
+
+    @classmethod
+    def derive_udp_key(cls, ticket: ResumptionTicket, client_random: bytes, server_random: bytes) -> bytes:
+        return cls._hmac(ticket.secret, cls._UDP_KEY_LABEL, client_random, server_random)
+
+    @staticmethod
+    def _hmac(secret: bytes, *parts: bytes) -> bytes:
+        return hmac.new(secret, b''.join(parts), hashlib.sha256).digest()
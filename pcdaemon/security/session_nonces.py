@@ -0,0 +1,63 @@
+import threading
+from struct import pack, unpack
+from typing import Dict, Tuple
+from security.replay_window import ReplayWindow
+
+
+class SessionNonces:
+    """
+    Nonces used under a single session key. Every stream (media code of the packet, 0 for others) counts nonces
+    it sends, wire nonce holds stream id in top byte and 56 bit counter below it. Full nonce is the wire nonce
+    prefixed with the sending endpoint, so it's unique per key without being random. Received nonces go through
+    replay window of their stream, streams are sent by separate threads and sockets, so they are reordered against
+    each other.
+
+    Has to match SessionNonces.java of the client.
+    """
+    WIRE_NONCE_LENGTH = 8
+    CONTROL_STREAM = 0
+    # prefixes of endpoint which sent the packet
+    CLIENT = 1
+    SERVER = 2
+
+    _COUNTER_BITS = 56
+    _MAX_COUNTER = (1 << _COUNTER_BITS) - 1
+    _WIRE_NONCE_FORMAT = '>Q'
+    _PREFIX_FORMAT = '>I'
+
+    def __init__(self):
+        self.sent_counters: Dict[int, int] = {}
+        self.replay_windows: Dict[int, ReplayWindow] = {}
+        self.lock = threading.Lock()  # guards both dicts
+
+    def next(self, stream: int = CONTROL_STREAM) -> bytes:
+        with self.lock:
+            counter = self.sent_counters.get(stream, 0)
+            if counter > self._MAX_COUNTER:
+                raise OverflowError(f'nonces of stream {stream} exhausted, key has to be renewed')
+            self.sent_counters[stream] = counter + 1
+
+        return pack(self._WIRE_NONCE_FORMAT, stream << self._COUNTER_BITS | counter)
+
+    def is_replayed(self, wire_nonce: bytes) -> bool:
+        stream, counter = self._split(wire_nonce)
+        return self._get_replay_window(stream).is_replayed(counter)
+
+    def mark_received(self, wire_nonce: bytes) -> bool:
+        """Returns False if nonce was received already"""
+        stream, counter = self._split(wire_nonce)
+        return self._get_replay_window(stream).mark_received(counter)
+
+    def _get_replay_window(self, stream: int) -> ReplayWindow:
+        with self.lock:
+            return self.replay_windows.setdefault(stream, ReplayWindow())
+
+    @classmethod
+    def _split(cls, wire_nonce: bytes) -> Tuple[int, int]:
+        nonce, = unpack(cls._WIRE_NONCE_FORMAT, wire_nonce)
+        return nonce >> cls._COUNTER_BITS, nonce & cls._MAX_COUNTER
+
+    @classmethod
+    def expand(cls, wire_nonce: bytes, sender: int) -> bytes:
+        """Nonce handed to cipher"""
+        return pack(cls._PREFIX_FORMAT, sender) + wire_nonce
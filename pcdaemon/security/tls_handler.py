@@ -1,9 +1,18 @@
+import hashlib
+import hmac
 import logging
+import secrets
+import time
 from pathlib import Path
 from threading import Lock, Condition
+from typing import List, Optional
 from networking.abstract.conn_state_obs import ConnectionStateObserver
 from security.TCPGuard import Guard
-from security.asymmetric_security_handler import AsymmetricSecurityHandler
+from security.asymmetric_security_handler import AsymmetricSecurityHandler, ECDSA_Signer
+from security.cipher_suite import CipherSuite, DEFAULT_TCP_CIPHER_SUITE, DEFAULT_UDP_CIPHER_SUITE, pick_cipher_suite
+from security.ephemeral_key_exchange import EphemeralKeyExchange
+from security.handshake_offer import HandshakeOffer, KeyExchange
+from security.resumption_tickets import ResumptionTickets, ResumptionTicket
 from networking.session import Session, SessionState
 from security.tls_packet import TLSPacket
 from utils.msg_codes import TLSCode
@@ -15,12 +24,27 @@ from utils.msg_codes import TLSCode
 class TLSHandler(ConnectionStateObserver):
     """ Considerably simplified TLS-alike class used to establish secure channel with client.
     """
+    _TRANSCRIPT_HASH_LENGTH = 32
 
     def __init__(self, certificate_path: Path, guard: Guard,
-                 secret_key_decryptor: AsymmetricSecurityHandler):
+                 secret_key_decryptor: AsymmetricSecurityHandler, tickets: ResumptionTickets,
+                 ec_certificate_path: Optional[Path] = None, share_signer: Optional[ECDSA_Signer] = None):
         self.certificate_path = certificate_path
         self.guard = guard
         self.secret_key_decryptor = secret_key_decryptor
+        self.tickets = tickets
+        self.ec_certificate_path = ec_certificate_path
+        self.share_signer = share_signer
+
+        # ECDHE needs certificate of the EC key signing the shares
+        self.supported_key_exchanges: List[KeyExchange] = [KeyExchange.RSA_OAEP]
+        if ec_certificate_path is not None and share_signer is not None:
+            self.supported_key_exchanges.append(KeyExchange.ECDHE_P256)
+
+        # perf counter of first handshake packet of current connection
+        self.handshake_started = None
+        # SHA-256 of hello and picked suites of current RSA handshake, client sends it along with the key
+        self.transcript_hash = None
 
         self.security_change_mutex = Lock()
         self.security_changed = Condition(self.security_change_mutex)
@@ -48,15 +72,124 @@ class TLSHandler(ConnectionStateObserver):
         session_state = session.get_session_state()
 
         if code == TLSCode.HELLO and session_state == SessionState.START:
-            logging.debug("sending certificate")
-            self._send_certificate(session)
+            self.handshake_started = time.perf_counter()
+            logging.debug("picking cipher suites and key exchange")
+            self._full_handshake(session, data)
+        elif code == TLSCode.RESUME and session_state == SessionState.START:
+            self.handshake_started = time.perf_counter()
+            self._resume_or_fall_back(session, data)
         elif code == TLSCode.SECRET and session_state == SessionState.CERTIFICATE_SENT:
             logging.debug("got session key, finishing handshake")
             self._establish_secure_connection(session, data)
+            self._log_handshake_time(KeyExchange.RSA_OAEP.name)
         else:
             logging.error(
                 f'unexpected code: {code}, session status: {session_state} combination')  # TODO
 
+    def _resume_or_fall_back(self, session: Session, data: bytes):
+        ticket_end = ResumptionTickets.TICKET_LENGTH
+        random_end = ticket_end + ResumptionTickets.RANDOM_LENGTH
+        binder_end = random_end + ResumptionTickets.MAC_LENGTH
+        ticket_id, client_random = data[:ticket_end], data[ticket_end:random_end]
+        binder, offer = data[random_end:binder_end], data[binder_end:]
+
+        ticket = self.tickets.redeem(ticket_id, client_random, binder, offer) \
+            if len(data) >= binder_end else None
+
+        if ticket is None:
+            logging.info("resumption ticket refused, falling back to full handshake")
+            self._full_handshake(session, offer)
+            return
+
+        self._resume(session, ticket, client_random, HandshakeOffer.parse(offer))
+        self._log_handshake_time('resumption')
+
+    def _resume(self, session: Session, ticket: ResumptionTicket, client_random: bytes, offer: HandshakeOffer):
+        tcp_suite = pick_cipher_suite(offer.suites, DEFAULT_TCP_CIPHER_SUITE)
+        udp_suite = pick_cipher_suite(offer.suites, DEFAULT_UDP_CIPHER_SUITE)
+        picked_suites = bytes([tcp_suite.value, udp_suite.value])
+        server_random = secrets.token_bytes(ResumptionTickets.RANDOM_LENGTH)
+
+        resumed = server_random + picked_suites + \
+            ResumptionTickets.compute_finished(ticket, client_random, server_random, picked_suites)
+        tls_packet = TLSPacket(TLSCode.RESUMED, len(resumed), 0, b'', resumed)
+
+        with self.security_change_mutex:
+            session.set_cipher_suites(tcp_suite, udp_suite)
+            session.set_tcp_secret_key(ResumptionTickets.derive_tcp_key(ticket, client_random, server_random))
+            session.set_udp_secret_key(ResumptionTickets.derive_udp_key(ticket, client_random, server_random))
+            session.set_resumed(True)
+            session.set_media_key_agreed(True)
+            session.reattach(ticket.session)
+            session.get_tcp_socket().send(tls_packet.full)
+            session.set_session_state(SessionState.ESTABLISHED)
+            self.security_changed.notify_all()
+
+        logging.info(f'session resumed with {tcp_suite.name} for TCP and {udp_suite.name} for UDP, '
+                     f'media path re-attached to {session.get_udp_peer_addr()}')
+
+    def _full_handshake(self, session: Session, offer_data: bytes):
+        offer = HandshakeOffer.parse(offer_data)
+        picked_suites = self._send_cipher_suites(session, offer.suites)
+        key_exchange = offer.pick_key_exchange(self.supported_key_exchanges)
+        logging.info(f'client offered {[kex.name for kex in offer.key_exchanges]}, picked {key_exchange.name}')
+
+        if key_exchange == KeyExchange.ECDHE_P256:
+            try:
+                self._agree_on_keys(session, offer_data, offer.client_share, picked_suites)
+                self._log_handshake_time(KeyExchange.ECDHE_P256.name)
+                return
+            except ValueError:
+                logging.warning('invalid ECDHE share of client, falling back to RSA key transport', exc_info=True)
+
+        # unlike ECDHE share, certificate doesn't sign the transcript, so the client proves it saw the same one
+        self.transcript_hash = hashlib.sha256(offer_data + picked_suites).digest()
+        self._send_certificate(session)
+
+    def _agree_on_keys(self, session: Session, offer_data: bytes, client_share: bytes, picked_suites: bytes):
+        """ECDHE: replies with EC certificate, ephemeral share and signature of the transcript, keys of both
+        channels are derived from shared secret, so neither SECRET nor UDP_SECRET key is needed"""
+        key_exchange = EphemeralKeyExchange()
+        shared_secret = key_exchange.compute_shared_secret(client_share)
+        server_share = key_exchange.get_public_share()
+
+        transcript = offer_data + picked_suites + server_share
+        tcp_key, udp_key = EphemeralKeyExchange.derive_channel_keys(shared_secret, transcript)
+
+        with open(self.ec_certificate_path, 'rb') as f:
+            cert = f.read()
+
+        key_share = len(cert).to_bytes(2, 'big') + cert + server_share + self.share_signer.sign(transcript)
+        tls_packet = TLSPacket(TLSCode.KEY_SHARE, len(key_share), 0, b'', key_share)
+
+        with self.security_change_mutex:
+            session.set_tcp_secret_key(tcp_key)
+            session.set_udp_secret_key(udp_key)
+            session.set_media_key_agreed(True)
+            session.get_tcp_socket().send(tls_packet.full)
+            session.set_session_state(SessionState.ESTABLISHED)
+            self.security_changed.notify_all()
+
+    def _send_cipher_suites(self, session: Session, offered: List[CipherSuite]) -> bytes:
+        tcp_suite = pick_cipher_suite(offered, DEFAULT_TCP_CIPHER_SUITE)
+        udp_suite = pick_cipher_suite(offered, DEFAULT_UDP_CIPHER_SUITE)
+        session.set_cipher_suites(tcp_suite, udp_suite)
+        logging.info(f'client offered {[suite.name for suite in offered]}, '
+                     f'picked {tcp_suite.name} for TCP and {udp_suite.name} for UDP')
+
+        suites = bytes([tcp_suite.value, udp_suite.value])
+        tls_packet = TLSPacket(TLSCode.SUITES, len(suites), 0, b'', suites)
+
+        session.get_tcp_socket().send(tls_packet.full)
+
+        return suites
+
+    def _log_handshake_time(self, variant: str):
+        """time from first handshake packet until keys are set, RSA includes round trip of certificate and SECRET"""
+        if self.handshake_started is not None:
+            logging.info(f'{variant} handshake took {(time.perf_counter() - self.handshake_started) * 1000:.1f} ms '
+                         f'on server')
+
     def _send_certificate(self, session: Session):
         with open(self.certificate_path, 'rb') as f:
             cert = f.read()
@@ -69,7 +202,15 @@ class TLSHandler(ConnectionStateObserver):
         session.set_session_state(SessionState.CERTIFICATE_SENT)
 
     def _establish_secure_connection(self, session: Session, encrypted_secret_key: bytes):
-        secret_key = self.secret_key_decryptor.decrypt(encrypted_secret_key)
+        """SECRET holds tcp key followed by hash of the transcript client saw, different one means that hello
+        or suites were tampered with (eg. ECDHE stripped from the offer)"""
+        plaintext = self.secret_key_decryptor.decrypt(encrypted_secret_key)
+        secret_key = plaintext[:-self._TRANSCRIPT_HASH_LENGTH]
+        transcript_hash = plaintext[-self._TRANSCRIPT_HASH_LENGTH:]
+
+        if self.transcript_hash is None or not secret_key or \
+                not hmac.compare_digest(transcript_hash, self.transcript_hash):
+            raise ConnectionAbortedError('handshake transcript of client differs, aborting RSA handshake')
 
         with self.security_change_mutex:
             session.set_tcp_secret_key(secret_key)
@@ -77,6 +218,7 @@ class TLSHandler(ConnectionStateObserver):
             self.security_changed.notify_all()
 
     def connection_established(self, session: Session):
+        self.transcript_hash = None
         self.connected = True
 
     def connection_lost(self, session: Session):
@@ -6,17 +6,29 @@ class FpsController:
 
     def __init__(self, max_fps: int):
         self.min_frame_time = 1 / max_fps
+        # bits per second frames are paced to, None if only fps is limited
+        self.max_bitrate = None
+        self.pacing_time = 0
         self.reset()
 
+    def set_limits(self, max_fps: int, max_bitrate: int = None):
+        """can be called from any thread, applies from next frame"""
+        self.min_frame_time = 1 / max_fps
+        self.max_bitrate = max_bitrate if max_bitrate else None
+
     def start_timer(self):
         self.start = time.time()
 
-    def frame_sent(self):
+    def frame_sent(self, frame_size: int = 0):
         end = time.time()
         self.frame_time_approx = self._ALPHA * self.frame_time_approx + \
             (1 - self._ALPHA) * (end - self.start)
         self.start = end
 
+        max_bitrate = self.max_bitrate
+        # time link needs for this frame at max bitrate, next one waits for it
+        self.pacing_time = frame_size * 8 / max_bitrate if max_bitrate else 0
+
     def get_frame_time_approx_secs(self) -> float:
         return self.frame_time_approx
 
@@ -28,6 +40,10 @@ class FpsController:
             delta = self.min_frame_time - self.frame_time_approx
             time.sleep(100 * delta * self.min_frame_time)
 
+        remaining_pacing_time = self.pacing_time - (time.time() - self.start)
+        if remaining_pacing_time > 0:
+            time.sleep(remaining_pacing_time)
+
         return 1.0 / self.frame_time_approx
 
     def reset(self):
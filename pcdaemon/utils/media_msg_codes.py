@@ -4,3 +4,8 @@ from enum import Enum
 class MediaMsgCode(Enum):
     AUDIO_FRAME = 1
     VIDEO_FRAME = 2
+    VIDEO_PARITY = 3
+    # sent only while link is probed, before streaming
+    PROBE = 4
+    # sent to the address of path migration request to confirm it, only on the path it migrated to
+    PATH_MIGRATED = 5
@@ -24,23 +24,51 @@ class MsgCode(Enum):
     AUTH_CHECKED = 7    # ->
     # body = up: bool
     SCROLL = 8          # <-
-    # body = empty string
-    SS_RCVD = 9         # ->
+    # body = seq: int, credits: int -> cumulative ack of video frames played up to seq, server
+    # can send frames up to seq + credits, credits count frames client buffered past seq already
+    SS_RCVD = 9         # <-
     # body = empty string
     MUTE = 10           # <-
     # body = empty string
     UNMUTE = 11         # <-
-    # body = secret: secret key for streaming data encryption (256b ChaCha20), base64 encoded
+    # body = secret: secret key for streaming data encryption (256b ChaCha20), base64 encoded, session_id: base64
+    # encoded id of this session, migration_port: int -> udp port of the server path migration requests go to
+    # secret is left out when media key was derived in handshake (resumption, ECDHE), then it isn't acked
     UDP_SECRET = 12     # ->
     # body = empty string
     UDP_SECRET_ACK = 13
     # body = x: float, dy: float, button: str -> click cords, relative to current screen pos and string
     # either "left" or "right" depending on choosen button
     DOUBLE_CLICK = 14
+    # body = seq: int, offsets: [int] -> offsets of fragments of video frame seq which should be sent again
+    NACK = 15           # <-
+    # body = bitrate: int, fps: int, quality: int -> target video bitrate in bits per second estimated by client,
+    # frame rate and jpeg quality (1-95) which fit in it
+    QOS = 16            # <-
+    # body = seq: int -> client replies with PROBE_PONG right away, used to measure rtt and as a barrier
+    PROBE_PING = 17     # ->
+    # body = seq: int, max_size: int, train: int, train_packets: int, train_span_us: int -> payload size
+    # of largest probe packet received so far and packets received from the latest probe train,
+    # with time between arrival of first and last of them
+    PROBE_PONG = 18     # <-
+    # body = fragment_size: int, bitrate: int, fps: int, quality: int, rtt_ms: int -> parameters chosen for the
+    # link, fragment size of media frames applies right away
+    PROBE_RESULT = 19   # ->
+    # body = lane: int, seq: int -> media of lane (media code) is now sent to the address path migration request
+    # seq came from, best effort, the same is confirmed with PATH_MIGRATED media packet over the new path
+    PATH_MIGRATED = 20  # ->
+    # body = seq: int -> sent by client every heartbeat interval, also before authentication
+    HEARTBEAT = 21      # <-
+    # body = seq: int -> echo of heartbeat, sent right away
+    HEARTBEAT_ACK = 22  # ->
+    # body = ticket: base64 encoded id, secret: base64 encoded resumption secret, lifetime_s: int -> sent once
+    # session is authenticated, reconnect presents the ticket in RESUME instead of going through full handshake
+    NEW_TICKET = 23     # ->
 
 
 class TLSCode(Enum):
-    # data is empty
+    # data contains offer: count and ids of cipher suites, count and ids of key exchanges, most preferred first,
+    # followed by client's ECDHE share if it's offered, see security/handshake_offer.py
     HELLO = 0
     # data contains utf-8 encoded certificate
     CERTIFICATE = 1
@@ -48,3 +76,16 @@ class TLSCode(Enum):
     SECRET = 2
     # data contains packet from underlying protocol encrypted with established secret key
     SECURE = 3
+    # data starts with cleartext media header authenticated as associated data, rest is encrypted like in SECURE,
+    # size doesn't include the header
+    SECURE_MEDIA = 4
+    # data contains ids of cipher suites picked for TCP and UDP channel, sent before CERTIFICATE
+    SUITES = 5
+    # data contains ticket id, client random, binder (hmac proving knowledge of ticket secret) and offer as in HELLO,
+    # sent instead of HELLO
+    RESUME = 6
+    # data contains server random, picked suites and finished hmac, refused ticket is answered like HELLO
+    RESUMED = 7
+    # ECDHE reply instead of CERTIFICATE: size (16b) and certificate of server's EC key, server's ephemeral share
+    # and DER ECDSA signature of offer + picked suites + server share
+    KEY_SHARE = 8